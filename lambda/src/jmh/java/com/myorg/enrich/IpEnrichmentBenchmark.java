@@ -0,0 +1,128 @@
+package com.myorg.enrich;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up client addresses in an {@link IpEnrichment} database, parsing included, as the transformer does.
+ * {@code sample} is the bundled test database, {@code synthetic} about a full table's worth of random prefixes:
+ * a million IPv4 and a hundred thousand IPv6 ones. {@code -Denrichment.db=<file>} replaces the sample with a real
+ * database. Half the addresses fall into a known prefix, the others mostly miss.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx1g")
+@OperationsPerInvocation(IpEnrichmentBenchmark.ADDRESSES)
+public class IpEnrichmentBenchmark {
+    static final int ADDRESSES = 1024;
+    private static final int SYNTHETIC_IPV4 = 1_000_000;
+    private static final int SYNTHETIC_IPV6 = 100_000;
+
+    @Param({"sample", "synthetic"})
+    public String database;
+
+    private IpEnrichment enrichment;
+    private String[] ipv4;
+    private String[] ipv6;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        int[] ipv4Networks;
+        long[] ipv6Networks;
+        if ("synthetic".equals(database)) {
+            ipv4Networks = new int[SYNTHETIC_IPV4];
+            ipv6Networks = new long[SYNTHETIC_IPV6];
+            enrichment = synthetic(ipv4Networks, ipv6Networks, random);
+        } else {
+            String path = System.getProperty("enrichment.db");
+            enrichment = path == null ? IpEnrichmentTest.sampleDatabase() : IpEnrichment.load(Path.of(path));
+            ipv4Networks = new int[]{0xc6336400, 0xcb007100, 0x0b000000, 0x22880000};
+            ipv6Networks = new long[]{0x20010db800000000L};
+        }
+
+        ipv4 = new String[ADDRESSES];
+        ipv6 = new String[ADDRESSES];
+        for (int i = 0; i < ADDRESSES; i++) {
+            int address = i % 2 == 0 ? ipv4Networks[random.nextInt(ipv4Networks.length)] | random.nextInt(256) : random.nextInt();
+            ipv4[i] = ipv4(address);
+            long high = i % 2 == 0 ? ipv6Networks[random.nextInt(ipv6Networks.length)] | random.nextInt(0x10000) : random.nextLong();
+            ipv6[i] = ipv6(high, random.nextLong());
+        }
+        System.err.println("Enrichment database: " + enrichment);
+    }
+
+    private static IpEnrichment synthetic(int[] ipv4Networks, long[] ipv6Networks, Random random) throws IOException {
+        StringBuilder csv = new StringBuilder(SYNTHETIC_IPV4 * 48);
+        for (int i = 0; i < ipv4Networks.length; i++) {
+            // mostly /16 to /24, as in the global table
+            int length = 16 + random.nextInt(9);
+            ipv4Networks[i] = random.nextInt() & (int) (0xffffffffL << (32 - length)) & 0xffffff00;
+            csv.append(ipv4(ipv4Networks[i])).append('/').append(length);
+            details(csv, random);
+        }
+        for (int i = 0; i < ipv6Networks.length; i++) {
+            int length = 32 + random.nextInt(17);
+            ipv6Networks[i] = (random.nextLong() & -1L << (64 - length)) & 0xffffffffffff0000L;
+            csv.append(ipv6(ipv6Networks[i], 0)).append('/').append(length);
+            details(csv, random);
+        }
+        return IpEnrichment.load(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void details(StringBuilder csv, Random random) {
+        // some 60000 autonomous systems, a few of them on a reputation list
+        int asn = 1 + random.nextInt(60_000);
+        csv.append(',').append(asn).append(",AS").append(asn).append(" Org,")
+                .append((char) ('A' + asn % 26)).append((char) ('A' + asn / 26 % 26)).append(',').append(asn % 50).append(',')
+                .append(asn % 97 == 0 ? "scanners|tor-exit" : "").append('\n');
+    }
+
+    private static String ipv4(int address) {
+        return (address >>> 24) + "." + (address >>> 16 & 0xff) + "." + (address >>> 8 & 0xff) + "." + (address & 0xff);
+    }
+
+    private static String ipv6(long high, long low) {
+        StringBuilder text = new StringBuilder(39);
+        for (int group = 0; group < 8; group++) {
+            long word = group < 4 ? high : low;
+            text.append(group == 0 ? "" : ":").append(Long.toHexString(word >>> (48 - 16 * (group % 4)) & 0xffff));
+        }
+        return text.toString();
+    }
+
+    @Benchmark
+    public void lookupIpv4(Blackhole blackhole) {
+        for (String address : ipv4) {
+            blackhole.consume(enrichment.lookup(address));
+        }
+    }
+
+    @Benchmark
+    public void lookupIpv6(Blackhole blackhole) {
+        for (String address : ipv6) {
+            blackhole.consume(enrichment.lookup(address));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.myorg.realtime;
+
+import com.myorg.realtime.RealtimeConfig.Dimension;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Events per second the realtime detector counts, decoding included, on one core and on four sharing one
+ * detector, and without the decoding. {@code clients} is how many addresses the traffic comes from; a fifth of
+ * the requests come from the first ten of them, as in a flood. The clock is the system's, so windows slide as
+ * they would in a container.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx1g")
+@OperationsPerInvocation(SlidingWindowBenchmark.EVENTS)
+public class SlidingWindowBenchmark {
+    static final int EVENTS = 1024;
+
+    @Param({"1000", "100000"})
+    public int clients;
+
+    private RealtimeDetector detector;
+    private byte[][] events;
+    private RealtimeEvent[] decoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        detector = new RealtimeDetector(RealtimeConfig.fromEnvironment(Map.of()), Clock.systemUTC());
+        Random random = new Random(42);
+        events = new byte[EVENTS][];
+        decoded = new RealtimeEvent[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            int client = random.nextInt(5) == 0 ? random.nextInt(10) : random.nextInt(clients);
+            String event = "{\"timestamp\":1645000000000,\"clientIp\":\"10." + (client >>> 16 & 0xff) + "." + (client >>> 8 & 0xff)
+                    + "." + (client & 0xff) + "\",\"action\":\"BLOCK\",\"ruleId\":\"Rule" + random.nextInt(20)
+                    + "\",\"uri\":\"/path/" + random.nextInt(500) + "\"}";
+            events[i] = event.getBytes(StandardCharsets.UTF_8);
+            decoded[i] = new RealtimeEvent().decode(events[i]);
+        }
+    }
+
+    /**
+     * Each thread decodes into its own event, as each handler does.
+     */
+    @State(Scope.Thread)
+    public static class Decoder {
+        final RealtimeEvent event = new RealtimeEvent();
+    }
+
+    @Benchmark
+    public void accept(Decoder decoder) throws IOException {
+        for (byte[] data : events) {
+            detector.accept(decoder.event.decode(data));
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void acceptConcurrently(Decoder decoder) throws IOException {
+        for (byte[] data : events) {
+            detector.accept(decoder.event.decode(data));
+        }
+    }
+
+    @Benchmark
+    public void acceptDecoded() {
+        // the windows alone, without the decoding
+        for (RealtimeEvent event : decoded) {
+            detector.accept(event);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @BenchmarkMode(Mode.AverageTime)
+    public void top(Blackhole blackhole) {
+        for (Dimension dimension : Dimension.values()) {
+            blackhole.consume(detector.top(dimension));
+        }
+    }
+}
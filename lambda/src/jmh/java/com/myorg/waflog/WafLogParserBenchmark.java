@@ -0,0 +1,121 @@
+package com.myorg.waflog;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a corpus of WAF log records with {@link WafLogParser} and with Jackson databind, both as a tree and
+ * into a POJO holding the same fields. {@code captured} uses the bundled Firehose event unless
+ * {@code -Dwaflog.corpus=<file>} points at a Firehose event or a newline delimited log file.
+ * Run with {@code -prof gc} to compare allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(WafLogParserBenchmark.RECORDS)
+public class WafLogParserBenchmark {
+    static final int RECORDS = 1000;
+    private static final List<String> HEADERS = List.of("host", "user-agent", "x-forwarded-for");
+
+    @Param({"synthetic", "captured"})
+    public String corpus;
+
+    private byte[][] records;
+    private WafLogParser parser;
+    private WafLogRecord parsed;
+    private ObjectMapper mapper;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<byte[]> source;
+        if ("synthetic".equals(corpus)) {
+            source = WafLogCorpus.synthetic(RECORDS, 42);
+        } else {
+            String path = System.getProperty("waflog.corpus");
+            source = path == null ? WafLogCorpus.captured() : WafLogCorpus.captured(Path.of(path));
+        }
+
+        // cycle the corpus so every benchmark invocation parses the same number of records
+        records = new byte[RECORDS][];
+        for (int i = 0; i < RECORDS; i++) {
+            records[i] = source.get(i % source.size());
+        }
+
+        parser = new WafLogParser(HEADERS);
+        parsed = parser.newRecord();
+        mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    @Benchmark
+    public void wafLogParser(Blackhole blackhole) throws IOException {
+        for (byte[] record : records) {
+            parser.parse(record, parsed);
+            blackhole.consume(parsed.getTimestamp());
+            blackhole.consume(parsed.getClientIp().length());
+        }
+    }
+
+    @Benchmark
+    public void databindTree(Blackhole blackhole) throws IOException {
+        for (byte[] record : records) {
+            JsonNode tree = mapper.readTree(record);
+            blackhole.consume(tree.path("timestamp").asLong());
+            blackhole.consume(tree.path("httpRequest").path("clientIp").asText());
+        }
+    }
+
+    @Benchmark
+    public void databindPojo(Blackhole blackhole) throws IOException {
+        for (byte[] record : records) {
+            LogRecord pojo = mapper.readValue(record, LogRecord.class);
+            blackhole.consume(pojo.timestamp);
+            blackhole.consume(pojo.httpRequest.clientIp);
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class LogRecord {
+        public long timestamp;
+        public String action;
+        public String terminatingRuleId;
+        public String webaclId;
+        public HttpRequest httpRequest;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class HttpRequest {
+        public String clientIp;
+        public String country;
+        public String uri;
+        public List<Header> headers;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Header {
+        public String name;
+        public String value;
+    }
+}
@@ -0,0 +1,58 @@
+package com.myorg.aws;
+
+import java.net.URI;
+import java.time.Clock;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Credentials the Lambda runtime exposes to the function through its environment.
+ */
+public class AwsCredentials {
+    private final String accessKeyId;
+    private final String secretAccessKey;
+    private final String sessionToken;
+
+    public AwsCredentials(String accessKeyId, String secretAccessKey, String sessionToken) {
+        this.accessKeyId = accessKeyId;
+        this.secretAccessKey = secretAccessKey;
+        this.sessionToken = sessionToken;
+    }
+
+    /**
+     * @return the credentials, or null when the environment has none (local runs against stubs)
+     */
+    public static AwsCredentials fromEnvironment(Map<String, String> environment) {
+        String accessKeyId = environment.get("AWS_ACCESS_KEY_ID");
+        String secretAccessKey = environment.get("AWS_SECRET_ACCESS_KEY");
+        if (accessKeyId == null || secretAccessKey == null) {
+            return null;
+        }
+        return new AwsCredentials(accessKeyId, secretAccessKey, environment.get("AWS_SESSION_TOKEN"));
+    }
+
+    /**
+     * The environment's credentials if it has any, else the runtime's credentials endpoint, else null.
+     */
+    public static Supplier<AwsCredentials> providerFromEnvironment(Map<String, String> environment) {
+        AwsCredentials credentials = fromEnvironment(environment);
+        if (credentials != null) {
+            return () -> credentials;
+        }
+        String fullUri = environment.get(ContainerCredentialsProvider.FULL_URI_ENV);
+        return fullUri == null ? null : new ContainerCredentialsProvider(URI.create(fullUri),
+                environment.get(ContainerCredentialsProvider.AUTHORIZATION_TOKEN_ENV), Clock.systemUTC());
+    }
+
+    public String getAccessKeyId() {
+        return accessKeyId;
+    }
+
+    public String getSecretAccessKey() {
+        return secretAccessKey;
+    }
+
+    public String getSessionToken() {
+        return sessionToken;
+    }
+}
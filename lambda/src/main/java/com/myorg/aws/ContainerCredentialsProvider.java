@@ -0,0 +1,74 @@
+package com.myorg.aws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Supplier;
+
+/**
+ * Credentials from the endpoint the Lambda runtime names in {@code AWS_CONTAINER_CREDENTIALS_FULL_URI}. SnapStart
+ * functions get their credentials this way instead of through the environment, since a snapshot outlives any
+ * credentials taken at init. They are fetched on first use and again shortly before they expire.
+ */
+public class ContainerCredentialsProvider implements Supplier<AwsCredentials> {
+    public static final String FULL_URI_ENV = "AWS_CONTAINER_CREDENTIALS_FULL_URI";
+    public static final String AUTHORIZATION_TOKEN_ENV = "AWS_CONTAINER_AUTHORIZATION_TOKEN";
+    private static final Duration REFRESH_BEFORE_EXPIRY = Duration.ofMinutes(5);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+    private final URI uri;
+    private final String authorizationToken;
+    private final Clock clock;
+    private AwsCredentials credentials;
+    private Instant expiration = Instant.MIN;
+
+    public ContainerCredentialsProvider(URI uri, String authorizationToken, Clock clock) {
+        this.uri = uri;
+        this.authorizationToken = authorizationToken;
+        this.clock = clock;
+    }
+
+    @Override
+    public synchronized AwsCredentials get() {
+        if (credentials == null || clock.instant().isAfter(expiration.minus(REFRESH_BEFORE_EXPIRY))) {
+            try {
+                refresh();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return credentials;
+    }
+
+    private void refresh() throws IOException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(5)).GET();
+        if (authorizationToken != null) {
+            request.header("Authorization", authorizationToken);
+        }
+        HttpResponse<byte[]> response;
+        try {
+            response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching credentials", e);
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("Credentials endpoint answered " + response.statusCode());
+        }
+
+        JsonNode body = objectMapper.readTree(response.body());
+        credentials = new AwsCredentials(body.path("AccessKeyId").asText(), body.path("SecretAccessKey").asText(),
+                body.path("Token").asText(null));
+        expiration = body.hasNonNull("Expiration") ? Instant.parse(body.get("Expiration").asText()) : Instant.MAX;
+    }
+}
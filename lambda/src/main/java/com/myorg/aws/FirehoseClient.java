@@ -0,0 +1,69 @@
+package com.myorg.aws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Puts records to a Firehose delivery stream over the JSON API. {@value #ENDPOINT_ENV} points it at a local
+ * stand-in.
+ */
+public class FirehoseClient {
+    public static final String ENDPOINT_ENV = "FIREHOSE_ENDPOINT";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SignedHttpClient httpClient;
+    private final URI endpoint;
+
+    public FirehoseClient(SignedHttpClient httpClient, String region, URI endpointOverride) {
+        this.httpClient = httpClient;
+        this.endpoint = endpointOverride != null ? endpointOverride : URI.create("https://firehose." + region + ".amazonaws.com/");
+    }
+
+    public static FirehoseClient fromEnvironment(Map<String, String> environment) {
+        String endpoint = environment.get(ENDPOINT_ENV);
+        return new FirehoseClient(
+                new SignedHttpClient(SignedHttpClient.signerFromEnvironment(environment, "firehose")),
+                environment.get("AWS_REGION"),
+                endpoint == null ? null : URI.create(endpoint));
+    }
+
+    /**
+     * Sends one {@code PutRecordBatch} request and returns the positions of the records Firehose did not take,
+     * throttled ones included; those are for the caller to send again.
+     */
+    public List<Integer> putRecordBatch(String deliveryStreamName, List<byte[]> records) throws IOException {
+        ObjectNode request = objectMapper.createObjectNode().put("DeliveryStreamName", deliveryStreamName);
+        ArrayNode entries = request.putArray("Records");
+        records.forEach(record -> entries.addObject().put("Data", record));
+
+        HttpResponse<byte[]> response = httpClient.send("POST", endpoint, Map.of(
+                "content-type", "application/x-amz-json-1.1",
+                "x-amz-target", "Firehose_20150804.PutRecordBatch"), objectMapper.writeValueAsBytes(request));
+        if (response.statusCode() != 200) {
+            throw new IOException("PutRecordBatch to " + deliveryStreamName + " failed with " + response.statusCode() + ": "
+                    + new String(response.body(), StandardCharsets.UTF_8));
+        }
+
+        JsonNode result = objectMapper.readTree(response.body());
+        List<Integer> failed = new ArrayList<>();
+        if (result.path("FailedPutCount").asInt() > 0) {
+            JsonNode responses = result.path("RequestResponses");
+            for (int i = 0; i < responses.size(); i++) {
+                if (responses.get(i).has("ErrorCode")) {
+                    failed.add(i);
+                }
+            }
+        }
+        return failed;
+    }
+}
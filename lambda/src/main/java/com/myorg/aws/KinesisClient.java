@@ -0,0 +1,70 @@
+package com.myorg.aws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Puts records to a Kinesis data stream over the JSON API. {@value #ENDPOINT_ENV} points it at a local stand-in.
+ */
+public class KinesisClient {
+    public static final String ENDPOINT_ENV = "KINESIS_ENDPOINT";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SignedHttpClient httpClient;
+    private final URI endpoint;
+
+    public KinesisClient(SignedHttpClient httpClient, String region, URI endpointOverride) {
+        this.httpClient = httpClient;
+        this.endpoint = endpointOverride != null ? endpointOverride : URI.create("https://kinesis." + region + ".amazonaws.com/");
+    }
+
+    public static KinesisClient fromEnvironment(Map<String, String> environment) {
+        String endpoint = environment.get(ENDPOINT_ENV);
+        return new KinesisClient(
+                new SignedHttpClient(SignedHttpClient.signerFromEnvironment(environment, "kinesis")),
+                environment.get("AWS_REGION"),
+                endpoint == null ? null : URI.create(endpoint));
+    }
+
+    /**
+     * Sends one {@code PutRecords} request and returns the positions of the records Kinesis did not take,
+     * throttled ones included; those are for the caller to send again.
+     */
+    public List<Integer> putRecords(String streamName, List<byte[]> records, List<String> partitionKeys) throws IOException {
+        ObjectNode request = objectMapper.createObjectNode().put("StreamName", streamName);
+        ArrayNode entries = request.putArray("Records");
+        for (int i = 0; i < records.size(); i++) {
+            entries.addObject().put("Data", records.get(i)).put("PartitionKey", partitionKeys.get(i));
+        }
+
+        HttpResponse<byte[]> response = httpClient.send("POST", endpoint, Map.of(
+                "content-type", "application/x-amz-json-1.1",
+                "x-amz-target", "Kinesis_20131202.PutRecords"), objectMapper.writeValueAsBytes(request));
+        if (response.statusCode() != 200) {
+            throw new IOException("PutRecords to " + streamName + " failed with " + response.statusCode() + ": "
+                    + new String(response.body(), StandardCharsets.UTF_8));
+        }
+
+        JsonNode result = objectMapper.readTree(response.body());
+        List<Integer> failed = new ArrayList<>();
+        if (result.path("FailedRecordCount").asInt() > 0) {
+            JsonNode responses = result.path("Records");
+            for (int i = 0; i < responses.size(); i++) {
+                if (responses.get(i).has("ErrorCode")) {
+                    failed.add(i);
+                }
+            }
+        }
+        return failed;
+    }
+}
@@ -0,0 +1,98 @@
+package com.myorg.aws;
+
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.metrics.Metrics;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Work the handlers do once in their constructor so the first invocation doesn't: loading and initialising the
+ * classes of the JSON, SigV4 and TLS paths, and running each handler's own code on a sample. Lambda runs the
+ * constructor during init, which SnapStart snapshots, and which on-demand functions run at full CPU whatever
+ * their memory size. Nothing here opens a connection or reads credentials, both would be stale in a snapshot.
+ * Set {@code PRIME_ON_INIT=false} to skip it.
+ */
+public final class Priming {
+    public static final String ENV = "PRIME_ON_INIT";
+    private static final String SAMPLE_WAF_RECORD = "/priming/waf-record.json";
+
+    private Priming() {
+    }
+
+    @FunctionalInterface
+    public interface Step {
+        void run() throws Exception;
+    }
+
+    public static boolean isEnabled(Map<String, String> environment) {
+        return !"false".equalsIgnoreCase(environment.get(ENV));
+    }
+
+    /**
+     * Runs the handler's steps. A failing step is logged and skipped: priming must never fail the init it is
+     * meant to speed up.
+     */
+    public static void prime(Map<String, String> environment, Step... steps) {
+        if (!isEnabled(environment)) {
+            return;
+        }
+        long started = System.nanoTime();
+        for (Step step : steps) {
+            run(step);
+        }
+        // the sample work is not the first invocation's
+        Metrics.discard();
+        LambdaRuntime.getLogger().log("Primed in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+    }
+
+    /**
+     * A representative WAF log record, for handlers to run their parsing on.
+     */
+    public static byte[] sampleWafRecord() {
+        try (InputStream in = Priming.class.getResourceAsStream(SAMPLE_WAF_RECORD)) {
+            if (in == null) {
+                throw new IOException("Missing " + SAMPLE_WAF_RECORD);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void run(Step step) {
+        try {
+            step.run();
+        } catch (Exception e) {
+            // one log event with the whole trace, rather than a CloudWatch line per frame
+            StringWriter trace = new StringWriter();
+            e.printStackTrace(new PrintWriter(trace));
+            LambdaRuntime.getLogger().log("Priming step failed, continuing: " + trace);
+        }
+    }
+
+    /**
+     * A step for handlers that call AWS: signs and builds a request without sending it.
+     */
+    public static void primeHttpStack() throws IOException, NoSuchAlgorithmException {
+        // the default context loads the trust store and the TLS provider, the bulk of a first HTTPS request
+        SSLContext.getDefault();
+        URI uri = URI.create("https://search-osdfw.eu-west-1.es.amazonaws.com/_bulk?refresh=false");
+        byte[] body = new ObjectMapper().writeValueAsBytes(Map.of("index", Map.of("_index", "awswaf")));
+        Map<String, String> headers = new SigV4Signer(new AwsCredentials("AKIDPRIMING", "priming", "token"), "eu-west-1", "es")
+                .sign("POST", uri, Map.of("content-type", "application/json"), SigV4Signer.sha256Hex(body), Instant.now());
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        headers.forEach(request::header);
+        request.build();
+    }
+}
@@ -0,0 +1,177 @@
+package com.myorg.aws;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lists and reads objects from S3 over plain HTTPS. {@value #ENDPOINT_ENV} points it at a local stand-in,
+ * which is then addressed path-style.
+ */
+public class S3ObjectClient {
+    public static final String ENDPOINT_ENV = "S3_ENDPOINT";
+
+    private final SignedHttpClient httpClient;
+    private final String region;
+    private final URI endpointOverride;
+
+    public S3ObjectClient(SignedHttpClient httpClient, String region, URI endpointOverride) {
+        this.httpClient = httpClient;
+        this.region = region;
+        this.endpointOverride = endpointOverride;
+    }
+
+    public static S3ObjectClient fromEnvironment(Map<String, String> environment) {
+        String endpoint = environment.get(ENDPOINT_ENV);
+        return new S3ObjectClient(
+                new SignedHttpClient(SignedHttpClient.signerFromEnvironment(environment, "s3")),
+                environment.get("AWS_REGION"),
+                endpoint == null ? null : URI.create(endpoint));
+    }
+
+    public InputStream getObject(String bucket, String key) throws IOException {
+        URI uri = objectUri(bucket, key);
+        HttpResponse<InputStream> response = httpClient.sendForStream("GET", uri, Map.of());
+        if (response.statusCode() != 200) {
+            try (InputStream body = response.body()) {
+                throw new IOException("GET s3://" + bucket + "/" + key + " failed with " + response.statusCode() + ": "
+                        + new String(body.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return response.body();
+    }
+
+    /**
+     * Bytes {@code first} to {@code last} of an object, both inclusive.
+     */
+    public byte[] getObjectRange(String bucket, String key, long first, long last) throws IOException {
+        HttpResponse<byte[]> response = httpClient.send("GET", objectUri(bucket, key),
+                Map.of("range", "bytes=" + first + "-" + last), new byte[0]);
+        if (response.statusCode() != 206 && response.statusCode() != 200) {
+            throw new IOException("GET s3://" + bucket + "/" + key + " bytes " + first + "-" + last + " failed with "
+                    + response.statusCode() + ": " + new String(response.body(), StandardCharsets.UTF_8));
+        }
+        return response.body();
+    }
+
+    /**
+     * One page of a {@code ListObjectsV2} listing, in key order.
+     *
+     * @param startAfter        list keys after this one, or null
+     * @param continuationToken the previous page's {@link ListPage#getNextContinuationToken()}, or null
+     */
+    public ListPage listObjects(String bucket, String prefix, String startAfter, String continuationToken) throws IOException {
+        StringBuilder query = new StringBuilder("list-type=2&prefix=").append(encodeQuery(prefix));
+        if (startAfter != null) {
+            query.append("&start-after=").append(encodeQuery(startAfter));
+        }
+        if (continuationToken != null) {
+            query.append("&continuation-token=").append(encodeQuery(continuationToken));
+        }
+        URI uri = URI.create(bucketUri(bucket) + "/?" + query);
+        HttpResponse<byte[]> response = httpClient.send("GET", uri, Map.of(), new byte[0]);
+        if (response.statusCode() != 200) {
+            throw new IOException("ListObjectsV2 s3://" + bucket + "/" + prefix + " failed with " + response.statusCode() + ": "
+                    + new String(response.body(), StandardCharsets.UTF_8));
+        }
+        return ListPage.parse(response.body());
+    }
+
+    URI objectUri(String bucket, String key) {
+        return URI.create(bucketUri(bucket) + "/" + encodeKey(key));
+    }
+
+    private String bucketUri(String bucket) {
+        if (endpointOverride != null) {
+            return endpointOverride.toString().replaceAll("/$", "") + "/" + bucket;
+        }
+        return "https://" + bucket + ".s3." + region + ".amazonaws.com";
+    }
+
+    private static String encodeQuery(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20").replace("*", "%2A").replace("%7E", "~");
+    }
+
+    public static final class ListPage {
+        private final List<String> keys;
+        private final List<Long> sizes;
+        private final String nextContinuationToken;
+
+        ListPage(List<String> keys, List<Long> sizes, String nextContinuationToken) {
+            this.keys = keys;
+            this.sizes = sizes;
+            this.nextContinuationToken = nextContinuationToken;
+        }
+
+        static ListPage parse(byte[] xml) throws IOException {
+            Document document;
+            try {
+                DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+                factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+                document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+            } catch (ParserConfigurationException | SAXException e) {
+                throw new IOException("Unreadable ListObjectsV2 response", e);
+            }
+
+            List<String> keys = new ArrayList<>();
+            List<Long> sizes = new ArrayList<>();
+            NodeList contents = document.getElementsByTagName("Contents");
+            for (int i = 0; i < contents.getLength(); i++) {
+                Element object = (Element) contents.item(i);
+                keys.add(text(object, "Key"));
+                sizes.add(Long.parseLong(text(object, "Size")));
+            }
+            boolean truncated = "true".equals(text(document.getDocumentElement(), "IsTruncated"));
+            return new ListPage(keys, sizes, truncated ? text(document.getDocumentElement(), "NextContinuationToken") : null);
+        }
+
+        private static String text(Element parent, String tag) {
+            NodeList nodes = parent.getElementsByTagName(tag);
+            return nodes.getLength() == 0 ? null : nodes.item(0).getTextContent();
+        }
+
+        public List<String> getKeys() {
+            return keys;
+        }
+
+        public List<Long> getSizes() {
+            return sizes;
+        }
+
+        /**
+         * Null on the last page.
+         */
+        public String getNextContinuationToken() {
+            return nextContinuationToken;
+        }
+    }
+
+    static String encodeKey(String key) {
+        String[] segments = key.split("/", -1);
+        StringBuilder encoded = new StringBuilder();
+        for (int i = 0; i < segments.length; i++) {
+            if (i > 0) {
+                encoded.append('/');
+            }
+            encoded.append(URLEncoder.encode(segments[i], StandardCharsets.UTF_8)
+                    .replace("+", "%20")
+                    .replace("*", "%2A")
+                    .replace("%7E", "~"));
+        }
+        return encoded.toString();
+    }
+}
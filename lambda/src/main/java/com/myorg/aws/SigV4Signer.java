@@ -0,0 +1,142 @@
+package com.myorg.aws;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * AWS Signature Version 4 for the handful of REST calls the functions make (OpenSearch, S3).
+ * Kept free of the AWS SDK so the functions stay small and start fast.
+ */
+public class SigV4Signer {
+    public static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Supplier<AwsCredentials> credentials;
+    private final String region;
+    private final String service;
+
+    public SigV4Signer(AwsCredentials credentials, String region, String service) {
+        this(() -> credentials, region, service);
+    }
+
+    /**
+     * A signer asking {@code credentials} for every request, for credentials that are refreshed.
+     */
+    public SigV4Signer(Supplier<AwsCredentials> credentials, String region, String service) {
+        this.credentials = credentials;
+        this.region = region;
+        this.service = service;
+    }
+
+    /**
+     * Signs a request and returns the headers to send with it, including the ones passed in.
+     *
+     * @param headers     headers to sign, besides {@code host} and {@code x-amz-date} which are added
+     * @param payloadHash hex SHA-256 of the body, or {@link #UNSIGNED_PAYLOAD}
+     */
+    public Map<String, String> sign(String method, URI uri, Map<String, String> headers, String payloadHash, Instant now) {
+        AwsCredentials credentials = this.credentials.get();
+        String amzDate = AMZ_DATE.format(now);
+        String date = amzDate.substring(0, 8);
+
+        TreeMap<String, String> signedHeaders = new TreeMap<>();
+        headers.forEach((name, value) -> signedHeaders.put(name.toLowerCase(Locale.ROOT), value.trim()));
+        signedHeaders.put("host", uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort());
+        signedHeaders.put("x-amz-date", amzDate);
+        if (credentials.getSessionToken() != null) {
+            signedHeaders.put("x-amz-security-token", credentials.getSessionToken());
+        }
+        if ("s3".equals(service)) {
+            signedHeaders.put("x-amz-content-sha256", payloadHash);
+        }
+
+        StringBuilder canonicalHeaders = new StringBuilder();
+        signedHeaders.forEach((name, value) -> canonicalHeaders.append(name).append(':').append(value).append('\n'));
+        String signedHeaderNames = String.join(";", signedHeaders.keySet());
+
+        String canonicalRequest = method + '\n'
+                + canonicalPath(uri) + '\n'
+                + canonicalQuery(uri) + '\n'
+                + canonicalHeaders + '\n'
+                + signedHeaderNames + '\n'
+                + payloadHash;
+
+        String scope = date + '/' + region + '/' + service + "/aws4_request";
+        String stringToSign = "AWS4-HMAC-SHA256\n" + amzDate + '\n' + scope + '\n' + sha256Hex(canonicalRequest.getBytes(StandardCharsets.UTF_8));
+
+        byte[] signingKey = hmac(hmac(hmac(hmac(("AWS4" + credentials.getSecretAccessKey()).getBytes(StandardCharsets.UTF_8), date),
+                region), service), "aws4_request");
+        String signature = hex(hmac(signingKey, stringToSign));
+
+        signedHeaders.remove("host");
+        signedHeaders.put("authorization", "AWS4-HMAC-SHA256 Credential=" + credentials.getAccessKeyId() + '/' + scope
+                + ", SignedHeaders=" + signedHeaderNames + ", Signature=" + signature);
+        return signedHeaders;
+    }
+
+    public static String sha256Hex(byte[] data) {
+        try {
+            return hex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String canonicalPath(URI uri) {
+        String path = uri.getRawPath();
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        // callers only build paths from unreserved characters and '/', which need no further encoding
+        return path;
+    }
+
+    private static String canonicalQuery(URI uri) {
+        String query = uri.getRawQuery();
+        if (query == null || query.isEmpty()) {
+            return "";
+        }
+
+        List<String> parameters = new ArrayList<>();
+        for (String parameter : query.split("&")) {
+            parameters.add(parameter.contains("=") ? parameter : parameter + "=");
+        }
+        Collections.sort(parameters);
+        return String.join("&", parameters);
+    }
+
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[bytes[i] >> 4 & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
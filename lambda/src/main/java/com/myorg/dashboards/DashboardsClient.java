@@ -0,0 +1,95 @@
+package com.myorg.dashboards;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.myorg.aws.SignedHttpClient;
+import com.myorg.metrics.Metrics;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.opensearch.OpenSearchException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The saved objects API of the domain's Dashboards, signed for the {@code es} service like the domain itself.
+ */
+public class DashboardsClient {
+    static final String API_PATH = "/_dashboards/api/saved_objects/";
+
+    private static final Map<String, String> HEADERS = Map.of("content-type", "application/json", "osd-xsrf", "true");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final URI endpoint;
+    private final SignedHttpClient httpClient;
+
+    public DashboardsClient(URI endpoint, SignedHttpClient httpClient) {
+        this.endpoint = endpoint;
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Client for the Dashboards of the domain in {@value OpenSearchClient#ENDPOINT_ENV}.
+     */
+    public static DashboardsClient fromEnvironment(Map<String, String> environment) {
+        String endpoint = environment.get(OpenSearchClient.ENDPOINT_ENV);
+        if (endpoint == null) {
+            throw new IllegalStateException(OpenSearchClient.ENDPOINT_ENV + " is not set");
+        }
+        return new DashboardsClient(
+                URI.create(endpoint.contains("://") ? endpoint : "https://" + endpoint),
+                new SignedHttpClient(SignedHttpClient.signerFromEnvironment(environment, "es")));
+    }
+
+    /**
+     * @return the {@code saved_objects} of the response, in request order; missing objects carry an {@code error}
+     */
+    public JsonNode bulkGet(List<SavedObject> objects) throws IOException {
+        ArrayNode request = objectMapper.createArrayNode();
+        objects.forEach(object -> request.addObject().put("type", object.getType()).put("id", object.getId()));
+        long started = System.nanoTime();
+        JsonNode found = send("POST", API_PATH + "_bulk_get", objectMapper.writeValueAsBytes(request)).path("saved_objects");
+        Metrics.recordSince(Metrics.SAVED_OBJECTS_READ_LATENCY, started);
+        return found;
+    }
+
+    /**
+     * Creates or overwrites the objects. Objects that fail carry an {@code error} in the returned list.
+     */
+    public JsonNode bulkCreate(List<SavedObject> objects) throws IOException {
+        ArrayNode request = objectMapper.createArrayNode();
+        objects.forEach(object -> request.add(object.toBulkCreateEntry()));
+        long started = System.nanoTime();
+        JsonNode created = send("POST", API_PATH + "_bulk_create?overwrite=true", objectMapper.writeValueAsBytes(request))
+                .path("saved_objects");
+        Metrics.recordSince(Metrics.SAVED_OBJECTS_WRITE_LATENCY, started);
+        return created;
+    }
+
+    /**
+     * Deletes the object; one that is already gone counts as deleted.
+     */
+    public void delete(SavedObject object) throws IOException {
+        try {
+            send("DELETE", API_PATH + object.getKey(), new byte[0]);
+        } catch (OpenSearchException e) {
+            if (e.getStatusCode() != 404) {
+                throw e;
+            }
+        }
+    }
+
+    private JsonNode send(String method, String path, byte[] body) throws IOException {
+        Metrics.count(Metrics.DASHBOARDS_CALLS);
+        HttpResponse<byte[]> response = httpClient.send(method, endpoint.resolve(path), HEADERS, body);
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new OpenSearchException(method + " " + path + " failed with " + response.statusCode() + ": "
+                    + new String(response.body(), StandardCharsets.UTF_8), response.statusCode());
+        }
+        return objectMapper.readTree(response.body());
+    }
+}
@@ -0,0 +1,60 @@
+package com.myorg.dashboards;
+
+import com.myorg.aws.Priming;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.setup.CustomResourceHandler;
+import com.myorg.setup.CustomResourceRequest;
+import com.myorg.waf.WafInventory;
+import com.myorg.waf.WafInventoryClient;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Custom resource seeding the Dashboards saved objects on create and update, and removing them on delete.
+ * Index templates are left to the index setup. The WAF inventory seeded with is stored for the updater.
+ */
+public class DashboardsSeedHandler extends CustomResourceHandler {
+    private final DashboardsSeeder seeder;
+    private final WafInventoryClient wafClient;
+    private final InventoryStore inventoryStore;
+    private final boolean accountAware;
+
+    public DashboardsSeedHandler() {
+        this(DashboardsSeeder.fromEnvironment(System.getenv()), WafInventoryClient.fromEnvironment(System.getenv()),
+                new InventoryStore(OpenSearchClient.fromEnvironment(System.getenv())),
+                Boolean.parseBoolean(System.getenv(SavedObjectCatalog.ACCOUNT_DASHBOARDS_ENV)));
+        // reads, resolves and hashes every bundled saved object
+        Priming.prime(System.getenv(), Priming::primeHttpStack,
+                () -> SavedObjectCatalog.bundled(new WafInventory(Map.of(), Map.of())));
+    }
+
+    public DashboardsSeedHandler(DashboardsSeeder seeder, WafInventoryClient wafClient, InventoryStore inventoryStore) {
+        this(seeder, wafClient, inventoryStore, false);
+    }
+
+    public DashboardsSeedHandler(DashboardsSeeder seeder, WafInventoryClient wafClient, InventoryStore inventoryStore,
+                                 boolean accountAware) {
+        this.seeder = seeder;
+        this.wafClient = wafClient;
+        this.inventoryStore = inventoryStore;
+        this.accountAware = accountAware;
+    }
+
+    @Override
+    protected Map<String, String> onEvent(CustomResourceRequest request) throws IOException {
+        if (CustomResourceRequest.DELETE.equals(request.getRequestType())) {
+            // only type and id matter for deleting
+            seeder.delete(SavedObjectCatalog.bundled(new WafInventory(Map.of(), Map.of()), accountAware));
+            inventoryStore.delete();
+            return Map.of();
+        }
+
+        WafInventory inventory = wafClient.fetch();
+        DashboardsSeeder.Result result = seeder.seed(SavedObjectCatalog.bundled(inventory, accountAware));
+        inventoryStore.save(inventory);
+        return Map.of(
+                "Written", String.valueOf(result.getWritten()),
+                "Skipped", String.valueOf(result.getSkipped()));
+    }
+}
@@ -0,0 +1,211 @@
+package com.myorg.dashboards;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.opensearch.OpenSearchException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Brings the domain's saved objects up to date with {@code _bulk_create} requests of a few objects each, sent
+ * with bounded parallelism. The content hash of every object written is kept in a document on the domain;
+ * objects whose hash is unchanged and that still exist are skipped, so a redeploy or a WAF change event only
+ * writes what changed.
+ */
+public class DashboardsSeeder {
+    public static final String PARALLELISM_ENV = "SEED_PARALLELISM";
+    public static final String BATCH_SIZE_ENV = "SEED_BATCH_SIZE";
+    static final int DEFAULT_PARALLELISM = 4;
+    static final int DEFAULT_BATCH_SIZE = 10;
+    static final String STATE_PATH = "/osdfw-state/_doc/saved-objects";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final DashboardsClient dashboards;
+    private final OpenSearchClient openSearch;
+    private final int parallelism;
+    private final int batchSize;
+
+    public DashboardsSeeder(DashboardsClient dashboards, OpenSearchClient openSearch, int parallelism, int batchSize) {
+        if (parallelism < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Parallelism and batch size must be positive");
+        }
+        this.dashboards = dashboards;
+        this.openSearch = openSearch;
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+    }
+
+    public static DashboardsSeeder fromEnvironment(Map<String, String> environment) {
+        return new DashboardsSeeder(DashboardsClient.fromEnvironment(environment), OpenSearchClient.fromEnvironment(environment),
+                Integer.parseInt(environment.getOrDefault(PARALLELISM_ENV, String.valueOf(DEFAULT_PARALLELISM))),
+                Integer.parseInt(environment.getOrDefault(BATCH_SIZE_ENV, String.valueOf(DEFAULT_BATCH_SIZE))));
+    }
+
+    public Result seed(List<SavedObject> objects) throws IOException {
+        return seed(objects, true);
+    }
+
+    /**
+     * Like {@link #seed(List)}, but trusts the stored hashes instead of checking which objects still exist, so
+     * unchanged objects cost no request at all. For event-driven updates; deploys still check.
+     */
+    public Result seedChanged(List<SavedObject> objects) throws IOException {
+        return seed(objects, false);
+    }
+
+    private Result seed(List<SavedObject> objects, boolean checkExisting) throws IOException {
+        Map<String, String> writtenHashes = readState();
+        Set<String> existing = new HashSet<>();
+        if (checkExisting) {
+            for (JsonNode found : inParallel(batches(objects), dashboards::bulkGet)) {
+                for (JsonNode object : found) {
+                    if (!object.has("error")) {
+                        existing.add(object.path("type").asText() + "/" + object.path("id").asText());
+                    }
+                }
+            }
+        } else {
+            existing.addAll(writtenHashes.keySet());
+        }
+
+        List<SavedObject> changed = objects.stream()
+                .filter(object -> !existing.contains(object.getKey()) || !object.getContentHash().equals(writtenHashes.get(object.getKey())))
+                .collect(Collectors.toList());
+        if (changed.isEmpty()) {
+            return new Result(0, objects.size());
+        }
+
+        // hashes of what is on the domain now: the new ones of objects written, none for objects that failed
+        Map<String, String> hashes = new HashMap<>(writtenHashes);
+        changed.forEach(object -> hashes.put(object.getKey(), object.getContentHash()));
+        List<String> failures = new ArrayList<>();
+        for (JsonNode created : inParallel(batches(changed), dashboards::bulkCreate)) {
+            for (JsonNode object : created) {
+                if (object.has("error")) {
+                    String key = object.path("type").asText() + "/" + object.path("id").asText();
+                    hashes.remove(key);
+                    failures.add(key + ": " + object.path("error").path("message").asText());
+                }
+            }
+        }
+        writeState(objects, hashes);
+        if (!failures.isEmpty()) {
+            throw new IOException("Saved objects failed: " + String.join(", ", failures));
+        }
+        return new Result(changed.size(), objects.size() - changed.size());
+    }
+
+    /**
+     * Deletes the objects and forgets their hashes.
+     */
+    public void delete(List<SavedObject> objects) throws IOException {
+        inParallel(objects.stream().map(List::of).collect(Collectors.toList()), batch -> {
+            dashboards.delete(batch.get(0));
+            return null;
+        });
+        try {
+            openSearch.request("DELETE", STATE_PATH, new byte[0]);
+        } catch (OpenSearchException e) {
+            if (e.getStatusCode() != 404) {
+                throw e;
+            }
+        }
+    }
+
+    private Map<String, String> readState() throws IOException {
+        Map<String, String> hashes = new HashMap<>();
+        try {
+            for (JsonNode object : objectMapper.readTree(openSearch.get(STATE_PATH)).at("/_source/objects")) {
+                hashes.put(object.path("key").asText(), object.path("hash").asText());
+            }
+        } catch (OpenSearchException e) {
+            if (e.getStatusCode() != 404) {
+                throw e;
+            }
+        }
+        return hashes;
+    }
+
+    private void writeState(List<SavedObject> objects, Map<String, String> hashes) throws IOException {
+        ObjectNode state = objectMapper.createObjectNode();
+        ArrayNode entries = state.putArray("objects");
+        for (SavedObject object : objects) {
+            if (hashes.containsKey(object.getKey())) {
+                entries.addObject().put("key", object.getKey()).put("hash", hashes.get(object.getKey()));
+            }
+        }
+        openSearch.put(STATE_PATH, objectMapper.writeValueAsString(state));
+    }
+
+    private List<List<SavedObject>> batches(List<SavedObject> objects) {
+        List<List<SavedObject>> batches = new ArrayList<>();
+        for (int from = 0; from < objects.size(); from += batchSize) {
+            batches.add(objects.subList(from, Math.min(objects.size(), from + batchSize)));
+        }
+        return batches;
+    }
+
+    private <T> List<T> inParallel(List<List<SavedObject>> batches, BatchCall<T> call) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, batches.size())));
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (List<SavedObject> batch : batches) {
+                futures.add(executor.submit((Callable<T>) () -> call.apply(batch)));
+            }
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Saved objects request failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while seeding saved objects");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    private interface BatchCall<T> {
+        T apply(List<SavedObject> batch) throws IOException;
+    }
+
+    public static class Result {
+        private final int written;
+        private final int skipped;
+
+        Result(int written, int skipped) {
+            this.written = written;
+            this.skipped = skipped;
+        }
+
+        public int getWritten() {
+            return written;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.myorg.dashboards;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.aws.Priming;
+import com.myorg.metrics.Metrics;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.waf.WafChangeBatch;
+import com.myorg.waf.WafInventory;
+import com.myorg.waf.WafInventoryClient;
+import com.myorg.waf.WafInventoryDiff;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consumer of the queue the EventBridge rules for new WebACLs and rules feed. Lambda hands it the events of a
+ * batching window at once; they are coalesced and applied to the inventory stored at the last seed, so a burst
+ * of rule changes costs one index pattern write and no WAF listing. Only objects whose content hash moved are
+ * written, without re-reading the others. Without a stored inventory, or with an event it can't read, it lists
+ * WAF in full instead.
+ */
+public class DashboardsUpdateHandler implements RequestStreamHandler {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final DashboardsSeeder seeder;
+    private final WafInventoryClient wafClient;
+    private final InventoryStore inventoryStore;
+    private final boolean accountAware;
+
+    public DashboardsUpdateHandler() {
+        this(DashboardsSeeder.fromEnvironment(System.getenv()), WafInventoryClient.fromEnvironment(System.getenv()),
+                new InventoryStore(OpenSearchClient.fromEnvironment(System.getenv())),
+                Boolean.parseBoolean(System.getenv(SavedObjectCatalog.ACCOUNT_DASHBOARDS_ENV)));
+        // reads, resolves and hashes every bundled saved object
+        Priming.prime(System.getenv(), Priming::primeHttpStack,
+                () -> SavedObjectCatalog.bundled(new WafInventory(Map.of(), Map.of())));
+    }
+
+    public DashboardsUpdateHandler(DashboardsSeeder seeder, WafInventoryClient wafClient, InventoryStore inventoryStore) {
+        this(seeder, wafClient, inventoryStore, false);
+    }
+
+    public DashboardsUpdateHandler(DashboardsSeeder seeder, WafInventoryClient wafClient, InventoryStore inventoryStore,
+                                   boolean accountAware) {
+        this.seeder = seeder;
+        this.wafClient = wafClient;
+        this.inventoryStore = inventoryStore;
+        this.accountAware = accountAware;
+    }
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        long started = System.nanoTime();
+        try {
+            update(input, context);
+        } finally {
+            Metrics.recordSince(Metrics.INVOCATION_LATENCY, started);
+            Metrics.flush(context, System.getenv());
+        }
+    }
+
+    private void update(InputStream input, Context context) throws IOException {
+        WafChangeBatch batch = WafChangeBatch.coalesce(events(objectMapper.readTree(input)));
+        WafInventory stored = inventoryStore.load();
+        WafInventory inventory = stored == null || batch.isFullRefresh() ? wafClient.fetch() : batch.applyTo(stored);
+        WafInventoryDiff diff = WafInventoryDiff.between(stored, inventory);
+        if (stored != null && diff.isEmpty()) {
+            context.getLogger().log(batch.getEvents() + " events, no new names");
+            return;
+        }
+
+        DashboardsSeeder.Result result = seeder.seedChanged(SavedObjectCatalog.bundled(inventory, accountAware));
+        inventoryStore.save(inventory);
+        context.getLogger().log(batch.getEvents() + " events, " + diff + ": "
+                + result.getWritten() + " saved objects written, " + result.getSkipped() + " unchanged");
+    }
+
+    // an SQS batch carries the EventBridge events as message bodies; anything else is taken as one event
+    private List<JsonNode> events(JsonNode payload) throws IOException {
+        List<JsonNode> events = new ArrayList<>();
+        if (!payload.has("Records")) {
+            events.add(payload);
+            return events;
+        }
+        for (JsonNode record : payload.get("Records")) {
+            events.add(objectMapper.readTree(record.path("body").asText()));
+        }
+        return events;
+    }
+}
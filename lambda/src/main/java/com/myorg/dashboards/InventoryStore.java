@@ -0,0 +1,67 @@
+package com.myorg.dashboards;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.opensearch.OpenSearchException;
+import com.myorg.waf.WafInventory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The WAF inventory the saved objects were last rendered with, next to the seeder's hashes, so the updater
+ * can apply the changes of an event batch instead of listing every WebACL and rule again.
+ */
+public class InventoryStore {
+    static final String PATH = "/osdfw-state/_doc/waf-inventory";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final OpenSearchClient client;
+
+    public InventoryStore(OpenSearchClient client) {
+        this.client = client;
+    }
+
+    /**
+     * @return the stored inventory, or null before the first seed
+     */
+    public WafInventory load() throws IOException {
+        JsonNode source;
+        try {
+            source = objectMapper.readTree(client.get(PATH)).path("_source");
+        } catch (OpenSearchException e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+        return new WafInventory(names(source.path("webAcls")), names(source.path("rules")));
+    }
+
+    public void save(WafInventory inventory) throws IOException {
+        ObjectNode source = objectMapper.createObjectNode();
+        // id/name pairs rather than an object keyed by id, which would map a field per WebACL
+        inventory.getWebAcls().forEach((id, name) -> source.withArray("webAcls").addObject().put("id", id).put("name", name));
+        inventory.getRules().forEach((id, name) -> source.withArray("rules").addObject().put("id", id).put("name", name));
+        client.put(PATH, objectMapper.writeValueAsString(source));
+    }
+
+    public void delete() throws IOException {
+        try {
+            client.request("DELETE", PATH, new byte[0]);
+        } catch (OpenSearchException e) {
+            if (e.getStatusCode() != 404) {
+                throw e;
+            }
+        }
+    }
+
+    private static Map<String, String> names(JsonNode entries) {
+        Map<String, String> names = new HashMap<>();
+        entries.forEach(entry -> names.put(entry.path("id").asText(), entry.path("name").asText()));
+        return names;
+    }
+}
@@ -0,0 +1,64 @@
+package com.myorg.dashboards;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.myorg.aws.SigV4Signer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A Dashboards saved object as this solution ships it: type, id and the attributes (and references, if any)
+ * of its definition file.
+ */
+public class SavedObject {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final String type;
+    private final String id;
+    private final ObjectNode definition;
+    private final String contentHash;
+
+    public SavedObject(String type, String id, ObjectNode definition) {
+        this.type = type;
+        this.id = id;
+        this.definition = definition;
+        try {
+            this.contentHash = SigV4Signer.sha256Hex(OBJECT_MAPPER.writeValueAsBytes(definition));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getKey() {
+        return type + "/" + id;
+    }
+
+    public ObjectNode getDefinition() {
+        return definition;
+    }
+
+    /**
+     * Hash of the definition, as rendered for this deployment.
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Entry of a {@code _bulk_create} request.
+     */
+    ObjectNode toBulkCreateEntry() {
+        ObjectNode entry = OBJECT_MAPPER.createObjectNode().put("type", type).put("id", id);
+        entry.setAll(definition);
+        return entry;
+    }
+}
@@ -0,0 +1,192 @@
+package com.myorg.dashboards;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.myorg.dashboards.spec.DashboardsCompiler;
+import com.myorg.transform.TransformerConfig;
+import com.myorg.waf.WafInventory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The saved objects bundled under {@value #RESOURCE_DIR}, listed in {@value #MANIFEST} in the order they are
+ * created: index patterns, visualisations, dashboards. Visualisations are code, compiled into
+ * {@link DashboardsCompiler#OUTPUT} by the build; the others are definition files. The index pattern's scripted fields get the WebACL and
+ * rule names of the account. For a domain indexing the logs of many accounts the catalog is account-aware: the
+ * objects of {@value #ACCOUNT_MANIFEST} join in, the Filters visualisation gets an Account control and the
+ * main dashboard a panel per added visualisation. The rollups carry no account.
+ */
+public final class SavedObjectCatalog {
+    static final String RESOURCE_DIR = "/dashboards/";
+    static final String MANIFEST = "saved-objects.txt";
+    static final String ACCOUNT_MANIFEST = "account-objects.txt";
+    static final String INDEX_PATTERN = "index-pattern";
+    static final String VISUALIZATION = "visualization";
+    static final String LOG_INDEX_PATTERN = "index-pattern/awswaf";
+    static final String FILTERS = "visualization/filters";
+    static final String DASHBOARD = "dashboard";
+    static final String MAIN_DASHBOARD = "dashboard/main-dashboard";
+    public static final String ACCOUNT_DASHBOARDS_ENV = "ACCOUNT_DASHBOARDS";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private SavedObjectCatalog() {
+    }
+
+    public static List<SavedObject> bundled(WafInventory inventory) throws IOException {
+        return bundled(inventory, false);
+    }
+
+    public static List<SavedObject> bundled(WafInventory inventory, boolean accountAware) throws IOException {
+        List<String> keys = manifest(MANIFEST);
+        List<String> accountKeys = accountAware ? manifest(ACCOUNT_MANIFEST) : List.of();
+        // the account visualisations go in before the first dashboard, which shows them
+        int dashboards = keys.size();
+        while (dashboards > 0 && keys.get(dashboards - 1).startsWith(DASHBOARD + "/")) {
+            dashboards--;
+        }
+        keys.addAll(dashboards, accountKeys);
+
+        Map<String, ObjectNode> visualizations = compiledVisualizations();
+        List<SavedObject> objects = new ArrayList<>();
+        for (String key : keys) {
+            String type = key.substring(0, key.indexOf('/'));
+            ObjectNode definition = VISUALIZATION.equals(type)
+                    ? visualizations.get(key)
+                    : (ObjectNode) OBJECT_MAPPER.readTree(resource(key + ".json"));
+            if (definition == null) {
+                throw new IOException("Visualisation " + key + " is not compiled into " + DashboardsCompiler.OUTPUT);
+            }
+            if (INDEX_PATTERN.equals(type)) {
+                resolveScriptedFields(definition, inventory);
+                if (accountAware && LOG_INDEX_PATTERN.equals(key)) {
+                    addAccountFields(definition);
+                }
+            } else if (accountAware && FILTERS.equals(key)) {
+                addAccountControl(definition);
+            } else if (accountAware && MAIN_DASHBOARD.equals(key)) {
+                addPanels(definition, accountKeys);
+            }
+            objects.add(new SavedObject(type, key.substring(key.indexOf('/') + 1), definition));
+        }
+        return objects;
+    }
+
+    /**
+     * The attributes of each visualisation by key; every call reads them anew, since the catalog's objects are
+     * changed in place.
+     */
+    private static Map<String, ObjectNode> compiledVisualizations() throws IOException {
+        Map<String, ObjectNode> visualizations = new HashMap<>();
+        for (String line : new String(resource(DashboardsCompiler.OUTPUT), StandardCharsets.UTF_8).split("\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            ObjectNode object = (ObjectNode) OBJECT_MAPPER.readTree(line);
+            ObjectNode definition = OBJECT_MAPPER.createObjectNode();
+            definition.set("attributes", object.get("attributes"));
+            visualizations.put(object.get("type").asText() + "/" + object.get("id").asText(), definition);
+        }
+        return visualizations;
+    }
+
+    private static List<String> manifest(String name) throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (String key : new String(resource(name), StandardCharsets.UTF_8).split("\n")) {
+            if (!key.isBlank()) {
+                keys.add(key.trim());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * The index pattern keeps its fields as a JSON string; placeholders sit in the scripts of its scripted fields.
+     */
+    static void resolveScriptedFields(ObjectNode indexPattern, WafInventory inventory) throws IOException {
+        ObjectNode attributes = (ObjectNode) indexPattern.get("attributes");
+        ArrayNode fields = (ArrayNode) OBJECT_MAPPER.readTree(attributes.path("fields").asText("[]"));
+        for (JsonNode field : fields) {
+            if (field.hasNonNull("script")) {
+                ((ObjectNode) field).put("script", inventory.resolvePlaceholders(field.get("script").asText()));
+            }
+        }
+        attributes.put("fields", OBJECT_MAPPER.writeValueAsString(fields));
+    }
+
+    private static void addAccountFields(ObjectNode indexPattern) throws IOException {
+        ObjectNode attributes = (ObjectNode) indexPattern.get("attributes");
+        ArrayNode fields = (ArrayNode) OBJECT_MAPPER.readTree(attributes.path("fields").asText("[]"));
+        String field = TransformerConfig.ACCOUNT_ID_FIELD;
+        fields.addObject().put("count", 0).put("name", field).put("type", "string")
+                .put("scripted", false).put("searchable", true).put("aggregatable", true).put("readFromDocValues", true)
+                .putArray("esTypes").add("keyword");
+        ObjectNode keyword = fields.addObject().put("count", 0).put("name", field + ".keyword").put("type", "string")
+                .put("scripted", false).put("searchable", true).put("aggregatable", true).put("readFromDocValues", true);
+        keyword.putArray("esTypes").add("keyword");
+        keyword.putObject("subType").putObject("multi").put("parent", field);
+        attributes.put("fields", OBJECT_MAPPER.writeValueAsString(fields));
+    }
+
+    /**
+     * An Account list first among the Filters controls; the visualisation keeps its state as a JSON string.
+     */
+    private static void addAccountControl(ObjectNode filters) throws IOException {
+        ObjectNode attributes = (ObjectNode) filters.get("attributes");
+        ObjectNode visState = (ObjectNode) OBJECT_MAPPER.readTree(attributes.get("visState").asText());
+        ArrayNode controls = (ArrayNode) visState.at("/params/controls");
+        ObjectNode control = controls.insertObject(0)
+                .put("fieldName", TransformerConfig.ACCOUNT_ID_FIELD + ".keyword")
+                .put("id", "account")
+                .put("indexPattern", "awswaf")
+                .put("label", "Account")
+                .put("parent", "")
+                .put("type", "list");
+        control.putObject("options").put("dynamicOptions", true).put("multiselect", true).put("order", "desc")
+                .put("size", 10).put("type", "terms");
+        attributes.put("visState", OBJECT_MAPPER.writeValueAsString(visState));
+    }
+
+    /**
+     * A full-width row per visualisation below the existing panels.
+     */
+    private static void addPanels(ObjectNode dashboard, List<String> keys) throws IOException {
+        ObjectNode attributes = (ObjectNode) dashboard.get("attributes");
+        ArrayNode panels = (ArrayNode) OBJECT_MAPPER.readTree(attributes.get("panelsJSON").asText());
+        int bottom = 0;
+        int panelIndex = 0;
+        for (JsonNode panel : panels) {
+            bottom = Math.max(bottom, panel.at("/gridData/y").asInt() + panel.at("/gridData/h").asInt());
+            panelIndex = Math.max(panelIndex, panel.path("panelIndex").asInt());
+        }
+        for (String key : keys) {
+            String index = String.valueOf(++panelIndex);
+            ObjectNode panel = panels.addObject();
+            panel.putObject("embeddableConfig");
+            panel.putObject("gridData").put("h", 16).put("i", index).put("w", 48).put("x", 0).put("y", bottom);
+            panel.put("id", key.substring(key.indexOf('/') + 1))
+                    .put("panelIndex", index)
+                    .put("type", key.substring(0, key.indexOf('/')))
+                    .put("version", "6.7.0");
+            bottom += 16;
+        }
+        attributes.put("panelsJSON", OBJECT_MAPPER.writeValueAsString(panels));
+    }
+
+    private static byte[] resource(String name) throws IOException {
+        try (InputStream in = SavedObjectCatalog.class.getResourceAsStream(RESOURCE_DIR + name)) {
+            if (in == null) {
+                throw new IOException("Saved object definition " + name + " is not bundled");
+            }
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.myorg.dashboards.spec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * One aggregation of a visualisation, as Dashboards keeps it in the {@code aggs} of the visualisation state.
+ * Shard size, precision threshold and missing value aren't options Dashboards shows; they go in the aggregation's
+ * JSON input, which Dashboards merges into the request it sends.
+ */
+public final class Aggregation {
+    static final String METRIC = "metric";
+    static final String BUCKET = "bucket";
+    static final String SEGMENT = "segment";
+
+    private final String type;
+    private final String schema;
+    private final String field;
+    private final int size;
+    private String label;
+    private int shardSize;
+    private int precisionThreshold;
+    private Double missing;
+
+    private Aggregation(String type, String schema, String field, int size) {
+        this.type = type;
+        this.schema = schema;
+        this.field = field;
+        this.size = size;
+    }
+
+    public static Aggregation count() {
+        return new Aggregation("count", METRIC, null, 0);
+    }
+
+    public static Aggregation cardinality(String field) {
+        return new Aggregation("cardinality", METRIC, field, 0);
+    }
+
+    /**
+     * The total of a numeric field, such as the {@code count} of rollup documents.
+     */
+    public static Aggregation sum(String field) {
+        return new Aggregation("sum", METRIC, field, 0);
+    }
+
+    /**
+     * The {@code size} most frequent values of a field, as the rows of a table.
+     */
+    public static Aggregation rows(String field, int size) {
+        return new Aggregation("terms", BUCKET, field, size);
+    }
+
+    /**
+     * The {@code size} most frequent values of a field, as the slices of a pie or the regions of a map.
+     */
+    public static Aggregation segments(String field, int size) {
+        return new Aggregation("terms", SEGMENT, field, size);
+    }
+
+    public Aggregation label(String label) {
+        this.label = label;
+        return this;
+    }
+
+    /**
+     * Terms each shard returns for the coordinating node to merge, instead of the default of 1.5 times
+     * the size plus 10.
+     */
+    public Aggregation shardSize(int shardSize) {
+        this.shardSize = shardSize;
+        return this;
+    }
+
+    /**
+     * Distinct values counted exactly before the count turns approximate; memory per shard grows with it.
+     */
+    public Aggregation precisionThreshold(int precisionThreshold) {
+        this.precisionThreshold = precisionThreshold;
+        return this;
+    }
+
+    /**
+     * Value a metric takes for documents without the field, instead of leaving them out.
+     */
+    public Aggregation missing(double missing) {
+        this.missing = missing;
+        return this;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getShardSize() {
+        return shardSize;
+    }
+
+    public int getPrecisionThreshold() {
+        return precisionThreshold;
+    }
+
+    public Double getMissing() {
+        return missing;
+    }
+
+    boolean isTerms() {
+        return "terms".equals(type);
+    }
+
+    ObjectNode toJson(ObjectMapper objectMapper, String id) {
+        ObjectNode aggregation = objectMapper.createObjectNode()
+                .put("id", id)
+                .put("enabled", true)
+                .put("type", type)
+                .put("schema", schema);
+        ObjectNode params = aggregation.putObject("params");
+        if (field != null) {
+            params.put("field", field);
+        }
+        if (isTerms()) {
+            params.put("size", size)
+                    .put("order", "desc")
+                    .put("orderBy", "1")
+                    .put("otherBucket", false)
+                    .put("otherBucketLabel", "Other")
+                    .put("missingBucket", false)
+                    .put("missingBucketLabel", "Missing");
+        }
+        if (label != null) {
+            params.put("customLabel", label);
+        }
+        ObjectNode input = objectMapper.createObjectNode();
+        if (shardSize > 0) {
+            input.put("shard_size", shardSize);
+        }
+        if (precisionThreshold > 0) {
+            input.put("precision_threshold", precisionThreshold);
+        }
+        if (missing != null) {
+            input.put("missing", missing);
+        }
+        if (!input.isEmpty()) {
+            params.put("json", input.toString());
+        }
+        return aggregation;
+    }
+}
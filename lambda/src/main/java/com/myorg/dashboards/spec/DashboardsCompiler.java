@@ -0,0 +1,50 @@
+package com.myorg.dashboards.spec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Compiles the {@link WafVisualizations} into saved-objects NDJSON, the format Dashboards imports: one
+ * {@code {"type", "id", "attributes"}} object per line. Maven runs it after compiling, so the build fails on a
+ * visualisation that breaks the {@link Guardrails} and the jar bundles {@value #OUTPUT} for the catalog to read.
+ * <pre>
+ * java -cp target/classes com.myorg.dashboards.spec.DashboardsCompiler target/classes/dashboards/visualizations.ndjson
+ * </pre>
+ */
+public final class DashboardsCompiler {
+    public static final String OUTPUT = "visualizations.ndjson";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private DashboardsCompiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: DashboardsCompiler <output file>");
+        }
+        Path output = Path.of(args[0]);
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        Files.write(output, compile(WafVisualizations.all()));
+    }
+
+    public static byte[] compile(List<Visualization> visualizations) throws IOException {
+        Guardrails.enforce(visualizations);
+        ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        for (Visualization visualization : visualizations) {
+            ObjectNode object = OBJECT_MAPPER.createObjectNode()
+                    .put("type", "visualization")
+                    .put("id", visualization.getId());
+            object.setAll(visualization.toDefinition());
+            OBJECT_MAPPER.writeValue(ndjson, object);
+            ndjson.write('\n');
+        }
+        return ndjson.toByteArray();
+    }
+}
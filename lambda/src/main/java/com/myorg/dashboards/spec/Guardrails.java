@@ -0,0 +1,141 @@
+package com.myorg.dashboards.spec;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Limits on what a visualisation may ask of the domain, checked when the visualisations are compiled:
+ * <ul>
+ *     <li>it searches a time-based index pattern, or names the log or rollup indices and their time field in each
+ *     Timelion series, so the dashboard's time range applies; input controls use the time range for their options too</li>
+ *     <li>terms aggregations return at most {@value #MAX_TERMS_SIZE} buckets, and nested ones at most
+ *     {@value #MAX_BUCKETS} together</li>
+ *     <li>on fields with a value per client, URI or user agent, terms aggregations bound what each shard returns
+ *     with a shard size of at most {@value #MAX_SHARD_SIZE}, and distinct counts their memory with a precision
+ *     threshold of at most {@value #MAX_PRECISION_THRESHOLD}</li>
+ *     <li>Timelion series are at least a minute apart, or left to the automatic interval</li>
+ * </ul>
+ */
+public final class Guardrails {
+    public static final int MAX_TERMS_SIZE = 50;
+    public static final int MAX_BUCKETS = 500;
+    public static final int MAX_SHARD_SIZE = 200;
+    public static final int MAX_PRECISION_THRESHOLD = 3000;
+    static final Set<String> TIME_BASED_INDEX_PATTERNS = Set.of(WafVisualizations.INDEX_PATTERN, WafVisualizations.ROLLUP_INDEX_PATTERN);
+    // the time field of the indices a Timelion series may name
+    static final Map<String, String> TIMELION_INDICES = Map.of(
+            WafVisualizations.LOG_INDEX, WafVisualizations.TIME_FIELD,
+            WafVisualizations.ROLLUP_INDEX, WafVisualizations.ROLLUP_TIME_FIELD);
+    // value holds the client addresses of the rollups
+    static final Set<String> HIGH_CARDINALITY_FIELDS = Set.of("httpRequest.clientIp", "httpRequest.clientIp.keyword",
+            "httpRequest.uri", "httpRequest.uri.keyword", "httpRequest.args", WafVisualizations.HOST_FIELD,
+            WafVisualizations.USER_AGENT_FIELD, "UserAgent", "Host", "value");
+
+    private static final Pattern SERIES = Pattern.compile("\\.es\\(([^)]*)\\)");
+    private static final Pattern SERIES_ARGUMENT = Pattern.compile("(\\w+)\\s*=\\s*'?([^,\\s']+)'?");
+    private static final Pattern INTERVAL = Pattern.compile("(\\d+)([smhdwMy])");
+
+    private Guardrails() {
+    }
+
+    /**
+     * What {@code visualization} breaks, one sentence per rule; empty when it keeps to all of them.
+     */
+    public static List<String> check(Visualization visualization) {
+        List<String> violations = new ArrayList<>();
+        if ("timelion".equals(visualization.getType())) {
+            checkTimelion(visualization.getParams(), violations);
+        } else if (visualization.getIndexPattern() == null || !TIME_BASED_INDEX_PATTERNS.contains(visualization.getIndexPattern())) {
+            violations.add("searches " + visualization.getIndexPattern() + ", not a time-based index pattern");
+        }
+        if ("input_control_vis".equals(visualization.getType())) {
+            checkControls(visualization.getParams(), violations);
+        }
+
+        long buckets = 1;
+        for (Aggregation aggregation : visualization.getAggregations()) {
+            boolean highCardinality = aggregation.getField() != null && HIGH_CARDINALITY_FIELDS.contains(aggregation.getField());
+            if (aggregation.isTerms()) {
+                buckets *= aggregation.getSize();
+                if (aggregation.getSize() > MAX_TERMS_SIZE) {
+                    violations.add("asks for " + aggregation.getSize() + " terms of " + aggregation.getField()
+                            + ", more than " + MAX_TERMS_SIZE);
+                }
+                if (highCardinality && (aggregation.getShardSize() <= 0 || aggregation.getShardSize() > MAX_SHARD_SIZE)) {
+                    violations.add("needs a shard size of at most " + MAX_SHARD_SIZE + " for the terms of " + aggregation.getField());
+                } else if (aggregation.getShardSize() > 0 && aggregation.getShardSize() < aggregation.getSize()) {
+                    violations.add("has a shard size below its size for the terms of " + aggregation.getField());
+                }
+            } else if ("cardinality".equals(aggregation.getType()) && highCardinality
+                    && (aggregation.getPrecisionThreshold() <= 0 || aggregation.getPrecisionThreshold() > MAX_PRECISION_THRESHOLD)) {
+                violations.add("needs a precision threshold of at most " + MAX_PRECISION_THRESHOLD
+                        + " for the distinct count of " + aggregation.getField());
+            }
+        }
+        if (buckets > MAX_BUCKETS) {
+            violations.add("nests terms into " + buckets + " buckets, more than " + MAX_BUCKETS);
+        }
+        return violations;
+    }
+
+    /**
+     * Fails with every violation of every visualisation at once.
+     */
+    public static void enforce(List<Visualization> visualizations) {
+        List<String> violations = new ArrayList<>();
+        for (Visualization visualization : visualizations) {
+            for (String violation : check(visualization)) {
+                violations.add(visualization.getId() + " " + violation);
+            }
+        }
+        if (!violations.isEmpty()) {
+            throw new IllegalArgumentException("Visualisations break the performance guardrails:\n  "
+                    + String.join("\n  ", violations));
+        }
+    }
+
+    private static void checkTimelion(JsonNode params, List<String> violations) {
+        Matcher series = SERIES.matcher(params.path("expression").asText());
+        while (series.find()) {
+            String index = null;
+            String timeField = null;
+            Matcher argument = SERIES_ARGUMENT.matcher(series.group(1));
+            while (argument.find()) {
+                if ("index".equals(argument.group(1))) {
+                    index = argument.group(2);
+                } else if ("timefield".equals(argument.group(1))) {
+                    timeField = argument.group(2);
+                }
+            }
+            if (index == null || timeField == null || !timeField.equals(TIMELION_INDICES.get(index))) {
+                violations.add("has a series " + series.group() + " not naming index=" + WafVisualizations.LOG_INDEX
+                        + " and timefield=" + WafVisualizations.TIME_FIELD + ", or index=" + WafVisualizations.ROLLUP_INDEX
+                        + " and timefield=" + WafVisualizations.ROLLUP_TIME_FIELD);
+            }
+        }
+
+        String interval = params.path("interval").asText();
+        Matcher fixed = INTERVAL.matcher(interval);
+        if (!"auto".equals(interval) && !(fixed.matches() && (!"s".equals(fixed.group(2)) || Integer.parseInt(fixed.group(1)) >= 60))) {
+            violations.add("has an interval of " + interval + ", under a minute");
+        }
+    }
+
+    private static void checkControls(JsonNode params, List<String> violations) {
+        if (!params.path("useTimeFilter").asBoolean()) {
+            violations.add("lists control options from all time instead of the time range");
+        }
+        for (JsonNode control : params.path("controls")) {
+            if (control.at("/options/size").asInt() > MAX_TERMS_SIZE) {
+                violations.add("lists " + control.at("/options/size").asInt() + " options of " + control.path("fieldName").asText()
+                        + ", more than " + MAX_TERMS_SIZE);
+            }
+        }
+    }
+}
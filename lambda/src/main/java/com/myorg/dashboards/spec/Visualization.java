@@ -0,0 +1,123 @@
+package com.myorg.dashboards.spec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A visualisation as code: its display parameters, the aggregations and query it sends and the index pattern it
+ * searches. {@link #toDefinition()} renders it the way Dashboards saves it, state and search source as JSON
+ * strings. Timelion visualisations name their indices in the expression instead.
+ */
+public final class Visualization {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final String id;
+    private final String title;
+    private final String type;
+    private final ObjectNode params;
+    private final List<Aggregation> aggregations = new ArrayList<>();
+    private String indexPattern;
+    private String query = "";
+    private String uiState = "{}";
+
+    private Visualization(String id, String title, String type, ObjectNode params, String indexPattern) {
+        this.id = id;
+        this.title = title;
+        this.type = type;
+        this.params = params;
+        this.indexPattern = indexPattern;
+    }
+
+    /**
+     * A visualisation of {@code type} searching the index pattern of the WAF logs.
+     */
+    public static Visualization of(String id, String title, String type, ObjectNode params) {
+        return new Visualization(id, title, type, params, WafVisualizations.INDEX_PATTERN);
+    }
+
+    public static Visualization timelion(String id, String title, String expression, String interval) {
+        ObjectNode params = OBJECT_MAPPER.createObjectNode().put("expression", expression).put("interval", interval);
+        return new Visualization(id, title, "timelion", params, null);
+    }
+
+    public Visualization aggregation(Aggregation aggregation) {
+        aggregations.add(aggregation);
+        return this;
+    }
+
+    public Visualization indexPattern(String indexPattern) {
+        this.indexPattern = indexPattern;
+        return this;
+    }
+
+    /**
+     * Lucene query the visualisation is restricted to, on top of the dashboard's.
+     */
+    public Visualization query(String query) {
+        this.query = query;
+        return this;
+    }
+
+    public Visualization uiState(String uiState) {
+        this.uiState = uiState;
+        return this;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public ObjectNode getParams() {
+        return params;
+    }
+
+    public List<Aggregation> getAggregations() {
+        return Collections.unmodifiableList(aggregations);
+    }
+
+    public String getIndexPattern() {
+        return indexPattern;
+    }
+
+    /**
+     * The saved object's definition, as {@code SavedObject} takes it: its attributes.
+     */
+    public ObjectNode toDefinition() {
+        ObjectNode visState = OBJECT_MAPPER.createObjectNode().put("title", title).put("type", type);
+        visState.set("params", params);
+        ArrayNode aggs = visState.putArray("aggs");
+        for (int i = 0; i < aggregations.size(); i++) {
+            aggs.add(aggregations.get(i).toJson(OBJECT_MAPPER, String.valueOf(i + 1)));
+        }
+
+        ObjectNode searchSource = OBJECT_MAPPER.createObjectNode();
+        if (indexPattern != null) {
+            searchSource.put("index", indexPattern);
+        }
+        searchSource.putObject("query").put("query", query).put("language", "lucene");
+        searchSource.putArray("filter");
+
+        ObjectNode definition = OBJECT_MAPPER.createObjectNode();
+        definition.putObject("attributes")
+                .put("title", title)
+                .put("visState", visState.toString())
+                .put("uiStateJSON", uiState)
+                .put("description", "")
+                .put("version", 1)
+                .putObject("kibanaSavedObjectMeta").put("searchSourceJSON", searchSource.toString());
+        return definition;
+    }
+}
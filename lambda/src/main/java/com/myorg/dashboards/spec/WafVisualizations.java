@@ -0,0 +1,234 @@
+package com.myorg.dashboards.spec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.myorg.rollup.RollupConfig;
+import com.myorg.rollup.RollupDocument;
+import com.myorg.rollup.RollupGranularity;
+import com.myorg.transform.TransformerConfig;
+
+import java.util.List;
+
+/**
+ * The visualisations of the WAF dashboard. Sizes, shard sizes and queries are set here, in one place, and
+ * {@link Guardrails} holds every visualisation to the same limits before {@link DashboardsCompiler} writes them.
+ * Request counts sum {@code sampleWeight} instead of counting documents, so sampled out requests are estimated
+ * back; documents without a weight, from unsampled deployments and indices written before sampling, count once.
+ * The long-range ones chart the hourly counts of the rollup indices, through an index pattern of their own.
+ */
+public final class WafVisualizations {
+    public static final String INDEX_PATTERN = "awswaf";
+    // the log indices behind the hub's awswaf alias and each spoke's awswaf-<account>, as the index pattern reads them
+    public static final String LOG_INDEX = "awswaf*-logs-*";
+    public static final String TIME_FIELD = "timestamp";
+    // the hourly counts of the rollup function, for ranges of weeks
+    public static final String ROLLUP_INDEX_PATTERN = "awswaf-rollup";
+    public static final String ROLLUP_INDEX = RollupConfig.DEFAULT_INDEX_PREFIX + "-*";
+    public static final String ROLLUP_TIME_FIELD = "@timestamp";
+    public static final String ACCOUNT_ONLY = "top10accounts";
+    // flattened by the transformer, see TransformerConfig.DEFAULT_FLATTEN_HEADERS
+    static final String HOST_FIELD = "httpRequest.headers.host";
+    static final String USER_AGENT_FIELD = "httpRequest.headers.user-agent";
+    // what a top 10 on a field with a value per client or URI lets each shard return, the terms default
+    static final int TOP_TEN_SHARD_SIZE = 25;
+    static final int UNIQUE_IP_PRECISION = 1000;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String TABLE_UI_STATE = "{\"vis\":{\"params\":{\"sort\":{\"columnIndex\":null,\"direction\":null}}}}";
+
+    private WafVisualizations() {
+    }
+
+    /**
+     * Every visualisation, those of account-aware deployments ({@value #ACCOUNT_ONLY}) included.
+     */
+    public static List<Visualization> all() {
+        return List.of(
+                regionMap("allcountries", "Countries By Number of Request", ""),
+                Visualization.timelion("allvsblockedrequests", "Allowed vs Blocked Requests",
+                        series("action:ALLOW", "Allowed Requests", "#009933") + ", "
+                                + series("action:BLOCK", "Blocked Requests", "#cc0000"), "1m"),
+                regionMap("blockedcountries", "Countries By Number of BLOCKED Request", "action: BLOCK"),
+                pie("executedrules", "Executed WAF Rules", "rulename", 5),
+                filters(),
+                pie("httpmethods", "HTTP Methods", "httpRequest.httpMethod.keyword", 10),
+                pie("httpversions", "HTTP Versions", "httpRequest.httpVersion.keyword", 10),
+                metric("numberofallrequests", "Number of All Requests", requests()),
+                metric("numberofblockedrequests", "Number of Blocked Requests", requests()).query("action:BLOCK"),
+                Visualization.timelion("requestcount", "Requests Count", series(null, "Requests Count", "#AA9933"), "auto"),
+                table("top10countries", "Top 10 Countries", "httpRequest.country.keyword", "Country"),
+                table("top10hosts", "Top 10 Hosts", HOST_FIELD, "Host"),
+                table("top10ip", "Top 10 IP Addresses", "httpRequest.clientIp.keyword", "Client IP Address"),
+                table("top10rules", "Top 10 Rules", "rulename", "Rule Name"),
+                table("top10uris", "Top 10 URI", "httpRequest.uri.keyword", "URI"),
+                table("top10useragents", "Top 10 User-Agents", USER_AGENT_FIELD, "User-Agent"),
+                table("top10webacl", "Top 10 WebACL", "webaclname", "WebACL Name"),
+                metric("uniqueipcount", "Unique IP Count",
+                        Aggregation.cardinality("httpRequest.clientIp.keyword").precisionThreshold(UNIQUE_IP_PRECISION)),
+                table(ACCOUNT_ONLY, "Top 10 Accounts", TransformerConfig.ACCOUNT_ID_FIELD + ".keyword", "Account"),
+                Visualization.timelion("rolluprequests", "Allowed vs Blocked Requests per Hour",
+                        rollupSeries("ALLOW", "Allowed Requests", "#009933") + ", "
+                                + rollupSeries("BLOCK", "Blocked Requests", "#cc0000"), "1h"),
+                rollupTable("rolluptop10rules", "Top 10 Rules over Weeks", RollupDocument.DIMENSION_RULE, "Rule ID"),
+                rollupTable("rolluptop10countries", "Top 10 Countries over Weeks", RollupDocument.DIMENSION_COUNTRY, "Country"),
+                rollupTable("rolluptop10ip", "Top 10 IP Addresses over Weeks", RollupDocument.DIMENSION_CLIENT_IP,
+                        "Client IP Address"));
+    }
+
+    /**
+     * The requests behind the documents: their sample weights, 1 where there is none.
+     */
+    public static Aggregation requests() {
+        return Aggregation.sum(TransformerConfig.SAMPLE_WEIGHT_FIELD).missing(1).label("Requests");
+    }
+
+    /**
+     * Only hourly buckets: summing both granularities would count every request twice.
+     */
+    private static String rollupQuery(String dimension) {
+        return "granularity:" + RollupGranularity.HOUR.getLabel() + " AND dimension:" + dimension;
+    }
+
+    private static String rollupSeries(String action, String label, String color) {
+        return ".es(index='" + ROLLUP_INDEX + "', timefield='" + ROLLUP_TIME_FIELD + "', metric='sum:count', q='"
+                + rollupQuery(RollupDocument.DIMENSION_TOTAL) + " AND action:" + action + "').label(\"" + label
+                + "\").color(" + color + ")";
+    }
+
+    private static Visualization rollupTable(String id, String title, String dimension, String label) {
+        return Visualization.of(id, title, "table", tableParams())
+                .indexPattern(ROLLUP_INDEX_PATTERN)
+                .aggregation(Aggregation.sum("count").label("Requests"))
+                .aggregation(Aggregation.rows("value", 10).shardSize(TOP_TEN_SHARD_SIZE).label(label))
+                .query(rollupQuery(dimension) + " AND NOT value:" + RollupDocument.OTHER_VALUE)
+                .uiState(TABLE_UI_STATE);
+    }
+
+    /**
+     * Timelion has no missing value for a metric: the weights of the documents that have one, plus a count of
+     * those that don't.
+     */
+    private static String series(String query, String label, String color) {
+        String unweighted = "NOT _exists_:" + TransformerConfig.SAMPLE_WEIGHT_FIELD;
+        return ".es(index='" + LOG_INDEX + "', timefield='" + TIME_FIELD + "'" + (query == null ? "" : ", q='" + query + "'")
+                + ", metric='sum:" + TransformerConfig.SAMPLE_WEIGHT_FIELD + "')"
+                + ".sum(.es(index='" + LOG_INDEX + "', timefield='" + TIME_FIELD + "', q='"
+                + (query == null ? unweighted : query + " AND " + unweighted) + "'))"
+                + ".label(\"" + label + "\").color(" + color + ")";
+    }
+
+    private static ObjectNode tableParams() {
+        ObjectNode params = OBJECT_MAPPER.createObjectNode()
+                .put("perPage", 10)
+                .put("showPartialRows", false)
+                .put("showMetricsAtAllLevels", false);
+        params.putObject("sort").putNull("columnIndex").putNull("direction");
+        params.put("showTotal", false).put("totalFunc", "sum");
+        return params;
+    }
+
+    private static Visualization table(String id, String title, String field, String label) {
+        Aggregation rows = Aggregation.rows(field, 10).label(label);
+        if (Guardrails.HIGH_CARDINALITY_FIELDS.contains(field)) {
+            rows.shardSize(TOP_TEN_SHARD_SIZE);
+        }
+        return Visualization.of(id, title, "table", tableParams())
+                .aggregation(requests())
+                .aggregation(rows)
+                .uiState(TABLE_UI_STATE);
+    }
+
+    private static Visualization pie(String id, String title, String field, int size) {
+        ObjectNode params = OBJECT_MAPPER.createObjectNode()
+                .put("type", "pie")
+                .put("addTooltip", true)
+                .put("addLegend", true)
+                .put("legendPosition", "right")
+                .put("isDonut", true);
+        params.putObject("labels").put("show", false).put("values", true).put("last_level", true).put("truncate", 100);
+        return Visualization.of(id, title, "pie", params)
+                .aggregation(requests())
+                .aggregation(Aggregation.segments(field, size));
+    }
+
+    private static Visualization metric(String id, String title, Aggregation value) {
+        ObjectNode params = OBJECT_MAPPER.createObjectNode()
+                .put("addTooltip", true)
+                .put("addLegend", false)
+                .put("type", "metric");
+        ObjectNode metric = params.putObject("metric")
+                .put("percentageMode", false)
+                .put("useRanges", false)
+                .put("colorSchema", "Green to Red")
+                .put("metricColorMode", "None");
+        metric.putArray("colorsRange").addObject().put("from", 0).put("to", 10000);
+        metric.putObject("labels").put("show", false);
+        metric.put("invertColors", false);
+        metric.putObject("style").put("bgFill", "#000").put("bgColor", false).put("labelColor", false)
+                .put("subText", "").put("fontSize", 30);
+        return Visualization.of(id, title, "metric", params).aggregation(value);
+    }
+
+    private static Visualization regionMap(String id, String title, String query) {
+        ObjectNode params = OBJECT_MAPPER.createObjectNode()
+                .put("legendPosition", "bottomright")
+                .put("addTooltip", true)
+                .put("colorSchema", "Yellow to Red");
+        ObjectNode layer = params.putObject("selectedLayer")
+                .put("name", "World Countries")
+                .put("origin", "elastic_maps_service")
+                .put("id", "world_countries")
+                .put("created_at", "2017-04-26T17:12:15.978370")
+                .put("attribution", "<a href=\"http://www.naturalearthdata.com/about/terms-of-use\">Made with NaturalEarth</a>"
+                        + " | <a href=\"https://www.elastic.co/elastic-maps-service\">Elastic Maps Service</a>");
+        ArrayNode fields = layer.putArray("fields");
+        fields.addObject().put("type", "id").put("name", "iso2").put("description", "ISO 3166-1 alpha-2 code");
+        fields.addObject().put("type", "id").put("name", "iso3").put("description", "ISO 3166-1 alpha-3 code");
+        fields.addObject().put("type", "property").put("name", "name").put("description", "name");
+        layer.putObject("format").put("type", "geojson");
+        layer.put("layerId", "elastic_maps_service.World Countries").put("isEMS", true);
+        params.put("emsHotLink", "https://maps.elastic.co/v6.7?locale=en#file/world_countries");
+        params.putObject("selectedJoinField").put("type", "id").put("name", "iso2").put("description", "ISO 3166-1 alpha-2 code");
+        params.put("isDisplayWarning", true);
+        ObjectNode wms = params.putObject("wms").put("enabled", false);
+        wms.putObject("options").put("format", "image/png").put("transparent", true);
+        wms.putObject("selectedTmsLayer").put("default", true).put("minZoom", 0).put("maxZoom", 10).put("attribution", "")
+                .put("id", "TMS in config/kibana.yml").put("origin", "self_hosted");
+        params.put("mapZoom", 2);
+        params.putArray("mapCenter").add(0).add(0);
+        params.put("outlineWeight", 1).put("showAllShapes", true);
+        return Visualization.of(id, title, "region_map", params)
+                .aggregation(requests())
+                .aggregation(Aggregation.segments("httpRequest.country.keyword", 5).label("Country"))
+                .query(query);
+    }
+
+    /**
+     * Lists of the values in the time range, which filter the whole dashboard.
+     */
+    private static Visualization filters() {
+        ObjectNode params = OBJECT_MAPPER.createObjectNode();
+        ArrayNode controls = params.putArray("controls");
+        control(controls, "1565169719620", "webaclname", "WebACL", true);
+        control(controls, "1565169760470", "rulename", "Rule", true);
+        control(controls, "1565169899571", "action.keyword", "Action", true);
+        control(controls, "1565170498755", "httpRequest.country.keyword", "Country", true);
+        control(controls, "1565170536048", "httpRequest.clientIp", "Client IP", false);
+        control(controls, "1565182161719", HOST_FIELD, "Host", true);
+        control(controls, "1565775477773", "terminatingRuleType.keyword", "Rule Type", false);
+        params.put("pinFilters", true).put("updateFiltersOnChange", true).put("useTimeFilter", true);
+        return Visualization.of("filters", "Filters", "input_control_vis", params);
+    }
+
+    private static void control(ArrayNode controls, String id, String field, String label, boolean multiselect) {
+        ObjectNode control = controls.addObject()
+                .put("fieldName", field)
+                .put("id", id)
+                .put("indexPattern", INDEX_PATTERN)
+                .put("label", label);
+        control.putObject("options").put("dynamicOptions", true).put("multiselect", multiselect).put("order", "desc")
+                .put("size", 5).put("type", "terms");
+        control.put("parent", "").put("type", "list");
+    }
+}
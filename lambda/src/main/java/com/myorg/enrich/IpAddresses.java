@@ -0,0 +1,130 @@
+package com.myorg.enrich;
+
+/**
+ * Parses textual IP addresses into the 128 bit keys of a {@link PrefixTrie}, without going through
+ * {@link java.net.InetAddress}, which allocates and would resolve anything that isn't a literal. IPv4 addresses
+ * take the top 32 bits of the high word.
+ */
+final class IpAddresses {
+    static final int IPV4_BITS = 32;
+    static final int IPV6_BITS = 128;
+
+    private IpAddresses() {
+    }
+
+    /**
+     * The address as an unsigned 32 bit value, or -1 when it isn't a dotted quad.
+     */
+    static long ipv4(CharSequence text, int start, int end) {
+        long address = 0;
+        int octets = 0;
+        int i = start;
+        while (i < end) {
+            int value = 0;
+            int digits = 0;
+            while (i < end && digits <= 3) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                value = value * 10 + (c - '0');
+                digits++;
+                i++;
+            }
+            if (digits == 0 || digits > 3 || value > 255 || ++octets > 4) {
+                return -1;
+            }
+            address = address << 8 | value;
+            if (i < end) {
+                if (text.charAt(i) != '.' || octets == 4) {
+                    return -1;
+                }
+                i++;
+                if (i == end) {
+                    return -1;
+                }
+            }
+        }
+        return octets == 4 ? address : -1;
+    }
+
+    /**
+     * Parses an IPv6 address, including {@code ::} and a dotted quad in the last 32 bits, into {@code key}.
+     *
+     * @return whether the text was an IPv6 address
+     */
+    static boolean ipv6(CharSequence text, int start, int end, long[] key) {
+        int[] groups = new int[8];
+        int count = 0;
+        int gap = -1;
+        int i = start;
+        if (end - start >= 2 && text.charAt(i) == ':' && text.charAt(i + 1) == ':') {
+            gap = 0;
+            i += 2;
+        }
+        while (i < end) {
+            int groupStart = i;
+            int value = 0;
+            while (i < end && i - groupStart < 4) {
+                int digit = Character.digit(text.charAt(i), 16);
+                if (digit < 0) {
+                    break;
+                }
+                value = value << 4 | digit;
+                i++;
+            }
+            if (i < end && text.charAt(i) == '.') {
+                // an embedded IPv4 address ends the text
+                long ipv4 = count <= 6 ? ipv4(text, groupStart, end) : -1;
+                if (ipv4 < 0) {
+                    return false;
+                }
+                groups[count++] = (int) (ipv4 >>> 16);
+                groups[count++] = (int) (ipv4 & 0xffff);
+                i = end;
+                break;
+            }
+            if (i == groupStart || count == 8) {
+                return false;
+            }
+            groups[count++] = value;
+            if (i == end) {
+                break;
+            }
+            if (text.charAt(i) != ':') {
+                return false;
+            }
+            i++;
+            if (i < end && text.charAt(i) == ':') {
+                if (gap >= 0) {
+                    return false;
+                }
+                gap = count;
+                i++;
+            } else if (i == end) {
+                return false;
+            }
+        }
+
+        if (gap < 0 ? count != 8 : count > 7) {
+            return false;
+        }
+        if (gap >= 0) {
+            int tail = count - gap;
+            System.arraycopy(groups, gap, groups, 8 - tail, tail);
+            for (int g = gap; g < 8 - tail; g++) {
+                groups[g] = 0;
+            }
+        }
+        key[0] = (long) groups[0] << 48 | (long) groups[1] << 32 | (long) groups[2] << 16 | groups[3];
+        key[1] = (long) groups[4] << 48 | (long) groups[5] << 32 | (long) groups[6] << 16 | groups[7];
+        return true;
+    }
+
+    /**
+     * Whether the key is an IPv4 address mapped into IPv6, {@code ::ffff:0:0/96}.
+     */
+    static boolean isMappedIpv4(long[] key) {
+        return key[0] == 0 && key[1] >>> 32 == 0xffffL;
+    }
+}
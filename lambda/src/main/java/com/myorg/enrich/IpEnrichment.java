@@ -0,0 +1,216 @@
+package com.myorg.enrich;
+
+import com.myorg.aws.S3ObjectClient;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * IP prefix database the transformer enriches client addresses from, loaded once per container. Read from CSV
+ * lines of {@code network,asn,as_org,country,region,lists}, e.g.
+ * <pre>
+ * 203.0.113.0/24,64500,Example Transit,de,by,tor-exit|scanners
+ * 2001:db8::/32,64501,Example Mobile,NL,,
+ * </pre>
+ * with {@code #} comments, double quotes around values with commas, and a later line of the same network
+ * replacing an earlier one. IPv4 and IPv6 prefixes go into separate {@link PrefixTrie}s; the details of networks
+ * are shared, most databases repeating the same few thousand autonomous systems over millions of prefixes.
+ * IPv4 addresses mapped into IPv6 are looked up as IPv4.
+ */
+public class IpEnrichment {
+    public static final String DATABASE_ENV = "ENRICHMENT_DB";
+    public static final String CLIENT_FIELD = "client";
+
+    private final PrefixTrie ipv4;
+    private final PrefixTrie ipv6;
+    private final IpInfo[] infos;
+    private final int prefixes;
+
+    private IpEnrichment(PrefixTrie ipv4, PrefixTrie ipv6, IpInfo[] infos, int prefixes) {
+        this.ipv4 = ipv4;
+        this.ipv6 = ipv6;
+        this.infos = infos;
+        this.prefixes = prefixes;
+    }
+
+    /**
+     * Loads {@value #DATABASE_ENV}, a file path such as a layer under {@code /opt}, or an {@code s3://bucket/key}
+     * URI; gzipped when it ends in {@code .gz}. Null when unset, as enrichment is optional.
+     */
+    public static IpEnrichment fromEnvironment(Map<String, String> environment) {
+        String location = environment.get(DATABASE_ENV);
+        if (location == null || location.isBlank()) {
+            return null;
+        }
+
+        location = location.trim();
+        try (InputStream in = open(location, environment)) {
+            return load(location.endsWith(".gz") ? new GZIPInputStream(in) : in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load the enrichment database " + location + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static InputStream open(String location, Map<String, String> environment) throws IOException {
+        if (!location.startsWith("s3://")) {
+            return Files.newInputStream(Path.of(location));
+        }
+        String[] bucketAndKey = location.substring("s3://".length()).split("/", 2);
+        if (bucketAndKey.length != 2 || bucketAndKey[0].isEmpty() || bucketAndKey[1].isEmpty()) {
+            throw new IOException("Enrichment database URIs look like s3://bucket/key, got " + location);
+        }
+        return S3ObjectClient.fromEnvironment(environment).getObject(bucketAndKey[0], bucketAndKey[1]);
+    }
+
+    public static IpEnrichment load(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return load(path.toString().endsWith(".gz") ? new GZIPInputStream(in) : in);
+        }
+    }
+
+    public static IpEnrichment load(InputStream in) throws IOException {
+        PrefixTrie.Builder ipv4 = new PrefixTrie.Builder();
+        PrefixTrie.Builder ipv6 = new PrefixTrie.Builder();
+        Map<IpInfo, Integer> infoIndex = new HashMap<>();
+        List<IpInfo> infos = new ArrayList<>();
+        long[] key = new long[2];
+        int prefixes = 0;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+
+            try {
+                List<String> columns = splitCsv(line);
+                if (columns.size() != 6) {
+                    throw new IllegalArgumentException("expected 6 columns, got " + columns.size());
+                }
+                IpInfo info = IpInfo.parse(columns.get(1), columns.get(2), columns.get(3), columns.get(4), columns.get(5));
+                Integer index = infoIndex.get(info);
+                if (index == null) {
+                    index = infos.size();
+                    infoIndex.put(info, index);
+                    infos.add(info);
+                }
+
+                String network = columns.get(0).trim();
+                int slash = network.indexOf('/');
+                if (slash < 0) {
+                    throw new IllegalArgumentException("network " + network + " has no prefix length");
+                }
+                int length = Integer.parseInt(network.substring(slash + 1));
+                long address = IpAddresses.ipv4(network, 0, slash);
+                if (address >= 0) {
+                    checkLength(length, IpAddresses.IPV4_BITS);
+                    ipv4.add(address << 32, 0, length, index);
+                } else if (IpAddresses.ipv6(network, 0, slash, key)) {
+                    checkLength(length, IpAddresses.IPV6_BITS);
+                    ipv6.add(key[0], key[1], length, index);
+                } else {
+                    throw new IllegalArgumentException("network " + network + " is not an IP prefix");
+                }
+                prefixes++;
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Enrichment database line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+
+        return new IpEnrichment(ipv4.build(), ipv6.build(), infos.toArray(new IpInfo[0]), prefixes);
+    }
+
+    private static void checkLength(int length, int bits) {
+        if (length < 0 || length > bits) {
+            throw new IllegalArgumentException("prefix length must be 0 to " + bits + ", got " + length);
+        }
+    }
+
+    static List<String> splitCsv(String line) {
+        List<String> columns = new ArrayList<>(6);
+        StringBuilder column = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    column.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    column.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                columns.add(column.toString());
+                column.setLength(0);
+            } else {
+                column.append(c);
+            }
+        }
+        columns.add(column.toString());
+        return columns;
+    }
+
+    /**
+     * What the database knows about the network of an address, or null when it isn't in any prefix or isn't
+     * an address.
+     */
+    public IpInfo lookup(CharSequence address) {
+        int value = PrefixTrie.NO_VALUE;
+        long ipv4Address = IpAddresses.ipv4(address, 0, address.length());
+        if (ipv4Address >= 0) {
+            value = ipv4.lookup(ipv4Address << 32, 0, IpAddresses.IPV4_BITS);
+        } else {
+            long[] key = new long[2];
+            if (IpAddresses.ipv6(address, 0, address.length(), key)) {
+                value = IpAddresses.isMappedIpv4(key)
+                        ? ipv4.lookup(key[1] << 32, 0, IpAddresses.IPV4_BITS)
+                        : ipv6.lookup(key[0], key[1], IpAddresses.IPV6_BITS);
+            }
+        }
+        return value == PrefixTrie.NO_VALUE ? null : infos[value];
+    }
+
+    /**
+     * Prefixes read, IPv4 and IPv6.
+     */
+    public int getPrefixCount() {
+        return prefixes;
+    }
+
+    /**
+     * Distinct network details the prefixes share.
+     */
+    public int getInfoCount() {
+        return infos.length;
+    }
+
+    /**
+     * Off-heap bytes both tries take.
+     */
+    public long getSizeBytes() {
+        return ipv4.getSizeBytes() + ipv6.getSizeBytes();
+    }
+
+    @Override
+    public String toString() {
+        return prefixes + " prefixes, " + infos.length + " networks, " + getSizeBytes() / 1024 + " KiB off-heap";
+    }
+}
@@ -0,0 +1,123 @@
+package com.myorg.enrich;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * What the enrichment database knows about a network: its autonomous system, where it is and the reputation lists
+ * it is on. Normalised as it is read, so documents aggregate on one spelling: countries are upper-case ISO 3166-1
+ * alpha-2 codes, regions ISO 3166-2 codes prefixed with their country, e.g. {@code DE-BY}, and list names
+ * lower-case and sorted. Missing parts are null, or 0 for the ASN.
+ */
+public final class IpInfo {
+    private final long asn;
+    private final String asOrg;
+    private final String country;
+    private final String region;
+    private final List<String> reputation;
+
+    public IpInfo(long asn, String asOrg, String country, String region, List<String> reputation) {
+        this.asn = Math.max(asn, 0);
+        this.asOrg = blankToNull(asOrg);
+        this.country = normaliseCountry(country);
+        this.region = normaliseRegion(this.country, region);
+        this.reputation = reputation.stream()
+                .map(String::trim)
+                .filter(list -> !list.isEmpty())
+                .map(list -> list.toLowerCase(Locale.ROOT))
+                .distinct()
+                .sorted()
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    /**
+     * Reads the {@code asn,as_org,country,region,lists} columns of a database line; the ASN may carry an
+     * {@code AS} prefix and lists are separated by {@code |}.
+     */
+    static IpInfo parse(String asn, String asOrg, String country, String region, String lists) {
+        String number = asn.trim();
+        if (number.regionMatches(true, 0, "AS", 0, 2)) {
+            number = number.substring(2);
+        }
+        return new IpInfo(number.isEmpty() ? 0 : Long.parseLong(number), asOrg, country, region,
+                Arrays.asList(lists.split("\\|")));
+    }
+
+    private static String normaliseCountry(String country) {
+        String code = blankToNull(country);
+        if (code == null) {
+            return null;
+        }
+        code = code.toUpperCase(Locale.ROOT);
+        if (code.length() != 2 || !Character.isLetter(code.charAt(0)) || !Character.isLetter(code.charAt(1))) {
+            throw new IllegalArgumentException("Country must be an ISO 3166-1 alpha-2 code, got '" + country + "'");
+        }
+        return code;
+    }
+
+    private static String normaliseRegion(String country, String region) {
+        String code = blankToNull(region);
+        if (code == null) {
+            return null;
+        }
+        code = code.toUpperCase(Locale.ROOT);
+        if (country != null && !code.startsWith(country + "-")) {
+            code = country + "-" + code;
+        }
+        return code;
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    public long getAsn() {
+        return asn;
+    }
+
+    public String getAsOrg() {
+        return asOrg;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public List<String> getReputation() {
+        return reputation;
+    }
+
+    public boolean isEmpty() {
+        return asn == 0 && asOrg == null && country == null && region == null && reputation.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IpInfo)) {
+            return false;
+        }
+        IpInfo other = (IpInfo) o;
+        return asn == other.asn && Objects.equals(asOrg, other.asOrg) && Objects.equals(country, other.country)
+                && Objects.equals(region, other.region) && reputation.equals(other.reputation);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(asn, asOrg, country, region, reputation);
+    }
+
+    @Override
+    public String toString() {
+        return "AS" + asn + " " + asOrg + " " + country + "/" + region + " " + reputation;
+    }
+}
@@ -0,0 +1,99 @@
+package com.myorg.enrich;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Longest prefix match over 128 bit keys, one bit per level. Built on the heap, then frozen into a direct buffer
+ * of three ints per node, its two children and its value, so a full size database is neither an object per node
+ * nor something the collector has to trace. Child 0 means none, the root being no one's child; values are
+ * stored plus one so 0 means none. Lookups read nothing but the buffer and are safe from any number of threads.
+ */
+final class PrefixTrie {
+    static final int NO_VALUE = -1;
+    private static final int NODE_INTS = 3;
+
+    private final IntBuffer nodes;
+    private final int nodeCount;
+
+    private PrefixTrie(IntBuffer nodes, int nodeCount) {
+        this.nodes = nodes;
+        this.nodeCount = nodeCount;
+    }
+
+    /**
+     * The value of the longest prefix containing the key, or {@link #NO_VALUE}.
+     */
+    int lookup(long high, long low, int bits) {
+        int node = 0;
+        int value = nodes.get(2) - 1;
+        for (int bit = 0; bit < bits; bit++) {
+            long word = bit < 64 ? high : low;
+            int branch = (int) (word >>> (63 - (bit & 63))) & 1;
+            node = nodes.get(node * NODE_INTS + branch);
+            if (node == 0) {
+                break;
+            }
+            int stored = nodes.get(node * NODE_INTS + 2);
+            if (stored != 0) {
+                value = stored - 1;
+            }
+        }
+        return value;
+    }
+
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Off-heap bytes the nodes take.
+     */
+    long getSizeBytes() {
+        return (long) nodeCount * NODE_INTS * Integer.BYTES;
+    }
+
+    static final class Builder {
+        private int[] nodes = new int[NODE_INTS * 1024];
+        private int nodeCount = 1;
+
+        /**
+         * Sets the value of a prefix, replacing an earlier one of the same prefix.
+         */
+        Builder add(long high, long low, int length, int value) {
+            if (value < 0 || value == Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Value out of range: " + value);
+            }
+            int node = 0;
+            for (int bit = 0; bit < length; bit++) {
+                long word = bit < 64 ? high : low;
+                int slot = node * NODE_INTS + ((int) (word >>> (63 - (bit & 63))) & 1);
+                if (nodes[slot] == 0) {
+                    // not nodes[slot] = newNode(), the array may be replaced while growing
+                    int child = newNode();
+                    nodes[slot] = child;
+                }
+                node = nodes[slot];
+            }
+            nodes[node * NODE_INTS + 2] = value + 1;
+            return this;
+        }
+
+        private int newNode() {
+            if ((nodeCount + 1) * NODE_INTS > nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+            }
+            return nodeCount++;
+        }
+
+        PrefixTrie build() {
+            IntBuffer frozen = ByteBuffer.allocateDirect(nodeCount * NODE_INTS * Integer.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asIntBuffer();
+            frozen.put(nodes, 0, nodeCount * NODE_INTS);
+            return new PrefixTrie(frozen, nodeCount);
+        }
+    }
+}
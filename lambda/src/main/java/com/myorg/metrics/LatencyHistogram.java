@@ -0,0 +1,84 @@
+package com.myorg.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latencies in buckets four to a doubling, from a microsecond to about half a minute, so any value is known to
+ * within 19%. Recording is a few atomic updates on preallocated arrays and safe from any number of threads.
+ */
+class LatencyHistogram {
+    static final int SUB_BUCKETS = 4;
+    static final int BUCKETS = 100;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumNanos = new AtomicLong();
+    private final AtomicLong minNanos = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value / 1000));
+        count.incrementAndGet();
+        sumNanos.addAndGet(value);
+        minNanos.accumulateAndGet(value, Math::min);
+        maxNanos.accumulateAndGet(value, Math::max);
+    }
+
+    // bucket 0 holds everything under a microsecond, bucket 1 + 4 * e + s the micros of [2^e (1 + s/4), 2^e (1 + (s+1)/4))
+    static int bucket(long micros) {
+        if (micros < 1) {
+            return 0;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = exponent >= 2
+                ? (int) ((micros >>> (exponent - 2)) & 3)
+                : (int) ((micros << (2 - exponent)) & 3);
+        return Math.min(BUCKETS - 1, 1 + SUB_BUCKETS * exponent + subBucket);
+    }
+
+    /**
+     * Middle of the bucket in milliseconds, the value a bucket is reported as.
+     */
+    static double bucketMillis(int bucket) {
+        if (bucket == 0) {
+            return 0.0005;
+        }
+        int exponent = (bucket - 1) / SUB_BUCKETS;
+        int subBucket = (bucket - 1) % SUB_BUCKETS;
+        double lowerMicros = Math.pow(2, exponent) * (1 + subBucket / (double) SUB_BUCKETS);
+        double widthMicros = Math.pow(2, exponent) / SUB_BUCKETS;
+        return (lowerMicros + widthMicros / 2) / 1000;
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    double getSumMillis() {
+        return sumNanos.get() / 1e6;
+    }
+
+    double getMinMillis() {
+        return count.get() == 0 ? 0 : minNanos.get() / 1e6;
+    }
+
+    double getMaxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sumNanos.set(0);
+        minNanos.set(Long.MAX_VALUE);
+        maxNanos.set(0);
+    }
+}
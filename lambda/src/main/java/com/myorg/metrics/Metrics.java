@@ -0,0 +1,66 @@
+package com.myorg.metrics;
+
+import com.amazonaws.services.lambda.runtime.Context;
+
+import java.util.Map;
+
+/**
+ * The function's metrics, recorded wherever the work happens and written once per invocation by the handler
+ * with {@link #flush}. Lambda runs one invocation at a time per instance, so one recorder per JVM sees exactly
+ * one invocation's worth between flushes. Set {@code EMF_METRICS=false} to write nothing.
+ * <pre>
+ * long started = System.nanoTime();
+ * ...
+ * Metrics.recordSince(Metrics.WAF_CALL_LATENCY, started);
+ * </pre>
+ */
+public final class Metrics {
+    public static final String ENV = "EMF_METRICS";
+    public static final String NAMESPACE = "osdfw";
+
+    public static final String SIGV4_SIGNING_LATENCY = "SigV4SigningLatency";
+    public static final String WAF_CALL_LATENCY = "WafCallLatency";
+    public static final String WAF_CALLS = "WafCalls";
+    public static final String WAF_RETRIES = "WafRetries";
+    public static final String SAVED_OBJECTS_READ_LATENCY = "SavedObjectsReadLatency";
+    public static final String SAVED_OBJECTS_WRITE_LATENCY = "SavedObjectsWriteLatency";
+    public static final String DASHBOARDS_CALLS = "DashboardsCalls";
+    public static final String INVOCATION_LATENCY = "InvocationLatency";
+    public static final String REQUEST_CACHE_HITS = "RequestCacheHits";
+    public static final String REQUEST_CACHE_MISSES = "RequestCacheMisses";
+    public static final String REQUEST_CACHE_EVICTIONS = "RequestCacheEvictions";
+
+    private static final MetricsRecorder RECORDER = new MetricsRecorder(NAMESPACE);
+
+    private Metrics() {
+    }
+
+    public static void recordSince(String metric, long startedNanos) {
+        RECORDER.recordLatency(metric, System.nanoTime() - startedNanos);
+    }
+
+    public static void count(String metric) {
+        RECORDER.count(metric);
+    }
+
+    public static void count(String metric, long delta) {
+        RECORDER.count(metric, delta);
+    }
+
+    /**
+     * Logs what the invocation recorded as one EMF line, published per function name.
+     */
+    public static void flush(Context context, Map<String, String> environment) {
+        String line = RECORDER.flush(Map.of("FunctionName", String.valueOf(context.getFunctionName())), System.currentTimeMillis());
+        if (line != null && !"false".equalsIgnoreCase(environment.get(ENV))) {
+            context.getLogger().log(line);
+        }
+    }
+
+    /**
+     * Forgets what was recorded outside of any invocation, e.g. while priming.
+     */
+    public static void discard() {
+        RECORDER.discard();
+    }
+}
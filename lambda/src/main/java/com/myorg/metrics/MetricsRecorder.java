@@ -0,0 +1,116 @@
+package com.myorg.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregates latencies and counts between flushes and writes them as one CloudWatch Embedded Metric Format
+ * line. Latencies become {@code Values}/{@code Counts} distributions in milliseconds, so CloudWatch computes
+ * percentiles over them. A metric's histogram or counter is created the first time its name is seen and reused
+ * from then on: recording allocates nothing.
+ */
+public class MetricsRecorder {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String namespace;
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+
+    public MetricsRecorder(String namespace) {
+        this.namespace = namespace;
+    }
+
+    public void recordLatency(String metric, long nanos) {
+        LatencyHistogram histogram = latencies.get(metric);
+        if (histogram == null) {
+            histogram = latencies.computeIfAbsent(metric, name -> new LatencyHistogram());
+        }
+        histogram.record(nanos);
+    }
+
+    public void count(String metric) {
+        count(metric, 1);
+    }
+
+    public void count(String metric, long delta) {
+        AtomicLong counter = counts.get(metric);
+        if (counter == null) {
+            counter = counts.computeIfAbsent(metric, name -> new AtomicLong());
+        }
+        counter.addAndGet(delta);
+    }
+
+    /**
+     * The EMF line of everything recorded since the last flush, or null when nothing was, and starts over.
+     * Metrics recorded while flushing may land in this line or the next.
+     *
+     * @param dimensions dimension names and values every metric of the line is published under
+     */
+    public String flush(Map<String, String> dimensions, long timestampMillis) {
+        ObjectNode line = objectMapper.createObjectNode();
+        ObjectNode directive = objectMapper.createObjectNode().put("Namespace", namespace);
+        directive.putArray("Dimensions").add(dimensionNames(dimensions));
+        ArrayNode definitions = directive.putArray("Metrics");
+
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(latencies).entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            definitions.addObject().put("Name", entry.getKey()).put("Unit", "Milliseconds");
+            ObjectNode distribution = line.putObject(entry.getKey());
+            ArrayNode values = distribution.putArray("Values");
+            ArrayNode bucketCounts = distribution.putArray("Counts");
+            for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++) {
+                long count = histogram.getCount(bucket);
+                if (count > 0) {
+                    values.add(LatencyHistogram.bucketMillis(bucket));
+                    bucketCounts.add(count);
+                }
+            }
+            distribution.put("Max", histogram.getMaxMillis())
+                    .put("Min", histogram.getMinMillis())
+                    .put("Count", histogram.getCount())
+                    .put("Sum", histogram.getSumMillis());
+            histogram.reset();
+        }
+        for (Map.Entry<String, AtomicLong> entry : new TreeMap<>(counts).entrySet()) {
+            long count = entry.getValue().getAndSet(0);
+            if (count > 0) {
+                definitions.addObject().put("Name", entry.getKey()).put("Unit", "Count");
+                line.put(entry.getKey(), count);
+            }
+        }
+        if (definitions.isEmpty()) {
+            return null;
+        }
+
+        ObjectNode metadata = objectMapper.createObjectNode().put("Timestamp", timestampMillis);
+        metadata.putArray("CloudWatchMetrics").add(directive);
+        dimensions.forEach(line::put);
+        // the metadata first, for people reading the log
+        ObjectNode ordered = objectMapper.createObjectNode();
+        ordered.set("_aws", metadata);
+        ordered.setAll(line);
+        return ordered.toString();
+    }
+
+    /**
+     * Drops everything recorded so far.
+     */
+    public void discard() {
+        latencies.values().forEach(LatencyHistogram::reset);
+        counts.values().forEach(counter -> counter.set(0));
+    }
+
+    private ArrayNode dimensionNames(Map<String, String> dimensions) {
+        ArrayNode names = objectMapper.createArrayNode();
+        dimensions.keySet().forEach(names::add);
+        return names;
+    }
+}
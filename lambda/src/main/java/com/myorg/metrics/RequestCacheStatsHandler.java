@@ -0,0 +1,81 @@
+package com.myorg.metrics;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.aws.Priming;
+import com.myorg.opensearch.OpenSearchClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Publishes the domain's shard request cache hits, misses and evictions, which CloudWatch doesn't have, as
+ * metrics of this function. Runs on a schedule, reads the cumulative counters of every node and records how far
+ * they moved since the previous run of the container. A node seen for the first time only sets its baseline; a
+ * node whose counters went back, restarted or replaced, counts from zero.
+ */
+public class RequestCacheStatsHandler implements RequestStreamHandler {
+    static final String NODE_STATS_PATH = "/_nodes/stats/indices/request_cache";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, long[]> previous = new HashMap<>();
+    private final OpenSearchClient openSearch;
+
+    public RequestCacheStatsHandler() {
+        this(OpenSearchClient.fromEnvironment(System.getenv()));
+        Priming.prime(System.getenv(), Priming::primeHttpStack);
+    }
+
+    public RequestCacheStatsHandler(OpenSearchClient openSearch) {
+        this.openSearch = openSearch;
+    }
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        long started = System.nanoTime();
+        try {
+            collect(context);
+        } finally {
+            Metrics.recordSince(Metrics.INVOCATION_LATENCY, started);
+            Metrics.flush(context, System.getenv());
+        }
+    }
+
+    private void collect(Context context) throws IOException {
+        JsonNode nodes = objectMapper.readTree(openSearch.get(NODE_STATS_PATH)).path("nodes");
+        long[] moved = new long[3];
+        int baselined = 0;
+        for (Iterator<Map.Entry<String, JsonNode>> it = nodes.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> node = it.next();
+            JsonNode cache = node.getValue().at("/indices/request_cache");
+            long[] current = {cache.path("hit_count").asLong(), cache.path("miss_count").asLong(),
+                    cache.path("evictions").asLong()};
+            long[] last = previous.put(node.getKey(), current);
+            if (last == null) {
+                baselined++;
+                continue;
+            }
+            for (int i = 0; i < current.length; i++) {
+                moved[i] += current[i] >= last[i] ? current[i] - last[i] : current[i];
+            }
+        }
+        // nodes that left the cluster would otherwise be kept for the life of the container
+        Set<String> present = new HashSet<>();
+        nodes.fieldNames().forEachRemaining(present::add);
+        previous.keySet().retainAll(present);
+
+        Metrics.count(Metrics.REQUEST_CACHE_HITS, moved[0]);
+        Metrics.count(Metrics.REQUEST_CACHE_MISSES, moved[1]);
+        Metrics.count(Metrics.REQUEST_CACHE_EVICTIONS, moved[2]);
+        context.getLogger().log("Request cache of " + nodes.size() + " nodes (" + baselined + " new): "
+                + moved[0] + " hits, " + moved[1] + " misses, " + moved[2] + " evictions");
+    }
+}
@@ -0,0 +1,108 @@
+package com.myorg.opensearch;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Outcome of a {@code _bulk} request: the HTTP status and the status of every item, in request order.
+ */
+public class BulkResponse {
+    public static final int TOO_MANY_REQUESTS = 429;
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final int httpStatus;
+    private final int[] itemStatuses;
+
+    public BulkResponse(int httpStatus, int[] itemStatuses) {
+        this.httpStatus = httpStatus;
+        this.itemStatuses = itemStatuses;
+    }
+
+    static BulkResponse parse(int httpStatus, byte[] body) throws IOException {
+        int[] statuses = new int[16];
+        int count = 0;
+
+        try (JsonParser parser = JSON.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected bulk response");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                if (parser.nextToken() != JsonToken.START_ARRAY || !"items".equals(name)) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                // [{"index": {"_id": "...", "status": 201, ...}}, ...]
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    int status = 0;
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        parser.nextToken();
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String field = parser.getCurrentName();
+                            if (parser.nextToken() == JsonToken.VALUE_NUMBER_INT && "status".equals(field)) {
+                                status = parser.getIntValue();
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                    }
+                    if (count == statuses.length) {
+                        statuses = Arrays.copyOf(statuses, count * 2);
+                    }
+                    statuses[count++] = status;
+                }
+            }
+        }
+
+        return new BulkResponse(httpStatus, Arrays.copyOf(statuses, count));
+    }
+
+    public int getHttpStatus() {
+        return httpStatus;
+    }
+
+    /**
+     * The whole request was turned away, typically with 429 when the write queue is full.
+     */
+    public boolean isRejected() {
+        return httpStatus == TOO_MANY_REQUESTS;
+    }
+
+    public int getItemCount() {
+        return itemStatuses.length;
+    }
+
+    public int getItemStatus(int index) {
+        return itemStatuses[index];
+    }
+
+    public boolean isItemFailed(int index) {
+        return itemStatuses[index] < 200 || itemStatuses[index] >= 300;
+    }
+
+    public int getFailedItemCount() {
+        int failed = 0;
+        for (int i = 0; i < itemStatuses.length; i++) {
+            if (isItemFailed(i)) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    public int getRejectedItemCount() {
+        int rejected = 0;
+        for (int status : itemStatuses) {
+            if (status == TOO_MANY_REQUESTS) {
+                rejected++;
+            }
+        }
+        return rejected;
+    }
+}
@@ -0,0 +1,78 @@
+package com.myorg.opensearch;
+
+import com.myorg.aws.SignedHttpClient;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * The few OpenSearch REST calls the functions need, signed for the {@code es} service.
+ */
+public class OpenSearchClient {
+    public static final String ENDPOINT_ENV = "ES_ENDPOINT";
+
+    private static final Map<String, String> JSON_HEADERS = Map.of("content-type", "application/json");
+    private static final Map<String, String> NDJSON_HEADERS = Map.of("content-type", "application/x-ndjson");
+
+    private final URI endpoint;
+    private final SignedHttpClient httpClient;
+
+    public OpenSearchClient(URI endpoint, SignedHttpClient httpClient) {
+        this.endpoint = endpoint;
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Client for the domain in {@value #ENDPOINT_ENV}, a host name as the stack passes it or a full URL.
+     */
+    public static OpenSearchClient fromEnvironment(Map<String, String> environment) {
+        String endpoint = environment.get(ENDPOINT_ENV);
+        if (endpoint == null) {
+            throw new IllegalStateException(ENDPOINT_ENV + " is not set");
+        }
+        return new OpenSearchClient(
+                URI.create(endpoint.contains("://") ? endpoint : "https://" + endpoint),
+                new SignedHttpClient(SignedHttpClient.signerFromEnvironment(environment, "es")));
+    }
+
+    /**
+     * Sends a bulk request. A request rejected as a whole with 429 is returned rather than thrown,
+     * so callers can back off; other HTTP errors throw.
+     */
+    public BulkResponse bulk(byte[] ndjson) throws IOException {
+        HttpResponse<byte[]> response = httpClient.send("POST", endpoint.resolve("/_bulk"), NDJSON_HEADERS, ndjson);
+        if (response.statusCode() == BulkResponse.TOO_MANY_REQUESTS) {
+            return new BulkResponse(response.statusCode(), new int[0]);
+        }
+        checkStatus("POST", "/_bulk", response);
+        return BulkResponse.parse(response.statusCode(), response.body());
+    }
+
+    public byte[] get(String path) throws IOException {
+        return request("GET", path, new byte[0]);
+    }
+
+    public byte[] put(String path, String json) throws IOException {
+        return request("PUT", path, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public byte[] post(String path, String json) throws IOException {
+        return request("POST", path, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public byte[] request(String method, String path, byte[] body) throws IOException {
+        HttpResponse<byte[]> response = httpClient.send(method, endpoint.resolve(path), JSON_HEADERS, body);
+        checkStatus(method, path, response);
+        return response.body();
+    }
+
+    private static void checkStatus(String method, String path, HttpResponse<byte[]> response) throws IOException {
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new OpenSearchException(method + " " + path + " failed with " + response.statusCode() + ": "
+                    + new String(response.body(), StandardCharsets.UTF_8), response.statusCode());
+        }
+    }
+}
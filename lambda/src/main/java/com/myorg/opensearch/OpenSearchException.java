@@ -0,0 +1,18 @@
+package com.myorg.opensearch;
+
+import java.io.IOException;
+
+public class OpenSearchException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public OpenSearchException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -0,0 +1,165 @@
+package com.myorg.realtime;
+
+import com.myorg.transform.TransformerConfig;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Window, alert thresholds and top talkers of the realtime detector.
+ * Read from the Lambda environment, see {@link #fromEnvironment(Map)}.
+ * The stream is partitioned by client address, so a detector sees all requests of its addresses but only its
+ * share of a rule's or a URI's; the thresholds of those two are split evenly over the {@value #SHARDS_ENV}.
+ */
+public class RealtimeConfig {
+    public static final String WINDOW_SECONDS_ENV = "WINDOW_SECONDS";
+    public static final String BUCKET_SECONDS_ENV = "BUCKET_SECONDS";
+    public static final String ALERT_THRESHOLDS_ENV = "ALERT_THRESHOLDS";
+    public static final String TOP_N_ENV = "TOP_N";
+    public static final String MAX_KEYS_ENV = "MAX_KEYS";
+    public static final String SHARDS_ENV = "SHARDS";
+
+    static final int DEFAULT_WINDOW_SECONDS = 60;
+    static final int DEFAULT_BUCKET_SECONDS = 5;
+    static final int DEFAULT_TOP_N = 10;
+    static final int DEFAULT_MAX_KEYS = 200_000;
+    static final Map<Dimension, Long> DEFAULT_THRESHOLDS = Map.of(Dimension.CLIENT, 600L, Dimension.RULE, 3000L, Dimension.URI, 3000L);
+
+    private final int windowSeconds;
+    private final int bucketSeconds;
+    private final Map<Dimension, Long> thresholds;
+    private final int topN;
+    private final int maxKeys;
+    private final int shards;
+
+    public RealtimeConfig(int windowSeconds, int bucketSeconds, Map<Dimension, Long> thresholds, int topN, int maxKeys) {
+        this(windowSeconds, bucketSeconds, thresholds, topN, maxKeys, 1);
+    }
+
+    /**
+     * @param shards the shards of the realtime stream, each read by a detector of its own
+     */
+    public RealtimeConfig(int windowSeconds, int bucketSeconds, Map<Dimension, Long> thresholds, int topN, int maxKeys,
+                          int shards) {
+        if (bucketSeconds < 1 || windowSeconds < bucketSeconds || windowSeconds % bucketSeconds != 0) {
+            throw new IllegalArgumentException("The window must be a multiple of its buckets, got " + windowSeconds + " s in "
+                    + bucketSeconds + " s buckets");
+        }
+        if (topN < 1 || maxKeys < 1) {
+            throw new IllegalArgumentException("Top N and the tracked keys must be at least 1, got " + topN + " and " + maxKeys);
+        }
+        if (shards < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1, got " + shards);
+        }
+        this.windowSeconds = windowSeconds;
+        this.bucketSeconds = bucketSeconds;
+        this.thresholds = new EnumMap<>(DEFAULT_THRESHOLDS);
+        this.thresholds.putAll(thresholds);
+        this.topN = topN;
+        this.maxKeys = maxKeys;
+        this.shards = shards;
+    }
+
+    /**
+     * {@value #ALERT_THRESHOLDS_ENV} holds {@code dimension:count} entries, e.g. {@code client:1000,uri:0};
+     * 0 turns a dimension's alerts off, dimensions not listed keep their default.
+     */
+    public static RealtimeConfig fromEnvironment(Map<String, String> environment) {
+        Map<Dimension, Long> thresholds = new EnumMap<>(Dimension.class);
+        for (String entry : TransformerConfig.splitList(environment.get(ALERT_THRESHOLDS_ENV))) {
+            String[] dimensionAndCount = entry.split(":", 2);
+            if (dimensionAndCount.length != 2) {
+                throw new IllegalArgumentException("Alert thresholds look like dimension:count, got '" + entry + "'");
+            }
+            long threshold = Long.parseLong(dimensionAndCount[1].trim());
+            if (threshold < 0) {
+                throw new IllegalArgumentException("Alert thresholds can't be negative, got '" + entry + "'");
+            }
+            thresholds.put(Dimension.fromName(dimensionAndCount[0].trim()), threshold);
+        }
+        return new RealtimeConfig(
+                intOrDefault(environment.get(WINDOW_SECONDS_ENV), DEFAULT_WINDOW_SECONDS),
+                intOrDefault(environment.get(BUCKET_SECONDS_ENV), DEFAULT_BUCKET_SECONDS),
+                thresholds,
+                intOrDefault(environment.get(TOP_N_ENV), DEFAULT_TOP_N),
+                intOrDefault(environment.get(MAX_KEYS_ENV), DEFAULT_MAX_KEYS),
+                intOrDefault(environment.get(SHARDS_ENV), 1));
+    }
+
+    private static int intOrDefault(String value, int defaultValue) {
+        return value == null || value.isBlank() ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    public int getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    public int getBucketSeconds() {
+        return bucketSeconds;
+    }
+
+    /**
+     * Requests of one key within the window that raise an alert, 0 for none.
+     */
+    public long getThreshold(Dimension dimension) {
+        return thresholds.get(dimension);
+    }
+
+    /**
+     * What one detector alerts at: the whole threshold for client addresses, and for rules and URIs, whose
+     * requests spread over all shards, an even share of it, rounded up.
+     */
+    public long getShardThreshold(Dimension dimension) {
+        long threshold = getThreshold(dimension);
+        return dimension.isPartitionKey() ? threshold : (threshold + shards - 1) / shards;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public int getTopN() {
+        return topN;
+    }
+
+    /**
+     * Keys tracked per dimension; more are counted only as untracked.
+     */
+    public int getMaxKeys() {
+        return maxKeys;
+    }
+
+    /**
+     * What requests are counted by.
+     */
+    public enum Dimension {
+        CLIENT(true), RULE(false), URI(false);
+
+        private final boolean partitionKey;
+
+        Dimension(boolean partitionKey) {
+            this.partitionKey = partitionKey;
+        }
+
+        public String getName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * Whether the stream is partitioned by it, so that each key is counted on one shard only.
+         */
+        public boolean isPartitionKey() {
+            return partitionKey;
+        }
+
+        static Dimension fromName(String name) {
+            for (Dimension dimension : values()) {
+                if (dimension.getName().equalsIgnoreCase(name)) {
+                    return dimension;
+                }
+            }
+            throw new IllegalArgumentException("Unknown dimension '" + name + "', use client, rule or uri");
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.myorg.realtime;
+
+import com.myorg.realtime.RealtimeConfig.Dimension;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the requests of the realtime stream per client address, terminating rule and URI over a sliding window,
+ * and raises an {@link Alert} when one of them crosses its threshold. Requests that matched no rule aren't
+ * counted per rule. Rules and URIs are counted over this shard's share of the requests only, against their
+ * {@linkplain RealtimeConfig#getShardThreshold share of the threshold}. Kept for the life of the container; a
+ * fresh container starts from empty windows, which are full again after one window's time. Safe to feed from
+ * several threads.
+ */
+public class RealtimeDetector {
+    static final String DEFAULT_ACTION_RULE = "Default_Action";
+    static final int STRIPES = 16;
+
+    private final Clock clock;
+    private final RealtimeConfig config;
+    private final Map<Dimension, SlidingWindowCounter> counters = new EnumMap<>(Dimension.class);
+    private final Queue<Alert> alerts = new ConcurrentLinkedQueue<>();
+    private final LongAdder events = new LongAdder();
+
+    public RealtimeDetector(RealtimeConfig config, Clock clock) {
+        this.clock = clock;
+        this.config = config;
+        int buckets = config.getWindowSeconds() / config.getBucketSeconds();
+        for (Dimension dimension : Dimension.values()) {
+            counters.put(dimension, new SlidingWindowCounter(clock, config.getWindowSeconds() * 1000L, buckets,
+                    config.getShardThreshold(dimension), config.getMaxKeys(), STRIPES));
+        }
+    }
+
+    public void accept(RealtimeEvent event) {
+        events.increment();
+        count(Dimension.CLIENT, event.getClientIp());
+        if (!DEFAULT_ACTION_RULE.equals(event.getRuleId())) {
+            count(Dimension.RULE, event.getRuleId());
+        }
+        count(Dimension.URI, event.getUri());
+    }
+
+    private void count(Dimension dimension, String key) {
+        if (key == null) {
+            return;
+        }
+        SlidingWindowCounter counter = counters.get(dimension);
+        if (counter.add(key)) {
+            alerts.add(new Alert(dimension, key, counter.count(key), counter.getThreshold(), config.getWindowSeconds(), clock.millis()));
+        }
+    }
+
+    /**
+     * The alerts raised since the last call.
+     */
+    public List<Alert> drainAlerts() {
+        List<Alert> drained = new ArrayList<>();
+        for (Alert alert = alerts.poll(); alert != null; alert = alerts.poll()) {
+            drained.add(alert);
+        }
+        return drained;
+    }
+
+    public List<SlidingWindowCounter.Count> top(Dimension dimension) {
+        return counters.get(dimension).top(config.getTopN());
+    }
+
+    /**
+     * Forgets keys idle for a whole window, so a container's memory follows the traffic of the last window only.
+     */
+    public int evictIdle() {
+        int evicted = 0;
+        for (SlidingWindowCounter counter : counters.values()) {
+            evicted += counter.evictIdle();
+        }
+        return evicted;
+    }
+
+    public long getUntrackedRequests(Dimension dimension) {
+        return counters.get(dimension).getUntrackedRequests();
+    }
+
+    public long getEvents() {
+        return events.sum();
+    }
+
+    public RealtimeConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * A key's requests reaching the threshold of its dimension within the window.
+     */
+    public static final class Alert {
+        private final Dimension dimension;
+        private final String key;
+        private final long count;
+        private final long threshold;
+        private final int windowSeconds;
+        private final long raisedAt;
+
+        Alert(Dimension dimension, String key, long count, long threshold, int windowSeconds, long raisedAt) {
+            this.dimension = dimension;
+            this.key = key;
+            this.count = count;
+            this.threshold = threshold;
+            this.windowSeconds = windowSeconds;
+            this.raisedAt = raisedAt;
+        }
+
+        public Dimension getDimension() {
+            return dimension;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getThreshold() {
+            return threshold;
+        }
+
+        public int getWindowSeconds() {
+            return windowSeconds;
+        }
+
+        public long getRaisedAt() {
+            return raisedAt;
+        }
+
+        @Override
+        public String toString() {
+            return dimension.getName() + " " + key + ": " + count + " requests in " + windowSeconds + " s";
+        }
+    }
+}
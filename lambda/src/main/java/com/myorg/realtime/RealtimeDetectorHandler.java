@@ -0,0 +1,276 @@
+package com.myorg.realtime;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.myorg.aws.Priming;
+import com.myorg.opensearch.BulkResponse;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.realtime.RealtimeConfig.Dimension;
+import com.myorg.waflog.WafLogParser;
+import com.myorg.waflog.WafLogRecord;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Kinesis entry point of the realtime path. Feeds every event of the batch to the container's
+ * {@link RealtimeDetector}, then writes the alerts it raised and the shard's current top talkers to OpenSearch:
+ * one document per shard in {@value #TOP_TALKERS_INDEX}, overwritten every batch, and alerts in monthly
+ * {@value #ALERTS_INDEX_PREFIX}{@code -yyyy.MM} indices. Failing to write is logged, not thrown: a retried batch
+ * would be counted twice, and the next batch writes the top talkers again anyway.
+ */
+public class RealtimeDetectorHandler implements RequestStreamHandler {
+    public static final String TOP_TALKERS_INDEX = "awswaf-realtime-top";
+    public static final String ALERTS_INDEX_PREFIX = "awswaf-realtime-alerts";
+    static final int MAX_ATTEMPTS = 3;
+    static final long BACKOFF_MILLIS = 200;
+
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy.MM").withZone(ZoneOffset.UTC);
+    private static final String TEMPLATE_BODY = "{"
+            + "\"index_patterns\":[\"awswaf-realtime-*\"],"
+            + "\"template\":{"
+            + "\"settings\":{\"number_of_shards\":1},"
+            + "\"mappings\":{\"dynamic\":false,\"properties\":{"
+            + "\"@timestamp\":{\"type\":\"date\",\"format\":\"epoch_millis\"},"
+            + "\"shardId\":{\"type\":\"keyword\"},"
+            + "\"dimension\":{\"type\":\"keyword\"},"
+            + "\"value\":{\"type\":\"keyword\"},"
+            + "\"count\":{\"type\":\"long\"},"
+            + "\"threshold\":{\"type\":\"long\"},"
+            + "\"windowSeconds\":{\"type\":\"integer\"},"
+            + "\"client\":{\"properties\":{\"value\":{\"type\":\"keyword\"},\"count\":{\"type\":\"long\"}}},"
+            + "\"rule\":{\"properties\":{\"value\":{\"type\":\"keyword\"},\"count\":{\"type\":\"long\"}}},"
+            + "\"uri\":{\"properties\":{\"value\":{\"type\":\"keyword\"},\"count\":{\"type\":\"long\"}}}"
+            + "}}}}";
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final RealtimeEvent event = new RealtimeEvent();
+    private final RealtimeDetector detector;
+    private final OpenSearchClient openSearch;
+    private final Clock clock;
+    private boolean templateInstalled;
+
+    public RealtimeDetectorHandler() {
+        this(new RealtimeDetector(RealtimeConfig.fromEnvironment(System.getenv()), Clock.systemUTC()),
+                OpenSearchClient.fromEnvironment(System.getenv()), Clock.systemUTC());
+        Priming.prime(System.getenv(), Priming::primeHttpStack, this::detectSampleEvent);
+    }
+
+    public RealtimeDetectorHandler(RealtimeDetector detector, OpenSearchClient openSearch, Clock clock) {
+        this.detector = detector;
+        this.openSearch = openSearch;
+        this.clock = clock;
+    }
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        Batch batch = detect(input);
+        List<RealtimeDetector.Alert> alerts = detector.drainAlerts();
+        int evicted = detector.evictIdle();
+        String failure = publish(batch.shardId, alerts);
+        context.getLogger().log("Realtime batch of " + batch.shardId + ": " + batch.events + " events, " + batch.unreadable
+                + " unreadable, " + alerts.size() + " alerts, " + evicted + " idle keys evicted"
+                + (failure == null ? "" : ", not written: " + failure));
+        alerts.forEach(alert -> context.getLogger().log("Realtime alert: " + alert));
+    }
+
+    /**
+     * Feeds the events of a Kinesis batch to the detector.
+     */
+    public Batch detect(InputStream input) throws IOException {
+        Batch batch = new Batch();
+        try (JsonParser parser = jsonFactory.createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Kinesis event is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY && "Records".equals(name)) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        detectRecord(parser, batch);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return batch;
+    }
+
+    private void detectRecord(JsonParser parser, Batch batch) throws IOException {
+        byte[] data = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT && "kinesis".equals(name)) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    if (parser.nextToken() == JsonToken.VALUE_STRING && "data".equals(field)) {
+                        data = parser.getBinaryValue();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if (token == JsonToken.VALUE_STRING && "eventID".equals(name) && batch.shardId == null) {
+                // shardId-000000000000:<sequence number>
+                String eventId = parser.getText();
+                int colon = eventId.indexOf(':');
+                batch.shardId = colon < 0 ? eventId : eventId.substring(0, colon);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        try {
+            if (data == null) {
+                throw new IOException("Kinesis record without data");
+            }
+            detector.accept(event.decode(data));
+            batch.events++;
+        } catch (IOException e) {
+            batch.unreadable++;
+        }
+    }
+
+    /**
+     * Writes the alerts and the shard's top talkers.
+     *
+     * @return why they couldn't be written, or null
+     */
+    String publish(String shardId, List<RealtimeDetector.Alert> alerts) throws IOException {
+        if (shardId == null) {
+            return null;
+        }
+        try {
+            if (!templateInstalled) {
+                openSearch.put("/_index_template/awswaf-realtime", TEMPLATE_BODY);
+                templateInstalled = true;
+            }
+            byte[] ndjson = toNdjson(shardId, alerts);
+            for (int attempt = 1; ; attempt++) {
+                BulkResponse response = openSearch.bulk(ndjson);
+                if (!response.isRejected() && response.getFailedItemCount() == 0) {
+                    return null;
+                }
+                if (attempt == MAX_ATTEMPTS) {
+                    return response.getFailedItemCount() + " of " + (alerts.size() + 1) + " documents failed";
+                }
+                sleep(BACKOFF_MILLIS << (attempt - 1));
+            }
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            return e.getMessage();
+        }
+    }
+
+    byte[] toNdjson(String shardId, List<RealtimeDetector.Alert> alerts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            action(generator, TOP_TALKERS_INDEX, shardId);
+            generator.writeStartObject();
+            generator.writeNumberField("@timestamp", clock.millis());
+            generator.writeStringField("shardId", shardId);
+            generator.writeNumberField("windowSeconds", detector.getConfig().getWindowSeconds());
+            for (Dimension dimension : Dimension.values()) {
+                generator.writeArrayFieldStart(dimension.getName());
+                for (SlidingWindowCounter.Count count : detector.top(dimension)) {
+                    generator.writeStartObject();
+                    generator.writeStringField("value", count.getKey());
+                    generator.writeNumberField("count", count.getCount());
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+            generator.flush();
+            out.write('\n');
+
+            for (RealtimeDetector.Alert alert : alerts) {
+                // the same alert written twice is one document
+                action(generator, ALERTS_INDEX_PREFIX + "-" + MONTH.format(Instant.ofEpochMilli(alert.getRaisedAt())),
+                        alert.getDimension().getName() + ":" + alert.getKey() + ":" + alert.getRaisedAt());
+                generator.writeStartObject();
+                generator.writeNumberField("@timestamp", alert.getRaisedAt());
+                generator.writeStringField("shardId", shardId);
+                generator.writeStringField("dimension", alert.getDimension().getName());
+                generator.writeStringField("value", alert.getKey());
+                generator.writeNumberField("count", alert.getCount());
+                generator.writeNumberField("threshold", alert.getThreshold());
+                generator.writeNumberField("windowSeconds", alert.getWindowSeconds());
+                generator.writeEndObject();
+                generator.flush();
+                out.write('\n');
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void action(JsonGenerator generator, String index, String id) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("index");
+        generator.writeStringField("_index", index);
+        generator.writeStringField("_id", id);
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.flush();
+        ((ByteArrayOutputStream) generator.getOutputTarget()).write('\n');
+    }
+
+    private void detectSampleEvent() throws IOException {
+        WafLogParser parser = new WafLogParser(List.of());
+        WafLogRecord record = parser.newRecord();
+        parser.parse(Priming.sampleWafRecord(), record);
+        String batch = "{\"Records\":[{\"kinesis\":{\"data\":\"" + Base64.getEncoder().encodeToString(RealtimeEvent.encode(record))
+                + "\"},\"eventID\":\"priming:0\"}]}";
+        // a detector of its own, the priming request mustn't count
+        new RealtimeDetectorHandler(new RealtimeDetector(detector.getConfig(), clock), openSearch, clock)
+                .detect(new ByteArrayInputStream(batch.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off from the domain");
+        }
+    }
+
+    /**
+     * What one Kinesis batch held.
+     */
+    public static final class Batch {
+        private String shardId;
+        private int events;
+        private int unreadable;
+
+        public String getShardId() {
+            return shardId;
+        }
+
+        public int getEvents() {
+            return events;
+        }
+
+        public int getUnreadable() {
+            return unreadable;
+        }
+    }
+}
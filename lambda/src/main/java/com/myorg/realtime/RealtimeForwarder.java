@@ -0,0 +1,105 @@
+package com.myorg.realtime;
+
+import com.myorg.aws.KinesisClient;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Puts the transformer's {@link RealtimeEvent}s on the realtime stream, partitioned by client address so all
+ * requests of an address reach the same shard and its detector counts them all. Events are sent in
+ * {@code PutRecords} requests within Kinesis' limits; the ones it doesn't take are sent again with backoff, a few
+ * times, and then dropped: the realtime path is best effort, and a Firehose batch must not fail over it.
+ */
+public class RealtimeForwarder {
+    static final int MAX_BATCH_RECORDS = 500;
+    // the request limit is 5 MiB of data and keys; base64 in the JSON body needs the rest of the 10 MiB payload
+    static final int MAX_BATCH_BYTES = 4 * 1024 * 1024;
+    static final int MAX_ATTEMPTS = 3;
+
+    private final KinesisClient kinesis;
+    private final String streamName;
+    private final long backoffMillis;
+    private final List<byte[]> batch = new ArrayList<>();
+    private final List<String> partitionKeys = new ArrayList<>();
+    private int batchBytes;
+    private int forwarded;
+    private int dropped;
+
+    public RealtimeForwarder(KinesisClient kinesis, String streamName, long backoffMillis) {
+        this.kinesis = kinesis;
+        this.streamName = streamName;
+        this.backoffMillis = backoffMillis;
+    }
+
+    public void add(String partitionKey, byte[] event) throws IOException {
+        int bytes = event.length + partitionKey.length();
+        if (batch.size() == MAX_BATCH_RECORDS || batchBytes + bytes > MAX_BATCH_BYTES) {
+            flush();
+        }
+        batch.add(event);
+        partitionKeys.add(partitionKey);
+        batchBytes += bytes;
+    }
+
+    /**
+     * Sends what is batched; only interruption is thrown, failures count as {@link #getDropped() dropped}.
+     */
+    public void flush() throws IOException {
+        List<byte[]> pending = new ArrayList<>(batch);
+        List<String> pendingKeys = new ArrayList<>(partitionKeys);
+        batch.clear();
+        partitionKeys.clear();
+        batchBytes = 0;
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            List<Integer> failed;
+            try {
+                failed = kinesis.putRecords(streamName, pending, pendingKeys);
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                dropped += pending.size();
+                return;
+            }
+            forwarded += pending.size() - failed.size();
+            if (failed.isEmpty()) {
+                return;
+            }
+            if (attempt == MAX_ATTEMPTS) {
+                dropped += failed.size();
+                return;
+            }
+            List<byte[]> retry = new ArrayList<>();
+            List<String> retryKeys = new ArrayList<>();
+            for (int index : failed) {
+                retry.add(pending.get(index));
+                retryKeys.add(pendingKeys.get(index));
+            }
+            pending = retry;
+            pendingKeys = retryKeys;
+            sleep(backoffMillis << (attempt - 1));
+        }
+    }
+
+    public int getForwarded() {
+        return forwarded;
+    }
+
+    /**
+     * Events Kinesis still hadn't taken after {@value #MAX_ATTEMPTS} attempts, or lost to a failed request.
+     */
+    public int getDropped() {
+        return dropped;
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off from the realtime stream");
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.myorg.realtime;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Requests per key over the last window, e.g. per client address over the last 60 seconds. The window is a ring
+ * of buckets, so it slides a bucket at a time and a key costs its ring, not its requests. Keys are spread over
+ * stripes, each with its own lock, so threads counting different keys rarely wait for each other; a single
+ * threaded caller takes an uncontended lock per request.
+ * <p>
+ * A key's count crossing the alert threshold is reported once by {@link #add}; it is reported again only after
+ * falling below half the threshold, so a sustained flood is one alert, not one per request.
+ * Each stripe tracks a bounded number of keys: a flood from more addresses than that counts the ones already
+ * tracked and {@link #getUntrackedRequests() tallies} the rest, until {@link #evictIdle()} frees idle ones.
+ */
+public class SlidingWindowCounter {
+    // least first: the fewest requests, then the greatest key, so ties at the cut are kept in key order
+    private static final Comparator<Count> LEAST_FIRST = Comparator.comparingLong(Count::getCount)
+            .thenComparing(Count::getKey, Comparator.reverseOrder());
+
+    private final Clock clock;
+    private final long bucketMillis;
+    private final int buckets;
+    private final long threshold;
+    private final int maxKeysPerStripe;
+    private final Stripe[] stripes;
+
+    /**
+     * @param stripes   rounded up to a power of two
+     * @param threshold count that raises an alert, 0 for none
+     */
+    public SlidingWindowCounter(Clock clock, long windowMillis, int buckets, long threshold, int maxKeys, int stripes) {
+        if (buckets < 1 || windowMillis < buckets) {
+            throw new IllegalArgumentException("A window of " + windowMillis + " ms can't have " + buckets + " buckets");
+        }
+        this.clock = clock;
+        this.bucketMillis = windowMillis / buckets;
+        this.buckets = buckets;
+        this.threshold = threshold;
+        int stripeCount = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.maxKeysPerStripe = Math.max(1, maxKeys / stripeCount);
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Counts a request of the key.
+     *
+     * @return whether it took the key's count to the alert threshold
+     */
+    public boolean add(String key) {
+        long epoch = clock.millis() / bucketMillis;
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            Window window = stripe.windows.get(key);
+            if (window == null) {
+                if (stripe.windows.size() >= maxKeysPerStripe) {
+                    stripe.untracked++;
+                    return false;
+                }
+                window = new Window(buckets, epoch);
+                stripe.windows.put(key, window);
+            }
+            window.advance(epoch);
+            window.counts[(int) (window.epoch % buckets)]++;
+            window.total++;
+            if (threshold > 0 && !window.alerting && window.total >= threshold) {
+                window.alerting = true;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Requests of the key in the window ending now.
+     */
+    public long count(String key) {
+        long epoch = clock.millis() / bucketMillis;
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            Window window = stripe.windows.get(key);
+            if (window == null) {
+                return 0;
+            }
+            window.advance(epoch);
+            return window.total;
+        }
+    }
+
+    /**
+     * The keys with the most requests in the window ending now, most first.
+     */
+    public List<Count> top(int n) {
+        long epoch = clock.millis() / bucketMillis;
+        PriorityQueue<Count> top = new PriorityQueue<>(n + 1, LEAST_FIRST);
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (Map.Entry<String, Window> entry : stripe.windows.entrySet()) {
+                    Window window = entry.getValue();
+                    window.advance(epoch);
+                    if (window.total == 0 || top.size() == n && window.total < top.peek().count) {
+                        continue;
+                    }
+                    Count count = new Count(entry.getKey(), window.total);
+                    if (top.size() < n) {
+                        top.add(count);
+                    } else if (LEAST_FIRST.compare(count, top.peek()) > 0) {
+                        top.poll();
+                        top.add(count);
+                    }
+                }
+            }
+        }
+
+        List<Count> sorted = new ArrayList<>(top);
+        sorted.sort(LEAST_FIRST.reversed());
+        return sorted;
+    }
+
+    /**
+     * Forgets the keys without requests in the window ending now.
+     *
+     * @return how many were forgotten
+     */
+    public int evictIdle() {
+        long epoch = clock.millis() / bucketMillis;
+        int evicted = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                Iterator<Window> windows = stripe.windows.values().iterator();
+                while (windows.hasNext()) {
+                    Window window = windows.next();
+                    window.advance(epoch);
+                    if (window.total == 0) {
+                        windows.remove();
+                        evicted++;
+                    }
+                }
+            }
+        }
+        return evicted;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.windows.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Requests of keys that found their stripe full, since the counter was created.
+     */
+    public long getUntrackedRequests() {
+        long untracked = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                untracked += stripe.untracked;
+            }
+        }
+        return untracked;
+    }
+
+    public long getWindowMillis() {
+        return bucketMillis * buckets;
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    private Stripe stripe(String key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    private static final class Stripe {
+        final Map<String, Window> windows = new HashMap<>();
+        long untracked;
+    }
+
+    private final class Window {
+        final long[] counts;
+        long epoch;
+        long total;
+        boolean alerting;
+
+        Window(int buckets, long epoch) {
+            this.counts = new long[buckets];
+            this.epoch = epoch;
+        }
+
+        /**
+         * Slides the window to end in the bucket of {@code now}, emptying the buckets that fell out of it.
+         * A clock stepping back counts into the latest bucket.
+         */
+        void advance(long now) {
+            if (now <= epoch) {
+                return;
+            }
+            if (now - epoch >= buckets) {
+                Arrays.fill(counts, 0);
+                total = 0;
+            } else {
+                for (long bucket = epoch + 1; bucket <= now; bucket++) {
+                    int index = (int) (bucket % buckets);
+                    total -= counts[index];
+                    counts[index] = 0;
+                }
+            }
+            epoch = now;
+            if (alerting && total * 2 < threshold) {
+                alerting = false;
+            }
+        }
+    }
+
+    public static final class Count {
+        private final String key;
+        private final long count;
+
+        Count(String key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + count;
+        }
+    }
+}
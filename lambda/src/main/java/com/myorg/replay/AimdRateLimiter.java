@@ -0,0 +1,71 @@
+package com.myorg.replay;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Documents per second a re-drive may send, adjusted like TCP's congestion window: each bulk request the
+ * domain takes in full raises the rate by a fixed step, each one it rejects, whole or for some items, cuts the
+ * rate by a factor. The rate ends up just under what the write queue drains, and backs off fast while an attack
+ * still fills it.
+ */
+class AimdRateLimiter {
+    private final double minRate;
+    private final double maxRate;
+    private final double increase;
+    private final double decreaseFactor;
+    private double rate;
+    private long nextSendNanos;
+    private long decreases;
+
+    AimdRateLimiter(double initialRate, double minRate, double maxRate, double increase, double decreaseFactor) {
+        if (minRate <= 0 || minRate > initialRate || initialRate > maxRate || increase <= 0
+                || decreaseFactor <= 0 || decreaseFactor >= 1) {
+            throw new IllegalArgumentException("AIMD needs 0 < min <= initial <= max, a positive increase and a factor"
+                    + " between 0 and 1");
+        }
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.increase = increase;
+        this.decreaseFactor = decreaseFactor;
+        this.rate = initialRate;
+        this.nextSendNanos = System.nanoTime();
+    }
+
+    /**
+     * Waits until {@code documents} more fit the current rate.
+     */
+    void acquire(int documents) throws InterruptedIOException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long sendAt = Math.max(now, nextSendNanos);
+            nextSendNanos = sendAt + (long) (documents * 1e9 / rate);
+            waitNanos = sendAt - now;
+        }
+        if (waitNanos > 0) {
+            try {
+                Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while pacing the re-drive");
+            }
+        }
+    }
+
+    synchronized void accepted() {
+        rate = Math.min(maxRate, rate + increase);
+    }
+
+    synchronized void rejected() {
+        rate = Math.max(minRate, rate * decreaseFactor);
+        decreases++;
+    }
+
+    synchronized double getRate() {
+        return rate;
+    }
+
+    synchronized long getDecreases() {
+        return decreases;
+    }
+}
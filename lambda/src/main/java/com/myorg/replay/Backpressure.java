@@ -0,0 +1,55 @@
+package com.myorg.replay;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Pause shared by every replay worker. A 429 from the domain, for a whole bulk request or for items in it,
+ * holds all workers back for a backoff that doubles while rejections continue and resets once a request
+ * goes through, so the replay settles at the rate the write queue drains instead of hammering it.
+ */
+class Backpressure {
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private long backoffMillis;
+    private long pausedUntilMillis;
+    private long rejections;
+
+    Backpressure(long initialBackoffMillis, long maxBackoffMillis) {
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.backoffMillis = initialBackoffMillis;
+    }
+
+    void await() throws InterruptedIOException {
+        long waitMillis;
+        synchronized (this) {
+            waitMillis = pausedUntilMillis - System.currentTimeMillis();
+        }
+        if (waitMillis > 0) {
+            try {
+                Thread.sleep(waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while backing off from the domain");
+            }
+        }
+    }
+
+    synchronized void rejected() {
+        rejections++;
+        long now = System.currentTimeMillis();
+        // workers rejected during the same pause don't stretch it further
+        if (pausedUntilMillis <= now) {
+            pausedUntilMillis = now + backoffMillis;
+            backoffMillis = Math.min(maxBackoffMillis, backoffMillis * 2);
+        }
+    }
+
+    synchronized void accepted() {
+        backoffMillis = initialBackoffMillis;
+    }
+
+    synchronized long getRejections() {
+        return rejections;
+    }
+}
@@ -0,0 +1,49 @@
+package com.myorg.replay;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.opensearch.OpenSearchException;
+
+import java.io.IOException;
+
+/**
+ * Replay checkpoints, one document per replay name in the domain's state index, next to the dashboards state.
+ */
+public class CheckpointStore {
+    static final String PATH_PREFIX = "/osdfw-state/_doc/replay-";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final OpenSearchClient client;
+
+    public CheckpointStore(OpenSearchClient client) {
+        this.client = client;
+    }
+
+    /**
+     * @return the stored checkpoint, or {@link ReplayCheckpoint#START} if there is none
+     */
+    public ReplayCheckpoint load(String name) throws IOException {
+        try {
+            return ReplayCheckpoint.fromJson(objectMapper.readTree(client.get(PATH_PREFIX + name)).path("_source"));
+        } catch (OpenSearchException e) {
+            if (e.getStatusCode() == 404) {
+                return ReplayCheckpoint.START;
+            }
+            throw e;
+        }
+    }
+
+    public void save(String name, ReplayCheckpoint checkpoint) throws IOException {
+        client.put(PATH_PREFIX + name, objectMapper.writeValueAsString(checkpoint.toJson(objectMapper)));
+    }
+
+    public void delete(String name) throws IOException {
+        try {
+            client.request("DELETE", PATH_PREFIX + name, new byte[0]);
+        } catch (OpenSearchException e) {
+            if (e.getStatusCode() != 404) {
+                throw e;
+            }
+        }
+    }
+}
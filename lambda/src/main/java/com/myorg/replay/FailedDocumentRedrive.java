@@ -0,0 +1,300 @@
+package com.myorg.replay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.myorg.aws.S3ObjectClient;
+import com.myorg.opensearch.BulkResponse;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.waflog.JsonRecordReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Re-drives the documents Firehose gave up on. When the domain rejects bulk writes for longer than the delivery
+ * stream retries, during an attack typically, Firehose writes each document to the backup bucket under
+ * {@value #FAILED_PREFIX}: a JSON line with the error and the transformed document as base64 {@code rawData}.
+ * Those objects are read in key order and their documents indexed again, paced by an {@link AimdRateLimiter}
+ * so the re-drive doesn't add to a write queue that is still full. Each document gets its WAF request id as
+ * its id, so re-driving an object twice, or after a run that stopped halfway, overwrites what the first wrote.
+ * The checkpoint moves past an object once all its documents are in, or refused for reasons other than load.
+ * A run told to stop halfway through an object leaves the checkpoint before it, for the next run to start over.
+ */
+public class FailedDocumentRedrive {
+    public static final String FAILED_PREFIX = ReplayConfig.DEFAULT_PREFIX + "elasticsearch-failed/";
+    static final int BULK_BYTES = 5 * 1024 * 1024;
+    // rounds in a row the domain rejects everything sent before the object is left for the next run
+    static final int MAX_REJECTED_ROUNDS = 30;
+    static final double INITIAL_RATE = 200;
+    static final double MIN_RATE = 5;
+    static final double MAX_RATE = 5000;
+    static final double RATE_INCREASE = 100;
+    static final double RATE_DECREASE_FACTOR = 0.5;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final S3ObjectClient s3;
+    private final OpenSearchClient openSearch;
+    private final String bucket;
+    private final AimdRateLimiter limiter;
+    private long documents;
+    private long failedDocuments;
+    private long unreadableRecords;
+    private BooleanSupplier stop = () -> false;
+    private boolean stopped;
+
+    public FailedDocumentRedrive(S3ObjectClient s3, OpenSearchClient openSearch, String bucket) {
+        this(s3, openSearch, bucket, new AimdRateLimiter(INITIAL_RATE, MIN_RATE, MAX_RATE, RATE_INCREASE, RATE_DECREASE_FACTOR));
+    }
+
+    FailedDocumentRedrive(S3ObjectClient s3, OpenSearchClient openSearch, String bucket, AimdRateLimiter limiter) {
+        this.s3 = s3;
+        this.openSearch = openSearch;
+        this.bucket = bucket;
+        this.limiter = limiter;
+    }
+
+    /**
+     * Re-drives the objects after the checkpoint until the listing is exhausted or {@code stop} says so, checked
+     * before each object and each bulk request, including the ones backing off from rejections. The checkpoint
+     * is saved to {@code store} after every object.
+     */
+    public Result run(ReplayCheckpoint from, BooleanSupplier stop, CheckpointStore store, String name) throws IOException {
+        this.stop = stop;
+        ReplayCheckpoint checkpoint = from;
+        long objects = 0;
+        String continuationToken = null;
+        do {
+            S3ObjectClient.ListPage page = s3.listObjects(bucket, FAILED_PREFIX,
+                    continuationToken == null ? from.getStartAfter() : null, continuationToken);
+            for (String key : page.getKeys()) {
+                if (stop.getAsBoolean()) {
+                    return new Result(this, objects, checkpoint, false);
+                }
+                long redriven = redriveObject(key);
+                if (stopped) {
+                    return new Result(this, objects, checkpoint, false);
+                }
+                objects++;
+                checkpoint = new ReplayCheckpoint(key, checkpoint.getObjects() + 1, checkpoint.getDocuments() + redriven);
+                store.save(name, checkpoint);
+            }
+            continuationToken = page.getNextContinuationToken();
+        } while (continuationToken != null);
+        return new Result(this, objects, checkpoint, true);
+    }
+
+    private long redriveObject(String key) throws IOException {
+        List<byte[]> pending = new ArrayList<>();
+        int pendingBytes = 0;
+        long indexed = 0;
+        try (InputStream in = JsonRecordReader.decompress(s3.getObject(bucket, key))) {
+            JsonRecordReader reader = new JsonRecordReader(in);
+            while (reader.next()) {
+                byte[] entry;
+                try {
+                    entry = bulkEntry(objectMapper.readTree(reader.buffer(), reader.offset(), reader.length()));
+                } catch (IOException | IllegalArgumentException e) {
+                    unreadableRecords++;
+                    continue;
+                }
+                pending.add(entry);
+                pendingBytes += entry.length;
+                if (pendingBytes >= BULK_BYTES) {
+                    indexed += send(pending);
+                    if (stopped) {
+                        return indexed;
+                    }
+                    pending.clear();
+                    pendingBytes = 0;
+                }
+            }
+        }
+        return indexed + send(pending);
+    }
+
+    /**
+     * The action and document lines of one failed record.
+     */
+    private byte[] bulkEntry(JsonNode failedRecord) throws IOException {
+        byte[] document = Base64.getDecoder().decode(failedRecord.path("rawData").asText());
+        JsonNode source = objectMapper.readTree(document);
+        if (!source.isObject()) {
+            throw new IOException("Not a document");
+        }
+        ObjectNode action = objectMapper.createObjectNode();
+        action.putObject("index")
+                .put("_index", failedRecord.path("esIndexName").asText(ReplayConfig.DEFAULT_INDEX))
+                .put("_id", documentId(source, document));
+
+        ByteArrayOutputStream entry = new ByteArrayOutputStream(document.length + 128);
+        objectMapper.writeValue(entry, action);
+        entry.write('\n');
+        objectMapper.writeValue(entry, source);
+        entry.write('\n');
+        return entry.toByteArray();
+    }
+
+    /**
+     * WAF's id of the request; a digest of the document if the transform dropped it. {@link ReplayEngine} ids
+     * documents the same way, so a replay and a re-drive of the same request overwrite each other.
+     */
+    static String documentId(JsonNode source, byte[] document) {
+        String requestId = source.at("/httpRequest/requestId").asText("");
+        if (!requestId.isEmpty()) {
+            return requestId;
+        }
+        // a delivered record may end in a line break, the same record read back from the backup doesn't
+        int length = document.length;
+        while (length > 0 && (document[length - 1] == '\n' || document[length - 1] == '\r')) {
+            length--;
+        }
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(document, 0, length);
+            byte[] digest = sha256.digest();
+            StringBuilder id = new StringBuilder("d");
+            for (int i = 0; i < 16; i++) {
+                id.append(String.format("%02x", digest[i]));
+            }
+            return id.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Sends the entries, at most as many per request as the current rate allows in a second, until each is
+     * indexed or refused for good, or the run is told to stop.
+     */
+    private long send(List<byte[]> entries) throws IOException {
+        List<byte[]> pending = new ArrayList<>(entries);
+        long indexed = 0;
+        int rejectedRounds = 0;
+        while (!pending.isEmpty()) {
+            if (stop.getAsBoolean()) {
+                stopped = true;
+                break;
+            }
+            int count = Math.min(pending.size(), Math.max(1, (int) limiter.getRate()));
+            List<byte[]> sending = new ArrayList<>(pending.subList(0, count));
+            List<byte[]> retry = new ArrayList<>();
+            limiter.acquire(count);
+            BulkResponse response = openSearch.bulk(ndjson(sending));
+            if (response.isRejected()) {
+                retry.addAll(sending);
+            } else {
+                for (int i = 0; i < response.getItemCount(); i++) {
+                    if (response.getItemStatus(i) == BulkResponse.TOO_MANY_REQUESTS) {
+                        retry.add(sending.get(i));
+                    } else if (response.isItemFailed(i)) {
+                        failedDocuments++;
+                    } else {
+                        indexed++;
+                    }
+                }
+            }
+
+            if (retry.isEmpty()) {
+                limiter.accepted();
+                rejectedRounds = 0;
+            } else {
+                limiter.rejected();
+                if (retry.size() < count) {
+                    rejectedRounds = 0;
+                } else if (++rejectedRounds >= MAX_REJECTED_ROUNDS) {
+                    throw new IOException(pending.size() + " documents still rejected after " + rejectedRounds + " rounds");
+                }
+            }
+            retry.addAll(pending.subList(count, pending.size()));
+            pending = retry;
+        }
+        documents += indexed;
+        return indexed;
+    }
+
+    private static byte[] ndjson(List<byte[]> entries) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entries.forEach(out::writeBytes);
+        return out.toByteArray();
+    }
+
+    public static final class Result {
+        private final ReplayCheckpoint checkpoint;
+        private final long objects;
+        private final long documents;
+        private final long failedDocuments;
+        private final long unreadableRecords;
+        private final long rejections;
+        private final double rate;
+        private final boolean complete;
+
+        private Result(FailedDocumentRedrive redrive, long objects, ReplayCheckpoint checkpoint, boolean complete) {
+            this.checkpoint = checkpoint;
+            this.objects = objects;
+            this.documents = redrive.documents;
+            this.failedDocuments = redrive.failedDocuments;
+            this.unreadableRecords = redrive.unreadableRecords;
+            this.rejections = redrive.limiter.getDecreases();
+            this.rate = redrive.limiter.getRate();
+            this.complete = complete;
+        }
+
+        public ReplayCheckpoint getCheckpoint() {
+            return checkpoint;
+        }
+
+        public long getObjects() {
+            return objects;
+        }
+
+        public long getDocuments() {
+            return documents;
+        }
+
+        /**
+         * Documents the domain refused for reasons other than load, mapping conflicts mostly.
+         */
+        public long getFailedDocuments() {
+            return failedDocuments;
+        }
+
+        public long getUnreadableRecords() {
+            return unreadableRecords;
+        }
+
+        /**
+         * Bulk requests the domain rejected, whole or in part, each of which cut the rate.
+         */
+        public long getRejections() {
+            return rejections;
+        }
+
+        /**
+         * Documents per second the re-drive had settled at when it finished.
+         */
+        public double getRate() {
+            return rate;
+        }
+
+        public boolean isComplete() {
+            return complete;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d objects, %,d documents; %,d rejections, settled at %,.0f docs/s;"
+                            + " %,d failed documents, %,d unreadable records; %s at %s",
+                    objects, documents, rejections, rate, failedDocuments, unreadableRecords,
+                    complete ? "complete" : "stopped", checkpoint);
+        }
+    }
+}
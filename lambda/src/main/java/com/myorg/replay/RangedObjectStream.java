@@ -0,0 +1,121 @@
+package com.myorg.replay;
+
+import com.myorg.aws.S3ObjectClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * An S3 object read as consecutive ranged GETs of {@code partSize} bytes, up to {@code readAhead} of them in
+ * flight while the caller decompresses the current one. A failed part is fetched again, so a dropped
+ * connection costs one part rather than the whole object, and memory stays at {@code readAhead} parts however
+ * large the object is.
+ */
+class RangedObjectStream extends InputStream {
+    static final int MAX_PART_ATTEMPTS = 3;
+
+    private final S3ObjectClient s3;
+    private final String bucket;
+    private final String key;
+    private final long size;
+    private final int partSize;
+    private final int readAhead;
+    private final Executor executor;
+    private final Deque<CompletableFuture<byte[]>> parts = new ArrayDeque<>();
+    private long nextPartStart;
+    private byte[] current = new byte[0];
+    private int position;
+
+    RangedObjectStream(S3ObjectClient s3, String bucket, String key, long size, int partSize, int readAhead, Executor executor) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.key = key;
+        this.size = size;
+        this.partSize = partSize;
+        this.readAhead = readAhead;
+        this.executor = executor;
+        fillReadAhead();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        int read = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public void close() {
+        parts.forEach(part -> part.cancel(false));
+        parts.clear();
+    }
+
+    private boolean ensureAvailable() throws IOException {
+        while (position == current.length) {
+            if (parts.isEmpty()) {
+                return false;
+            }
+            current = await(parts.removeFirst());
+            position = 0;
+            fillReadAhead();
+        }
+        return true;
+    }
+
+    private void fillReadAhead() {
+        while (parts.size() < readAhead && nextPartStart < size) {
+            long first = nextPartStart;
+            long last = Math.min(size, first + partSize) - 1;
+            nextPartStart = last + 1;
+            parts.addLast(CompletableFuture.supplyAsync(() -> fetch(first, last), executor));
+        }
+    }
+
+    private byte[] fetch(long first, long last) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return s3.getObjectRange(bucket, key, first, last);
+            } catch (IOException e) {
+                if (attempt == MAX_PART_ATTEMPTS) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    private static byte[] await(CompletableFuture<byte[]> part) throws IOException {
+        try {
+            return part.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException("Ranged GET failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading an archived object");
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.myorg.replay;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.myorg.aws.Priming;
+import com.myorg.aws.S3ObjectClient;
+import com.myorg.opensearch.OpenSearchClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Invoked on a schedule to re-drive what Firehose wrote under {@link FailedDocumentRedrive#FAILED_PREFIX} since
+ * the last run. The event is ignored; progress is kept as the {@value #CHECKPOINT_NAME} replay checkpoint, so a
+ * run that stops short of its timeout, or fails on a domain still rejecting writes, is picked up by the next.
+ */
+public class RedriveHandler implements RequestStreamHandler {
+    static final String CHECKPOINT_NAME = "redrive";
+    static final long STOP_MARGIN_MILLIS = 60_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final S3ObjectClient s3;
+    private final OpenSearchClient openSearch;
+    private final Map<String, String> environment;
+    private final long stopMarginMillis;
+
+    public RedriveHandler() {
+        this(S3ObjectClient.fromEnvironment(System.getenv()), OpenSearchClient.fromEnvironment(System.getenv()),
+                System.getenv(), STOP_MARGIN_MILLIS);
+        Priming.prime(System.getenv(), Priming::primeHttpStack);
+    }
+
+    public RedriveHandler(S3ObjectClient s3, OpenSearchClient openSearch, Map<String, String> environment,
+                          long stopMarginMillis) {
+        this.s3 = s3;
+        this.openSearch = openSearch;
+        this.environment = environment;
+        this.stopMarginMillis = stopMarginMillis;
+    }
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        CheckpointStore store = new CheckpointStore(openSearch);
+        ReplayCheckpoint from = store.load(CHECKPOINT_NAME);
+
+        FailedDocumentRedrive.Result result = new FailedDocumentRedrive(s3, openSearch, environment.get(ReplayConfig.BUCKET_ENV))
+                .run(from, () -> context.getRemainingTimeInMillis() < stopMarginMillis, store, CHECKPOINT_NAME);
+        context.getLogger().log("Re-drive after " + from + ": " + result);
+
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("complete", result.isComplete());
+        response.put("objects", result.getObjects());
+        response.put("documents", result.getDocuments());
+        response.put("failedDocuments", result.getFailedDocuments());
+        response.put("rejections", result.getRejections());
+        response.set("checkpoint", result.getCheckpoint().toJson(objectMapper));
+        objectMapper.writeValue(output, response);
+    }
+}
@@ -0,0 +1,107 @@
+package com.myorg.replay;
+
+import com.myorg.opensearch.BulkResponse;
+import com.myorg.opensearch.OpenSearchClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bulk-indexes the documents of one object under ids derived from it. Rejections, whole or per item, go
+ * through the shared {@link Backpressure} and are sent again; other item failures, such as mapping
+ * conflicts, are counted and dropped.
+ */
+class ReplayBulkWriter {
+    static final int MAX_ATTEMPTS = 10;
+
+    private final OpenSearchClient client;
+    private final String index;
+    private final int bulkBytes;
+    private final Backpressure backpressure;
+    private final List<byte[]> actions = new ArrayList<>();
+    private final List<byte[]> documents = new ArrayList<>();
+    private int bufferedBytes;
+    private long indexed;
+    private long failed;
+
+    ReplayBulkWriter(OpenSearchClient client, String index, int bulkBytes, Backpressure backpressure) {
+        this.client = client;
+        this.index = index;
+        this.bulkBytes = bulkBytes;
+        this.backpressure = backpressure;
+    }
+
+    void add(String id, byte[] document) throws IOException {
+        byte[] action = ("{\"index\":{\"_index\":\"" + index + "\",\"_id\":\"" + id + "\"}}\n").getBytes(StandardCharsets.UTF_8);
+        actions.add(action);
+        documents.add(document);
+        bufferedBytes += action.length + document.length + 1;
+        if (bufferedBytes >= bulkBytes) {
+            flush();
+        }
+    }
+
+    void flush() throws IOException {
+        List<byte[]> pendingActions = new ArrayList<>(actions);
+        List<byte[]> pendingDocuments = new ArrayList<>(documents);
+        actions.clear();
+        documents.clear();
+        bufferedBytes = 0;
+
+        for (int attempt = 1; !pendingActions.isEmpty(); attempt++) {
+            if (attempt > MAX_ATTEMPTS) {
+                throw new IOException(pendingActions.size() + " documents still rejected after " + MAX_ATTEMPTS + " attempts");
+            }
+            backpressure.await();
+            BulkResponse response = client.bulk(ndjson(pendingActions, pendingDocuments));
+            if (response.isRejected()) {
+                backpressure.rejected();
+                continue;
+            }
+
+            List<byte[]> retryActions = new ArrayList<>();
+            List<byte[]> retryDocuments = new ArrayList<>();
+            for (int i = 0; i < response.getItemCount(); i++) {
+                if (response.getItemStatus(i) == BulkResponse.TOO_MANY_REQUESTS) {
+                    retryActions.add(pendingActions.get(i));
+                    retryDocuments.add(pendingDocuments.get(i));
+                } else if (response.isItemFailed(i)) {
+                    failed++;
+                } else {
+                    indexed++;
+                }
+            }
+            if (retryActions.isEmpty()) {
+                backpressure.accepted();
+            } else {
+                backpressure.rejected();
+            }
+            pendingActions = retryActions;
+            pendingDocuments = retryDocuments;
+        }
+    }
+
+    long getIndexed() {
+        return indexed;
+    }
+
+    long getFailed() {
+        return failed;
+    }
+
+    private static byte[] ndjson(List<byte[]> actions, List<byte[]> documents) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < actions.size(); i++) {
+            out.writeBytes(actions.get(i));
+            byte[] document = documents.get(i);
+            out.writeBytes(document);
+            if (document.length == 0 || document[document.length - 1] != '\n') {
+                out.write('\n');
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,78 @@
+package com.myorg.replay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Objects;
+
+/**
+ * How far a replay got: every object up to and including {@link #getStartAfter()} has been indexed, in key
+ * order, which is the order S3 lists them in. Objects after it that finished before the replay stopped are
+ * replayed again on resume; their document ids are derived from the object, so they are overwritten, not
+ * duplicated.
+ */
+public final class ReplayCheckpoint {
+    public static final ReplayCheckpoint START = new ReplayCheckpoint(null, 0, 0);
+
+    private final String startAfter;
+    private final long objects;
+    private final long documents;
+
+    public ReplayCheckpoint(String startAfter, long objects, long documents) {
+        this.startAfter = startAfter;
+        this.objects = objects;
+        this.documents = documents;
+    }
+
+    static ReplayCheckpoint fromJson(JsonNode json) {
+        JsonNode startAfter = json.path("startAfter");
+        return new ReplayCheckpoint(startAfter.isTextual() ? startAfter.asText() : null,
+                json.path("objects").asLong(), json.path("documents").asLong());
+    }
+
+    ObjectNode toJson(ObjectMapper objectMapper) {
+        ObjectNode json = objectMapper.createObjectNode();
+        json.put("startAfter", startAfter);
+        json.put("objects", objects);
+        json.put("documents", documents);
+        return json;
+    }
+
+    /**
+     * The last key replayed without gaps before it, or null at the start.
+     */
+    public String getStartAfter() {
+        return startAfter;
+    }
+
+    public long getObjects() {
+        return objects;
+    }
+
+    public long getDocuments() {
+        return documents;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ReplayCheckpoint)) {
+            return false;
+        }
+        ReplayCheckpoint that = (ReplayCheckpoint) o;
+        return objects == that.objects && documents == that.documents && Objects.equals(startAfter, that.startAfter);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(startAfter, objects, documents);
+    }
+
+    @Override
+    public String toString() {
+        return objects + " objects, " + documents + " documents, up to " + (startAfter == null ? "the start" : startAfter);
+    }
+}
@@ -0,0 +1,159 @@
+package com.myorg.replay;
+
+import java.util.Map;
+
+/**
+ * What a replay reads and where it writes, and how hard it pushes. Read from the Lambda environment and the
+ * invocation, see {@link #builder(Map)}.
+ */
+public final class ReplayConfig {
+    public static final String BUCKET_ENV = "LOG_BUCKET";
+    public static final String PARALLELISM_ENV = "REPLAY_PARALLELISM";
+    public static final String DEFAULT_PREFIX = "/log";
+    public static final String DEFAULT_INDEX = "awswaf";
+
+    private final String bucket;
+    private final String prefix;
+    private final String index;
+    private final int parallelism;
+    private final int partSize;
+    private final int readAhead;
+    private final int bulkBytes;
+    private final long checkpointIntervalMillis;
+
+    private ReplayConfig(Builder builder) {
+        this.bucket = builder.bucket;
+        this.prefix = builder.prefix;
+        this.index = builder.index;
+        this.parallelism = builder.parallelism;
+        this.partSize = builder.partSize;
+        this.readAhead = builder.readAhead;
+        this.bulkBytes = builder.bulkBytes;
+        this.checkpointIntervalMillis = builder.checkpointIntervalMillis;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Defaults from the environment: the bucket the function is attached to and its parallelism.
+     */
+    public static Builder builder(Map<String, String> environment) {
+        Builder builder = new Builder().bucket(environment.get(BUCKET_ENV));
+        String parallelism = environment.get(PARALLELISM_ENV);
+        if (parallelism != null && !parallelism.isBlank()) {
+            builder.parallelism(Integer.parseInt(parallelism.trim()));
+        }
+        return builder;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    /**
+     * Key prefix of the objects to replay; the Firehose backup prefix by default, or a narrower one such as
+     * {@code /log2022/03/} to replay a month.
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * The write alias by default; a new index when rebuilding under changed mappings.
+     */
+    public String getIndex() {
+        return index;
+    }
+
+    /**
+     * Objects replayed at once.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * Ranged GETs in flight per object.
+     */
+    public int getReadAhead() {
+        return readAhead;
+    }
+
+    public int getBulkBytes() {
+        return bulkBytes;
+    }
+
+    public long getCheckpointIntervalMillis() {
+        return checkpointIntervalMillis;
+    }
+
+    public static final class Builder {
+        private String bucket;
+        private String prefix = DEFAULT_PREFIX;
+        private String index = DEFAULT_INDEX;
+        private int parallelism = 4;
+        private int partSize = 8 * 1024 * 1024;
+        private int readAhead = 2;
+        private int bulkBytes = 5 * 1024 * 1024;
+        private long checkpointIntervalMillis = 10_000;
+
+        private Builder() {
+        }
+
+        public Builder bucket(String bucket) {
+            this.bucket = bucket;
+            return this;
+        }
+
+        public Builder prefix(String prefix) {
+            this.prefix = prefix;
+            return this;
+        }
+
+        public Builder index(String index) {
+            this.index = index;
+            return this;
+        }
+
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public Builder partSize(int partSize) {
+            this.partSize = partSize;
+            return this;
+        }
+
+        public Builder readAhead(int readAhead) {
+            this.readAhead = readAhead;
+            return this;
+        }
+
+        public Builder bulkBytes(int bulkBytes) {
+            this.bulkBytes = bulkBytes;
+            return this;
+        }
+
+        public Builder checkpointIntervalMillis(long checkpointIntervalMillis) {
+            this.checkpointIntervalMillis = checkpointIntervalMillis;
+            return this;
+        }
+
+        public ReplayConfig build() {
+            if (bucket == null || bucket.isBlank()) {
+                throw new IllegalArgumentException("A bucket to replay from is required");
+            }
+            if (parallelism < 1 || partSize < 1 || readAhead < 1 || bulkBytes < 1) {
+                throw new IllegalArgumentException("Parallelism, part size, read-ahead and bulk size must be positive");
+            }
+            return new ReplayConfig(this);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.myorg.replay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.aws.S3ObjectClient;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.rollup.S3RollupHandler;
+import com.myorg.transform.TransformerConfig;
+import com.myorg.transform.WafLogTransformer;
+import com.myorg.waflog.JsonRecordReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Rebuilds the WAF log indices from the Firehose backup: lists the objects under the prefix in key order,
+ * replays a bounded number of them at once, each read as ranged GETs and decompressed as a stream, puts every
+ * record through the current transformer and bulk-indexes it with backpressure from the domain's 429s.
+ * Documents get the ids {@link FailedDocumentRedrive} gives them, so replaying an object twice, or replaying what
+ * the re-drive already indexed, overwrites the documents.
+ * The backup holds records as they were transformed when delivered: newly dropped fields go, but headers that
+ * weren't flattened then can't be flattened now.
+ */
+public class ReplayEngine {
+    static final long INITIAL_BACKOFF_MILLIS = 100;
+    static final long MAX_BACKOFF_MILLIS = 20_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final S3ObjectClient s3;
+    private final OpenSearchClient openSearch;
+    private final TransformerConfig transformerConfig;
+    private final ReplayConfig config;
+    private final Backpressure backpressure;
+
+    public ReplayEngine(S3ObjectClient s3, OpenSearchClient openSearch, TransformerConfig transformerConfig, ReplayConfig config) {
+        this(s3, openSearch, transformerConfig, config, INITIAL_BACKOFF_MILLIS);
+    }
+
+    ReplayEngine(S3ObjectClient s3, OpenSearchClient openSearch, TransformerConfig transformerConfig, ReplayConfig config,
+                 long initialBackoffMillis) {
+        this.s3 = s3;
+        this.openSearch = openSearch;
+        this.transformerConfig = transformerConfig;
+        this.config = config;
+        this.backpressure = new Backpressure(initialBackoffMillis, MAX_BACKOFF_MILLIS);
+    }
+
+    /**
+     * Replays the objects after the checkpoint until the listing is exhausted or {@code stop} says so, checked
+     * before each object is started. Checkpoints go to {@code store} as the replay advances, at most every
+     * {@link ReplayConfig#getCheckpointIntervalMillis()}, and once at the end.
+     *
+     * @param store where to keep checkpoints under {@code name}, or null
+     */
+    public Result run(ReplayCheckpoint from, BooleanSupplier stop, CheckpointStore store, String name) throws IOException {
+        long started = System.nanoTime();
+        Progress progress = new Progress(from);
+        Semaphore slots = new Semaphore(config.getParallelism());
+        ExecutorService objects = Executors.newFixedThreadPool(config.getParallelism());
+        ExecutorService parts = Executors.newFixedThreadPool(config.getParallelism() * config.getReadAhead());
+        boolean complete = false;
+        long lastSaved = System.currentTimeMillis();
+        try {
+            String continuationToken = null;
+            listing:
+            do {
+                S3ObjectClient.ListPage page = s3.listObjects(config.getBucket(), config.getPrefix(),
+                        continuationToken == null ? from.getStartAfter() : null, continuationToken);
+                for (int i = 0; i < page.getKeys().size(); i++) {
+                    if (stop.getAsBoolean() || progress.failure() != null) {
+                        break listing;
+                    }
+                    String key = page.getKeys().get(i);
+                    long size = page.getSizes().get(i);
+                    acquire(slots);
+                    long sequence = progress.started(key, S3RollupHandler.isSkipped(key));
+                    if (S3RollupHandler.isSkipped(key)) {
+                        slots.release();
+                        continue;
+                    }
+                    objects.execute(() -> {
+                        try {
+                            progress.completed(sequence, replayObject(key, size, parts, progress), size);
+                        } catch (IOException | RuntimeException e) {
+                            progress.failed(key, e);
+                        } finally {
+                            slots.release();
+                        }
+                    });
+                    if (store != null && System.currentTimeMillis() - lastSaved >= config.getCheckpointIntervalMillis()) {
+                        store.save(name, progress.checkpoint());
+                        lastSaved = System.currentTimeMillis();
+                    }
+                }
+                continuationToken = page.getNextContinuationToken();
+                complete = continuationToken == null;
+            } while (continuationToken != null);
+        } finally {
+            objects.shutdown();
+            awaitTermination(objects);
+            parts.shutdownNow();
+        }
+
+        complete &= progress.failure() == null && !progress.hasPending();
+        if (store != null) {
+            store.save(name, progress.checkpoint());
+        }
+        if (progress.failure() != null) {
+            throw new IOException("Replay stopped at " + progress.checkpoint().getStartAfter() + ": " + progress.failure().getMessage(),
+                    progress.failure());
+        }
+        return new Result(progress, backpressure.getRejections(), System.nanoTime() - started, complete);
+    }
+
+    private long replayObject(String key, long size, ExecutorService parts, Progress progress) throws IOException {
+        WafLogTransformer transformer = new WafLogTransformer(transformerConfig);
+        ReplayBulkWriter writer = new ReplayBulkWriter(openSearch, config.getIndex(), config.getBulkBytes(), backpressure);
+        try (InputStream in = JsonRecordReader.decompress(
+                new RangedObjectStream(s3, config.getBucket(), key, size, config.getPartSize(), config.getReadAhead(), parts))) {
+            JsonRecordReader reader = new JsonRecordReader(in);
+            while (reader.next()) {
+                byte[] record = Arrays.copyOfRange(reader.buffer(), reader.offset(), reader.offset() + reader.length());
+                byte[] document;
+                JsonNode source;
+                try {
+                    document = transformer.transform(record);
+                    source = objectMapper.readTree(document);
+                } catch (IOException e) {
+                    progress.unreadable.incrementAndGet();
+                    continue;
+                }
+                writer.add(FailedDocumentRedrive.documentId(source, document), document);
+            }
+        }
+        writer.flush();
+        progress.failedDocuments.addAndGet(writer.getFailed());
+        return writer.getIndexed();
+    }
+
+    private static void acquire(Semaphore slots) throws InterruptedIOException {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a replay slot");
+        }
+    }
+
+    private static void awaitTermination(ExecutorService executor) throws InterruptedIOException {
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // objects in flight finish so the checkpoint can move past them
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for objects in flight");
+        }
+    }
+
+    /**
+     * Objects in flight by listing order; the checkpoint moves past an object once it and every object before
+     * it are done.
+     */
+    private static final class Progress {
+        private final TreeMap<Long, String> pending = new TreeMap<>();
+        private final Map<Long, long[]> done = new TreeMap<>();
+        private final AtomicLong unreadable = new AtomicLong();
+        private final AtomicLong failedDocuments = new AtomicLong();
+        private String startAfter;
+        private long objects;
+        private long documents;
+        private long objectsThisRun;
+        private long documentsThisRun;
+        private long bytesThisRun;
+        private long nextSequence;
+        private Exception failure;
+
+        Progress(ReplayCheckpoint from) {
+            this.startAfter = from.getStartAfter();
+            this.objects = from.getObjects();
+            this.documents = from.getDocuments();
+        }
+
+        synchronized long started(String key, boolean skipped) {
+            long sequence = nextSequence++;
+            pending.put(sequence, key);
+            if (skipped) {
+                done.put(sequence, new long[]{0, 0});
+                advance();
+            }
+            return sequence;
+        }
+
+        synchronized void completed(long sequence, long indexed, long bytes) {
+            objectsThisRun++;
+            documentsThisRun += indexed;
+            bytesThisRun += bytes;
+            done.put(sequence, new long[]{1, indexed});
+            advance();
+        }
+
+        synchronized void failed(String key, Exception e) {
+            if (failure == null) {
+                failure = new IOException("Replaying " + key + " failed", e);
+            }
+        }
+
+        private void advance() {
+            while (!pending.isEmpty() && done.containsKey(pending.firstKey())) {
+                Map.Entry<Long, String> first = pending.pollFirstEntry();
+                long[] counts = done.remove(first.getKey());
+                startAfter = first.getValue();
+                objects += counts[0];
+                documents += counts[1];
+            }
+        }
+
+        synchronized ReplayCheckpoint checkpoint() {
+            return new ReplayCheckpoint(startAfter, objects, documents);
+        }
+
+        synchronized boolean hasPending() {
+            return !pending.isEmpty();
+        }
+
+        synchronized Exception failure() {
+            return failure;
+        }
+    }
+
+    public static final class Result {
+        private final ReplayCheckpoint checkpoint;
+        private final long objects;
+        private final long documents;
+        private final long bytes;
+        private final long unreadableRecords;
+        private final long failedDocuments;
+        private final long rejections;
+        private final long elapsedNanos;
+        private final boolean complete;
+
+        private Result(Progress progress, long rejections, long elapsedNanos, boolean complete) {
+            synchronized (progress) {
+                this.checkpoint = progress.checkpoint();
+                this.objects = progress.objectsThisRun;
+                this.documents = progress.documentsThisRun;
+                this.bytes = progress.bytesThisRun;
+            }
+            this.unreadableRecords = progress.unreadable.get();
+            this.failedDocuments = progress.failedDocuments.get();
+            this.rejections = rejections;
+            this.elapsedNanos = elapsedNanos;
+            this.complete = complete;
+        }
+
+        public ReplayCheckpoint getCheckpoint() {
+            return checkpoint;
+        }
+
+        public long getObjects() {
+            return objects;
+        }
+
+        public long getDocuments() {
+            return documents;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getUnreadableRecords() {
+            return unreadableRecords;
+        }
+
+        /**
+         * Documents the domain refused for reasons other than load, mapping conflicts mostly.
+         */
+        public long getFailedDocuments() {
+            return failedDocuments;
+        }
+
+        public long getRejections() {
+            return rejections;
+        }
+
+        /**
+         * Every object under the prefix has been replayed; otherwise invoke again to resume.
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        public double getDocsPerSecond() {
+            return documents * 1_000_000_000d / Math.max(elapsedNanos, 1);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d objects (%,.1f MB), %,d documents in %.1f s: %,.0f docs/s, %,.1f MB/s;"
+                            + " %,d rejections, %,d failed documents, %,d unreadable records; %s at %s",
+                    objects, bytes / 1_048_576d, documents, elapsedNanos / 1e9, getDocsPerSecond(),
+                    bytes / 1_048_576d * 1e9 / Math.max(elapsedNanos, 1), rejections, failedDocuments, unreadableRecords,
+                    complete ? "complete" : "stopped", checkpoint);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.myorg.replay;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.myorg.aws.Priming;
+import com.myorg.aws.S3ObjectClient;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.transform.TransformerConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Invoked by hand to rebuild the WAF log indices from the backup, e.g. after resizing the domain or changing
+ * mappings:
+ * <pre>
+ * {"name": "2022-03", "prefix": "/log2022/03/", "index": "awswaf", "restart": false}
+ * </pre>
+ * All fields are optional. A replay that doesn't finish before the function times out stops starting new
+ * objects, saves its checkpoint and answers {@code "complete": false}; invoke it again with the same name to
+ * resume. {@code restart} forgets the checkpoint first.
+ */
+public class ReplayHandler implements RequestStreamHandler {
+    static final long STOP_MARGIN_MILLIS = 180_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final S3ObjectClient s3;
+    private final OpenSearchClient openSearch;
+    private final TransformerConfig transformerConfig;
+    private final Map<String, String> environment;
+    private final long stopMarginMillis;
+
+    public ReplayHandler() {
+        this(S3ObjectClient.fromEnvironment(System.getenv()), OpenSearchClient.fromEnvironment(System.getenv()),
+                TransformerConfig.fromEnvironment(System.getenv()), System.getenv(), STOP_MARGIN_MILLIS);
+        Priming.prime(System.getenv(), Priming::primeHttpStack);
+    }
+
+    public ReplayHandler(S3ObjectClient s3, OpenSearchClient openSearch, TransformerConfig transformerConfig,
+                         Map<String, String> environment, long stopMarginMillis) {
+        this.s3 = s3;
+        this.openSearch = openSearch;
+        this.transformerConfig = transformerConfig;
+        this.environment = environment;
+        this.stopMarginMillis = stopMarginMillis;
+    }
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        JsonNode event = objectMapper.readTree(input);
+        String name = event.path("name").asText("default");
+        ReplayConfig.Builder config = ReplayConfig.builder(environment)
+                .prefix(event.path("prefix").asText(ReplayConfig.DEFAULT_PREFIX))
+                .index(event.path("index").asText(ReplayConfig.DEFAULT_INDEX));
+        if (event.hasNonNull("bucket")) {
+            config.bucket(event.get("bucket").asText());
+        }
+
+        CheckpointStore store = new CheckpointStore(openSearch);
+        if (event.path("restart").asBoolean()) {
+            store.delete(name);
+        }
+        ReplayCheckpoint from = store.load(name);
+        context.getLogger().log("Replay " + name + " resuming after " + from);
+
+        ReplayEngine.Result result = new ReplayEngine(s3, openSearch, transformerConfig, config.build())
+                .run(from, () -> context.getRemainingTimeInMillis() < stopMarginMillis, store, name);
+        context.getLogger().log("Replay " + name + ": " + result);
+
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("name", name);
+        response.put("complete", result.isComplete());
+        response.put("objects", result.getObjects());
+        response.put("documents", result.getDocuments());
+        response.put("failedDocuments", result.getFailedDocuments());
+        response.set("checkpoint", result.getCheckpoint().toJson(objectMapper));
+        objectMapper.writeValue(output, response);
+    }
+}
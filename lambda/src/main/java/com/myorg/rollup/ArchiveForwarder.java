@@ -0,0 +1,91 @@
+package com.myorg.rollup;
+
+import com.myorg.aws.FirehoseClient;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Forwards the records of backup objects to the archive delivery stream, which converts them to Parquet and
+ * partitions them by date, hour, WebACL and action. The OpenSearch delivery streams can't: Firehose only
+ * converts formats and partitions dynamically for plain S3 destinations, not for the backup of another one.
+ * Records are sent in {@code PutRecordBatch} requests within Firehose's limits; the ones it doesn't take are
+ * sent again with backoff, a few times, before the object fails.
+ */
+public class ArchiveForwarder {
+    static final int MAX_BATCH_RECORDS = 500;
+    // the request limit is 4 MiB; base64 and the JSON envelope need the rest
+    static final int MAX_BATCH_BYTES = 3 * 1024 * 1024 - 64 * 1024;
+    static final int MAX_RECORD_BYTES = 1000 * 1024;
+    static final int MAX_ATTEMPTS = 4;
+
+    private final FirehoseClient firehose;
+    private final String deliveryStreamName;
+    private final long backoffMillis;
+    private final List<byte[]> batch = new ArrayList<>();
+    private int batchBytes;
+    private int forwarded;
+    private int oversized;
+
+    public ArchiveForwarder(FirehoseClient firehose, String deliveryStreamName, long backoffMillis) {
+        this.firehose = firehose;
+        this.deliveryStreamName = deliveryStreamName;
+        this.backoffMillis = backoffMillis;
+    }
+
+    public void add(byte[] record) throws IOException {
+        if (record.length > MAX_RECORD_BYTES) {
+            oversized++;
+            return;
+        }
+        if (batch.size() == MAX_BATCH_RECORDS || batchBytes + record.length > MAX_BATCH_BYTES) {
+            flush();
+        }
+        batch.add(record);
+        batchBytes += record.length;
+    }
+
+    public void flush() throws IOException {
+        List<byte[]> pending = new ArrayList<>(batch);
+        batch.clear();
+        batchBytes = 0;
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            List<Integer> failed = firehose.putRecordBatch(deliveryStreamName, pending);
+            forwarded += pending.size() - failed.size();
+            if (failed.isEmpty()) {
+                return;
+            }
+            if (attempt == MAX_ATTEMPTS) {
+                throw new IOException(failed.size() + " records were not taken by " + deliveryStreamName
+                        + " after " + MAX_ATTEMPTS + " attempts");
+            }
+            List<byte[]> retry = new ArrayList<>();
+            failed.forEach(index -> retry.add(pending.get(index)));
+            pending.clear();
+            pending.addAll(retry);
+            sleep(backoffMillis << (attempt - 1));
+        }
+    }
+
+    public int getForwarded() {
+        return forwarded;
+    }
+
+    /**
+     * Records above Firehose's 1000 KiB limit, left out of the archive.
+     */
+    public int getOversized() {
+        return oversized;
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off from the archive stream");
+        }
+    }
+}
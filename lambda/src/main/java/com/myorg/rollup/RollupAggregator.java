@@ -0,0 +1,170 @@
+package com.myorg.rollup;
+
+import com.myorg.waflog.Utf8Field;
+import com.myorg.waflog.WafLogRecord;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Counts parsed WAF log records into per-minute and per-hour buckets, in total and per terminating rule,
+ * country and client IP. Client IPs are the only unbounded dimension, so each bucket keeps its top N and
+ * folds the rest into {@value RollupDocument#OTHER_VALUE}. Not thread safe.
+ */
+public class RollupAggregator {
+    public static final int DEFAULT_TOP_N = 100;
+
+    // WAF logs "-" for values it could not determine, e.g. the country of a private address
+    private static final String UNKNOWN = "-";
+    private static final String[] DIMENSIONS = {
+            RollupDocument.DIMENSION_TOTAL,
+            RollupDocument.DIMENSION_RULE,
+            RollupDocument.DIMENSION_COUNTRY,
+            RollupDocument.DIMENSION_CLIENT_IP
+    };
+
+    private final int topN;
+    private final Map<Key, RollupDocument> documents = new HashMap<>();
+    private long recordCount;
+    private long skippedCount;
+
+    public RollupAggregator() {
+        this(DEFAULT_TOP_N);
+    }
+
+    public RollupAggregator(int topN) {
+        if (topN < 1) {
+            throw new IllegalArgumentException("topN must be at least 1, got " + topN);
+        }
+        this.topN = topN;
+    }
+
+    public void add(WafLogRecord record) {
+        if (!record.hasTimestamp()) {
+            skippedCount++;
+            return;
+        }
+        recordCount++;
+
+        String webaclId = valueOf(record.getWebaclId());
+        String action = valueOf(record.getAction());
+        String[] values = {
+                "",
+                valueOf(record.getTerminatingRuleId()),
+                valueOf(record.getCountry()),
+                valueOf(record.getClientIp())
+        };
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            long bucketStart = granularity.bucketStart(record.getTimestamp());
+            for (int i = 0; i < DIMENSIONS.length; i++) {
+                Key key = new Key(granularity, bucketStart, webaclId, action, DIMENSIONS[i], values[i]);
+                RollupDocument document = documents.get(key);
+                if (document == null) {
+                    documents.put(key, new RollupDocument(granularity, bucketStart, webaclId, action, DIMENSIONS[i], values[i], 1));
+                } else {
+                    document.add(1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts a record that could not be parsed.
+     */
+    public void skip() {
+        skippedCount++;
+    }
+
+    /**
+     * The aggregates so far, with client IPs cut down to the top N of each bucket.
+     */
+    public List<RollupDocument> documents() {
+        List<RollupDocument> result = new ArrayList<>();
+        Map<Key, List<RollupDocument>> clientIpsByBucket = new LinkedHashMap<>();
+        for (RollupDocument document : documents.values()) {
+            if (RollupDocument.DIMENSION_CLIENT_IP.equals(document.getDimension())) {
+                Key bucket = new Key(document.getGranularity(), document.getBucketStart(), document.getWebaclId(),
+                        document.getAction(), RollupDocument.DIMENSION_CLIENT_IP, "");
+                clientIpsByBucket.computeIfAbsent(bucket, b -> new ArrayList<>()).add(document);
+            } else {
+                result.add(document);
+            }
+        }
+
+        for (Map.Entry<Key, List<RollupDocument>> bucket : clientIpsByBucket.entrySet()) {
+            List<RollupDocument> clientIps = bucket.getValue();
+            if (clientIps.size() <= topN) {
+                result.addAll(clientIps);
+                continue;
+            }
+            clientIps.sort(Comparator.comparingLong(RollupDocument::getCount).reversed()
+                    .thenComparing(RollupDocument::getValue));
+            result.addAll(clientIps.subList(0, topN));
+
+            long other = 0;
+            for (RollupDocument document : clientIps.subList(topN, clientIps.size())) {
+                other += document.getCount();
+            }
+            Key key = bucket.getKey();
+            result.add(new RollupDocument(key.granularity, key.bucketStart, key.webaclId, key.action,
+                    RollupDocument.DIMENSION_CLIENT_IP, RollupDocument.OTHER_VALUE, other));
+        }
+        return result;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Records left out, unparseable or without a timestamp.
+     */
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    private static String valueOf(Utf8Field field) {
+        return field.isPresent() && field.length() > 0 ? field.toString() : UNKNOWN;
+    }
+
+    private static final class Key {
+        private final RollupGranularity granularity;
+        private final long bucketStart;
+        private final String webaclId;
+        private final String action;
+        private final String dimension;
+        private final String value;
+
+        Key(RollupGranularity granularity, long bucketStart, String webaclId, String action, String dimension, String value) {
+            this.granularity = granularity;
+            this.bucketStart = bucketStart;
+            this.webaclId = webaclId;
+            this.action = action;
+            this.dimension = dimension;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return granularity == other.granularity && bucketStart == other.bucketStart && webaclId.equals(other.webaclId)
+                    && action.equals(other.action) && dimension.equals(other.dimension) && value.equals(other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(granularity, bucketStart, webaclId, action, dimension, value);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.myorg.rollup;
+
+import java.util.Map;
+
+/**
+ * Where rollups are written and how many client IPs each bucket keeps.
+ * Read from the Lambda environment, see {@link #fromEnvironment(Map)}.
+ */
+public class RollupConfig {
+    public static final String INDEX_PREFIX_ENV = "ROLLUP_INDEX_PREFIX";
+    public static final String TOP_N_ENV = "ROLLUP_TOP_N";
+
+    public static final String DEFAULT_INDEX_PREFIX = "awswaf-rollup";
+
+    private final String indexPrefix;
+    private final int topN;
+
+    public RollupConfig(String indexPrefix, int topN) {
+        this.indexPrefix = indexPrefix;
+        this.topN = topN;
+    }
+
+    public static RollupConfig fromEnvironment(Map<String, String> environment) {
+        String indexPrefix = environment.get(INDEX_PREFIX_ENV);
+        String topN = environment.get(TOP_N_ENV);
+        return new RollupConfig(
+                indexPrefix == null || indexPrefix.isBlank() ? DEFAULT_INDEX_PREFIX : indexPrefix.trim(),
+                topN == null || topN.isBlank() ? RollupAggregator.DEFAULT_TOP_N : Integer.parseInt(topN.trim()));
+    }
+
+    /**
+     * Rollups go to monthly indices {@code <prefix>-yyyy.MM}.
+     */
+    public String getIndexPrefix() {
+        return indexPrefix;
+    }
+
+    public int getTopN() {
+        return topN;
+    }
+}
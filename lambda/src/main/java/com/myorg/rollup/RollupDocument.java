@@ -0,0 +1,118 @@
+package com.myorg.rollup;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.myorg.aws.SigV4Signer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * One aggregate: how many requests of a WebACL and action fell into a time bucket, either in total or
+ * for one value of a dimension (rule, country, client IP). Dashboards sum {@code count}, so several
+ * partial documents for the same bucket, e.g. from different S3 objects, add up correctly.
+ */
+public class RollupDocument {
+    public static final String DIMENSION_TOTAL = "total";
+    public static final String DIMENSION_RULE = "rule";
+    public static final String DIMENSION_COUNTRY = "country";
+    public static final String DIMENSION_CLIENT_IP = "clientIp";
+    // client IPs beyond the top N of a bucket are folded into this value
+    public static final String OTHER_VALUE = "__other__";
+
+    private static final DateTimeFormatter INDEX_SUFFIX = DateTimeFormatter.ofPattern("yyyy.MM").withZone(ZoneOffset.UTC);
+
+    private final RollupGranularity granularity;
+    private final long bucketStart;
+    private final String webaclId;
+    private final String action;
+    private final String dimension;
+    private final String value;
+    private long count;
+
+    public RollupDocument(RollupGranularity granularity, long bucketStart, String webaclId, String action,
+                          String dimension, String value, long count) {
+        this.granularity = granularity;
+        this.bucketStart = bucketStart;
+        this.webaclId = webaclId;
+        this.action = action;
+        this.dimension = dimension;
+        this.value = value;
+        this.count = count;
+    }
+
+    /**
+     * Deterministic id, so re-aggregating the same source overwrites instead of double counting.
+     */
+    public String id(String source) {
+        return SigV4Signer.sha256Hex((source + '|' + granularity.getLabel() + '|' + bucketStart + '|' + webaclId + '|'
+                + action + '|' + dimension + '|' + value).getBytes(StandardCharsets.UTF_8)).substring(0, 40);
+    }
+
+    /**
+     * Monthly index, so retention can drop whole months.
+     */
+    public String indexName(String indexPrefix) {
+        return indexPrefix + "-" + INDEX_SUFFIX.format(Instant.ofEpochMilli(bucketStart));
+    }
+
+    public void writeBulkIndex(JsonGenerator generator, String indexPrefix, String source) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("index");
+        generator.writeStringField("_index", indexName(indexPrefix));
+        generator.writeStringField("_id", id(source));
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+
+        generator.writeStartObject();
+        generator.writeNumberField("@timestamp", bucketStart);
+        generator.writeStringField("granularity", granularity.getLabel());
+        generator.writeStringField("webaclId", webaclId);
+        generator.writeStringField("action", action);
+        generator.writeStringField("dimension", dimension);
+        generator.writeStringField("value", value);
+        generator.writeNumberField("count", count);
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    void add(long delta) {
+        count += delta;
+    }
+
+    public RollupGranularity getGranularity() {
+        return granularity;
+    }
+
+    public long getBucketStart() {
+        return bucketStart;
+    }
+
+    public String getWebaclId() {
+        return webaclId;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public String getDimension() {
+        return dimension;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return granularity.getLabel() + "@" + bucketStart + " " + webaclId + " " + action + " " + dimension + "=" + value + ": " + count;
+    }
+}
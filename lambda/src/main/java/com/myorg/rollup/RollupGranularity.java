@@ -0,0 +1,22 @@
+package com.myorg.rollup;
+
+public enum RollupGranularity {
+    MINUTE("minute", 60_000L),
+    HOUR("hour", 3_600_000L);
+
+    private final String label;
+    private final long millis;
+
+    RollupGranularity(String label, long millis) {
+        this.label = label;
+        this.millis = millis;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public long bucketStart(long timestamp) {
+        return Math.floorDiv(timestamp, millis) * millis;
+    }
+}
@@ -0,0 +1,113 @@
+package com.myorg.rollup;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.myorg.opensearch.BulkResponse;
+import com.myorg.opensearch.OpenSearchClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes rollup documents with bulk requests. Rejected requests and items are retried with a backoff;
+ * the document ids are deterministic, so a retry, or a whole Lambda retry, overwrites instead of adding.
+ */
+public class RollupIndexer {
+    static final int BULK_SIZE = 1000;
+    static final int MAX_ATTEMPTS = 5;
+
+    private static final String TEMPLATE_BODY = "{"
+            + "\"index_patterns\":[\"%s-*\"],"
+            + "\"template\":{"
+            + "\"settings\":{\"number_of_shards\":1,\"requests.cache.enable\":true},"
+            + "\"mappings\":{\"dynamic\":false,\"properties\":{"
+            + "\"@timestamp\":{\"type\":\"date\",\"format\":\"epoch_millis\"},"
+            + "\"granularity\":{\"type\":\"keyword\"},"
+            + "\"webaclId\":{\"type\":\"keyword\"},"
+            + "\"action\":{\"type\":\"keyword\"},"
+            + "\"dimension\":{\"type\":\"keyword\"},"
+            + "\"value\":{\"type\":\"keyword\"},"
+            + "\"count\":{\"type\":\"long\"}"
+            + "}}}}";
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final OpenSearchClient client;
+    private final String indexPrefix;
+    private final long backoffMillis;
+    private boolean templateInstalled;
+
+    public RollupIndexer(OpenSearchClient client, String indexPrefix) {
+        this(client, indexPrefix, 200);
+    }
+
+    RollupIndexer(OpenSearchClient client, String indexPrefix, long backoffMillis) {
+        this.client = client;
+        this.indexPrefix = indexPrefix;
+        this.backoffMillis = backoffMillis;
+    }
+
+    /**
+     * Installs the index template once per container, before the first write.
+     */
+    public void ensureTemplate() throws IOException {
+        if (!templateInstalled) {
+            client.put("/_index_template/" + indexPrefix, String.format(TEMPLATE_BODY, indexPrefix));
+            templateInstalled = true;
+        }
+    }
+
+    public void index(List<RollupDocument> documents, String source) throws IOException {
+        ensureTemplate();
+        for (int from = 0; from < documents.size(); from += BULK_SIZE) {
+            indexBatch(documents.subList(from, Math.min(documents.size(), from + BULK_SIZE)), source);
+        }
+    }
+
+    private void indexBatch(List<RollupDocument> batch, String source) throws IOException {
+        List<RollupDocument> pending = batch;
+        for (int attempt = 1; ; attempt++) {
+            BulkResponse response = client.bulk(toNdjson(pending, source));
+            if (!response.isRejected() && response.getFailedItemCount() == 0) {
+                return;
+            }
+            if (attempt == MAX_ATTEMPTS) {
+                throw new IOException("Bulk write of " + pending.size() + " rollup documents from " + source
+                        + " still failing after " + MAX_ATTEMPTS + " attempts");
+            }
+
+            if (!response.isRejected()) {
+                List<RollupDocument> failed = new ArrayList<>();
+                for (int i = 0; i < response.getItemCount(); i++) {
+                    if (response.isItemFailed(i)) {
+                        failed.add(pending.get(i));
+                    }
+                }
+                pending = failed;
+            }
+            sleep(backoffMillis << (attempt - 1));
+        }
+    }
+
+    private byte[] toNdjson(List<RollupDocument> documents, String source) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(documents.size() * 256);
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            for (RollupDocument document : documents) {
+                document.writeBulkIndex(generator, indexPrefix, source);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.myorg.rollup;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.aws.FirehoseClient;
+import com.myorg.aws.Priming;
+import com.myorg.aws.S3ObjectClient;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.waflog.JsonRecordReader;
+import com.myorg.waflog.WafLogParser;
+import com.myorg.waflog.WafLogRecord;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * S3 notification entry point. Aggregates every WAF log object Firehose backs up into rollup documents
+ * and indexes them, so long time ranges can be charted without touching the raw log indices.
+ * Objects under the Firehose error prefixes are skipped, their records never made it into a rollup-worthy
+ * shape. With {@value #ARCHIVE_STREAM_ENV} set, the records are also forwarded to the Parquet archive, see
+ * {@link ArchiveForwarder}.
+ */
+public class S3RollupHandler implements RequestStreamHandler {
+    public static final String ARCHIVE_STREAM_ENV = "ARCHIVE_STREAM";
+    static final List<String> SKIPPED_PREFIXES = List.of("elasticsearch-failed/", "processing-failed/");
+    static final long ARCHIVE_BACKOFF_MILLIS = 200;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final WafLogParser parser = new WafLogParser(List.of());
+    private final WafLogRecord record = parser.newRecord();
+    private final S3ObjectClient s3;
+    private final RollupIndexer indexer;
+    private final RollupConfig config;
+    private final FirehoseClient archive;
+    private final String archiveStream;
+
+    public S3RollupHandler() {
+        this(S3ObjectClient.fromEnvironment(System.getenv()),
+                OpenSearchClient.fromEnvironment(System.getenv()),
+                RollupConfig.fromEnvironment(System.getenv()),
+                FirehoseClient.fromEnvironment(System.getenv()),
+                System.getenv(ARCHIVE_STREAM_ENV));
+        Priming.prime(System.getenv(), Priming::primeHttpStack, this::rollUpSampleRecord);
+    }
+
+    public S3RollupHandler(S3ObjectClient s3, OpenSearchClient openSearch, RollupConfig config) {
+        this(s3, openSearch, config, null, null);
+    }
+
+    /**
+     * @param archiveStream the archive delivery stream, or null to forward nothing
+     */
+    public S3RollupHandler(S3ObjectClient s3, OpenSearchClient openSearch, RollupConfig config, FirehoseClient archive,
+                           String archiveStream) {
+        this.s3 = s3;
+        this.indexer = new RollupIndexer(openSearch, config.getIndexPrefix());
+        this.config = config;
+        this.archive = archive;
+        this.archiveStream = archiveStream == null || archiveStream.isBlank() ? null : archiveStream;
+    }
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        JsonNode event = objectMapper.readTree(input);
+        for (JsonNode notification : event.path("Records")) {
+            String bucket = notification.path("s3").path("bucket").path("name").asText();
+            String key = URLDecoder.decode(notification.path("s3").path("object").path("key").asText(), StandardCharsets.UTF_8);
+            if (isSkipped(key)) {
+                context.getLogger().log("Skipping Firehose error output s3://" + bucket + "/" + key);
+                continue;
+            }
+
+            RollupAggregator aggregator = rollUp(bucket, key);
+            context.getLogger().log("Rolled up s3://" + bucket + "/" + key + ": " + aggregator.getRecordCount()
+                    + " records, " + aggregator.getSkippedCount() + " skipped");
+        }
+    }
+
+    /**
+     * Aggregates one object and indexes its rollups, using the object as the id source, then forwards its
+     * records to the archive if there is one. Forwarding waits for the rollups: S3 retries a failed
+     * notification, and a retry after a failed rollup would send the records to the archive twice, while the
+     * rollups themselves are only overwritten. The object is read again for that, to keep memory flat.
+     */
+    public RollupAggregator rollUp(String bucket, String key) throws IOException {
+        RollupAggregator aggregator = new RollupAggregator(config.getTopN());
+        try (InputStream in = JsonRecordReader.decompress(s3.getObject(bucket, key))) {
+            JsonRecordReader reader = new JsonRecordReader(in);
+            while (reader.next()) {
+                try {
+                    parser.parse(reader.buffer(), reader.offset(), reader.length(), record);
+                } catch (IOException e) {
+                    aggregator.skip();
+                    continue;
+                }
+                aggregator.add(record);
+            }
+        }
+        indexer.index(aggregator.documents(), bucket + "/" + key);
+
+        if (archiveStream != null) {
+            forward(bucket, key);
+        }
+        return aggregator;
+    }
+
+    private void forward(String bucket, String key) throws IOException {
+        ArchiveForwarder forwarder = new ArchiveForwarder(archive, archiveStream, ARCHIVE_BACKOFF_MILLIS);
+        try (InputStream in = JsonRecordReader.decompress(s3.getObject(bucket, key))) {
+            JsonRecordReader reader = new JsonRecordReader(in);
+            while (reader.next()) {
+                forwarder.add(Arrays.copyOfRange(reader.buffer(), reader.offset(), reader.offset() + reader.length()));
+            }
+        }
+        forwarder.flush();
+    }
+
+    private void rollUpSampleRecord() throws IOException {
+        RollupAggregator aggregator = new RollupAggregator(config.getTopN());
+        parser.parse(Priming.sampleWafRecord(), record);
+        aggregator.add(record);
+        aggregator.documents();
+    }
+
+    public static boolean isSkipped(String key) {
+        for (String prefix : SKIPPED_PREFIXES) {
+            if (key.contains(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,70 @@
+package com.myorg.setup;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.myorg.aws.SignedHttpClient;
+import com.myorg.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.util.Map;
+
+/**
+ * Base for functions used directly as a custom resource service token: runs {@link #onEvent} and always reports
+ * the outcome to the pre-signed response URL, so a failure fails the deployment instead of hanging it for an hour.
+ */
+public abstract class CustomResourceHandler implements RequestStreamHandler {
+    protected final ObjectMapper objectMapper = new ObjectMapper();
+    private final SignedHttpClient responseClient = new SignedHttpClient(null);
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        CustomResourceRequest request = CustomResourceRequest.fromEvent(objectMapper.readTree(input));
+        context.getLogger().log(request.getRequestType() + " " + request.getLogicalResourceId());
+
+        ObjectNode response = objectMapper.createObjectNode()
+                .put("StackId", request.getStackId())
+                .put("RequestId", request.getRequestId())
+                .put("LogicalResourceId", request.getLogicalResourceId());
+        long started = System.nanoTime();
+        try {
+            Map<String, String> data = onEvent(request);
+            response.put("Status", "SUCCESS")
+                    .put("PhysicalResourceId", physicalResourceId(request));
+            data.forEach(response.putObject("Data")::put);
+        } catch (IOException | RuntimeException e) {
+            context.getLogger().log("Failed: " + e);
+            response.put("Status", "FAILED")
+                    .put("Reason", String.valueOf(e.getMessage()))
+                    .put("PhysicalResourceId", request.getPhysicalResourceId() != null
+                            ? request.getPhysicalResourceId() : physicalResourceId(request));
+        } finally {
+            Metrics.recordSince(Metrics.INVOCATION_LATENCY, started);
+            Metrics.flush(context, System.getenv());
+        }
+
+        // the pre-signed S3 URL is signed without a content type, so none may be sent
+        HttpResponse<byte[]> sent = responseClient.send("PUT", URI.create(request.getResponseUrl()), Map.of(),
+                objectMapper.writeValueAsBytes(response));
+        if (sent.statusCode() != 200) {
+            throw new IOException("Custom resource response rejected with " + sent.statusCode());
+        }
+    }
+
+    /**
+     * @return attributes exposed to the template with {@code Fn::GetAtt}
+     */
+    protected abstract Map<String, String> onEvent(CustomResourceRequest request) throws IOException;
+
+    /**
+     * Kept stable across updates, a new id would make CloudFormation delete the old resource.
+     */
+    protected String physicalResourceId(CustomResourceRequest request) {
+        return request.getPhysicalResourceId() != null ? request.getPhysicalResourceId() : request.getLogicalResourceId();
+    }
+}
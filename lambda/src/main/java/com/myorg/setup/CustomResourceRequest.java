@@ -0,0 +1,92 @@
+package com.myorg.setup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A CloudFormation custom resource event. Resource properties arrive as strings, whatever their type in the template.
+ */
+public class CustomResourceRequest {
+    public static final String CREATE = "Create";
+    public static final String UPDATE = "Update";
+    public static final String DELETE = "Delete";
+
+    private final String requestType;
+    private final String responseUrl;
+    private final String stackId;
+    private final String requestId;
+    private final String logicalResourceId;
+    private final String physicalResourceId;
+    private final Map<String, String> resourceProperties;
+
+    public CustomResourceRequest(String requestType, String responseUrl, String stackId, String requestId,
+                                 String logicalResourceId, String physicalResourceId, Map<String, String> resourceProperties) {
+        this.requestType = requestType;
+        this.responseUrl = responseUrl;
+        this.stackId = stackId;
+        this.requestId = requestId;
+        this.logicalResourceId = logicalResourceId;
+        this.physicalResourceId = physicalResourceId;
+        this.resourceProperties = Map.copyOf(resourceProperties);
+    }
+
+    public static CustomResourceRequest fromEvent(JsonNode event) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        event.path("ResourceProperties").fields().forEachRemaining(field -> properties.put(field.getKey(), field.getValue().asText()));
+
+        return new CustomResourceRequest(
+                event.path("RequestType").asText(),
+                event.path("ResponseURL").asText(),
+                event.path("StackId").asText(),
+                event.path("RequestId").asText(),
+                event.path("LogicalResourceId").asText(),
+                event.hasNonNull("PhysicalResourceId") ? event.get("PhysicalResourceId").asText() : null,
+                properties);
+    }
+
+    public String getRequestType() {
+        return requestType;
+    }
+
+    public String getResponseUrl() {
+        return responseUrl;
+    }
+
+    public String getStackId() {
+        return stackId;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public String getLogicalResourceId() {
+        return logicalResourceId;
+    }
+
+    /**
+     * Null on create.
+     */
+    public String getPhysicalResourceId() {
+        return physicalResourceId;
+    }
+
+    public Map<String, String> getResourceProperties() {
+        return resourceProperties;
+    }
+
+    public String getProperty(String name, String defaultValue) {
+        String value = resourceProperties.get(name);
+        return value == null || value.isBlank() ? defaultValue : value;
+    }
+
+    public String getRequiredProperty(String name) {
+        String value = resourceProperties.get(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Custom resource property " + name + " is missing");
+        }
+        return value;
+    }
+}
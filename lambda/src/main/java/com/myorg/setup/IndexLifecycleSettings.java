@@ -0,0 +1,125 @@
+package com.myorg.setup;
+
+/**
+ * Rollover, tiering and retention of the WAF log indices, and the shard layout derived from the expected
+ * daily volume. An index gets enough primaries for a day of logs to stay below {@link #getTargetShardSizeGb()}
+ * per shard, spread evenly over the data nodes once it needs several, and rolls over when its primaries
+ * reach the target. Quiet domains also roll over by age, so whole indices can go warm and be deleted on time.
+ */
+public class IndexLifecycleSettings {
+    static final int DEFAULT_TARGET_SHARD_SIZE_GB = 30;
+
+    private final String indexAlias;
+    private final double dailyIngestGb;
+    private final int dataNodeCount;
+    private final int warmAfterDays;
+    private final int retentionDays;
+    private final boolean ultraWarm;
+    private final long rolloverDocCount;
+    private final int targetShardSizeGb;
+
+    public IndexLifecycleSettings(String indexAlias, double dailyIngestGb, int dataNodeCount, int warmAfterDays,
+                                  int retentionDays, boolean ultraWarm, long rolloverDocCount, int targetShardSizeGb) {
+        if (dailyIngestGb <= 0) {
+            throw new IllegalArgumentException("Daily ingest must be positive, got " + dailyIngestGb);
+        }
+        if (dataNodeCount < 1) {
+            throw new IllegalArgumentException("Data node count must be at least 1, got " + dataNodeCount);
+        }
+        if (retentionDays < 1) {
+            throw new IllegalArgumentException("Retention must be at least 1 day, got " + retentionDays);
+        }
+        if (warmAfterDays < 0) {
+            throw new IllegalArgumentException("Warm after days must not be negative, got " + warmAfterDays);
+        }
+
+        this.indexAlias = indexAlias;
+        this.dailyIngestGb = dailyIngestGb;
+        this.dataNodeCount = dataNodeCount;
+        this.warmAfterDays = warmAfterDays;
+        this.retentionDays = retentionDays;
+        this.ultraWarm = ultraWarm;
+        this.rolloverDocCount = rolloverDocCount;
+        this.targetShardSizeGb = targetShardSizeGb;
+    }
+
+    public static IndexLifecycleSettings fromProperties(CustomResourceRequest request) {
+        return new IndexLifecycleSettings(
+                request.getRequiredProperty("IndexAlias"),
+                Double.parseDouble(request.getProperty("DailyIngestGB", "1")),
+                Integer.parseInt(request.getProperty("DataNodeCount", "1")),
+                Integer.parseInt(request.getProperty("WarmAfterDays", "7")),
+                Integer.parseInt(request.getProperty("RetentionDays", "30")),
+                Boolean.parseBoolean(request.getProperty("UltraWarm", "false")),
+                Long.parseLong(request.getProperty("RolloverDocCount", "0")),
+                Integer.parseInt(request.getProperty("TargetShardSizeGB", String.valueOf(DEFAULT_TARGET_SHARD_SIZE_GB))));
+    }
+
+    public int getPrimaryShards() {
+        int shards = (int) Math.max(1, Math.ceil(dailyIngestGb / targetShardSizeGb));
+        if (shards <= dataNodeCount) {
+            return shards;
+        }
+        return (shards + dataNodeCount - 1) / dataNodeCount * dataNodeCount;
+    }
+
+    /**
+     * A replica needs a second node to live on; on a single node it would only keep the cluster yellow.
+     */
+    public int getReplicas() {
+        return dataNodeCount > 1 ? 1 : 0;
+    }
+
+    public int getRolloverSizeGb() {
+        return getPrimaryShards() * targetShardSizeGb;
+    }
+
+    /**
+     * At most a week, and no later than the index is due to go warm.
+     */
+    public int getRolloverMaxAgeDays() {
+        return Math.max(1, Math.min(7, Math.min(warmAfterDays, retentionDays)));
+    }
+
+    /**
+     * Indices age into the warm state only if that happens before they are deleted.
+     */
+    public boolean hasWarmPhase() {
+        return warmAfterDays < retentionDays;
+    }
+
+    public String getIndexAlias() {
+        return indexAlias;
+    }
+
+    public double getDailyIngestGb() {
+        return dailyIngestGb;
+    }
+
+    public int getDataNodeCount() {
+        return dataNodeCount;
+    }
+
+    public int getWarmAfterDays() {
+        return warmAfterDays;
+    }
+
+    public int getRetentionDays() {
+        return retentionDays;
+    }
+
+    public boolean isUltraWarm() {
+        return ultraWarm;
+    }
+
+    /**
+     * 0 leaves the document count out of the rollover conditions.
+     */
+    public long getRolloverDocCount() {
+        return rolloverDocCount;
+    }
+
+    public int getTargetShardSizeGb() {
+        return targetShardSizeGb;
+    }
+}
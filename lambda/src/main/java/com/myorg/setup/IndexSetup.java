@@ -0,0 +1,142 @@
+package com.myorg.setup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.opensearch.OpenSearchException;
+
+import java.io.IOException;
+
+/**
+ * Prepares the domain for Firehose writing to a rollover alias: the ISM policy, the {@link LogIndexTemplate}
+ * and the first write index behind the alias. Every step is safe to repeat, so it runs on each Create and Update:
+ * when a parameter changes, and when the Lambda sources do. Template changes reach the next index, after a rollover.
+ */
+public class IndexSetup {
+    static final int NOT_FOUND = 404;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final OpenSearchClient client;
+    private final IndexLifecycleSettings settings;
+    private final LogIndexTemplate template;
+
+    public IndexSetup(OpenSearchClient client, IndexLifecycleSettings settings, LogIndexTemplate template) {
+        this.client = client;
+        this.settings = settings;
+        this.template = template;
+    }
+
+    public void apply() throws IOException {
+        putPolicy();
+        if (template.isSampling()) {
+            client.put("/_ingest/pipeline/" + LogIndexTemplate.SAMPLING_PIPELINE, objectMapper.writeValueAsString(template.samplingPipeline()));
+        }
+        client.put("/_index_template/" + templateName(), objectMapper.writeValueAsString(template.toJson()));
+        bootstrapWriteIndex();
+    }
+
+    public String policyId() {
+        return settings.getIndexAlias() + "-lifecycle";
+    }
+
+    public String templateName() {
+        return settings.getIndexAlias() + "-logs";
+    }
+
+    public String firstWriteIndex() {
+        return settings.getIndexAlias() + "-logs-000001";
+    }
+
+    ObjectNode policy() {
+        ObjectNode root = objectMapper.createObjectNode();
+        ObjectNode policy = root.putObject("policy");
+        policy.put("description", "WAF log indices: rollover, " + (settings.isUltraWarm() ? "UltraWarm" : "read-only")
+                + " after " + settings.getWarmAfterDays() + " days, delete after " + settings.getRetentionDays() + " days");
+        policy.put("default_state", "hot");
+        ArrayNode states = policy.putArray("states");
+
+        ObjectNode hot = states.addObject().put("name", "hot");
+        ObjectNode rollover = hot.putArray("actions").addObject().putObject("rollover");
+        rollover.put("min_size", settings.getRolloverSizeGb() + "gb");
+        rollover.put("min_index_age", settings.getRolloverMaxAgeDays() + "d");
+        if (settings.getRolloverDocCount() > 0) {
+            rollover.put("min_doc_count", settings.getRolloverDocCount());
+        }
+        String afterHot = settings.hasWarmPhase() ? "warm" : "delete";
+        transition(hot, afterHot, settings.hasWarmPhase() ? settings.getWarmAfterDays() : settings.getRetentionDays());
+
+        if (settings.hasWarmPhase()) {
+            ObjectNode warm = states.addObject().put("name", "warm");
+            ArrayNode actions = warm.putArray("actions");
+            actions.addObject().putObject("force_merge").put("max_num_segments", 1);
+            if (settings.isUltraWarm()) {
+                actions.addObject().putObject("warm_migration");
+            } else {
+                actions.addObject().putObject("read_only");
+            }
+            transition(warm, "delete", settings.getRetentionDays());
+        }
+
+        ObjectNode delete = states.addObject().put("name", "delete");
+        delete.putArray("actions").addObject().putObject("delete");
+        delete.putArray("transitions");
+
+        policy.putArray("ism_template").addObject()
+                .put("priority", 100)
+                .putArray("index_patterns").add(template.indexPattern());
+        return root;
+    }
+
+    /**
+     * Creates or updates the policy. Updates must name the version they replace, and reach only indices ISM
+     * starts managing afterwards: the indices it already manages keep the version they were attached with, so
+     * they are moved to the new one, which ISM does at their next state transition.
+     */
+    private void putPolicy() throws IOException {
+        String path = "/_plugins/_ism/policies/" + policyId();
+        String body = objectMapper.writeValueAsString(policy());
+
+        JsonNode existing;
+        try {
+            existing = objectMapper.readTree(client.get(path));
+        } catch (OpenSearchException e) {
+            if (e.getStatusCode() != NOT_FOUND) {
+                throw e;
+            }
+            client.put(path, body);
+            return;
+        }
+        client.put(path + "?if_seq_no=" + existing.path("_seq_no").asLong()
+                + "&if_primary_term=" + existing.path("_primary_term").asLong(), body);
+
+        ObjectNode change = objectMapper.createObjectNode().put("policy_id", policyId());
+        client.post("/_plugins/_ism/change_policy/" + template.indexPattern(), objectMapper.writeValueAsString(change));
+    }
+
+    /**
+     * Creates the first index behind the alias, unless the alias exists. Firehose must not write before this,
+     * or it would create a plain index named like the alias.
+     */
+    private void bootstrapWriteIndex() throws IOException {
+        try {
+            client.get("/_alias/" + settings.getIndexAlias());
+            return;
+        } catch (OpenSearchException e) {
+            if (e.getStatusCode() != NOT_FOUND) {
+                throw e;
+            }
+        }
+
+        ObjectNode index = objectMapper.createObjectNode();
+        index.putObject("aliases").putObject(settings.getIndexAlias()).put("is_write_index", true);
+        client.put("/" + firstWriteIndex(), objectMapper.writeValueAsString(index));
+    }
+
+    private static void transition(ObjectNode state, String target, int afterDays) {
+        state.putArray("transitions").addObject()
+                .put("state_name", target)
+                .putObject("conditions").put("min_index_age", afterDays + "d");
+    }
+}
@@ -0,0 +1,44 @@
+package com.myorg.setup;
+
+import com.myorg.aws.Priming;
+import com.myorg.opensearch.OpenSearchClient;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Custom resource running {@link IndexSetup} on create and update. Deleting the stack leaves the indices and
+ * their policy alone, like the retained log bucket.
+ */
+public class IndexSetupHandler extends CustomResourceHandler {
+    private final OpenSearchClient client;
+
+    public IndexSetupHandler() {
+        this(OpenSearchClient.fromEnvironment(System.getenv()));
+        Priming.prime(System.getenv(), Priming::primeHttpStack, () -> new LogIndexTemplate(
+                new IndexLifecycleSettings("awswaf", 1, 1, 7, 30, false, 0, 30), 60, List.of("host")).toJson().toString());
+    }
+
+    public IndexSetupHandler(OpenSearchClient client) {
+        this.client = client;
+    }
+
+    @Override
+    protected Map<String, String> onEvent(CustomResourceRequest request) throws IOException {
+        if (CustomResourceRequest.DELETE.equals(request.getRequestType())) {
+            return Map.of();
+        }
+
+        IndexLifecycleSettings settings = IndexLifecycleSettings.fromProperties(request);
+        IndexSetup setup = new IndexSetup(client, settings, LogIndexTemplate.fromProperties(request, settings));
+        setup.apply();
+
+        return Map.of(
+                "PolicyId", setup.policyId(),
+                "TemplateVersion", String.valueOf(LogIndexTemplate.VERSION),
+                "PrimaryShards", String.valueOf(settings.getPrimaryShards()),
+                "Replicas", String.valueOf(settings.getReplicas()),
+                "RolloverSize", settings.getRolloverSizeGb() + "gb");
+    }
+}
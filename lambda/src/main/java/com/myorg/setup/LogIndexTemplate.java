@@ -0,0 +1,186 @@
+package com.myorg.setup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.myorg.enrich.IpEnrichment;
+import com.myorg.transform.SamplingPolicy;
+import com.myorg.transform.TransformerConfig;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Index template of the WAF log indices. Fields the dashboards filter and aggregate on are mapped explicitly as
+ * keyword, ip and date; other strings become plain keywords instead of analysed text with a keyword sub-field,
+ * and the unbounded {@code headers} and {@code labels} are stored but not indexed beyond the known fields.
+ * The saved dashboards were built on dynamic mappings and query {@code .keyword} sub-fields; the fields they
+ * use keep one.
+ * Refreshing more often than Firehose delivers would only cost CPU, so the refresh interval follows the buffer
+ * interval, and the shard request cache is on, so repeated dashboard aggregations over indices that no longer
+ * refresh, everything but the write index, are answered from memory. With sampling, documents pass the {@value #SAMPLING_PIPELINE} ingest pipeline, which drops the ones the
+ * transformer gave weight 0; Firehose has already backed them up to S3 by then.
+ * Bump {@link #VERSION} whenever the template changes.
+ */
+public class LogIndexTemplate {
+    public static final int VERSION = 7;
+    public static final String SAMPLING_PIPELINE = "osdfw-sampling";
+
+    static final int DEFAULT_REFRESH_INTERVAL_SECONDS = 60;
+    private static final int IGNORE_ABOVE = 1024;
+    // referenced as <field>.keyword by the bundled visualisations and scripted fields
+    private static final Set<String> DASHBOARD_KEYWORD_FIELDS = Set.of("webaclId", "terminatingRuleId", "terminatingRuleType",
+            "action", "country", "uri", "httpVersion", "httpMethod", TransformerConfig.ACCOUNT_ID_FIELD);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final IndexLifecycleSettings lifecycle;
+    private final int refreshIntervalSeconds;
+    private final List<String> flattenHeaders;
+    private final boolean sampling;
+
+    public LogIndexTemplate(IndexLifecycleSettings lifecycle, int refreshIntervalSeconds, List<String> flattenHeaders) {
+        this(lifecycle, refreshIntervalSeconds, flattenHeaders, false);
+    }
+
+    public LogIndexTemplate(IndexLifecycleSettings lifecycle, int refreshIntervalSeconds, List<String> flattenHeaders,
+                            boolean sampling) {
+        if (refreshIntervalSeconds < 1) {
+            throw new IllegalArgumentException("Refresh interval must be at least 1 second, got " + refreshIntervalSeconds);
+        }
+        this.lifecycle = lifecycle;
+        this.refreshIntervalSeconds = refreshIntervalSeconds;
+        this.flattenHeaders = flattenHeaders;
+        this.sampling = sampling;
+    }
+
+    /**
+     * Headers and sample rates arrive as the comma separated lists the transformer is configured with.
+     */
+    public static LogIndexTemplate fromProperties(CustomResourceRequest request, IndexLifecycleSettings lifecycle) {
+        String flattenHeaders = request.getResourceProperties().get("FlattenHeaders");
+        return new LogIndexTemplate(lifecycle,
+                Integer.parseInt(request.getProperty("RefreshIntervalSeconds", String.valueOf(DEFAULT_REFRESH_INTERVAL_SECONDS))),
+                flattenHeaders == null ? TransformerConfig.DEFAULT_FLATTEN_HEADERS : TransformerConfig.splitList(flattenHeaders),
+                SamplingPolicy.parse(TransformerConfig.splitList(request.getResourceProperties().get("SampleRates"))).isSampling());
+    }
+
+    public boolean isSampling() {
+        return sampling;
+    }
+
+    /**
+     * The ingest pipeline dropping sampled out documents.
+     */
+    public ObjectNode samplingPipeline() {
+        ObjectNode pipeline = objectMapper.createObjectNode()
+                .put("description", "Drops the WAF log documents the transformer sampled out");
+        pipeline.putArray("processors").addObject().putObject("drop")
+                .put("if", "ctx." + TransformerConfig.SAMPLE_WEIGHT_FIELD + " != null && ctx." + TransformerConfig.SAMPLE_WEIGHT_FIELD + " <= 0");
+        return pipeline;
+    }
+
+    /**
+     * Rollover needs index names ending in a counter; the alias itself stays the name Firehose writes to.
+     */
+    public String indexPattern() {
+        return lifecycle.getIndexAlias() + "-logs-*";
+    }
+
+    public ObjectNode toJson() {
+        ObjectNode root = objectMapper.createObjectNode();
+        root.putArray("index_patterns").add(indexPattern());
+        root.put("priority", 100);
+        root.put("version", VERSION);
+        root.putObject("_meta").put("managed_by", "osdfw");
+
+        ObjectNode template = root.putObject("template");
+        ObjectNode settings = template.putObject("settings")
+                .put("number_of_shards", lifecycle.getPrimaryShards())
+                .put("number_of_replicas", lifecycle.getReplicas())
+                .put("refresh_interval", refreshIntervalSeconds + "s")
+                .put("codec", "best_compression")
+                .put("requests.cache.enable", true)
+                .put("plugins.index_state_management.rollover_alias", lifecycle.getIndexAlias());
+        if (sampling) {
+            settings.put("default_pipeline", SAMPLING_PIPELINE);
+        }
+        template.set("mappings", mappings());
+        return root;
+    }
+
+    private ObjectNode mappings() {
+        ObjectNode mappings = objectMapper.createObjectNode();
+        mappings.putArray("dynamic_templates").addObject().putObject("strings_as_keywords")
+                .put("match_mapping_type", "string")
+                .set("mapping", keyword());
+
+        ObjectNode properties = mappings.putObject("properties");
+        properties.putObject("timestamp").put("type", "date").put("format", "epoch_millis");
+        properties.putObject("formatVersion").put("type", "integer");
+        for (String field : List.of("webaclId", "terminatingRuleId", "terminatingRuleType", "action", "httpSourceName", "httpSourceId",
+                TransformerConfig.ACCOUNT_ID_FIELD)) {
+            properties.set(field, keyword(field));
+        }
+        properties.putObject("responseCodeSent").put("type", "integer");
+        // sum it instead of counting documents to estimate counts of sampled actions
+        properties.putObject(TransformerConfig.SAMPLE_WEIGHT_FIELD).put("type", "float");
+
+        ObjectNode ruleGroup = objectProperties(properties, "ruleGroupList");
+        ruleGroup.set("ruleGroupId", keyword());
+        ruleAction(objectProperties(ruleGroup, "terminatingRule"));
+        ruleAction(objectProperties(ruleGroup, "nonTerminatingMatchingRules"));
+        ruleAction(objectProperties(properties, "nonTerminatingMatchingRules"));
+
+        ObjectNode rateBased = objectProperties(properties, "rateBasedRuleList");
+        rateBased.set("rateBasedRuleId", keyword());
+        rateBased.set("rateBasedRuleName", keyword());
+        rateBased.set("limitKey", keyword());
+        rateBased.putObject("maxRateAllowed").put("type", "long");
+
+        ObjectNode labels = properties.putObject("labels").put("dynamic", false);
+        labels.putObject("properties").set("name", keyword());
+
+        // enrichment of the client address, see IpEnrichment
+        ObjectNode client = objectProperties(properties, IpEnrichment.CLIENT_FIELD);
+        client.putObject("asn").put("type", "long");
+        for (String field : List.of("asOrg", "country", "region", "reputation")) {
+            client.set(field, keyword());
+        }
+
+        ObjectNode httpRequest = objectProperties(properties, "httpRequest");
+        httpRequest.putObject("clientIp").put("type", "ip")
+                .putObject("fields").putObject("keyword").put("type", "ip");
+        for (String field : List.of("country", "uri", "args", "httpVersion", "httpMethod", "requestId")) {
+            httpRequest.set(field, keyword(field));
+        }
+        // the original name/value array and the flattened headers of interest share the object
+        ObjectNode headers = httpRequest.putObject("headers").put("dynamic", false).putObject("properties");
+        headers.set("name", keyword());
+        headers.set("value", keyword());
+        for (String header : flattenHeaders) {
+            headers.set(header.toLowerCase(Locale.ROOT), keyword());
+        }
+        return mappings;
+    }
+
+    private ObjectNode objectProperties(ObjectNode parent, String field) {
+        return parent.putObject(field).putObject("properties");
+    }
+
+    private void ruleAction(ObjectNode rule) {
+        rule.set("ruleId", keyword());
+        rule.set("action", keyword());
+    }
+
+    private ObjectNode keyword() {
+        return objectMapper.createObjectNode().put("type", "keyword").put("ignore_above", IGNORE_ABOVE);
+    }
+
+    private ObjectNode keyword(String field) {
+        ObjectNode mapping = keyword();
+        if (DASHBOARD_KEYWORD_FIELDS.contains(field)) {
+            mapping.putObject("fields").set("keyword", keyword());
+        }
+        return mapping;
+    }
+}
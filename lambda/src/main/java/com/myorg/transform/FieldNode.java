@@ -0,0 +1,37 @@
+package com.myorg.transform;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Trie over dotted field paths, walked alongside the parser so a field's action is found
+ * without building path strings. Arrays are transparent: elements share their array's node.
+ */
+final class FieldNode {
+    static final int COPY = 0;
+    static final int DROP = 1;
+    static final int FLATTEN_HEADERS = 2;
+    static final int LABEL = 3;
+
+    private final Map<String, FieldNode> children = new HashMap<>();
+    private int action = COPY;
+
+    FieldNode child(String name) {
+        return children.get(name);
+    }
+
+    int action() {
+        return action;
+    }
+
+    void add(String path, int action) {
+        FieldNode node = this;
+        for (String name : path.split("\\.")) {
+            node = node.children.computeIfAbsent(name, key -> new FieldNode());
+        }
+        // dropping wins over anything else configured for the same field
+        if (node.action != DROP) {
+            node.action = action;
+        }
+    }
+}
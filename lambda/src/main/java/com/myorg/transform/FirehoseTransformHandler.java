@@ -0,0 +1,176 @@
+package com.myorg.transform;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.myorg.aws.KinesisClient;
+import com.myorg.aws.Priming;
+import com.myorg.realtime.RealtimeEvent;
+import com.myorg.realtime.RealtimeForwarder;
+import com.myorg.waflog.WafLogParser;
+import com.myorg.waflog.WafLogRecord;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Firehose data transformation entry point. Streams the invocation event, slims every record with
+ * {@link WafLogTransformer} and streams the response back, so a batch is never held as a tree.
+ * Records that fail to transform are returned untouched as {@code ProcessingFailed} and end up in the
+ * S3 backup instead of OpenSearch. With {@value #REALTIME_STREAM_ENV} set, every record that transforms is also
+ * put on the realtime stream as a {@link RealtimeEvent}, sampled out ones included, see {@link RealtimeForwarder}.
+ */
+public class FirehoseTransformHandler implements RequestStreamHandler {
+    static final String RESULT_OK = "Ok";
+    static final String RESULT_PROCESSING_FAILED = "ProcessingFailed";
+    public static final String REALTIME_STREAM_ENV = "REALTIME_STREAM";
+    static final long REALTIME_BACKOFF_MILLIS = 100;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final WafLogParser parser = new WafLogParser(List.of());
+    private final WafLogRecord record = parser.newRecord();
+    private final WafLogTransformer transformer;
+    private final KinesisClient kinesis;
+    private final String realtimeStream;
+
+    public FirehoseTransformHandler() {
+        this(new WafLogTransformer(TransformerConfig.fromEnvironment(System.getenv())),
+                KinesisClient.fromEnvironment(System.getenv()),
+                System.getenv(REALTIME_STREAM_ENV));
+        Priming.prime(System.getenv(), this::transformSampleBatch);
+    }
+
+    public FirehoseTransformHandler(WafLogTransformer transformer) {
+        this(transformer, null, null);
+    }
+
+    /**
+     * @param realtimeStream the realtime stream, or null to forward nothing
+     */
+    public FirehoseTransformHandler(WafLogTransformer transformer, KinesisClient kinesis, String realtimeStream) {
+        this.transformer = transformer;
+        this.kinesis = kinesis;
+        this.realtimeStream = realtimeStream == null || realtimeStream.isBlank() ? null : realtimeStream;
+    }
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        TransformStats stats = transformBatch(input, output);
+        context.getLogger().log("Transformed WAF log batch: " + stats);
+    }
+
+    public TransformStats transformBatch(InputStream input, OutputStream output) throws IOException {
+        return transformBatch(input, output, realtimeStream == null ? null
+                : new RealtimeForwarder(kinesis, realtimeStream, REALTIME_BACKOFF_MILLIS));
+    }
+
+    private TransformStats transformBatch(InputStream input, OutputStream output, RealtimeForwarder forwarder) throws IOException {
+        TransformStats stats = new TransformStats();
+
+        try (JsonParser parser = jsonFactory.createParser(input);
+             JsonGenerator generator = jsonFactory.createGenerator(output)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("records");
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Firehose event is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY && "records".equals(name)) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        transformRecord(parser, generator, stats, forwarder);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+
+        if (forwarder != null) {
+            // sent before Firehose gets the batch back, so the detector doesn't wait on the index buffer
+            forwarder.flush();
+            stats.recordRealtime(forwarder.getForwarded(), forwarder.getDropped());
+        }
+        return stats;
+    }
+
+    private void transformSampleBatch() throws IOException {
+        String event = "{\"records\":[{\"recordId\":\"priming\",\"data\":\""
+                + Base64.getEncoder().encodeToString(Priming.sampleWafRecord()) + "\"}]}";
+        // nothing forwarded, the sample isn't traffic
+        transformBatch(new ByteArrayInputStream(event.getBytes(StandardCharsets.UTF_8)), OutputStream.nullOutputStream(), null);
+        parser.parse(Priming.sampleWafRecord(), record);
+        RealtimeEvent.encode(record);
+    }
+
+    private void transformRecord(JsonParser parser, JsonGenerator generator, TransformStats stats,
+                                 RealtimeForwarder forwarder) throws IOException {
+        String recordId = null;
+        byte[] data = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_STRING && "recordId".equals(name)) {
+                recordId = parser.getText();
+            } else if (token == JsonToken.VALUE_STRING && "data".equals(name)) {
+                data = parser.getBinaryValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (recordId == null || data == null) {
+            throw new IOException("Firehose record without recordId or data");
+        }
+
+        byte[] transformed;
+        String result;
+        try {
+            transformed = transformer.transform(data);
+            result = RESULT_OK;
+            stats.recordOk(data.length, transformed.length);
+            if (transformer.getSampleWeight() == 0) {
+                stats.recordSampledOut();
+            }
+            if (transformer.isEnriched()) {
+                stats.recordEnriched();
+            }
+            if (forwarder != null) {
+                forward(forwarder, recordId, data);
+            }
+        } catch (IOException e) {
+            transformed = data;
+            result = RESULT_PROCESSING_FAILED;
+            stats.recordFailed(data.length);
+        }
+
+        generator.writeStartObject();
+        generator.writeStringField("recordId", recordId);
+        generator.writeStringField("result", result);
+        generator.writeFieldName("data");
+        generator.writeBinary(transformed);
+        generator.writeEndObject();
+    }
+
+    private void forward(RealtimeForwarder forwarder, String recordId, byte[] data) throws IOException {
+        try {
+            parser.parse(data, record);
+        } catch (IOException e) {
+            return;
+        }
+        forwarder.add(record.getClientIp().isPresent() ? record.getClientIp().toString() : recordId, RealtimeEvent.encode(record));
+    }
+}
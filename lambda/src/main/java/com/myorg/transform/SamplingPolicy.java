@@ -0,0 +1,88 @@
+package com.myorg.transform;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Share of the records of each WAF action that is indexed, e.g. {@code ALLOW:0.05}; actions not listed are
+ * indexed in full. Whether a record is kept depends only on its request id, so the same request gets the same
+ * decision in every delivery, retry and replay. Kept records weigh {@code 1 / rate}, the others 0: summing the
+ * weights estimates the full count.
+ */
+public class SamplingPolicy {
+    public static final SamplingPolicy NONE = new SamplingPolicy(Map.of());
+
+    private final Map<String, Double> rates;
+
+    public SamplingPolicy(Map<String, Double> rates) {
+        rates.forEach((action, rate) -> {
+            if (!(rate >= 0 && rate <= 1)) {
+                throw new IllegalArgumentException("Sample rate of " + action + " must be 0 to 1, got " + rate);
+            }
+        });
+        this.rates = Map.copyOf(rates);
+    }
+
+    /**
+     * Reads {@code action:rate} entries.
+     */
+    public static SamplingPolicy parse(List<String> entries) {
+        Map<String, Double> rates = new HashMap<>();
+        for (String entry : entries) {
+            String[] actionAndRate = entry.split(":", 2);
+            if (actionAndRate.length != 2 || actionAndRate[0].isBlank()) {
+                throw new IllegalArgumentException("Sample rate entries look like action:rate, got '" + entry + "'");
+            }
+            rates.put(actionAndRate[0].trim().toUpperCase(Locale.ROOT), Double.parseDouble(actionAndRate[1].trim()));
+        }
+        return new SamplingPolicy(rates);
+    }
+
+    /**
+     * Whether any action is sampled at all; without sampling records carry no weight.
+     */
+    public boolean isSampling() {
+        return rates.values().stream().anyMatch(rate -> rate < 1);
+    }
+
+    public double rate(String action) {
+        return action == null ? 1 : rates.getOrDefault(action, 1d);
+    }
+
+    /**
+     * Weight of the record: {@code 1 / rate} when kept, 0 when not. Records without a request id are kept
+     * with weight 1, there is nothing to decide on.
+     */
+    public double weight(String action, String requestId) {
+        double rate = rate(action);
+        if (rate >= 1 || requestId == null) {
+            return 1;
+        }
+        return unitHash(requestId) < rate ? 1 / rate : 0;
+    }
+
+    /**
+     * The request id hashed to [0, 1), evenly however similar the ids are.
+     */
+    static double unitHash(String requestId) {
+        // FNV-1a, then murmur3's finaliser: FNV alone leaves ids differing in their last characters close together
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < requestId.length(); i++) {
+            hash ^= requestId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+
+    @Override
+    public String toString() {
+        return rates.toString();
+    }
+}
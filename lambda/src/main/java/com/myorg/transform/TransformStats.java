@@ -0,0 +1,95 @@
+package com.myorg.transform;
+
+/**
+ * Counters for one Firehose transformation batch.
+ */
+public class TransformStats {
+    private int records;
+    private int failedRecords;
+    private int sampledOut;
+    private int enriched;
+    private int realtimeForwarded;
+    private int realtimeDropped;
+    private long bytesIn;
+    private long bytesOut;
+
+    void recordOk(int inputLength, int outputLength) {
+        records++;
+        bytesIn += inputLength;
+        bytesOut += outputLength;
+    }
+
+    void recordSampledOut() {
+        sampledOut++;
+    }
+
+    void recordEnriched() {
+        enriched++;
+    }
+
+    void recordRealtime(int forwarded, int dropped) {
+        realtimeForwarded = forwarded;
+        realtimeDropped = dropped;
+    }
+
+    void recordFailed(int inputLength) {
+        records++;
+        failedRecords++;
+        bytesIn += inputLength;
+        bytesOut += inputLength;
+    }
+
+    public int getRecords() {
+        return records;
+    }
+
+    public int getFailedRecords() {
+        return failedRecords;
+    }
+
+    /**
+     * Records given weight 0, which the index drops and only the S3 backup keeps.
+     */
+    public int getSampledOut() {
+        return sampledOut;
+    }
+
+    /**
+     * Records whose client address was in the enrichment database.
+     */
+    public int getEnriched() {
+        return enriched;
+    }
+
+    /**
+     * Records put on the realtime stream.
+     */
+    public int getRealtimeForwarded() {
+        return realtimeForwarded;
+    }
+
+    /**
+     * Records the realtime stream didn't take; they are still indexed.
+     */
+    public int getRealtimeDropped() {
+        return realtimeDropped;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public long getBytesSaved() {
+        return bytesIn - bytesOut;
+    }
+
+    @Override
+    public String toString() {
+        return "records=" + records + " failed=" + failedRecords + " sampledOut=" + sampledOut + " enriched=" + enriched
+                + " realtimeForwarded=" + realtimeForwarded + " realtimeDropped=" + realtimeDropped + " bytesIn=" + bytesIn + " bytesOut=" + bytesOut;
+    }
+}
@@ -0,0 +1,122 @@
+package com.myorg.transform;
+
+import com.myorg.enrich.IpEnrichment;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Which parts of a WAF log record the transformer removes or flattens, which records it samples and what it
+ * enriches them from.
+ * Read from the Lambda environment, see {@link #fromEnvironment(Map)}.
+ */
+public class TransformerConfig {
+    public static final String DROP_FIELDS_ENV = "DROP_FIELDS";
+    public static final String FLATTEN_HEADERS_ENV = "FLATTEN_HEADERS";
+    public static final String SAMPLE_RATES_ENV = "SAMPLE_RATES";
+    public static final String TAG_ACCOUNT_ENV = "TAG_ACCOUNT";
+
+    public static final List<String> DEFAULT_FLATTEN_HEADERS = List.of("host", "user-agent", "referer", "x-forwarded-for");
+
+    static final String HEADERS_PATH = "httpRequest.headers";
+    // a rule group entry carrying nothing but its id is a rule group that didn't match
+    static final String RULE_GROUP_ID_PATH = "ruleGroupList.ruleGroupId";
+    public static final String SAMPLE_WEIGHT_FIELD = "sampleWeight";
+    public static final String ACCOUNT_ID_FIELD = "accountId";
+
+    private final List<String> dropFields;
+    private final List<String> flattenHeaders;
+    private final SamplingPolicy sampling;
+    private final boolean tagAccount;
+    private final IpEnrichment enrichment;
+
+    public TransformerConfig(List<String> dropFields, List<String> flattenHeaders) {
+        this(dropFields, flattenHeaders, SamplingPolicy.NONE);
+    }
+
+    public TransformerConfig(List<String> dropFields, List<String> flattenHeaders, SamplingPolicy sampling) {
+        this(dropFields, flattenHeaders, sampling, false);
+    }
+
+    public TransformerConfig(List<String> dropFields, List<String> flattenHeaders, SamplingPolicy sampling, boolean tagAccount) {
+        this(dropFields, flattenHeaders, sampling, tagAccount, null);
+    }
+
+    public TransformerConfig(List<String> dropFields, List<String> flattenHeaders, SamplingPolicy sampling, boolean tagAccount,
+                             IpEnrichment enrichment) {
+        this.dropFields = List.copyOf(dropFields);
+        this.flattenHeaders = flattenHeaders.stream()
+                .map(header -> header.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableList());
+        this.sampling = sampling;
+        this.tagAccount = tagAccount;
+        this.enrichment = enrichment;
+    }
+
+    /**
+     * Without {@value #FLATTEN_HEADERS_ENV} the {@link #DEFAULT_FLATTEN_HEADERS} are kept,
+     * an empty value keeps the headers array as it is. Loads the {@value IpEnrichment#DATABASE_ENV} database when set.
+     */
+    public static TransformerConfig fromEnvironment(Map<String, String> environment) {
+        String flattenHeaders = environment.get(FLATTEN_HEADERS_ENV);
+        return new TransformerConfig(
+                splitList(environment.get(DROP_FIELDS_ENV)),
+                flattenHeaders == null ? DEFAULT_FLATTEN_HEADERS : splitList(flattenHeaders),
+                SamplingPolicy.parse(splitList(environment.get(SAMPLE_RATES_ENV))),
+                Boolean.parseBoolean(environment.get(TAG_ACCOUNT_ENV)),
+                IpEnrichment.fromEnvironment(environment));
+    }
+
+    public static List<String> splitList(String value) {
+        if (value == null) {
+            return List.of();
+        }
+
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(entry -> !entry.isEmpty())
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    /**
+     * Dotted paths of fields removed from every record, e.g. {@code httpRequest.headers}.
+     * Array elements share the path of their array.
+     */
+    public List<String> getDropFields() {
+        return dropFields;
+    }
+
+    /**
+     * Lower-case names of the request headers kept when {@code httpRequest.headers} is flattened
+     * into a name to value object. Empty keeps the headers array as it is.
+     */
+    public List<String> getFlattenHeaders() {
+        return flattenHeaders;
+    }
+
+    /**
+     * Per-action sample rates; when any is below 1 every record gets a {@code sampleWeight}.
+     */
+    public SamplingPolicy getSampling() {
+        return sampling;
+    }
+
+    /**
+     * Whether records get an {@code accountId}, the account owning their WebACL, so logs of many accounts
+     * sharing a domain can be told apart. Records that already have one keep it.
+     */
+    public boolean isTagAccount() {
+        return tagAccount;
+    }
+
+    /**
+     * Database the client address of every record is looked up in, its network's details appended as
+     * {@code client}; null without enrichment.
+     */
+    public IpEnrichment getEnrichment() {
+        return enrichment;
+    }
+}
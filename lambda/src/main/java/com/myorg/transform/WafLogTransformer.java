@@ -0,0 +1,378 @@
+package com.myorg.transform;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.myorg.enrich.IpEnrichment;
+import com.myorg.enrich.IpInfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Slims a single WAF log record by streaming it from parser to generator, never holding more than
+ * the current token. Along the way it
+ * <ul>
+ *     <li>removes the configured {@link TransformerConfig#getDropFields() drop fields},</li>
+ *     <li>flattens {@code httpRequest.headers} into a name to value object of the headers of interest,</li>
+ *     <li>leaves out null values and the objects and arrays that end up empty,</li>
+ *     <li>leaves out {@code ruleGroupList} entries that are nothing but a rule group id,</li>
+ *     <li>when sampling, appends the record's {@code sampleWeight}, from its action and request id,</li>
+ *     <li>when tagging accounts, appends the {@code accountId} from the record's WebACL ARN,</li>
+ *     <li>when enriching, appends what the {@link IpEnrichment} database knows about the client address as
+ *     {@code client}.</li>
+ * </ul>
+ * Containers are opened lazily, only once something is written into them, which is what makes the
+ * last three possible without buffering. Instances keep per-record state and are not thread safe.
+ */
+public class WafLogTransformer {
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final FieldNode root = new FieldNode();
+    private final String[] flattenHeaders;
+    private final String[] headerValues;
+    private final SamplingPolicy sampling;
+    private final boolean tagAccount;
+    private final IpEnrichment enrichment;
+    private final boolean capturing;
+
+    private JsonGenerator generator;
+    private int depth;
+    private boolean[] opened = new boolean[16];
+    private boolean[] array = new boolean[16];
+    private String[] fieldNames = new String[16];
+    private String[] labelNames = new String[16];
+    private String[] labelValues = new String[16];
+    private String action;
+    private String requestId;
+    private double sampleWeight = 1;
+    private String webaclId;
+    private boolean hasAccountId;
+    private String clientIp;
+    private boolean enriched;
+
+    public WafLogTransformer(TransformerConfig config) {
+        for (String dropField : config.getDropFields()) {
+            root.add(dropField, FieldNode.DROP);
+        }
+        root.add(TransformerConfig.HEADERS_PATH, FieldNode.FLATTEN_HEADERS);
+        root.add(TransformerConfig.RULE_GROUP_ID_PATH, FieldNode.LABEL);
+
+        this.flattenHeaders = config.getFlattenHeaders().toArray(new String[0]);
+        this.headerValues = new String[flattenHeaders.length];
+        this.sampling = config.getSampling().isSampling() ? config.getSampling() : null;
+        this.tagAccount = config.isTagAccount();
+        this.enrichment = config.getEnrichment();
+        this.capturing = sampling != null || tagAccount || enrichment != null;
+    }
+
+    public byte[] transform(byte[] record) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(record.length);
+
+        try (JsonParser parser = jsonFactory.createParser(record);
+             JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("WAF log record is not a JSON object");
+            }
+
+            this.generator = generator;
+            this.depth = 0;
+            this.action = null;
+            this.requestId = null;
+            this.sampleWeight = 1;
+            this.webaclId = null;
+            this.hasAccountId = false;
+            this.clientIp = null;
+            this.enriched = false;
+            copyObject(parser, null, root);
+        } finally {
+            this.generator = null;
+        }
+
+        if (record.length > 0 && record[record.length - 1] == '\n') {
+            out.write('\n');
+        }
+        return out.toByteArray();
+    }
+
+    private void copyObject(JsonParser parser, String fieldName, FieldNode node) throws IOException {
+        push(fieldName, false);
+        if (depth == 1) {
+            // the record itself is always written, even if every field was dropped
+            flush();
+        }
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            FieldNode child = node == null ? null : node.child(name);
+            int action = child == null ? FieldNode.COPY : child.action();
+            if (capturing && captured(parser, token, name)) {
+                continue;
+            }
+
+            if (action == FieldNode.DROP) {
+                parser.skipChildren();
+            } else if (action == FieldNode.FLATTEN_HEADERS && token == JsonToken.START_ARRAY && flattenHeaders.length > 0) {
+                flattenHeaders(parser, name);
+            } else if (action == FieldNode.LABEL && token == JsonToken.VALUE_STRING) {
+                label(name, parser.getText());
+            } else {
+                copyValue(parser, token, name, child);
+            }
+        }
+
+        if (tagAccount && depth == 1 && !hasAccountId) {
+            String accountId = accountOf(webaclId);
+            if (accountId != null) {
+                flush();
+                generator.writeStringField(TransformerConfig.ACCOUNT_ID_FIELD, accountId);
+            }
+        }
+        if (enrichment != null && depth == 1 && clientIp != null) {
+            enrich(enrichment.lookup(clientIp));
+        }
+        if (sampling != null && depth == 1) {
+            sampleWeight = sampling.weight(this.action, requestId);
+            flush();
+            generator.writeNumberField(TransformerConfig.SAMPLE_WEIGHT_FIELD, sampleWeight);
+        }
+        pop();
+    }
+
+    /**
+     * Picks up the fields the sampling decision, the account tag and the enrichment need, even ones that are
+     * dropped, and skips the weight and client details an earlier transformation wrote, as in replayed records.
+     *
+     * @return whether the field was consumed
+     */
+    private boolean captured(JsonParser parser, JsonToken token, String name) throws IOException {
+        if (sampling != null && depth == 1 && TransformerConfig.SAMPLE_WEIGHT_FIELD.equals(name)) {
+            parser.skipChildren();
+            return true;
+        }
+        if (enrichment != null && depth == 1 && IpEnrichment.CLIENT_FIELD.equals(name)) {
+            // looked up again, the database may have changed since
+            parser.skipChildren();
+            return true;
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            if (depth == 1 && "action".equals(name)) {
+                this.action = parser.getText();
+            } else if (depth == 1 && "webaclId".equals(name)) {
+                this.webaclId = parser.getText();
+            } else if (depth == 1 && TransformerConfig.ACCOUNT_ID_FIELD.equals(name)) {
+                this.hasAccountId = true;
+            } else if (depth == 2 && "requestId".equals(name) && "httpRequest".equals(fieldNames[1])) {
+                this.requestId = parser.getText();
+            } else if (depth == 2 && "clientIp".equals(name) && "httpRequest".equals(fieldNames[1])) {
+                this.clientIp = parser.getText();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The account of an ARN such as {@code arn:aws:wafv2:eu-west-1:111111111111:regional/webacl/...}, or null.
+     */
+    static String accountOf(String arn) {
+        if (arn == null || !arn.startsWith("arn:")) {
+            return null;
+        }
+        String[] parts = arn.split(":", 6);
+        return parts.length == 6 && parts[4].length() == 12 && parts[4].chars().allMatch(Character::isDigit) ? parts[4] : null;
+    }
+
+    private void enrich(IpInfo info) throws IOException {
+        if (info == null || info.isEmpty()) {
+            return;
+        }
+
+        flush();
+        generator.writeObjectFieldStart(IpEnrichment.CLIENT_FIELD);
+        if (info.getAsn() > 0) {
+            generator.writeNumberField("asn", info.getAsn());
+        }
+        if (info.getAsOrg() != null) {
+            generator.writeStringField("asOrg", info.getAsOrg());
+        }
+        if (info.getCountry() != null) {
+            generator.writeStringField("country", info.getCountry());
+        }
+        if (info.getRegion() != null) {
+            generator.writeStringField("region", info.getRegion());
+        }
+        if (!info.getReputation().isEmpty()) {
+            generator.writeArrayFieldStart("reputation");
+            for (String list : info.getReputation()) {
+                generator.writeString(list);
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+        this.enriched = true;
+    }
+
+    /**
+     * Weight the last record was given, 0 when the index drops it; always 1 without sampling.
+     */
+    public double getSampleWeight() {
+        return sampleWeight;
+    }
+
+    /**
+     * Whether the last record's client address was found in the enrichment database.
+     */
+    public boolean isEnriched() {
+        return enriched;
+    }
+
+    private void copyArray(JsonParser parser, String fieldName, FieldNode node) throws IOException {
+        push(fieldName, true);
+
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            copyValue(parser, token, null, node);
+        }
+
+        pop();
+    }
+
+    private void copyValue(JsonParser parser, JsonToken token, String fieldName, FieldNode node) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                copyObject(parser, fieldName, node);
+                break;
+            case START_ARRAY:
+                copyArray(parser, fieldName, node);
+                break;
+            case VALUE_NULL:
+                break;
+            default:
+                flush();
+                if (fieldName != null) {
+                    generator.writeFieldName(fieldName);
+                }
+                generator.copyCurrentEvent(parser);
+        }
+    }
+
+    private void flattenHeaders(JsonParser parser, String fieldName) throws IOException {
+        Arrays.fill(headerValues, null);
+        boolean found = false;
+
+        JsonToken element;
+        while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (element != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+
+            String headerName = null;
+            String headerValue = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.VALUE_STRING && "name".equals(name)) {
+                    headerName = parser.getText();
+                } else if (token == JsonToken.VALUE_STRING && "value".equals(name)) {
+                    headerValue = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            for (int i = 0; i < flattenHeaders.length; i++) {
+                // first occurrence wins, as it does for most servers
+                if (headerValues[i] == null && headerValue != null && flattenHeaders[i].equalsIgnoreCase(headerName)) {
+                    headerValues[i] = headerValue;
+                    found = true;
+                }
+            }
+        }
+
+        if (!found) {
+            return;
+        }
+
+        flush();
+        generator.writeFieldName(fieldName);
+        generator.writeStartObject();
+        for (int i = 0; i < flattenHeaders.length; i++) {
+            if (headerValues[i] != null) {
+                generator.writeStringField(flattenHeaders[i], headerValues[i]);
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private void label(String name, String value) throws IOException {
+        int level = depth - 1;
+        if (opened[level] || labelNames[level] != null) {
+            flush();
+            generator.writeStringField(name, value);
+        } else {
+            labelNames[level] = name;
+            labelValues[level] = value;
+        }
+    }
+
+    private void push(String fieldName, boolean isArray) {
+        if (depth == opened.length) {
+            int capacity = depth * 2;
+            opened = Arrays.copyOf(opened, capacity);
+            array = Arrays.copyOf(array, capacity);
+            fieldNames = Arrays.copyOf(fieldNames, capacity);
+            labelNames = Arrays.copyOf(labelNames, capacity);
+            labelValues = Arrays.copyOf(labelValues, capacity);
+        }
+
+        opened[depth] = false;
+        array[depth] = isArray;
+        fieldNames[depth] = fieldName;
+        labelNames[depth] = null;
+        labelValues[depth] = null;
+        depth++;
+    }
+
+    private void pop() throws IOException {
+        depth--;
+        if (!opened[depth]) {
+            return;
+        }
+
+        if (array[depth]) {
+            generator.writeEndArray();
+        } else {
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Opens every container on the current path that hasn't been written yet, so a value can follow.
+     */
+    private void flush() throws IOException {
+        for (int level = 0; level < depth; level++) {
+            if (opened[level]) {
+                continue;
+            }
+
+            if (fieldNames[level] != null) {
+                generator.writeFieldName(fieldNames[level]);
+            }
+            if (array[level]) {
+                generator.writeStartArray();
+            } else {
+                generator.writeStartObject();
+            }
+            opened[level] = true;
+
+            if (labelNames[level] != null) {
+                generator.writeStringField(labelNames[level], labelValues[level]);
+                labelNames[level] = null;
+                labelValues[level] = null;
+            }
+        }
+    }
+}
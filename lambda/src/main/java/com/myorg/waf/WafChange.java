@@ -0,0 +1,117 @@
+package com.myorg.waf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * A WebACL or rule created or deleted in WAF, as read from the CloudTrail event EventBridge forwards.
+ */
+public class WafChange {
+    public enum Kind {
+        WEBACL,
+        RULE
+    }
+
+    private final Kind kind;
+    private final String id;
+    private final String name;
+    private final String eventTime;
+
+    /**
+     * @param name the new name, or null for a deletion
+     */
+    public WafChange(Kind kind, String id, String name, String eventTime) {
+        this.kind = kind;
+        this.id = id;
+        this.name = name;
+        this.eventTime = eventTime;
+    }
+
+    /**
+     * The change an EventBridge event describes, or null when the event is not a successful WAF create or delete
+     * call this solution knows how to read.
+     */
+    public static WafChange fromEvent(JsonNode event) {
+        JsonNode detail = event.path("detail");
+        if (detail.hasNonNull("errorCode")) {
+            return null;
+        }
+        String eventTime = event.path("time").asText(detail.path("eventTime").asText());
+        JsonNode response = detail.path("responseElements");
+        JsonNode request = detail.path("requestParameters");
+        boolean wafv2 = "wafv2.amazonaws.com".equals(detail.path("eventSource").asText());
+
+        switch (detail.path("eventName").asText()) {
+            case "CreateWebACL":
+                if (wafv2) {
+                    // CloudTrail lower-cases the first letter of response fields: ARN becomes aRN
+                    JsonNode summary = response.path("summary");
+                    String arn = summary.path("aRN").asText(summary.path("arn").asText(summary.path("ARN").asText(null)));
+                    return of(Kind.WEBACL, arn, summary.path("name").asText(null), eventTime);
+                }
+                JsonNode webAcl = response.path("webACL");
+                return of(Kind.WEBACL, webAcl.path("webACLId").asText(null), webAcl.path("name").asText(null), eventTime);
+            case "CreateRule":
+            case "CreateRateBasedRule":
+                JsonNode rule = response.path("rule");
+                return of(Kind.RULE, rule.path("ruleId").asText(null), rule.path("name").asText(null), eventTime);
+            case "DeleteWebACL":
+                if (wafv2) {
+                    return removal(Kind.WEBACL, wafv2WebAclArn(event, request), eventTime);
+                }
+                return removal(Kind.WEBACL, request.path("webACLId").asText(null), eventTime);
+            case "DeleteRule":
+            case "DeleteRateBasedRule":
+                return removal(Kind.RULE, request.path("ruleId").asText(null), eventTime);
+            default:
+                return null;
+        }
+    }
+
+    // the delete call only names the WebACL; its ARN follows from the scope, account and region
+    private static String wafv2WebAclArn(JsonNode event, JsonNode request) {
+        String name = request.path("name").asText(null);
+        String id = request.path("id").asText(null);
+        String account = event.path("account").asText(event.at("/detail/recipientAccountId").asText(null));
+        if (name == null || id == null || account == null) {
+            return null;
+        }
+        boolean cloudFront = "CLOUDFRONT".equals(request.path("scope").asText());
+        return "arn:aws:wafv2:" + (cloudFront ? "us-east-1" : event.path("region").asText(event.at("/detail/awsRegion").asText()))
+                + ":" + account + ":" + (cloudFront ? "global" : "regional") + "/webacl/" + name + "/" + id;
+    }
+
+    private static WafChange of(Kind kind, String id, String name, String eventTime) {
+        return id == null || name == null ? null : new WafChange(kind, id, name, eventTime);
+    }
+
+    private static WafChange removal(Kind kind, String id, String eventTime) {
+        return id == null ? null : new WafChange(kind, id, null, eventTime);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isRemoval() {
+        return name == null;
+    }
+
+    /**
+     * ISO-8601 time of the call, so later changes win when events arrive out of order.
+     */
+    public String getEventTime() {
+        return eventTime;
+    }
+
+    String getKey() {
+        return kind + "|" + id;
+    }
+}
@@ -0,0 +1,71 @@
+package com.myorg.waf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The WAF events of one updater invocation, coalesced: one change per WebACL or rule, the latest winning, so a
+ * rule created and deleted within the batch ends up deleted.
+ * An event that can't be read as a change means the inventory has to be listed again in full.
+ */
+public class WafChangeBatch {
+    private final Map<String, WafChange> changes;
+    private final int events;
+    private final boolean fullRefresh;
+
+    private WafChangeBatch(Map<String, WafChange> changes, int events, boolean fullRefresh) {
+        this.changes = changes;
+        this.events = events;
+        this.fullRefresh = fullRefresh;
+    }
+
+    public static WafChangeBatch coalesce(List<JsonNode> events) {
+        Map<String, WafChange> changes = new LinkedHashMap<>();
+        boolean fullRefresh = false;
+        for (JsonNode event : events) {
+            WafChange change = WafChange.fromEvent(event);
+            if (change == null) {
+                // failed calls change nothing, anything else we can't read might have
+                fullRefresh |= !event.at("/detail").hasNonNull("errorCode");
+                continue;
+            }
+            changes.merge(change.getKey(), change,
+                    (earlier, later) -> later.getEventTime().compareTo(earlier.getEventTime()) >= 0 ? later : earlier);
+        }
+        return new WafChangeBatch(changes, events.size(), fullRefresh);
+    }
+
+    public Collection<WafChange> getChanges() {
+        return changes.values();
+    }
+
+    public int getEvents() {
+        return events;
+    }
+
+    public boolean isFullRefresh() {
+        return fullRefresh;
+    }
+
+    /**
+     * The inventory with the batch's WebACLs and rules added, renamed or removed.
+     */
+    public WafInventory applyTo(WafInventory inventory) {
+        Map<String, String> webAcls = new HashMap<>(inventory.getWebAcls());
+        Map<String, String> rules = new HashMap<>(inventory.getRules());
+        for (WafChange change : changes.values()) {
+            Map<String, String> names = change.getKind() == WafChange.Kind.WEBACL ? webAcls : rules;
+            if (change.isRemoval()) {
+                names.remove(change.getId());
+            } else {
+                names.put(change.getId(), change.getName());
+            }
+        }
+        return new WafInventory(webAcls, rules);
+    }
+}
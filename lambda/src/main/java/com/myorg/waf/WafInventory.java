@@ -0,0 +1,60 @@
+package com.myorg.waf;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Names of the account's WebACLs and rules, keyed by the id WAF writes into the logs: the ARN for WAFv2
+ * WebACLs, the WebACL or rule id for WAF Classic. The index pattern's scripted fields turn ids into these names.
+ */
+public class WafInventory {
+    public static final String WEBACL_PLACEHOLDER = "WEBACL_CUSTOM_MAPPINGS";
+    public static final String RULE_PLACEHOLDER = "RULE_CUSTOM_MAPPINGS";
+
+    private final Map<String, String> webAcls;
+    private final Map<String, String> rules;
+
+    public WafInventory(Map<String, String> webAcls, Map<String, String> rules) {
+        // sorted, so the same inventory always renders the same scripts
+        this.webAcls = new TreeMap<>(webAcls);
+        this.rules = new TreeMap<>(rules);
+    }
+
+    public Map<String, String> getWebAcls() {
+        return webAcls;
+    }
+
+    public Map<String, String> getRules() {
+        return rules;
+    }
+
+    /**
+     * Replaces the placeholders of a Painless script with one {@code if} per WebACL or rule.
+     */
+    public String resolvePlaceholders(String script) {
+        return script.replace(WEBACL_PLACEHOLDER, mappings("webacl", webAcls))
+                .replace(RULE_PLACEHOLDER, mappings("rule", rules));
+    }
+
+    private static String mappings(String variable, Map<String, String> names) {
+        StringBuilder script = new StringBuilder();
+        names.forEach((id, name) -> script.append("if (").append(variable).append(" == \"").append(escape(id))
+                .append("\") { return \"").append(escape(name)).append("\";}\n "));
+        return script.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof WafInventory
+                && webAcls.equals(((WafInventory) other).webAcls) && rules.equals(((WafInventory) other).rules);
+    }
+
+    @Override
+    public int hashCode() {
+        return webAcls.hashCode() * 31 + rules.hashCode();
+    }
+}
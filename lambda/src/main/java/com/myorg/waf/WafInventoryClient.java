@@ -0,0 +1,139 @@
+package com.myorg.waf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.myorg.aws.AwsCredentials;
+import com.myorg.aws.SigV4Signer;
+import com.myorg.aws.SignedHttpClient;
+import com.myorg.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Lists WebACLs and rules of WAFv2 (regional and CloudFront scope) and WAF Classic (regional and global)
+ * through their JSON APIs. {@value #ENDPOINT_ENV} sends every call to one endpoint instead, for local runs.
+ */
+public class WafInventoryClient {
+    public static final String ENDPOINT_ENV = "WAF_ENDPOINT";
+
+    static final int PAGE_SIZE = 100;
+    static final int MAX_ATTEMPTS = 4;
+    static final long RETRY_BACKOFF_MILLIS = 100;
+    // CloudFront WebACLs and WAF Classic global resources live in us-east-1
+    private static final String GLOBAL_REGION = "us-east-1";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Api wafv2Regional;
+    private final Api wafv2CloudFront;
+    private final Api wafRegional;
+    private final Api wafGlobal;
+
+    public WafInventoryClient(Supplier<AwsCredentials> credentials, String region, URI endpointOverride) {
+        this.wafv2Regional = new Api(credentials, region, "wafv2", "AWSWAF_20190729",
+                endpoint(endpointOverride, "wafv2." + region + ".amazonaws.com"));
+        this.wafv2CloudFront = new Api(credentials, GLOBAL_REGION, "wafv2", "AWSWAF_20190729",
+                endpoint(endpointOverride, "wafv2." + GLOBAL_REGION + ".amazonaws.com"));
+        this.wafRegional = new Api(credentials, region, "waf-regional", "AWSWAFRegional_20161128",
+                endpoint(endpointOverride, "waf-regional." + region + ".amazonaws.com"));
+        this.wafGlobal = new Api(credentials, GLOBAL_REGION, "waf", "AWSWAF_20150824",
+                endpoint(endpointOverride, "waf.amazonaws.com"));
+    }
+
+    public static WafInventoryClient fromEnvironment(Map<String, String> environment) {
+        String endpoint = environment.get(ENDPOINT_ENV);
+        return new WafInventoryClient(AwsCredentials.providerFromEnvironment(environment), environment.get("AWS_REGION"),
+                endpoint == null ? null : URI.create(endpoint));
+    }
+
+    public WafInventory fetch() throws IOException {
+        Map<String, String> webAcls = new HashMap<>();
+        Map<String, String> rules = new HashMap<>();
+
+        for (Api classic : new Api[]{wafRegional, wafGlobal}) {
+            list(classic, "ListWebACLs", "WebACLs", null, webAcls, "WebACLId");
+            list(classic, "ListRules", "Rules", null, rules, "RuleId");
+        }
+        // WAFv2 logs carry the WebACL ARN
+        list(wafv2Regional, "ListWebACLs", "WebACLs", "REGIONAL", webAcls, "ARN");
+        list(wafv2CloudFront, "ListWebACLs", "WebACLs", "CLOUDFRONT", webAcls, "ARN");
+
+        return new WafInventory(webAcls, rules);
+    }
+
+    private void list(Api api, String operation, String field, String scope, Map<String, String> names, String idField)
+            throws IOException {
+        String marker = null;
+        do {
+            ObjectNode request = objectMapper.createObjectNode().put("Limit", PAGE_SIZE);
+            if (scope != null) {
+                request.put("Scope", scope);
+            }
+            if (marker != null) {
+                request.put("NextMarker", marker);
+            }
+
+            JsonNode page = api.call(operation, objectMapper.writeValueAsBytes(request));
+            for (JsonNode item : page.path(field)) {
+                names.put(item.path(idField).asText(), item.path("Name").asText());
+            }
+            marker = page.hasNonNull("NextMarker") && page.path(field).size() > 0 ? page.get("NextMarker").asText() : null;
+        } while (marker != null);
+    }
+
+    static boolean isRetryable(int statusCode, String error) {
+        return statusCode == 429 || statusCode >= 500 || error.contains("Throttling") || error.contains("TooManyRequests");
+    }
+
+    private static URI endpoint(URI override, String host) {
+        return override != null ? override : URI.create("https://" + host + "/");
+    }
+
+    private final class Api {
+        private final SignedHttpClient httpClient;
+        private final String service;
+        private final String targetPrefix;
+        private final URI endpoint;
+
+        Api(Supplier<AwsCredentials> credentials, String region, String service, String targetPrefix, URI endpoint) {
+            this.httpClient = new SignedHttpClient(credentials == null ? null : new SigV4Signer(credentials, region, service));
+            this.service = service;
+            this.targetPrefix = targetPrefix;
+            this.endpoint = endpoint;
+        }
+
+        // throttled and failed calls are retried with exponential backoff, like the SDKs do
+        JsonNode call(String operation, byte[] body) throws IOException {
+            for (int attempt = 1; ; attempt++) {
+                long started = System.nanoTime();
+                HttpResponse<byte[]> response = httpClient.send("POST", endpoint, Map.of(
+                        "content-type", "application/x-amz-json-1.1",
+                        "x-amz-target", targetPrefix + "." + operation), body);
+                Metrics.recordSince(Metrics.WAF_CALL_LATENCY, started);
+                Metrics.count(Metrics.WAF_CALLS);
+                if (response.statusCode() == 200) {
+                    return objectMapper.readTree(response.body());
+                }
+
+                String error = new String(response.body(), StandardCharsets.UTF_8);
+                if (attempt == MAX_ATTEMPTS || !isRetryable(response.statusCode(), error)) {
+                    throw new IOException(service + " " + operation + " failed with " + response.statusCode() + ": " + error);
+                }
+                Metrics.count(Metrics.WAF_RETRIES);
+                try {
+                    Thread.sleep(RETRY_BACKOFF_MILLIS << (attempt - 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while retrying " + service + " " + operation);
+                }
+            }
+        }
+    }
+}
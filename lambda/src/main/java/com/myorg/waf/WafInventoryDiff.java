@@ -0,0 +1,82 @@
+package com.myorg.waf;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * What changed between two inventories: WebACLs and rules added or renamed, and ids that are gone. Empty when
+ * nothing the index pattern renders changed, so there is nothing to write.
+ */
+public final class WafInventoryDiff {
+    private final Map<String, String> upsertedWebAcls;
+    private final Map<String, String> upsertedRules;
+    private final Set<String> removedWebAcls;
+    private final Set<String> removedRules;
+
+    private WafInventoryDiff(Map<String, String> upsertedWebAcls, Map<String, String> upsertedRules,
+                             Set<String> removedWebAcls, Set<String> removedRules) {
+        this.upsertedWebAcls = upsertedWebAcls;
+        this.upsertedRules = upsertedRules;
+        this.removedWebAcls = removedWebAcls;
+        this.removedRules = removedRules;
+    }
+
+    /**
+     * @param before the stored inventory, or null when there is none
+     */
+    public static WafInventoryDiff between(WafInventory before, WafInventory after) {
+        Map<String, String> webAclsBefore = before == null ? Map.of() : before.getWebAcls();
+        Map<String, String> rulesBefore = before == null ? Map.of() : before.getRules();
+        return new WafInventoryDiff(upserted(webAclsBefore, after.getWebAcls()), upserted(rulesBefore, after.getRules()),
+                removed(webAclsBefore, after.getWebAcls()), removed(rulesBefore, after.getRules()));
+    }
+
+    private static Map<String, String> upserted(Map<String, String> before, Map<String, String> after) {
+        Map<String, String> upserted = new TreeMap<>();
+        after.forEach((id, name) -> {
+            if (!Objects.equals(before.get(id), name)) {
+                upserted.put(id, name);
+            }
+        });
+        return upserted;
+    }
+
+    private static Set<String> removed(Map<String, String> before, Map<String, String> after) {
+        Set<String> removed = new TreeSet<>(before.keySet());
+        removed.removeAll(after.keySet());
+        return removed;
+    }
+
+    public Map<String, String> getUpsertedWebAcls() {
+        return upsertedWebAcls;
+    }
+
+    public Map<String, String> getUpsertedRules() {
+        return upsertedRules;
+    }
+
+    public Set<String> getRemovedWebAcls() {
+        return removedWebAcls;
+    }
+
+    public Set<String> getRemovedRules() {
+        return removedRules;
+    }
+
+    public int size() {
+        return upsertedWebAcls.size() + upsertedRules.size() + removedWebAcls.size() + removedRules.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public String toString() {
+        return upsertedWebAcls.size() + " WebACLs and " + upsertedRules.size() + " rules added or renamed, "
+                + removedWebAcls.size() + " WebACLs and " + removedRules.size() + " rules removed";
+    }
+}
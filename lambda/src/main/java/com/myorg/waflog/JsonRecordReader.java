@@ -0,0 +1,136 @@
+package com.myorg.waflog;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Splits a stream of JSON objects, as Firehose writes them to S3 (concatenated, with or without newlines),
+ * into records. The current record is a slice of a buffer that is reused, so it is only valid until the
+ * next call to {@link #next()}.
+ */
+public final class JsonRecordReader {
+    private final InputStream in;
+    private byte[] buffer = new byte[64 * 1024];
+    private int position;
+    private int limit;
+    private boolean eof;
+
+    private int recordOffset;
+    private int recordLength;
+
+    public JsonRecordReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Unwraps a GZIP or ZIP compressed object, whichever Firehose was configured to write.
+     */
+    public static InputStream decompress(InputStream raw) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(raw, 64 * 1024);
+        in.mark(4);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+
+        if (first == 0x1f && second == 0x8b) {
+            return new GZIPInputStream(in, 64 * 1024);
+        }
+        if (first == 'P' && second == 'K') {
+            ZipInputStream zip = new ZipInputStream(in);
+            if (zip.getNextEntry() == null) {
+                throw new IOException("Empty ZIP archive");
+            }
+            return zip;
+        }
+        return in;
+    }
+
+    public boolean next() throws IOException {
+        while (true) {
+            while (position < limit && isWhitespace(buffer[position])) {
+                position++;
+            }
+            if (position < limit) {
+                if (buffer[position] != '{') {
+                    throw new IOException("Expected a JSON object at " + position + " of the buffered stream");
+                }
+                int end = scanObject(position);
+                if (end > 0) {
+                    recordOffset = position;
+                    recordLength = end - position;
+                    position = end;
+                    return true;
+                }
+            }
+            if (eof) {
+                if (position < limit) {
+                    throw new IOException("Truncated JSON record at the end of the stream");
+                }
+                return false;
+            }
+            fill();
+        }
+    }
+
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int offset() {
+        return recordOffset;
+    }
+
+    public int length() {
+        return recordLength;
+    }
+
+    // end of the object starting at start, or -1 if the buffer doesn't hold all of it yet
+    private int scanObject(int start) {
+        int depth = 0;
+        boolean inString = false;
+        for (int i = start; i < limit; i++) {
+            byte b = buffer[i];
+            if (inString) {
+                if (b == '\\') {
+                    i++;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if ((b == '}' || b == ']') && --depth == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private void fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            byte[] grown = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, limit);
+            buffer = grown;
+        }
+
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+}
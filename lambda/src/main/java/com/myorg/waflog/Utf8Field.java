@@ -0,0 +1,90 @@
+package com.myorg.waflog;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable view of a UTF-8 string value in a parsed WAF log record. The bytes belong either to the
+ * parsed input or to the parser's scratch buffer, so a field is only valid until the next parse.
+ */
+public final class Utf8Field {
+    private byte[] bytes;
+    private int offset;
+    private int length = -1;
+
+    void set(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    void setFrom(Utf8Field other) {
+        set(other.bytes, other.offset, other.length);
+    }
+
+    void clear() {
+        this.bytes = null;
+        this.length = -1;
+    }
+
+    public boolean isPresent() {
+        return length >= 0;
+    }
+
+    public int length() {
+        return Math.max(length, 0);
+    }
+
+    public byte byteAt(int index) {
+        return bytes[offset + index];
+    }
+
+    public boolean contentEquals(byte[] other) {
+        if (length != other.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[offset + i] != other[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares against an ASCII string without allocating.
+     */
+    public boolean contentEquals(String ascii) {
+        if (length != ascii.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[offset + i] != (byte) ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same hash for the same content wherever the bytes live, for lookups keyed by field content.
+     */
+    public int contentHash() {
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + bytes[offset + i];
+        }
+        return hash;
+    }
+
+    public void copyTo(byte[] target, int targetOffset) {
+        System.arraycopy(bytes, offset, target, targetOffset, length());
+    }
+
+    /**
+     * Allocates; meant for keys that are kept and for tests.
+     */
+    @Override
+    public String toString() {
+        return isPresent() ? new String(bytes, offset, length, StandardCharsets.UTF_8) : null;
+    }
+}
@@ -0,0 +1,467 @@
+package com.myorg.waflog;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Streaming parser for WAF log records that pulls out the fields the dashboards use and skips the rest.
+ * It works on the raw UTF-8 bytes: string values without escapes are referenced in place, escaped ones are
+ * decoded into a scratch buffer that is reused across records, and the result goes into a reused
+ * {@link WafLogRecord}. Once the scratch buffer has grown to the largest escaped content seen, parsing a
+ * record allocates nothing. Instances are not thread safe.
+ */
+public final class WafLogParser {
+    private static final byte[] TIMESTAMP = ascii("timestamp");
+    private static final byte[] ACTION = ascii("action");
+    private static final byte[] TERMINATING_RULE_ID = ascii("terminatingRuleId");
+    private static final byte[] WEBACL_ID = ascii("webaclId");
+    private static final byte[] HTTP_REQUEST = ascii("httpRequest");
+    private static final byte[] CLIENT_IP = ascii("clientIp");
+    private static final byte[] COUNTRY = ascii("country");
+    private static final byte[] URI = ascii("uri");
+    private static final byte[] HEADERS = ascii("headers");
+    private static final byte[] NAME = ascii("name");
+    private static final byte[] VALUE = ascii("value");
+
+    private final byte[][] headerNames;
+
+    private final Utf8Field key = new Utf8Field();
+    private final Utf8Field headerName = new Utf8Field();
+    private final Utf8Field headerValue = new Utf8Field();
+
+    private byte[] scratch = new byte[256];
+    private int scratchLength;
+
+    private byte[] in;
+    private int pos;
+    private int end;
+
+    /**
+     * @param headersOfInterest request headers to extract, matched case-insensitively
+     */
+    public WafLogParser(List<String> headersOfInterest) {
+        this.headerNames = new byte[headersOfInterest.size()][];
+        for (int i = 0; i < headerNames.length; i++) {
+            headerNames[i] = ascii(headersOfInterest.get(i).toLowerCase(Locale.ROOT));
+        }
+    }
+
+    public WafLogRecord newRecord() {
+        return new WafLogRecord(headerNames.length);
+    }
+
+    public void parse(byte[] data, WafLogRecord record) throws IOException {
+        parse(data, 0, data.length, record);
+    }
+
+    /**
+     * Parses one record into {@code record}. The record's fields may point into {@code data}, so the
+     * caller mustn't overwrite it while still reading the record.
+     */
+    public void parse(byte[] data, int offset, int length, WafLogRecord record) throws IOException {
+        this.in = data;
+        this.pos = offset;
+        this.end = offset + length;
+        this.scratchLength = 0;
+        record.reset();
+
+        try {
+            parseRecord(record);
+        } finally {
+            this.in = null;
+        }
+    }
+
+    private void parseRecord(WafLogRecord record) throws IOException {
+        expect('{');
+        if (consumeIf('}')) {
+            return;
+        }
+
+        do {
+            readKey();
+            if (key.contentEquals(TIMESTAMP)) {
+                if (!consumeNull()) {
+                    record.setTimestamp(readLong());
+                }
+            } else if (key.contentEquals(ACTION)) {
+                readNullableString(record.getAction());
+            } else if (key.contentEquals(TERMINATING_RULE_ID)) {
+                readNullableString(record.getTerminatingRuleId());
+            } else if (key.contentEquals(WEBACL_ID)) {
+                readNullableString(record.getWebaclId());
+            } else if (key.contentEquals(HTTP_REQUEST) && peek() == '{') {
+                parseHttpRequest(record);
+            } else {
+                skipValue();
+            }
+        } while (consumeIf(','));
+
+        expect('}');
+    }
+
+    private void parseHttpRequest(WafLogRecord record) throws IOException {
+        expect('{');
+        if (consumeIf('}')) {
+            return;
+        }
+
+        do {
+            readKey();
+            if (key.contentEquals(CLIENT_IP)) {
+                readNullableString(record.getClientIp());
+            } else if (key.contentEquals(COUNTRY)) {
+                readNullableString(record.getCountry());
+            } else if (key.contentEquals(URI)) {
+                readNullableString(record.getUri());
+            } else if (key.contentEquals(HEADERS) && peek() == '[' && headerNames.length > 0) {
+                parseHeaders(record);
+            } else {
+                skipValue();
+            }
+        } while (consumeIf(','));
+
+        expect('}');
+    }
+
+    private void parseHeaders(WafLogRecord record) throws IOException {
+        expect('[');
+        if (consumeIf(']')) {
+            return;
+        }
+
+        do {
+            if (peek() != '{') {
+                skipValue();
+                continue;
+            }
+
+            headerName.clear();
+            headerValue.clear();
+            expect('{');
+            if (!consumeIf('}')) {
+                do {
+                    readKey();
+                    if (key.contentEquals(NAME)) {
+                        readNullableString(headerName);
+                    } else if (key.contentEquals(VALUE)) {
+                        readNullableString(headerValue);
+                    } else {
+                        skipValue();
+                    }
+                } while (consumeIf(','));
+                expect('}');
+            }
+
+            if (headerName.isPresent() && headerValue.isPresent()) {
+                for (int i = 0; i < headerNames.length; i++) {
+                    Utf8Field target = record.getHeader(i);
+                    // first occurrence wins
+                    if (!target.isPresent() && equalsIgnoreAsciiCase(headerName, headerNames[i])) {
+                        target.setFrom(headerValue);
+                    }
+                }
+            }
+        } while (consumeIf(','));
+
+        expect(']');
+    }
+
+    private static boolean equalsIgnoreAsciiCase(Utf8Field field, byte[] lowerCaseName) {
+        if (field.length() != lowerCaseName.length) {
+            return false;
+        }
+        for (int i = 0; i < lowerCaseName.length; i++) {
+            byte b = field.byteAt(i);
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != lowerCaseName[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void readKey() throws IOException {
+        readString(key);
+        expect(':');
+    }
+
+    private void readNullableString(Utf8Field target) throws IOException {
+        if (consumeNull()) {
+            target.clear();
+        } else {
+            readString(target);
+        }
+    }
+
+    private void readString(Utf8Field target) throws IOException {
+        expect('"');
+        int start = pos;
+        while (pos < end) {
+            byte b = in[pos];
+            if (b == '"') {
+                target.set(in, start, pos - start);
+                pos++;
+                return;
+            }
+            if (b == '\\') {
+                readEscapedString(target, start);
+                return;
+            }
+            pos++;
+        }
+        throw error("unterminated string");
+    }
+
+    private void readEscapedString(Utf8Field target, int start) throws IOException {
+        int scratchStart = scratchLength;
+        append(in, start, pos - start);
+
+        while (pos < end) {
+            byte b = in[pos++];
+            if (b == '"') {
+                target.set(scratch, scratchStart, scratchLength - scratchStart);
+                return;
+            }
+            if (b != '\\') {
+                appendByte(b);
+                continue;
+            }
+            if (pos >= end) {
+                break;
+            }
+
+            byte escaped = in[pos++];
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    appendByte(escaped);
+                    break;
+                case 'b':
+                    appendByte((byte) '\b');
+                    break;
+                case 'f':
+                    appendByte((byte) '\f');
+                    break;
+                case 'n':
+                    appendByte((byte) '\n');
+                    break;
+                case 'r':
+                    appendByte((byte) '\r');
+                    break;
+                case 't':
+                    appendByte((byte) '\t');
+                    break;
+                case 'u':
+                    appendCodePoint(readUnicodeEscape());
+                    break;
+                default:
+                    throw error("invalid escape");
+            }
+        }
+        throw error("unterminated string");
+    }
+
+    private int readUnicodeEscape() throws IOException {
+        int codeUnit = readHex4();
+        if (Character.isHighSurrogate((char) codeUnit) && pos + 6 <= end && in[pos] == '\\' && in[pos + 1] == 'u') {
+            pos += 2;
+            int low = readHex4();
+            if (Character.isLowSurrogate((char) low)) {
+                return Character.toCodePoint((char) codeUnit, (char) low);
+            }
+            // unpaired surrogates come out as replacement characters, as the JDK decoder does
+            appendCodePoint(0xFFFD);
+            return Character.isSurrogate((char) low) ? 0xFFFD : low;
+        }
+        return Character.isSurrogate((char) codeUnit) ? 0xFFFD : codeUnit;
+    }
+
+    private int readHex4() throws IOException {
+        if (pos + 4 > end) {
+            throw error("truncated unicode escape");
+        }
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(in[pos++], 16);
+            if (digit < 0) {
+                throw error("invalid unicode escape");
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    private void appendCodePoint(int codePoint) {
+        if (codePoint < 0x80) {
+            appendByte((byte) codePoint);
+        } else if (codePoint < 0x800) {
+            appendByte((byte) (0xC0 | codePoint >> 6));
+            appendByte((byte) (0x80 | codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            appendByte((byte) (0xE0 | codePoint >> 12));
+            appendByte((byte) (0x80 | codePoint >> 6 & 0x3F));
+            appendByte((byte) (0x80 | codePoint & 0x3F));
+        } else {
+            appendByte((byte) (0xF0 | codePoint >> 18));
+            appendByte((byte) (0x80 | codePoint >> 12 & 0x3F));
+            appendByte((byte) (0x80 | codePoint >> 6 & 0x3F));
+            appendByte((byte) (0x80 | codePoint & 0x3F));
+        }
+    }
+
+    private void append(byte[] source, int offset, int length) {
+        ensureScratch(length);
+        System.arraycopy(source, offset, scratch, scratchLength, length);
+        scratchLength += length;
+    }
+
+    private void appendByte(byte b) {
+        ensureScratch(1);
+        scratch[scratchLength++] = b;
+    }
+
+    private void ensureScratch(int extra) {
+        if (scratchLength + extra > scratch.length) {
+            // fields already decoded keep pointing at the old array, which stays intact
+            byte[] grown = new byte[Math.max(scratch.length * 2, scratchLength + extra)];
+            System.arraycopy(scratch, 0, grown, 0, scratchLength);
+            scratch = grown;
+        }
+    }
+
+    private long readLong() throws IOException {
+        skipWhitespace();
+        boolean negative = pos < end && in[pos] == '-';
+        if (negative) {
+            pos++;
+        }
+
+        int start = pos;
+        long value = 0;
+        while (pos < end && in[pos] >= '0' && in[pos] <= '9') {
+            value = value * 10 + (in[pos++] - '0');
+        }
+        if (pos == start) {
+            throw error("expected a number");
+        }
+        // timestamps are integers, but don't choke on a fraction or exponent
+        while (pos < end && (in[pos] == '.' || in[pos] == 'e' || in[pos] == 'E' || in[pos] == '+' || in[pos] == '-'
+                || in[pos] >= '0' && in[pos] <= '9')) {
+            pos++;
+        }
+        return negative ? -value : value;
+    }
+
+    private void skipValue() throws IOException {
+        skipWhitespace();
+        if (pos >= end) {
+            throw error("expected a value");
+        }
+
+        byte b = in[pos];
+        if (b == '"') {
+            skipString();
+        } else if (b == '{' || b == '[') {
+            skipContainer();
+        } else {
+            // number, true, false or null
+            int start = pos;
+            while (pos < end && in[pos] != ',' && in[pos] != '}' && in[pos] != ']' && !isWhitespace(in[pos])) {
+                pos++;
+            }
+            if (pos == start) {
+                throw error("expected a value");
+            }
+        }
+    }
+
+    private void skipString() throws IOException {
+        pos++;
+        while (pos < end) {
+            byte b = in[pos++];
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                pos++;
+            }
+        }
+        throw error("unterminated string");
+    }
+
+    private void skipContainer() throws IOException {
+        int depth = 0;
+        while (pos < end) {
+            byte b = in[pos];
+            if (b == '"') {
+                skipString();
+                continue;
+            }
+            pos++;
+            if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (--depth == 0) {
+                    return;
+                }
+            }
+        }
+        throw error("unterminated object or array");
+    }
+
+    private boolean consumeNull() throws IOException {
+        skipWhitespace();
+        if (pos + 4 <= end && in[pos] == 'n' && in[pos + 1] == 'u' && in[pos + 2] == 'l' && in[pos + 3] == 'l') {
+            pos += 4;
+            return true;
+        }
+        return false;
+    }
+
+    private byte peek() throws IOException {
+        skipWhitespace();
+        if (pos >= end) {
+            throw error("unexpected end of record");
+        }
+        return in[pos];
+    }
+
+    private boolean consumeIf(char expected) throws IOException {
+        skipWhitespace();
+        if (pos < end && in[pos] == expected) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char expected) throws IOException {
+        if (!consumeIf(expected)) {
+            throw error("expected '" + expected + "'");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && isWhitespace(in[pos])) {
+            pos++;
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private IOException error(String message) {
+        return new IOException("Malformed WAF log record at byte " + pos + ": " + message);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,86 @@
+package com.myorg.waflog;
+
+/**
+ * The fields of a WAF log record the dashboards work with. One instance is reused for every record a
+ * {@link WafLogParser} parses; get one from {@link WafLogParser#newRecord()}.
+ */
+public final class WafLogRecord {
+    private long timestamp;
+    private boolean timestampPresent;
+    private final Utf8Field action = new Utf8Field();
+    private final Utf8Field terminatingRuleId = new Utf8Field();
+    private final Utf8Field webaclId = new Utf8Field();
+    private final Utf8Field clientIp = new Utf8Field();
+    private final Utf8Field country = new Utf8Field();
+    private final Utf8Field uri = new Utf8Field();
+    private final Utf8Field[] headers;
+
+    WafLogRecord(int headerCount) {
+        this.headers = new Utf8Field[headerCount];
+        for (int i = 0; i < headerCount; i++) {
+            headers[i] = new Utf8Field();
+        }
+    }
+
+    void reset() {
+        timestampPresent = false;
+        timestamp = 0;
+        action.clear();
+        terminatingRuleId.clear();
+        webaclId.clear();
+        clientIp.clear();
+        country.clear();
+        uri.clear();
+        for (Utf8Field header : headers) {
+            header.clear();
+        }
+    }
+
+    void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+        this.timestampPresent = true;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean hasTimestamp() {
+        return timestampPresent;
+    }
+
+    public Utf8Field getAction() {
+        return action;
+    }
+
+    public Utf8Field getTerminatingRuleId() {
+        return terminatingRuleId;
+    }
+
+    public Utf8Field getWebaclId() {
+        return webaclId;
+    }
+
+    public Utf8Field getClientIp() {
+        return clientIp;
+    }
+
+    public Utf8Field getCountry() {
+        return country;
+    }
+
+    public Utf8Field getUri() {
+        return uri;
+    }
+
+    /**
+     * Value of a header of interest, by its position in the list the parser was created with.
+     */
+    public Utf8Field getHeader(int index) {
+        return headers[index];
+    }
+
+    public int getHeaderCount() {
+        return headers.length;
+    }
+}
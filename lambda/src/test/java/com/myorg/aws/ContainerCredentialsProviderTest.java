@@ -0,0 +1,76 @@
+package com.myorg.aws;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ContainerCredentialsProviderTest {
+    @Test
+    public void testCredentialsAreFetchedOnceAndRefreshedBeforeTheyExpire() throws IOException {
+        AtomicInteger fetches = new AtomicInteger();
+        try (StubHttpServer endpoint = StubHttpServer.start(request -> {
+            assertThat(request.getHeader("authorization")).isEqualTo("token-1");
+            return StubHttpServer.Response.json(200, "{\"AccessKeyId\":\"AKID" + fetches.incrementAndGet() + "\","
+                    + "\"SecretAccessKey\":\"secret\",\"Token\":\"session\",\"Expiration\":\"2022-03-01T11:00:00Z\"}");
+        })) {
+            MutableClock clock = new MutableClock(Instant.parse("2022-03-01T10:00:00Z"));
+            ContainerCredentialsProvider provider = new ContainerCredentialsProvider(URI.create(endpoint.uri() + "/creds"), "token-1", clock);
+
+            assertThat(provider.get().getAccessKeyId()).isEqualTo("AKID1");
+            assertThat(provider.get().getSessionToken()).isEqualTo("session");
+            clock.now = Instant.parse("2022-03-01T10:56:00Z");
+            assertThat(provider.get().getAccessKeyId()).isEqualTo("AKID2");
+            assertThat(endpoint.getRequests()).hasSize(2);
+        }
+    }
+
+    @Test
+    public void testEnvironmentCredentialsComeFirst() throws IOException {
+        try (StubHttpServer endpoint = StubHttpServer.start(request -> StubHttpServer.Response.json(500, "{}"))) {
+            Supplier<AwsCredentials> fromKeys = AwsCredentials.providerFromEnvironment(Map.of(
+                    "AWS_ACCESS_KEY_ID", "AKID", "AWS_SECRET_ACCESS_KEY", "secret",
+                    ContainerCredentialsProvider.FULL_URI_ENV, endpoint.uri().toString()));
+            assertThat(fromKeys.get().getAccessKeyId()).isEqualTo("AKID");
+
+            Supplier<AwsCredentials> fromEndpoint = AwsCredentials.providerFromEnvironment(Map.of(
+                    ContainerCredentialsProvider.FULL_URI_ENV, endpoint.uri().toString()));
+            assertThatThrownBy(fromEndpoint::get).isInstanceOf(UncheckedIOException.class).hasMessageContaining("500");
+            assertThat(AwsCredentials.providerFromEnvironment(Map.of())).isNull();
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
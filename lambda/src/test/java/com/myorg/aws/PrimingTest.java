@@ -0,0 +1,38 @@
+package com.myorg.aws;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrimingTest {
+    @Test
+    public void testFailingStepsDoNotStopTheOthers() {
+        List<String> ran = new ArrayList<>();
+
+        Priming.prime(Map.of(), () -> {
+            throw new IllegalStateException("no network at init");
+        }, () -> ran.add("second"));
+
+        assertThat(ran).containsExactly("second");
+    }
+
+    @Test
+    public void testPrimingCanBeSwitchedOff() {
+        List<String> ran = new ArrayList<>();
+
+        Priming.prime(Map.of(Priming.ENV, "false"), () -> ran.add("step"));
+
+        assertThat(ran).isEmpty();
+        assertThat(Priming.isEnabled(Map.of())).isTrue();
+    }
+
+    @Test
+    public void testSampleRecordIsAWafLogRecord() {
+        assertThat(new String(Priming.sampleWafRecord(), StandardCharsets.UTF_8)).startsWith("{\"timestamp\":").contains("\"httpRequest\"");
+    }
+}
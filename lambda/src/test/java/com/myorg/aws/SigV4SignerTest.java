@@ -0,0 +1,40 @@
+package com.myorg.aws;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SigV4SignerTest {
+    private static final AwsCredentials CREDENTIALS =
+            new AwsCredentials("AKIDEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY", null);
+
+    @Test
+    public void testGetVanillaFromTheSigV4TestSuite() {
+        SigV4Signer signer = new SigV4Signer(CREDENTIALS, "us-east-1", "service");
+
+        Map<String, String> headers = signer.sign("GET", URI.create("https://example.amazonaws.com/"), Map.of(),
+                SigV4Signer.sha256Hex(new byte[0]), Instant.parse("2015-08-30T12:36:00Z"));
+
+        assertThat(headers).containsEntry("x-amz-date", "20150830T123600Z");
+        assertThat(headers.get("authorization")).isEqualTo("AWS4-HMAC-SHA256 "
+                + "Credential=AKIDEXAMPLE/20150830/us-east-1/service/aws4_request, "
+                + "SignedHeaders=host;x-amz-date, "
+                + "Signature=5fa00fa31553b73ebf1942676e86291e8372ff2a2260956d9b8aae1d763fbf31");
+    }
+
+    @Test
+    public void testS3RequestsCarryPayloadHashAndSessionToken() {
+        SigV4Signer signer = new SigV4Signer(new AwsCredentials("AKIDEXAMPLE", "secret", "token"), "eu-west-1", "s3");
+
+        Map<String, String> headers = signer.sign("GET", URI.create("https://bucket.s3.eu-west-1.amazonaws.com/log/a%20b.gz"),
+                Map.of(), SigV4Signer.UNSIGNED_PAYLOAD, Instant.parse("2022-02-20T10:00:00Z"));
+
+        assertThat(headers).containsEntry("x-amz-content-sha256", SigV4Signer.UNSIGNED_PAYLOAD);
+        assertThat(headers).containsEntry("x-amz-security-token", "token");
+        assertThat(headers.get("authorization")).contains("SignedHeaders=host;x-amz-content-sha256;x-amz-date;x-amz-security-token");
+    }
+}
@@ -0,0 +1,220 @@
+package com.myorg.coldstart;
+
+import com.myorg.aws.Priming;
+import com.myorg.aws.StubHttpServer;
+import com.myorg.dashboards.DashboardsUpdateHandler;
+import com.myorg.setup.IndexSetupHandler;
+import com.myorg.transform.FirehoseTransformHandler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Measures cold starts of the Java handlers: every run is a fresh JVM running {@link ColdStartProbe}, which
+ * times the handler's construction (Lambda's init phase) and its first and second invocation against a local
+ * stub of OpenSearch, WAF and CloudFormation. Reports medians with priming on and off:
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.mainClass=com.myorg.coldstart.ColdStartBenchmark -Druns=10
+ * </pre>
+ * Other knobs: {@code -Dhandlers=transform,index-setup,dashboards-update} and {@code -DjvmArgs}, e.g.
+ * {@code -DjvmArgs="-XX:TieredStopAtLevel=1 -Xshare:auto"} to try JVM flags through {@code JAVA_TOOL_OPTIONS}.
+ * Init measured here is what SnapStart moves out of the request path; the first invocation is what remains.
+ */
+public class ColdStartBenchmark {
+    static final Map<String, Handler> HANDLERS = Map.of(
+            "transform", new Handler(FirehoseTransformHandler.class, responseUrl -> resource("/firehose/waf-batch.json")),
+            "index-setup", new Handler(IndexSetupHandler.class, responseUrl -> "{\"RequestType\":\"Create\","
+                    + "\"ResponseURL\":\"" + responseUrl + "\",\"StackId\":\"stack\",\"RequestId\":\"request\","
+                    + "\"LogicalResourceId\":\"osdfwIndexSetup\",\"ResourceProperties\":{\"IndexAlias\":\"awswaf\","
+                    + "\"DailyIngestGB\":\"1\",\"DataNodeCount\":\"1\",\"WarmAfterDays\":\"7\",\"RetentionDays\":\"30\"}}"),
+            "dashboards-update", new Handler(DashboardsUpdateHandler.class, responseUrl -> "{\"Records\":[{\"body\":"
+                    + "\"{\\\"time\\\":\\\"2022-03-01T10:00:00Z\\\",\\\"detail\\\":{\\\"eventSource\\\":\\\"waf.amazonaws.com\\\","
+                    + "\\\"eventName\\\":\\\"CreateRule\\\",\\\"responseElements\\\":{\\\"rule\\\":{\\\"ruleId\\\":\\\"r1\\\","
+                    + "\\\"name\\\":\\\"BadBots\\\"}}}}\"}]}"));
+
+    private final List<String> jvmArgs;
+
+    public ColdStartBenchmark(List<String> jvmArgs) {
+        this.jvmArgs = jvmArgs;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int runs = Integer.getInteger("runs", 5);
+        String handlers = System.getProperty("handlers", String.join(",", new TreeSet<>(HANDLERS.keySet())));
+        String jvmArgs = System.getProperty("jvmArgs", "").trim();
+        ColdStartBenchmark benchmark = new ColdStartBenchmark(jvmArgs.isEmpty() ? List.of() : List.of(jvmArgs.split("\\s+")));
+
+        try (StubHttpServer stub = StubHttpServer.start(ColdStartBenchmark::respond)) {
+            for (String name : handlers.split(",")) {
+                for (boolean prime : new boolean[]{false, true}) {
+                    System.out.println(benchmark.run(name.trim(), prime, runs, stub));
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the probe {@code runs} times for one handler, each in a new JVM.
+     */
+    public Result run(String handlerName, boolean prime, int runs, StubHttpServer stub) throws IOException {
+        Handler handler = HANDLERS.get(handlerName);
+        if (handler == null) {
+            throw new IllegalArgumentException("Unknown handler '" + handlerName + "', expected one of: " + HANDLERS.keySet());
+        }
+        List<long[]> samples = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            samples.add(probe(handler, handler.event.apply(stub.uri() + "/response"), prime, stub));
+        }
+        return new Result(handlerName, prime, samples);
+    }
+
+    private long[] probe(Handler handler, String event, boolean prime, StubHttpServer stub) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(List.of("-cp", classPath(), ColdStartProbe.class.getName(),
+                handler.type.getName(), event));
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+        Map<String, String> environment = builder.environment();
+        environment.keySet().removeIf(name -> name.startsWith("AWS_"));
+        environment.put("AWS_REGION", "eu-west-1");
+        environment.put("ES_ENDPOINT", stub.uri().toString());
+        environment.put("WAF_ENDPOINT", stub.uri().toString());
+        environment.put(Priming.ENV, String.valueOf(prime));
+        if (!jvmArgs.isEmpty()) {
+            environment.put("JAVA_TOOL_OPTIONS", String.join(" ", jvmArgs));
+        }
+
+        long started = System.nanoTime();
+        Process process = builder.start();
+        String result = null;
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line).append('\n');
+                if (line.startsWith(ColdStartProbe.RESULT_PREFIX)) {
+                    result = line.substring(ColdStartProbe.RESULT_PREFIX.length());
+                }
+            }
+        }
+        try {
+            if (process.waitFor() != 0 || result == null) {
+                throw new IOException("Probe of " + handler.type.getSimpleName() + " failed:\n" + output);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+        long wall = System.nanoTime() - started;
+
+        String[] fields = result.split(" ");
+        return new long[]{Long.parseLong(fields[0]) * 1_000_000, Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                Long.parseLong(fields[3]), wall};
+    }
+
+    // OpenSearch, Dashboards, WAF and CloudFormation in one: nothing exists yet, every write succeeds
+    static StubHttpServer.Response respond(StubHttpServer.Request request) {
+        if (request.getHeader("x-amz-target") != null) {
+            return StubHttpServer.Response.json(200, "{\"WebACLs\":[],\"Rules\":[]}");
+        }
+        if (request.getPath().endsWith("/_bulk_get") || request.getPath().endsWith("/_bulk_create")) {
+            return StubHttpServer.Response.json(200, "{\"saved_objects\":[]}");
+        }
+        return request.getMethod().equals("GET")
+                ? StubHttpServer.Response.json(404, "{}")
+                : StubHttpServer.Response.json(200, "{\"acknowledged\":true}");
+    }
+
+    // exec:java runs us in a class loader of its own, the surefire and plain java runs on the class path
+    private static String classPath() {
+        ClassLoader loader = ColdStartBenchmark.class.getClassLoader();
+        if (loader instanceof URLClassLoader) {
+            List<String> entries = new ArrayList<>();
+            for (URL url : ((URLClassLoader) loader).getURLs()) {
+                try {
+                    entries.add(Paths.get(url.toURI()).toString());
+                } catch (URISyntaxException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return String.join(File.pathSeparator, entries);
+        }
+        return System.getProperty("java.class.path");
+    }
+
+    private static String resource(String name) {
+        try (InputStream in = ColdStartBenchmark.class.getResourceAsStream(name)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // a handler class and its event, given the URL custom resource responses go to
+    static final class Handler {
+        private final Class<?> type;
+        private final Function<String, String> event;
+
+        Handler(Class<?> type, Function<String, String> event) {
+            this.type = type;
+            this.event = event;
+        }
+    }
+
+    public static class Result {
+        private final String handler;
+        private final boolean primed;
+        private final List<long[]> samples;
+
+        Result(String handler, boolean primed, List<long[]> samples) {
+            this.handler = handler;
+            this.primed = primed;
+            this.samples = samples;
+        }
+
+        public double jvmStartMillis() {
+            return medianMillis(0);
+        }
+
+        public double initMillis() {
+            return medianMillis(1);
+        }
+
+        public double firstInvocationMillis() {
+            return medianMillis(2);
+        }
+
+        public double secondInvocationMillis() {
+            return medianMillis(3);
+        }
+
+        private double medianMillis(int field) {
+            List<Long> values = samples.stream().map(sample -> sample[field]).sorted().collect(Collectors.toList());
+            return values.get(values.size() / 2) / 1_000_000d;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-18s %-10s median of %d: jvm %.0f ms, init %.1f ms, first invocation %.1f ms,"
+                            + " second %.1f ms, process %.0f ms",
+                    handler, primed ? "primed" : "unprimed", samples.size(), jvmStartMillis(), initMillis(),
+                    firstInvocationMillis(), secondInvocationMillis(), medianMillis(4));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.myorg.coldstart;
+
+import com.myorg.aws.StubHttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ColdStartBenchmarkTest {
+    @Test
+    public void testEveryHandlerStartsAndServesItsEventInAFreshJvm() throws IOException {
+        try (StubHttpServer stub = StubHttpServer.start(ColdStartBenchmark::respond)) {
+            ColdStartBenchmark benchmark = new ColdStartBenchmark(List.of());
+            for (String handler : ColdStartBenchmark.HANDLERS.keySet()) {
+                ColdStartBenchmark.Result result = benchmark.run(handler, true, 1, stub);
+
+                assertThat(result.initMillis()).as(handler).isPositive();
+                assertThat(result.firstInvocationMillis()).as(handler).isPositive();
+                assertThat(result.toString()).startsWith(handler).contains("primed", "init");
+            }
+            // the index setup reported back to CloudFormation, the updater listed WAF
+            assertThat(stub.getRequests()).anyMatch(r -> r.getPath().equals("/response"));
+            assertThat(stub.getRequests()).anyMatch(r -> r.getHeader("x-amz-target") != null);
+        }
+    }
+
+    @Test
+    public void testUnknownHandlersAreRejected() {
+        assertThatThrownBy(() -> new ColdStartBenchmark(List.of()).run("rollup-v2", true, 1, null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("dashboards-update");
+    }
+}
@@ -0,0 +1,41 @@
+package com.myorg.coldstart;
+
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.myorg.aws.TestLambdaContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * What the Lambda runtime does in a fresh execution environment, timed: construct the handler, then invoke it
+ * twice with the same event. Run in its own JVM by {@link ColdStartBenchmark}; prints one line of results.
+ */
+public final class ColdStartProbe {
+    static final String RESULT_PREFIX = "coldstart ";
+
+    private ColdStartProbe() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        long jvmMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        byte[] event = args[1].getBytes(StandardCharsets.UTF_8);
+
+        long started = System.nanoTime();
+        RequestStreamHandler handler = (RequestStreamHandler) Class.forName(args[0]).getConstructor().newInstance();
+        long init = System.nanoTime() - started;
+
+        long first = invoke(handler, event);
+        long second = invoke(handler, event);
+        // outside Lambda the runtime logger prints to stdout without ending its lines
+        System.out.println();
+        System.out.println(RESULT_PREFIX + jvmMillis + " " + init + " " + first + " " + second);
+    }
+
+    private static long invoke(RequestStreamHandler handler, byte[] event) throws Exception {
+        long started = System.nanoTime();
+        handler.handleRequest(new ByteArrayInputStream(event), OutputStream.nullOutputStream(), new TestLambdaContext());
+        return System.nanoTime() - started;
+    }
+}
@@ -0,0 +1,163 @@
+package com.myorg.dashboards;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.aws.SignedHttpClient;
+import com.myorg.aws.StubHttpServer;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.waf.WafInventory;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DashboardsSeederTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final WafInventory INVENTORY = new WafInventory(
+            Map.of("arn:aws:wafv2:eu-west-1:123456789012:regional/webacl/shop/r1", "shop"), Map.of());
+
+    private static DashboardsSeeder seeder(StubHttpServer server, int parallelism) {
+        SignedHttpClient httpClient = new SignedHttpClient(null);
+        return new DashboardsSeeder(new DashboardsClient(server.uri(), httpClient), new OpenSearchClient(server.uri(), httpClient),
+                parallelism, 2);
+    }
+
+    @Test
+    public void testBundledObjectsAreCreatedInParallelBatches() throws IOException {
+        StubDomain domain = new StubDomain();
+        try (StubHttpServer server = StubHttpServer.start(domain::handle)) {
+            List<SavedObject> objects = SavedObjectCatalog.bundled(INVENTORY);
+
+            DashboardsSeeder.Result result = seeder(server, 3).seed(objects);
+
+            assertThat(result.getWritten()).isEqualTo(objects.size()).isEqualTo(26);
+            assertThat(domain.savedObjects).containsKeys("index-pattern/awswaf", "visualization/top10ip", "dashboard/main-dashboard");
+            assertThat(domain.maxInFlight.get()).isBetween(2, 3);
+            assertThat(server.getRequests().stream().filter(r -> r.getPath().endsWith("_bulk_create"))).hasSize(13);
+        }
+    }
+
+    @Test
+    public void testUnchangedObjectsAreSkippedAndOnlyChangesAreWritten() throws IOException {
+        StubDomain domain = new StubDomain();
+        try (StubHttpServer server = StubHttpServer.start(domain::handle)) {
+            DashboardsSeeder seeder = seeder(server, 4);
+            seeder.seed(SavedObjectCatalog.bundled(INVENTORY));
+            server.getRequests().clear();
+
+            DashboardsSeeder.Result unchanged = seeder.seed(SavedObjectCatalog.bundled(INVENTORY));
+            assertThat(unchanged.getWritten()).isZero();
+            assertThat(server.getRequests()).noneMatch(r -> r.getPath().endsWith("_bulk_create"));
+
+            // a new WebACL only changes the index pattern's scripted fields
+            WafInventory grown = new WafInventory(Map.of(
+                    "arn:aws:wafv2:eu-west-1:123456789012:regional/webacl/shop/r1", "shop",
+                    "arn:aws:wafv2:eu-west-1:123456789012:regional/webacl/api/r2", "api"), Map.of());
+            DashboardsSeeder.Result updated = seeder.seed(SavedObjectCatalog.bundled(grown));
+            assertThat(updated.getWritten()).isEqualTo(1);
+            assertThat(domain.savedObjects.get("index-pattern/awswaf").at("/attributes/fields").asText())
+                    .contains("regional/webacl/api/r2\\\") { return \\\"api\\\";}");
+
+            // objects deleted by hand come back
+            domain.savedObjects.remove("visualization/top10ip");
+            assertThat(seeder.seed(SavedObjectCatalog.bundled(grown)).getWritten()).isEqualTo(1);
+            assertThat(domain.savedObjects).containsKey("visualization/top10ip");
+        }
+    }
+
+    @Test
+    public void testFailedObjectsFailTheSeedAndAreRetriedNextTime() throws IOException {
+        StubDomain domain = new StubDomain();
+        domain.failingId = "top10ip";
+        try (StubHttpServer server = StubHttpServer.start(domain::handle)) {
+            DashboardsSeeder seeder = seeder(server, 2);
+
+            assertThatThrownBy(() -> seeder.seed(SavedObjectCatalog.bundled(INVENTORY)))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("visualization/top10ip: mapping conflict");
+            assertThat(domain.documents.get(DashboardsSeeder.STATE_PATH)).doesNotContain("visualization/top10ip")
+                    .contains("visualization/top10uris");
+
+            domain.failingId = null;
+            assertThat(seeder.seed(SavedObjectCatalog.bundled(INVENTORY)).getWritten()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void testDeleteRemovesObjectsAndState() throws IOException {
+        StubDomain domain = new StubDomain();
+        try (StubHttpServer server = StubHttpServer.start(domain::handle)) {
+            DashboardsSeeder seeder = seeder(server, 4);
+            seeder.seed(SavedObjectCatalog.bundled(INVENTORY));
+            domain.savedObjects.remove("visualization/top10ip");
+
+            seeder.delete(SavedObjectCatalog.bundled(INVENTORY));
+
+            assertThat(domain.savedObjects).isEmpty();
+            assertThat(domain.documents).isEmpty();
+        }
+    }
+
+    @Test
+    public void testIndexPatternScriptsCarryTheInventory() throws IOException {
+        SavedObject indexPattern = SavedObjectCatalog.bundled(INVENTORY).get(0);
+
+        assertThat(indexPattern.getKey()).isEqualTo("index-pattern/awswaf");
+        String fields = indexPattern.getDefinition().at("/attributes/fields").asText();
+        assertThat(fields).doesNotContain(WafInventory.WEBACL_PLACEHOLDER, WafInventory.RULE_PLACEHOLDER)
+                .contains("if (webacl == \\\"arn:aws:wafv2:eu-west-1:123456789012:regional/webacl/shop/r1\\\") { return \\\"shop\\\";}");
+        assertThat(OBJECT_MAPPER.readTree(fields).isArray()).isTrue();
+    }
+
+    @Test
+    public void testDashboardOpensOnAnHourAlignedRange() throws IOException {
+        Map<String, SavedObject> byKey = new HashMap<>();
+        SavedObjectCatalog.bundled(INVENTORY).forEach(object -> byKey.put(object.getKey(), object));
+        JsonNode dashboard = byKey.get(SavedObjectCatalog.MAIN_DASHBOARD).getDefinition().get("attributes");
+
+        // identical requests for an hour let the shard request cache answer them
+        assertThat(dashboard.get("timeRestore").asBoolean()).isTrue();
+        assertThat(dashboard.get("timeFrom").asText()).endsWith("/h");
+        assertThat(dashboard.get("timeTo").asText()).isEqualTo("now/h");
+        // and for a day over the hourly rollups
+        JsonNode rollups = byKey.get("dashboard/rollup-dashboard").getDefinition().get("attributes");
+        assertThat(rollups.get("timeFrom").asText()).endsWith("/d");
+        assertThat(rollups.get("timeTo").asText()).isEqualTo("now/d");
+    }
+
+    @Test
+    public void testAccountAwareCatalogAddsAnAccountFilterAndPanel() throws IOException {
+        List<SavedObject> plain = SavedObjectCatalog.bundled(INVENTORY);
+        List<SavedObject> objects = SavedObjectCatalog.bundled(INVENTORY, true);
+
+        assertThat(objects).hasSize(plain.size() + 1);
+        assertThat(objects.get(objects.size() - 3).getKey()).isEqualTo("visualization/top10accounts");
+        assertThat(objects.get(objects.size() - 2).getKey()).isEqualTo(SavedObjectCatalog.MAIN_DASHBOARD);
+
+        Map<String, SavedObject> byKey = new HashMap<>();
+        objects.forEach(object -> byKey.put(object.getKey(), object));
+        assertThat(byKey.get("index-pattern/awswaf").getDefinition().at("/attributes/fields").asText())
+                .contains("\"name\":\"accountId.keyword\"");
+        assertThat(byKey.get("index-pattern/awswaf-rollup").getDefinition().at("/attributes/fields").asText())
+                .doesNotContain("accountId");
+        JsonNode filters = OBJECT_MAPPER.readTree(byKey.get("visualization/filters").getDefinition().at("/attributes/visState").asText());
+        assertThat(filters.at("/params/controls/0/fieldName").asText()).isEqualTo("accountId.keyword");
+        JsonNode panels = OBJECT_MAPPER.readTree(byKey.get("dashboard/main-dashboard").getDefinition().at("/attributes/panelsJSON").asText());
+        JsonNode added = panels.get(panels.size() - 1);
+        assertThat(added.get("id").asText()).isEqualTo("top10accounts");
+        for (int i = 0; i < panels.size() - 1; i++) {
+            assertThat(panels.get(i).at("/gridData/y").asInt() + panels.get(i).at("/gridData/h").asInt())
+                    .isLessThanOrEqualTo(added.at("/gridData/y").asInt());
+        }
+        // a plain catalog is untouched, so standalone deployments rewrite nothing
+        assertThat(plain.get(plain.size() - 2).getContentHash())
+                .isNotEqualTo(byKey.get(SavedObjectCatalog.MAIN_DASHBOARD).getContentHash());
+        assertThat(SavedObjectCatalog.bundled(INVENTORY).get(plain.size() - 2).getContentHash())
+                .isEqualTo(plain.get(plain.size() - 2).getContentHash());
+    }
+}
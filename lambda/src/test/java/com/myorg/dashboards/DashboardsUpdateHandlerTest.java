@@ -0,0 +1,109 @@
+package com.myorg.dashboards;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.myorg.aws.SignedHttpClient;
+import com.myorg.aws.StubHttpServer;
+import com.myorg.aws.TestLambdaContext;
+import com.myorg.metrics.Metrics;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.waf.WafInventory;
+import com.myorg.waf.WafInventoryClient;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DashboardsUpdateHandlerTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static String createRule(int index) {
+        return "{\"source\":\"aws.waf-regional\",\"time\":\"2022-03-01T10:00:" + String.format("%02d", index % 60) + "Z\","
+                + "\"detail\":{\"eventSource\":\"waf-regional.amazonaws.com\",\"eventName\":\"CreateRule\","
+                + "\"responseElements\":{\"rule\":{\"ruleId\":\"rule-" + index + "\",\"name\":\"Rule" + index + "\"}}}}";
+    }
+
+    // an SQS batch of EventBridge events, as the event source mapping delivers it
+    private static String sqsBatch(int events) {
+        ArrayNode records = OBJECT_MAPPER.createArrayNode();
+        for (int i = 0; i < events; i++) {
+            records.addObject().put("messageId", "m" + i).put("body", createRule(i));
+        }
+        return "{\"Records\":" + records + "}";
+    }
+
+    private static DashboardsUpdateHandler handler(StubHttpServer domain, StubHttpServer waf) {
+        SignedHttpClient httpClient = new SignedHttpClient(null);
+        OpenSearchClient openSearch = new OpenSearchClient(domain.uri(), httpClient);
+        return new DashboardsUpdateHandler(new DashboardsSeeder(new DashboardsClient(domain.uri(), httpClient), openSearch, 4, 10),
+                new WafInventoryClient(null, "eu-west-1", waf.uri()), new InventoryStore(openSearch));
+    }
+
+    @Test
+    public void testABurstOfEventsIsOneIncrementalUpdate() throws IOException {
+        StubDomain domain = new StubDomain();
+        try (StubHttpServer server = StubHttpServer.start(domain::handle);
+             StubHttpServer waf = StubHttpServer.start(request -> StubHttpServer.Response.json(200, "{\"WebACLs\":[],\"Rules\":[]}"))) {
+            SignedHttpClient httpClient = new SignedHttpClient(null);
+            OpenSearchClient openSearch = new OpenSearchClient(server.uri(), httpClient);
+            WafInventory seeded = new WafInventory(Map.of("classic-1", "legacy"), Map.of());
+            new DashboardsSeeder(new DashboardsClient(server.uri(), httpClient), openSearch, 4, 10)
+                    .seed(SavedObjectCatalog.bundled(seeded));
+            new InventoryStore(openSearch).save(seeded);
+            server.getRequests().clear();
+
+            invoke(handler(server, waf), sqsBatch(50));
+
+            assertThat(waf.getRequests()).isEmpty();
+            // only the index pattern's hash moved, and nothing is read back to find that out
+            assertThat(server.getRequests()).noneMatch(r -> r.getPath().endsWith("_bulk_get"));
+            assertThat(server.getRequests().stream().filter(r -> r.getPath().endsWith("_bulk_create"))).hasSize(1);
+            assertThat(domain.savedObjects.keySet()).hasSize(26);
+            JsonNode written = domain.savedObjects.get("index-pattern/awswaf");
+            assertThat(written.at("/attributes/fields").asText()).contains("rule-0", "rule-49", "classic-1");
+            assertThat(new InventoryStore(openSearch).load().getRules()).hasSize(50);
+
+            // the same events again change nothing
+            server.getRequests().clear();
+            invoke(handler(server, waf), sqsBatch(50));
+            assertThat(server.getRequests()).noneMatch(r -> r.getPath().endsWith("_bulk_create"));
+        }
+    }
+
+    @Test
+    public void testWithoutAStoredInventoryWafIsListedInFull() throws IOException {
+        StubDomain domain = new StubDomain();
+        try (StubHttpServer server = StubHttpServer.start(domain::handle);
+             StubHttpServer waf = StubHttpServer.start(request -> StubHttpServer.Response.json(200, "{\"WebACLs\":[],\"Rules\":[]}"))) {
+            ObjectNode direct = (ObjectNode) OBJECT_MAPPER.readTree(createRule(7));
+            Metrics.discard();
+
+            TestLambdaContext context = invoke(handler(server, waf), direct.toString());
+
+            assertThat(waf.getRequests()).hasSize(6);
+            assertThat(domain.savedObjects).hasSize(26);
+            assertThat(domain.documents).containsKey(InventoryStore.PATH);
+            // one EMF line for the invocation, last
+            JsonNode metrics = OBJECT_MAPPER.readTree(context.getLogLines().get(context.getLogLines().size() - 1));
+            assertThat(metrics.at("/_aws/CloudWatchMetrics/0/Namespace").asText()).isEqualTo(Metrics.NAMESPACE);
+            assertThat(metrics.get(Metrics.WAF_CALLS).asInt()).isEqualTo(6);
+            assertThat(metrics.at("/" + Metrics.WAF_CALL_LATENCY + "/Count").asInt()).isEqualTo(6);
+            assertThat(metrics.at("/" + Metrics.SAVED_OBJECTS_WRITE_LATENCY + "/Count").asInt()).isEqualTo(3);
+            assertThat(metrics.at("/" + Metrics.INVOCATION_LATENCY + "/Count").asInt()).isEqualTo(1);
+            assertThat(metrics.has(Metrics.WAF_RETRIES)).isFalse();
+        }
+    }
+
+    private static TestLambdaContext invoke(DashboardsUpdateHandler handler, String event) throws IOException {
+        TestLambdaContext context = new TestLambdaContext();
+        handler.handleRequest(new ByteArrayInputStream(event.getBytes(StandardCharsets.UTF_8)), new ByteArrayOutputStream(), context);
+        return context;
+    }
+}
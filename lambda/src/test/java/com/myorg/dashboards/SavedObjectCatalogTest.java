@@ -0,0 +1,275 @@
+package com.myorg.dashboards;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.dashboards.spec.WafVisualizations;
+import com.myorg.setup.IndexLifecycleSettings;
+import com.myorg.setup.LogIndexTemplate;
+import com.myorg.transform.SamplingPolicy;
+import com.myorg.transform.TransformerConfig;
+import com.myorg.transform.WafLogTransformer;
+import com.myorg.waf.WafInventory;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.withinPercentage;
+
+public class SavedObjectCatalogTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final Pattern DOC_VALUE = Pattern.compile("doc\\['([^']+)'\\]");
+    private static final Pattern TIMELION_INDEX = Pattern.compile("\\.es\\(index='([^']+)'");
+
+    private static JsonNode transformedRecord(TransformerConfig config) throws IOException {
+        try (InputStream in = SavedObjectCatalogTest.class.getResourceAsStream("/firehose/waf-record.json")) {
+            return OBJECT_MAPPER.readTree(new WafLogTransformer(config).transform(in.readAllBytes()));
+        }
+    }
+
+    /**
+     * The value of {@code field} in the document, a {@code .keyword} sub-field standing for its parent.
+     */
+    private static JsonNode value(JsonNode document, String field) {
+        JsonNode node = document;
+        for (String name : field.replaceFirst("\\.keyword$", "").split("\\.")) {
+            node = node.path(name);
+        }
+        return node;
+    }
+
+    /**
+     * The mapping of {@code field} in the template, sub-fields included; missing if the template doesn't map it.
+     */
+    private static JsonNode mapping(JsonNode properties, String field) {
+        JsonNode node = null;
+        for (String name : field.split("\\.")) {
+            if (node != null && node.has("fields") && node.path("fields").has(name)) {
+                node = node.path("fields").path(name);
+            } else {
+                node = (node == null ? properties : node.path("properties")).path(name);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * The mapped type of every field and sub-field under {@code properties}, by dotted name.
+     */
+    private static Map<String, String> mappedTypes(JsonNode properties, String prefix, Map<String, String> types) {
+        properties.fields().forEachRemaining(field -> {
+            String name = prefix + field.getKey();
+            if (field.getValue().has("properties")) {
+                mappedTypes(field.getValue().get("properties"), name + ".", types);
+                return;
+            }
+            types.put(name, field.getValue().get("type").asText());
+            field.getValue().path("fields").fields().forEachRemaining(sub -> types.put(name + "." + sub.getKey(),
+                    sub.getValue().get("type").asText()));
+        });
+        return types;
+    }
+
+    private static JsonNode attributes(List<SavedObject> objects, String key) {
+        return objects.stream().filter(object -> object.getKey().equals(key)).findFirst().orElseThrow()
+                .getDefinition().get("attributes");
+    }
+
+    private static boolean matches(String indexPattern, String index) {
+        return index.matches(indexPattern.replace(".", "\\.").replace("*", ".*"));
+    }
+
+    /**
+     * Every field an aggregation or a control of the bundled visualisations on {@code indexPattern} reads, by
+     * visualisation.
+     */
+    private static Map<String, List<String>> visualizationFields(List<SavedObject> objects, String indexPattern) throws IOException {
+        Map<String, List<String>> fields = new HashMap<>();
+        for (SavedObject object : objects) {
+            if (!SavedObjectCatalog.VISUALIZATION.equals(object.getType()) || !indexPattern.equals(OBJECT_MAPPER.readTree(
+                    object.getDefinition().at("/attributes/kibanaSavedObjectMeta/searchSourceJSON").asText()).path("index").asText())) {
+                continue;
+            }
+            JsonNode visState = OBJECT_MAPPER.readTree(object.getDefinition().at("/attributes/visState").asText());
+            List<String> read = new ArrayList<>();
+            visState.path("aggs").forEach(agg -> {
+                if (agg.at("/params/field").isTextual()) {
+                    read.add(agg.at("/params/field").asText());
+                }
+            });
+            visState.at("/params/controls").forEach(control -> read.add(control.path("fieldName").asText()));
+            fields.put(object.getId(), read);
+        }
+        return fields;
+    }
+
+    @Test
+    public void testDashboardFieldsResolveOnATransformedRecord() throws IOException {
+        TransformerConfig config = TransformerConfig.fromEnvironment(Map.of());
+        JsonNode document = transformedRecord(config);
+        JsonNode properties = new LogIndexTemplate(new IndexLifecycleSettings("awswaf", 1, 1, 7, 30, false, 0, 30), 60,
+                TransformerConfig.DEFAULT_FLATTEN_HEADERS).toJson().at("/template/mappings/properties");
+        List<SavedObject> objects = SavedObjectCatalog.bundled(new WafInventory(Map.of(), Map.of()));
+
+        Map<String, String> scripts = new HashMap<>();
+        for (JsonNode field : OBJECT_MAPPER.readTree(attributes(objects, SavedObjectCatalog.LOG_INDEX_PATTERN).get("fields").asText())) {
+            if (field.path("scripted").asBoolean()) {
+                scripts.put(field.get("name").asText(), field.get("script").asText());
+            }
+        }
+        assertThat(scripts).containsKeys("Host", "UserAgent");
+
+        for (Map.Entry<String, List<String>> visualization : visualizationFields(objects, WafVisualizations.INDEX_PATTERN).entrySet()) {
+            for (String field : visualization.getValue()) {
+                if (field.equals(TransformerConfig.SAMPLE_WEIGHT_FIELD)) {
+                    // summed, and absent from an unsampled record, see testRequestCountsSumBackToTheTrueCount
+                    assertThat(mapping(properties, field).path("type").asText()).isEqualTo("float");
+                    continue;
+                }
+                List<String> docValues = new ArrayList<>();
+                // a script reading the source runs per document and hit, too slow to aggregate on
+                assertThat(scripts.getOrDefault(field, "")).as(visualization.getKey() + " reading " + field)
+                        .doesNotContain("params._source");
+                if (scripts.containsKey(field)) {
+                    Matcher docValue = DOC_VALUE.matcher(scripts.get(field));
+                    while (docValue.find()) {
+                        docValues.add(docValue.group(1));
+                    }
+                } else {
+                    docValues.add(field);
+                }
+                // what an aggregation runs on has doc values in the template and a value in a transformed record
+                assertThat(docValues).as(visualization.getKey() + " reading " + field).isNotEmpty().allSatisfy(read -> {
+                    assertThat(mapping(properties, read).path("type").asText()).as(read).isIn("keyword", "ip");
+                    assertThat(value(document, read).isValueNode()).as(read).isTrue();
+                });
+            }
+        }
+        assertThat(value(document, "httpRequest.headers.user-agent").asText()).startsWith("Mozilla/5.0");
+        assertThat(visualizationFields(objects, WafVisualizations.INDEX_PATTERN))
+                .containsEntry("top10hosts", List.of(TransformerConfig.SAMPLE_WEIGHT_FIELD, "httpRequest.headers.host"))
+                .containsEntry("top10useragents", List.of(TransformerConfig.SAMPLE_WEIGHT_FIELD, "httpRequest.headers.user-agent"));
+    }
+
+    @Test
+    public void testLogIndexPatternListsTheTemplateFields() throws IOException {
+        JsonNode properties = new LogIndexTemplate(new IndexLifecycleSettings("awswaf", 1, 1, 7, 30, false, 0, 30), 60,
+                TransformerConfig.DEFAULT_FLATTEN_HEADERS).toJson().at("/template/mappings/properties");
+        Map<String, String> mapped = mappedTypes(properties, "", new HashMap<>());
+        // the account of a document is only listed by the hub's catalog
+        mapped.remove(TransformerConfig.ACCOUNT_ID_FIELD);
+        mapped.remove(TransformerConfig.ACCOUNT_ID_FIELD + ".keyword");
+
+        Map<String, String> listed = new HashMap<>();
+        JsonNode fields = OBJECT_MAPPER.readTree(attributes(SavedObjectCatalog.bundled(new WafInventory(Map.of(), Map.of())),
+                SavedObjectCatalog.LOG_INDEX_PATTERN).get("fields").asText());
+        for (JsonNode field : fields) {
+            String name = field.get("name").asText();
+            if (!field.path("scripted").asBoolean() && !name.startsWith("_")) {
+                listed.put(name, field.at("/esTypes/0").asText());
+                assertThat(field.get("aggregatable").asBoolean()).as(name).isTrue();
+                assertThat(field.has("subType")).as(name).isEqualTo(name.endsWith(".keyword"));
+            }
+        }
+        assertThat(listed).isEqualTo(mapped);
+        assertThat(listed).containsEntry("httpRequest.clientIp", "ip").containsEntry("httpRequest.headers.host", "keyword")
+                .doesNotContainKeys("httpRequest.args.keyword", "labels.name.keyword", "httpRequest.requestId.keyword");
+    }
+
+    @Test
+    public void testTimelionSeriesReadTheHubAndSpokeLogIndices() throws IOException {
+        List<SavedObject> objects = SavedObjectCatalog.bundled(new WafInventory(Map.of(), Map.of()), true);
+        String indexPattern = attributes(objects, SavedObjectCatalog.LOG_INDEX_PATTERN).get("title").asText();
+        // the hub's own rollover indices and those behind the alias of a spoke account
+        List<String> logIndices = List.of("awswaf-logs-000001", "awswaf-123456789012-logs-000003");
+
+        List<String> indices = new ArrayList<>();
+        for (String id : List.of("allvsblockedrequests", "requestcount")) {
+            JsonNode visState = OBJECT_MAPPER.readTree(attributes(objects, SavedObjectCatalog.VISUALIZATION + "/" + id)
+                    .get("visState").asText());
+            Matcher index = TIMELION_INDEX.matcher(visState.at("/params/expression").asText());
+            while (index.find()) {
+                indices.add(index.group(1));
+            }
+        }
+        // each series adds the documents without a sample weight from a second search
+        assertThat(indices).hasSize(6).containsOnly(indexPattern);
+        for (String index : logIndices) {
+            assertThat(matches(WafVisualizations.LOG_INDEX, index)).as(index).isTrue();
+        }
+        assertThat(matches(WafVisualizations.LOG_INDEX, "awswaf-rollup-2022.02")).isFalse();
+        assertThat(matches(WafVisualizations.LOG_INDEX, "awswaf-realtime-top")).isFalse();
+    }
+
+    @Test
+    public void testRequestCountsSumBackToTheTrueCount() throws IOException {
+        List<SavedObject> objects = SavedObjectCatalog.bundled(new WafInventory(Map.of(), Map.of()));
+        JsonNode requests = OBJECT_MAPPER.readTree(attributes(objects, SavedObjectCatalog.VISUALIZATION + "/numberofallrequests")
+                .get("visState").asText()).at("/aggs/0");
+        assertThat(requests.at("/params/field").asText()).isEqualTo(TransformerConfig.SAMPLE_WEIGHT_FIELD);
+        double missing = OBJECT_MAPPER.readTree(requests.at("/params/json").asText()).get("missing").asDouble();
+
+        // 4000 allowed requests sampled at 0.25 and 1000 blocked ones, then 500 from before sampling was turned on
+        TransformerConfig sampling = new TransformerConfig(List.of(), List.of(), SamplingPolicy.parse(List.of("ALLOW:0.25")));
+        List<JsonNode> indexed = new ArrayList<>();
+        for (int i = 0; i < 5500; i++) {
+            String record = "{\"action\":\"" + (i % 5 == 4 ? "BLOCK" : "ALLOW") + "\",\"httpRequest\":{\"requestId\":\"r-" + i + "\"}}";
+            JsonNode document = OBJECT_MAPPER.readTree(new WafLogTransformer(i < 5000 ? sampling : TransformerConfig.fromEnvironment(Map.of()))
+                    .transform(record.getBytes(StandardCharsets.UTF_8)));
+            // what the sampling pipeline lets through
+            if (document.path(TransformerConfig.SAMPLE_WEIGHT_FIELD).asDouble(1) > 0) {
+                indexed.add(document);
+            }
+        }
+        double sum = indexed.stream().mapToDouble(document -> document.path(TransformerConfig.SAMPLE_WEIGHT_FIELD).asDouble(missing)).sum();
+        assertThat(indexed.size()).isLessThan(3000);
+        assertThat(sum).isCloseTo(5500, withinPercentage(5));
+
+        // tables and pies rank their terms by the same sum
+        for (String id : List.of("top10ip", "httpmethods", "allcountries")) {
+            JsonNode aggs = OBJECT_MAPPER.readTree(attributes(objects, SavedObjectCatalog.VISUALIZATION + "/" + id)
+                    .get("visState").asText()).path("aggs");
+            assertThat(aggs.at("/0/type").asText()).as(id).isEqualTo("sum");
+            assertThat(aggs.at("/0/params/field").asText()).as(id).isEqualTo(TransformerConfig.SAMPLE_WEIGHT_FIELD);
+            assertThat(aggs.at("/1/params/orderBy").asText()).as(id).isEqualTo(aggs.at("/0/id").asText());
+        }
+    }
+
+    @Test
+    public void testLongRangeVisualizationsReadTheRollupsAlone() throws IOException {
+        List<SavedObject> objects = SavedObjectCatalog.bundled(new WafInventory(Map.of(), Map.of()));
+        JsonNode logs = attributes(objects, SavedObjectCatalog.LOG_INDEX_PATTERN);
+        JsonNode rollups = attributes(objects, SavedObjectCatalog.INDEX_PATTERN + "/" + WafVisualizations.ROLLUP_INDEX_PATTERN);
+
+        // the log pattern takes in the hub's and the spokes' log indices, and neither the rollups nor the realtime indices
+        for (String index : List.of("awswaf-logs-000001", "awswaf-123456789012-logs-000003")) {
+            assertThat(matches(logs.get("title").asText(), index)).as(index).isTrue();
+        }
+        for (String index : List.of("awswaf-rollup-2022.02", "awswaf-realtime-top", "awswaf-realtime-alerts-2022.02.16")) {
+            assertThat(matches(logs.get("title").asText(), index)).as(index).isFalse();
+            assertThat(matches(rollups.get("title").asText(), index)).as(index).isEqualTo(index.startsWith("awswaf-rollup"));
+        }
+        assertThat(rollups.get("timeFieldName").asText()).isEqualTo(WafVisualizations.ROLLUP_TIME_FIELD);
+
+        Map<String, JsonNode> rollupFields = new HashMap<>();
+        for (JsonNode field : OBJECT_MAPPER.readTree(rollups.get("fields").asText())) {
+            rollupFields.put(field.get("name").asText(), field);
+        }
+        Map<String, List<String>> visualizations = visualizationFields(objects, WafVisualizations.ROLLUP_INDEX_PATTERN);
+        assertThat(visualizations).containsOnlyKeys("rolluptop10rules", "rolluptop10countries", "rolluptop10ip");
+        visualizations.values().forEach(fields -> assertThat(fields).containsExactly("count", "value")
+                .allSatisfy(field -> assertThat(rollupFields.get(field).get("aggregatable").asBoolean()).isTrue()));
+
+        JsonNode panels = OBJECT_MAPPER.readTree(attributes(objects, "dashboard/rollup-dashboard").get("panelsJSON").asText());
+        assertThat(panels.findValuesAsText("id")).containsExactly("rolluprequests", "rolluptop10rules", "rolluptop10countries",
+                "rolluptop10ip");
+    }
+}
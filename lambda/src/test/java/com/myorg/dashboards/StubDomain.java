@@ -0,0 +1,81 @@
+package com.myorg.dashboards;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.myorg.aws.StubHttpServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Dashboards and the domain in one: saved objects by type/id, the seeder's state document, and the most
+ * bulk creates seen in flight at once.
+ */
+final class StubDomain {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    final Map<String, JsonNode> savedObjects = new ConcurrentHashMap<>();
+    final Map<String, String> documents = new ConcurrentHashMap<>();
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    volatile String failingId;
+
+    StubHttpServer.Response handle(StubHttpServer.Request request) {
+        try {
+            String path = request.getPath();
+            if (path.equals(DashboardsClient.API_PATH + "_bulk_get")) {
+                ArrayNode found = OBJECT_MAPPER.createArrayNode();
+                for (JsonNode wanted : OBJECT_MAPPER.readTree(request.getBody())) {
+                    String key = wanted.get("type").asText() + "/" + wanted.get("id").asText();
+                    found.add(savedObjects.containsKey(key) ? savedObjects.get(key)
+                            : ((ObjectNode) wanted.deepCopy()).set("error", OBJECT_MAPPER.createObjectNode().put("statusCode", 404)));
+                }
+                return StubHttpServer.Response.json(200, "{\"saved_objects\":" + found + "}");
+            }
+            if (path.equals(DashboardsClient.API_PATH + "_bulk_create")) {
+                assertThat(request.getHeader("osd-xsrf")).isEqualTo("true");
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                Thread.sleep(50);
+                inFlight.decrementAndGet();
+                ArrayNode created = OBJECT_MAPPER.createArrayNode();
+                for (JsonNode object : OBJECT_MAPPER.readTree(request.getBody())) {
+                    if (object.get("id").asText().equals(failingId)) {
+                        created.add(((ObjectNode) object.deepCopy()).set("error",
+                                OBJECT_MAPPER.createObjectNode().put("message", "mapping conflict")));
+                    } else {
+                        savedObjects.put(object.get("type").asText() + "/" + object.get("id").asText(), object);
+                        created.add(object);
+                    }
+                }
+                return StubHttpServer.Response.json(200, "{\"saved_objects\":" + created + "}");
+            }
+            if (path.startsWith(DashboardsClient.API_PATH) && request.getMethod().equals("DELETE")) {
+                return savedObjects.remove(path.substring(DashboardsClient.API_PATH.length())) != null
+                        ? StubHttpServer.Response.json(200, "{}") : StubHttpServer.Response.json(404, "{}");
+            }
+            switch (request.getMethod()) {
+                case "GET":
+                    return documents.containsKey(path)
+                            ? StubHttpServer.Response.json(200, "{\"_source\":" + documents.get(path) + "}")
+                            : StubHttpServer.Response.json(404, "{\"found\":false}");
+                case "PUT":
+                    documents.put(path, request.getBodyAsString());
+                    return StubHttpServer.Response.json(200, "{\"result\":\"created\"}");
+                default:
+                    return StubHttpServer.Response.json(documents.remove(path) != null ? 200 : 404, "{}");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
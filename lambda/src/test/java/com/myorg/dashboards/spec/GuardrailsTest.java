@@ -0,0 +1,106 @@
+package com.myorg.dashboards.spec;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class GuardrailsTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static Visualization table(Aggregation... aggregations) {
+        Visualization table = Visualization.of("t", "T", "table", OBJECT_MAPPER.createObjectNode());
+        for (Aggregation aggregation : aggregations) {
+            table.aggregation(aggregation);
+        }
+        return table;
+    }
+
+    @Test
+    public void testBundledVisualizationsKeepToTheGuardrails() throws IOException {
+        List<Visualization> visualizations = WafVisualizations.all();
+        for (Visualization visualization : visualizations) {
+            assertThat(Guardrails.check(visualization)).as(visualization.getId()).isEmpty();
+        }
+
+        String[] lines = new String(DashboardsCompiler.compile(visualizations), StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(visualizations.size());
+        JsonNode top10ip = null;
+        for (String line : lines) {
+            JsonNode object = OBJECT_MAPPER.readTree(line);
+            assertThat(object.get("type").asText()).isEqualTo("visualization");
+            if ("top10ip".equals(object.get("id").asText())) {
+                top10ip = object;
+            }
+        }
+        assertThat(top10ip).isNotNull();
+        JsonNode visState = OBJECT_MAPPER.readTree(top10ip.at("/attributes/visState").asText());
+        assertThat(visState.at("/aggs/1/params/field").asText()).isEqualTo("httpRequest.clientIp.keyword");
+        assertThat(OBJECT_MAPPER.readTree(visState.at("/aggs/1/params/json").asText()).get("shard_size").asInt())
+                .isEqualTo(WafVisualizations.TOP_TEN_SHARD_SIZE);
+        assertThat(OBJECT_MAPPER.readTree(top10ip.at("/attributes/kibanaSavedObjectMeta/searchSourceJSON").asText())
+                .get("index").asText()).isEqualTo(WafVisualizations.INDEX_PATTERN);
+    }
+
+    @Test
+    public void testAggregationsAreBounded() {
+        assertThat(Guardrails.check(table(Aggregation.count(), Aggregation.rows("rulename", 100))))
+                .containsExactly("asks for 100 terms of rulename, more than 50");
+        assertThat(Guardrails.check(table(Aggregation.rows("httpRequest.clientIp.keyword", 10))))
+                .containsExactly("needs a shard size of at most 200 for the terms of httpRequest.clientIp.keyword");
+        assertThat(Guardrails.check(table(Aggregation.rows("httpRequest.uri.keyword", 10).shardSize(1000))))
+                .hasSize(1);
+        assertThat(Guardrails.check(table(Aggregation.rows("rulename", 10).shardSize(5))))
+                .containsExactly("has a shard size below its size for the terms of rulename");
+        assertThat(Guardrails.check(table(Aggregation.rows("rulename", 30), Aggregation.rows("webaclname", 30))))
+                .containsExactly("nests terms into 900 buckets, more than 500");
+        assertThat(Guardrails.check(table(Aggregation.cardinality("UserAgent"))))
+                .containsExactly("needs a precision threshold of at most 3000 for the distinct count of UserAgent");
+        assertThat(Guardrails.check(table(Aggregation.cardinality("UserAgent").precisionThreshold(100)))).isEmpty();
+    }
+
+    @Test
+    public void testEverySearchFollowsTheTimeRange() {
+        assertThat(Guardrails.check(table(Aggregation.count()).indexPattern("osdfw-state")))
+                .containsExactly("searches osdfw-state, not a time-based index pattern");
+        assertThat(Guardrails.check(table(Aggregation.sum("count")).indexPattern(WafVisualizations.ROLLUP_INDEX_PATTERN)))
+                .isEmpty();
+        assertThat(Guardrails.check(Visualization.timelion("t", "T",
+                ".es(index='awswaf*-logs-*', timefield=timestamp), .es(timefield=timestamp, q='action:BLOCK'),"
+                        + " .es(index=awswaf, timefield=timestamp)", "auto")))
+                .containsExactly("has a series .es(timefield=timestamp, q='action:BLOCK') not naming index=awswaf*-logs-*"
+                                + " and timefield=timestamp, or index=awswaf-rollup-* and timefield=@timestamp",
+                        "has a series .es(index=awswaf, timefield=timestamp) not naming index=awswaf*-logs-*"
+                                + " and timefield=timestamp, or index=awswaf-rollup-* and timefield=@timestamp");
+        assertThat(Guardrails.check(Visualization.timelion("t", "T",
+                ".es(index='awswaf-rollup-*', timefield='@timestamp', metric='sum:count'), .es(index='awswaf-rollup-*', timefield=timestamp)",
+                "1h"))).hasSize(1);
+        assertThat(Guardrails.check(Visualization.timelion("t", "T", ".es(index='awswaf*-logs-*', timefield=timestamp)", "10s")))
+                .containsExactly("has an interval of 10s, under a minute");
+        assertThat(Guardrails.check(Visualization.timelion("t", "T", ".es(index='awswaf*-logs-*', timefield=timestamp)", "90s")))
+                .isEmpty();
+
+        ObjectNode params = OBJECT_MAPPER.createObjectNode().put("useTimeFilter", false);
+        params.putArray("controls").addObject().put("fieldName", "Host").putObject("options").put("size", 500);
+        assertThat(Guardrails.check(Visualization.of("f", "F", "input_control_vis", params))).containsExactly(
+                "lists control options from all time instead of the time range",
+                "lists 500 options of Host, more than 50");
+    }
+
+    @Test
+    public void testCompilingFailsWithEveryViolation() {
+        assertThatThrownBy(() -> DashboardsCompiler.compile(List.of(
+                table(Aggregation.rows("rulename", 100)),
+                Visualization.timelion("series", "S", ".es(timefield=timestamp)", "auto"))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("t asks for 100 terms")
+                .hasMessageContaining("series has a series");
+    }
+}
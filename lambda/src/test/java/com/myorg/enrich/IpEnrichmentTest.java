@@ -0,0 +1,154 @@
+package com.myorg.enrich;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class IpEnrichmentTest {
+    static final String SAMPLE_DATABASE = "/enrichment/sample-prefixes.csv";
+
+    static IpEnrichment sampleDatabase() throws IOException {
+        try (InputStream in = IpEnrichmentTest.class.getResourceAsStream(SAMPLE_DATABASE)) {
+            return IpEnrichment.load(in);
+        }
+    }
+
+    private static IpEnrichment database(String csv) throws IOException {
+        return IpEnrichment.load(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testLongestPrefixWins() throws IOException {
+        IpEnrichment database = sampleDatabase();
+
+        IpInfo network = database.lookup("198.51.100.7");
+        assertThat(network.getAsn()).isEqualTo(64497);
+        assertThat(network.getReputation()).isEmpty();
+        IpInfo hosting = database.lookup("198.51.100.200");
+        assertThat(hosting.getAsn()).isEqualTo(64498);
+        assertThat(hosting.getReputation()).containsExactly("scanners");
+        assertThat(database.lookup("11.247.172.20").getAsOrg()).isEqualTo("Example Hosting");
+        assertThat(database.lookup("11.101.6.77").getAsOrg()).isEqualTo("Example Backbone");
+        assertThat(database.lookup("198.51.101.1")).isNull();
+        assertThat(database.lookup("10.0.0.1")).isNull();
+    }
+
+    @Test
+    public void testIpv6AndMappedIpv4Addresses() throws IOException {
+        IpEnrichment database = sampleDatabase();
+
+        assertThat(database.lookup("2001:db8::1").getAsn()).isEqualTo(64500);
+        assertThat(database.lookup("2001:DB8:BAD:0:0:0:0:1").getReputation()).containsExactly("botnet");
+        assertThat(database.lookup("2001:db9::1")).isNull();
+        assertThat(database.lookup("::ffff:203.0.113.9").getAsn()).isEqualTo(64499);
+        assertThat(database.lookup("::ffff:cb00:7109").getAsn()).isEqualTo(64499);
+        // ::203.0.113.9 is not a mapped address
+        assertThat(database.lookup("::203.0.113.9")).isNull();
+    }
+
+    @Test
+    public void testValuesAreNormalised() throws IOException {
+        IpEnrichment database = sampleDatabase();
+
+        IpInfo info = database.lookup("203.0.113.1");
+        assertThat(info.getCountry()).isEqualTo("NL");
+        assertThat(info.getRegion()).isEqualTo("NL-NH");
+        assertThat(info.getReputation()).containsExactly("scanners", "tor-exit");
+        assertThat(database.lookup("11.247.1.1").getRegion()).isEqualTo("FR-IDF");
+        assertThat(database.lookup("22.68.70.11").getAsOrg()).isEqualTo("Example Telecom, Inc.");
+
+        IpInfo asPrefixed = database("10.0.0.0/8,AS64512, Private ,,,\n").lookup("10.1.2.3");
+        assertThat(asPrefixed.getAsn()).isEqualTo(64512);
+        assertThat(asPrefixed.getAsOrg()).isEqualTo("Private");
+        assertThat(asPrefixed.getCountry()).isNull();
+        assertThat(asPrefixed.getRegion()).isNull();
+    }
+
+    @Test
+    public void testNetworksShareTheirDetails() throws IOException {
+        IpEnrichment database = sampleDatabase();
+
+        // the two Example Cable prefixes in Texas
+        assertThat(database.lookup("75.115.129.173")).isSameAs(database.lookup("75.129.62.196"));
+        assertThat(database.getInfoCount()).isLessThan(database.getPrefixCount());
+        assertThat(database.getSizeBytes()).isPositive();
+    }
+
+    @Test
+    public void testAddressesAreParsedStrictly() throws IOException {
+        IpEnrichment database = database("0.0.0.0/0,64512,Everything,,,\n::/0,64513,Everything v6,,,\n");
+
+        for (String address : List.of("1.2.3.4", "255.255.255.255", "0.0.0.0")) {
+            assertThat(database.lookup(address).getAsn()).as(address).isEqualTo(64512);
+        }
+        for (String address : List.of("::", "::1", "1::", "fe80::1:2", "1:2:3:4:5:6:7:8", "1:2:3:4:5:6:1.2.3.4")) {
+            assertThat(database.lookup(address).getAsn()).as(address).isEqualTo(64513);
+        }
+        for (String address : List.of("", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1..2.3", "1.2.3.4.", "0001.2.3.4", "a.b.c.d",
+                "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9", "1::2::3", ":1", "1:", "12345::", "g::1", "example.com")) {
+            assertThat(database.lookup(address)).as(address).isNull();
+        }
+    }
+
+    @Test
+    public void testLookupsMatchALinearScan() throws IOException {
+        Random random = new Random(11);
+        StringBuilder csv = new StringBuilder();
+        int[] networks = new int[500];
+        int[] lengths = new int[500];
+        for (int i = 0; i < networks.length; i++) {
+            lengths[i] = 8 + random.nextInt(25);
+            networks[i] = random.nextInt() & (int) (0xffffffffL << (32 - lengths[i]));
+            csv.append(address(networks[i])).append('/').append(lengths[i]).append(',').append(i + 1).append(",,,,\n");
+        }
+        IpEnrichment database = database(csv.toString());
+
+        for (int probe = 0; probe < 20_000; probe++) {
+            // half of the probes inside a known network
+            int address = probe % 2 == 0 ? random.nextInt() : networks[probe % networks.length] | random.nextInt(256);
+            long expected = 0;
+            int longest = -1;
+            for (int i = 0; i < networks.length; i++) {
+                int mask = (int) (0xffffffffL << (32 - lengths[i]));
+                // a later line of the same network wins
+                if ((address & mask) == networks[i] && lengths[i] >= longest) {
+                    longest = lengths[i];
+                    expected = i + 1;
+                }
+            }
+            IpInfo info = database.lookup(address(address));
+            assertThat(info == null ? 0 : info.getAsn()).as(address(address)).isEqualTo(expected);
+        }
+    }
+
+    private static String address(int address) {
+        return (address >>> 24) + "." + (address >>> 16 & 0xff) + "." + (address >>> 8 & 0xff) + "." + (address & 0xff);
+    }
+
+    @Test
+    public void testMalformedLinesAreReportedWithTheirNumber() {
+        assertThatThrownBy(() -> database("# header\n10.0.0.0/33,1,,,,\n"))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("line 2");
+        assertThatThrownBy(() -> database("10.0.0.0,1,,,,\n")).hasMessageContaining("no prefix length");
+        assertThatThrownBy(() -> database("10.0.0.0/8,1,,,\n")).hasMessageContaining("6 columns");
+        assertThatThrownBy(() -> database("10.0.0.0/8,1,,Germany,,\n")).hasMessageContaining("ISO 3166-1");
+        assertThatThrownBy(() -> database("example.com/8,1,,,,\n")).hasMessageContaining("not an IP prefix");
+    }
+
+    @Test
+    public void testEnrichmentIsOptional() {
+        assertThat(IpEnrichment.fromEnvironment(Map.of())).isNull();
+        assertThatThrownBy(() -> IpEnrichment.fromEnvironment(Map.of(IpEnrichment.DATABASE_ENV, "s3://bucket-only")))
+                .hasMessageContaining("s3://bucket/key");
+    }
+}
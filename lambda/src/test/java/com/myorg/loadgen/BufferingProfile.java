@@ -0,0 +1,51 @@
+package com.myorg.loadgen;
+
+import java.util.Locale;
+
+/**
+ * The OpenSearch side of the stack's Firehose throughput profiles: buffer interval, buffer size and retry
+ * duration. Keep in step with {@code com.myorg.ThroughputProfile}, which the function code can't depend on.
+ */
+public enum BufferingProfile {
+    LOW_LATENCY("low-latency", 60, 1, 60),
+    BALANCED("balanced", 60, 5, 60),
+    HIGH_THROUGHPUT("high-throughput", 300, 15, 900);
+
+    private final String profileName;
+    private final int bufferIntervalInSeconds;
+    private final int bufferSizeInMBs;
+    private final int retryDurationInSeconds;
+
+    BufferingProfile(String profileName, int bufferIntervalInSeconds, int bufferSizeInMBs, int retryDurationInSeconds) {
+        this.profileName = profileName;
+        this.bufferIntervalInSeconds = bufferIntervalInSeconds;
+        this.bufferSizeInMBs = bufferSizeInMBs;
+        this.retryDurationInSeconds = retryDurationInSeconds;
+    }
+
+    public static BufferingProfile fromName(String name) {
+        String normalised = name.trim().toLowerCase(Locale.ROOT);
+        for (BufferingProfile profile : values()) {
+            if (profile.profileName.equals(normalised)) {
+                return profile;
+            }
+        }
+        throw new IllegalArgumentException("Unknown throughput profile '" + name + "'");
+    }
+
+    public String getProfileName() {
+        return profileName;
+    }
+
+    public int getBufferIntervalInSeconds() {
+        return bufferIntervalInSeconds;
+    }
+
+    public int getBufferSizeInBytes() {
+        return bufferSizeInMBs * 1024 * 1024;
+    }
+
+    public int getRetryDurationInSeconds() {
+        return retryDurationInSeconds;
+    }
+}
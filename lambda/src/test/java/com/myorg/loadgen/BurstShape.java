@@ -0,0 +1,45 @@
+package com.myorg.loadgen;
+
+import java.util.Locale;
+
+/**
+ * How the event rate of {@link WafTrafficGenerator} develops over a period, and when the extra traffic is an
+ * attack from a handful of client IPs rather than more of the usual visitors.
+ */
+public enum BurstShape {
+    // background traffic only
+    STEADY,
+    // ten times the base rate for the first tenth of every period, like a flood hitting a rate-based rule
+    SPIKE,
+    // a slow build to five times the base rate, an attack ramping up until it is blocked
+    RAMP;
+
+    static final int PERIOD_SECONDS = 300;
+
+    public static BurstShape fromName(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Factor on the base rate at the given second of the run.
+     */
+    public double rateMultiplier(double second) {
+        double intoPeriod = (second % PERIOD_SECONDS) / PERIOD_SECONDS;
+        switch (this) {
+            case SPIKE:
+                return intoPeriod < 0.1 ? 10 : 1;
+            case RAMP:
+                return 1 + 4 * intoPeriod;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Share of the traffic that is the attack at the given second.
+     */
+    public double attackShare(double second) {
+        double multiplier = rateMultiplier(second);
+        return (multiplier - 1) / multiplier;
+    }
+}
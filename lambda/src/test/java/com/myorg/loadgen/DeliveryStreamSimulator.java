@@ -0,0 +1,124 @@
+package com.myorg.loadgen;
+
+import com.myorg.opensearch.BulkResponse;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.transform.WafLogTransformer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Does what one Firehose delivery stream does with WAF records on their way to OpenSearch: transforms each
+ * record, buffers until the profile's size or interval is reached, sends the buffer as one bulk request to the
+ * write alias and retries rejected documents with a backoff until the retry duration runs out. The interval
+ * is measured in log time, so quiet stretches of generated traffic produce the small requests they would
+ * in production; the retry duration is scaled down so a run doesn't wait out fifteen minutes of backoff.
+ */
+public class DeliveryStreamSimulator {
+    static final long INITIAL_BACKOFF_MILLIS = 50;
+    static final long MAX_BACKOFF_MILLIS = 1000;
+
+    private final OpenSearchClient client;
+    private final WafLogTransformer transformer;
+    private final BufferingProfile profile;
+    private final byte[] actionLine;
+    private final long retryBudgetMillis;
+    private final IngestionStats stats;
+    private final List<byte[]> buffer = new ArrayList<>();
+    private int bufferedBytes;
+    private long bufferStartTimestamp;
+
+    public DeliveryStreamSimulator(OpenSearchClient client, WafLogTransformer transformer, BufferingProfile profile,
+                                   String indexAlias, double retryTimeScale, IngestionStats stats) {
+        this.client = client;
+        this.transformer = transformer;
+        this.profile = profile;
+        this.actionLine = ("{\"index\":{\"_index\":\"" + indexAlias + "\"}}\n").getBytes(StandardCharsets.UTF_8);
+        this.retryBudgetMillis = (long) (profile.getRetryDurationInSeconds() * 1000L * retryTimeScale);
+        this.stats = stats;
+    }
+
+    public void put(byte[] record, long timestamp) throws IOException {
+        if (!buffer.isEmpty() && timestamp - bufferStartTimestamp >= profile.getBufferIntervalInSeconds() * 1000L) {
+            flush();
+        }
+        if (buffer.isEmpty()) {
+            bufferStartTimestamp = timestamp;
+        }
+
+        byte[] document = transformer.transform(record);
+        buffer.add(document);
+        bufferedBytes += document.length + 1;
+        if (bufferedBytes >= profile.getBufferSizeInBytes()) {
+            flush();
+        }
+    }
+
+    public void flush() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        deliver(new ArrayList<>(buffer));
+        buffer.clear();
+        bufferedBytes = 0;
+    }
+
+    private void deliver(List<byte[]> documents) throws IOException {
+        List<byte[]> pending = documents;
+        long giveUpAt = System.currentTimeMillis() + retryBudgetMillis;
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        while (true) {
+            long started = System.nanoTime();
+            BulkResponse response = client.bulk(toNdjson(pending));
+            stats.recordBulk(System.nanoTime() - started);
+
+            List<byte[]> failed = new ArrayList<>();
+            if (response.isRejected()) {
+                stats.recordRejectedRequest();
+                failed = pending;
+            } else {
+                for (int i = 0; i < response.getItemCount(); i++) {
+                    if (response.isItemFailed(i)) {
+                        failed.add(pending.get(i));
+                    }
+                }
+                stats.recordRejectedItems(failed.size());
+                stats.recordIndexed(pending.size() - failed.size());
+            }
+
+            if (failed.isEmpty()) {
+                return;
+            }
+            if (System.currentTimeMillis() + backoff > giveUpAt) {
+                stats.recordDropped(failed.size());
+                return;
+            }
+            sleep(backoff);
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            pending = failed;
+        }
+    }
+
+    private byte[] toNdjson(List<byte[]> documents) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bufferedBytes + documents.size() * actionLine.length);
+        for (byte[] document : documents) {
+            out.writeBytes(actionLine);
+            out.writeBytes(document);
+            out.write('\n');
+        }
+        return out.toByteArray();
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.myorg.loadgen;
+
+import com.myorg.aws.SignedHttpClient;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.transform.TransformerConfig;
+import com.myorg.transform.WafLogTransformer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Drives generated WAF traffic through transformation, Firehose-style buffering and bulk indexing, once per
+ * throughput profile, and reports documents per second, bulk latency percentiles and rejections:
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.mainClass=com.myorg.loadgen.IngestionBenchmark -Devents=500000 -Dburst=spike
+ * </pre>
+ * Without {@code -Dendpoint} the bulk requests go to a {@link SimulatedDomain}, sized with {@code -DqueueDocs}
+ * and {@code -DdocsPerSecond}. With {@code -Dendpoint=http://localhost:9200} they go unsigned to a local
+ * OpenSearch container, e.g. {@code docker run -p 9200:9200 -e discovery.type=single-node
+ * -e plugins.security.disabled=true opensearchproject/opensearch:1.3.0}.
+ * Other knobs: {@code -Dprofile}, {@code -Dstreams} (delivery streams in parallel, like {@code osdfwShardCount}),
+ * {@code -Drate}, {@code -DwebAcls}, {@code -Drules}, {@code -DclientIps}, {@code -DretryTimeScale}.
+ */
+public class IngestionBenchmark {
+    static final String INDEX_ALIAS = "awswaf";
+
+    private final OpenSearchClient client;
+    private final TransformerConfig transformerConfig;
+    private final WafTrafficGenerator.Builder traffic;
+    private final int streams;
+    private final double retryTimeScale;
+
+    public IngestionBenchmark(OpenSearchClient client, TransformerConfig transformerConfig, WafTrafficGenerator.Builder traffic,
+                              int streams, double retryTimeScale) {
+        this.client = client;
+        this.transformerConfig = transformerConfig;
+        this.traffic = traffic;
+        this.streams = streams;
+        this.retryTimeScale = retryTimeScale;
+    }
+
+    public static void main(String[] args) throws IOException {
+        WafTrafficGenerator.Builder traffic = WafTrafficGenerator.builder()
+                .baseRate(Double.parseDouble(System.getProperty("rate", "500")))
+                .burstShape(BurstShape.fromName(System.getProperty("burst", "steady")))
+                .webAcls(Integer.getInteger("webAcls", 4))
+                .rules(Integer.getInteger("rules", 20))
+                .clientIps(Integer.getInteger("clientIps", 10_000));
+        int events = Integer.getInteger("events", 200_000);
+        List<BufferingProfile> profiles = System.getProperty("profile") == null
+                ? List.of(BufferingProfile.values())
+                : List.of(BufferingProfile.fromName(System.getProperty("profile")));
+
+        String endpoint = System.getProperty("endpoint");
+        SimulatedDomain simulated = endpoint == null
+                ? new SimulatedDomain(Integer.getInteger("queueDocs", 50_000), Integer.getInteger("docsPerSecond", 20_000))
+                : null;
+        try {
+            OpenSearchClient client = new OpenSearchClient(endpoint == null ? simulated.uri() : URI.create(endpoint),
+                    new SignedHttpClient(null));
+            IngestionBenchmark benchmark = new IngestionBenchmark(client, TransformerConfig.fromEnvironment(System.getenv()),
+                    traffic, Integer.getInteger("streams", 1), Double.parseDouble(System.getProperty("retryTimeScale", "0.01")));
+            for (BufferingProfile profile : profiles) {
+                System.out.println(benchmark.run(profile, events));
+            }
+        } finally {
+            if (simulated != null) {
+                simulated.close();
+            }
+        }
+    }
+
+    /**
+     * Sends the events, split evenly over the delivery streams, each stream with its own traffic seed.
+     */
+    public Result run(BufferingProfile profile, int events) throws IOException {
+        IngestionStats stats = new IngestionStats();
+        ExecutorService executor = Executors.newFixedThreadPool(streams);
+        long started = System.nanoTime();
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int stream = 0; stream < streams; stream++) {
+                WafTrafficGenerator generator = traffic.seed(stream).build();
+                int streamEvents = events / streams + (stream < events % streams ? 1 : 0);
+                running.add(executor.submit(() -> runStream(profile, generator, streamEvents, stats)));
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof UncheckedIOException
+                    ? ((UncheckedIOException) e.getCause()).getCause()
+                    : new IOException("Delivery stream failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Result(profile, events, System.nanoTime() - started, stats);
+    }
+
+    private void runStream(BufferingProfile profile, WafTrafficGenerator generator, int events, IngestionStats stats) {
+        DeliveryStreamSimulator stream = new DeliveryStreamSimulator(client, new WafLogTransformer(transformerConfig), profile,
+                INDEX_ALIAS, retryTimeScale, stats);
+        try {
+            for (int i = 0; i < events; i++) {
+                byte[] record = generator.next();
+                stream.put(record, generator.currentTimestamp());
+            }
+            stream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static class Result {
+        private final BufferingProfile profile;
+        private final int events;
+        private final long elapsedNanos;
+        private final IngestionStats stats;
+
+        Result(BufferingProfile profile, int events, long elapsedNanos, IngestionStats stats) {
+            this.profile = profile;
+            this.events = events;
+            this.elapsedNanos = elapsedNanos;
+            this.stats = stats;
+        }
+
+        public BufferingProfile getProfile() {
+            return profile;
+        }
+
+        public int getEvents() {
+            return events;
+        }
+
+        public IngestionStats getStats() {
+            return stats;
+        }
+
+        public double getDocsPerSecond() {
+            return stats.getIndexedDocs() * 1_000_000_000d / Math.max(elapsedNanos, 1);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-16s %,10.0f docs/s  %,d bulk requests  latency p50 %.1f ms, p90 %.1f ms, p99 %.1f ms"
+                            + "  %,d rejected requests, %,d rejected items, %,d of %,d documents dropped",
+                    profile.getProfileName(), getDocsPerSecond(), stats.getBulkRequests(),
+                    stats.latencyPercentileMillis(50), stats.latencyPercentileMillis(90), stats.latencyPercentileMillis(99),
+                    stats.getRejectedRequests(), stats.getRejectedItems(), stats.getDroppedDocs(), events);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.myorg.loadgen;
+
+import com.myorg.aws.SignedHttpClient;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.transform.TransformerConfig;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IngestionBenchmarkTest {
+    private static final Pattern CLIENT_IP = Pattern.compile("\"clientIp\":\"([^\"]+)\"");
+    private static final TransformerConfig CONFIG = new TransformerConfig(List.of(), TransformerConfig.DEFAULT_FLATTEN_HEADERS);
+
+    @Test
+    public void testGeneratorIsDeterministicAndKeepsToItsCardinality() {
+        WafTrafficGenerator first = WafTrafficGenerator.builder().clientIps(50).seed(7).build();
+        WafTrafficGenerator second = WafTrafficGenerator.builder().clientIps(50).seed(7).build();
+
+        Set<String> clientIps = new HashSet<>();
+        for (int i = 0; i < 5000; i++) {
+            byte[] record = first.next();
+            assertThat(record).isEqualTo(second.next());
+            Matcher matcher = CLIENT_IP.matcher(new String(record, StandardCharsets.UTF_8));
+            assertThat(matcher.find()).isTrue();
+            clientIps.add(matcher.group(1));
+        }
+        assertThat(clientIps).hasSizeLessThanOrEqualTo(50).hasSizeGreaterThan(40);
+        // 500 events per second of log time
+        assertThat(first.currentTimestamp() - 1645000000000L).isBetween(9_900L, 10_100L);
+    }
+
+    @Test
+    public void testSpikesAreDenserAndComeFromTheAttackers() {
+        WafTrafficGenerator generator = WafTrafficGenerator.builder().burstShape(BurstShape.SPIKE).attackIps(2).build();
+
+        int blockedDuringSpike = 0;
+        int eventsDuringSpike = 0;
+        while (generator.currentTimestamp() - 1645000000000L < 30_000) {
+            String record = new String(generator.next(), StandardCharsets.UTF_8);
+            eventsDuringSpike++;
+            if (record.contains("RateLimit-login")) {
+                blockedDuringSpike++;
+            }
+        }
+        assertThat(eventsDuringSpike).isBetween(149_000, 151_000);
+        assertThat((double) blockedDuringSpike / eventsDuringSpike).isBetween(0.85, 0.95);
+        assertThat(BurstShape.SPIKE.attackShare(100)).isZero();
+    }
+
+    @Test
+    public void testEveryEventIsIndexedWhenTheDomainKeepsUp() throws IOException {
+        try (SimulatedDomain domain = new SimulatedDomain(1_000_000, 10_000_000)) {
+            IngestionBenchmark benchmark = benchmark(domain, 2);
+
+            IngestionBenchmark.Result lowLatency = benchmark.run(BufferingProfile.LOW_LATENCY, 20_000);
+            IngestionBenchmark.Result highThroughput = benchmark.run(BufferingProfile.HIGH_THROUGHPUT, 20_000);
+
+            assertThat(lowLatency.getStats().getIndexedDocs()).isEqualTo(20_000);
+            assertThat(lowLatency.getStats().getRejectedRequests()).isZero();
+            assertThat(highThroughput.getStats().getIndexedDocs()).isEqualTo(20_000);
+            assertThat(domain.getAcceptedDocs()).isEqualTo(40_000);
+            // a 1 MB buffer fills several times over before 15 MB does
+            assertThat(lowLatency.getStats().getBulkRequests()).isGreaterThan(highThroughput.getStats().getBulkRequests());
+            assertThat(lowLatency.toString()).startsWith("low-latency").contains("docs/s", "p99");
+        }
+    }
+
+    @Test
+    public void testRejectionsAreRetriedAndCounted() throws IOException {
+        try (SimulatedDomain domain = new SimulatedDomain(500, 200_000)) {
+            IngestionBenchmark.Result result = benchmark(domain, 3).run(BufferingProfile.LOW_LATENCY, 10_000);
+
+            IngestionStats stats = result.getStats();
+            assertThat(stats.getRejectedRequests() + stats.getRejectedItems()).isPositive();
+            assertThat(stats.getIndexedDocs() + stats.getDroppedDocs()).isEqualTo(10_000);
+            assertThat(domain.getAcceptedDocs()).isEqualTo(stats.getIndexedDocs());
+            assertThat(stats.latencyPercentileMillis(99)).isGreaterThanOrEqualTo(stats.latencyPercentileMillis(50));
+        }
+    }
+
+    private static IngestionBenchmark benchmark(SimulatedDomain domain, int streams) {
+        return new IngestionBenchmark(new OpenSearchClient(domain.uri(), new SignedHttpClient(null)), CONFIG,
+                WafTrafficGenerator.builder(), streams, 0.05);
+    }
+}
@@ -0,0 +1,79 @@
+package com.myorg.loadgen;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters shared by the delivery streams of one benchmark run.
+ */
+public class IngestionStats {
+    private final LongAdder indexedDocs = new LongAdder();
+    private final LongAdder droppedDocs = new LongAdder();
+    private final LongAdder bulkRequests = new LongAdder();
+    private final LongAdder rejectedRequests = new LongAdder();
+    private final LongAdder rejectedItems = new LongAdder();
+    private long[] latencyNanos = new long[1024];
+    private int latencyCount;
+
+    void recordBulk(long nanos) {
+        bulkRequests.increment();
+        synchronized (this) {
+            if (latencyCount == latencyNanos.length) {
+                latencyNanos = Arrays.copyOf(latencyNanos, latencyCount * 2);
+            }
+            latencyNanos[latencyCount++] = nanos;
+        }
+    }
+
+    void recordIndexed(int docs) {
+        indexedDocs.add(docs);
+    }
+
+    void recordDropped(int docs) {
+        droppedDocs.add(docs);
+    }
+
+    void recordRejectedRequest() {
+        rejectedRequests.increment();
+    }
+
+    void recordRejectedItems(int items) {
+        rejectedItems.add(items);
+    }
+
+    public long getIndexedDocs() {
+        return indexedDocs.sum();
+    }
+
+    /**
+     * Documents still failing after the retry duration, which Firehose would write to the S3 error prefix.
+     */
+    public long getDroppedDocs() {
+        return droppedDocs.sum();
+    }
+
+    public long getBulkRequests() {
+        return bulkRequests.sum();
+    }
+
+    public long getRejectedRequests() {
+        return rejectedRequests.sum();
+    }
+
+    public long getRejectedItems() {
+        return rejectedItems.sum();
+    }
+
+    /**
+     * Bulk latency percentile in milliseconds, over every request including rejected ones.
+     */
+    public synchronized double latencyPercentileMillis(double percentile) {
+        if (latencyCount == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencyNanos, latencyCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * latencyCount) - 1;
+        return sorted[Math.max(0, Math.min(latencyCount - 1, index))] / 1_000_000d;
+    }
+}
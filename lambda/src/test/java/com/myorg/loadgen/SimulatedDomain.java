@@ -0,0 +1,82 @@
+package com.myorg.loadgen;
+
+import com.myorg.aws.StubHttpServer;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * In-process stand-in for the domain's bulk endpoint, with a write queue drained at a fixed rate. A request
+ * waits for the documents queued ahead of it; documents that don't fit in the queue are rejected with 429,
+ * and a request arriving at a full queue is turned away as a whole.
+ */
+public class SimulatedDomain implements AutoCloseable {
+    private final int queueCapacity;
+    private final double docsPerMilli;
+    private final StubHttpServer server;
+    private double queued;
+    private long lastDrainNanos = System.nanoTime();
+    private long acceptedDocs;
+
+    public SimulatedDomain(int queueCapacity, int docsPerSecond) throws IOException {
+        this.queueCapacity = queueCapacity;
+        this.docsPerMilli = docsPerSecond / 1000d;
+        this.server = StubHttpServer.start(this::bulk);
+    }
+
+    public URI uri() {
+        return server.uri();
+    }
+
+    public synchronized long getAcceptedDocs() {
+        return acceptedDocs;
+    }
+
+    private StubHttpServer.Response bulk(StubHttpServer.Request request) {
+        int items = 0;
+        for (byte b : request.getBody()) {
+            if (b == '\n') {
+                items++;
+            }
+        }
+        items /= 2;
+
+        int accepted;
+        double waitMillis;
+        synchronized (this) {
+            long now = System.nanoTime();
+            queued = Math.max(0, queued - (now - lastDrainNanos) / 1_000_000d * docsPerMilli);
+            lastDrainNanos = now;
+
+            int free = (int) (queueCapacity - queued);
+            if (free <= 0) {
+                return StubHttpServer.Response.json(429, "{\"error\":{\"type\":\"es_rejected_execution_exception\"},\"status\":429}");
+            }
+            accepted = Math.min(items, free);
+            queued += accepted;
+            acceptedDocs += accepted;
+            waitMillis = queued / docsPerMilli;
+        }
+        sleep((long) waitMillis);
+
+        StringBuilder body = new StringBuilder(items * 48 + 64).append("{\"took\":").append((long) waitMillis)
+                .append(",\"errors\":").append(accepted < items).append(",\"items\":[");
+        for (int i = 0; i < items; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"index\":{\"status\":").append(i < accepted ? 201 : 429).append("}}");
+        }
+        return StubHttpServer.Response.json(200, body.append("]}").toString());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.close();
+    }
+}
@@ -0,0 +1,156 @@
+package com.myorg.loadgen;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Synthesises WAF log records with a chosen number of WebACLs, rules and client IPs. Timestamps advance with
+ * the base rate shaped by a {@link BurstShape}; during bursts the extra traffic comes from a few attacking IPs
+ * and is blocked by a rate-based rule, as it would be in a real flood.
+ */
+public class WafTrafficGenerator {
+    private static final long START_MILLIS = 1645000000000L;
+    private static final String[] COUNTRIES = {"US", "DE", "BR", "IN", "CN", "FR", "GB", "NL", "PL", "JP"};
+    private static final String[] URIS = {"/", "/login", "/api/v1/cart", "/search", "/wp-admin/setup.php", "/static/app.js"};
+    private static final String[] USER_AGENTS = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/98.0.4758.102 Safari/537.36",
+            "curl/7.79.1",
+            "python-requests/2.27.1"};
+
+    private final Random random;
+    private final int webAcls;
+    private final int rules;
+    private final int clientIps;
+    private final int attackIps;
+    private final double baseRate;
+    private final BurstShape burstShape;
+    private double elapsedSeconds;
+    private long sequence;
+
+    private WafTrafficGenerator(Builder builder) {
+        this.random = new Random(builder.seed);
+        this.webAcls = builder.webAcls;
+        this.rules = builder.rules;
+        this.clientIps = builder.clientIps;
+        this.attackIps = builder.attackIps;
+        this.baseRate = builder.baseRate;
+        this.burstShape = builder.burstShape;
+    }
+
+    /**
+     * Timestamp of the record {@link #next()} returned last.
+     */
+    public long currentTimestamp() {
+        return START_MILLIS + (long) (elapsedSeconds * 1000);
+    }
+
+    public byte[] next() {
+        elapsedSeconds += 1 / (baseRate * burstShape.rateMultiplier(elapsedSeconds));
+        sequence++;
+        boolean attack = random.nextDouble() < burstShape.attackShare(elapsedSeconds);
+        return (attack ? attackRecord() : visitorRecord()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String visitorRecord() {
+        int rule = random.nextInt(rules);
+        // four in five requests pass the default action, the rest match one of the rules
+        boolean matched = random.nextInt(5) == 0;
+        String action = matched ? (rule % 3 == 0 ? "COUNT" : "BLOCK") : "ALLOW";
+        String ruleGroup = matched
+                ? "{\"ruleGroupId\":\"AWS#RuleGroup-" + (rule % 4) + "\",\"terminatingRule\":{\"ruleId\":\"Rule-" + rule
+                + "\",\"action\":\"" + action + "\",\"ruleMatchDetails\":null},\"nonTerminatingMatchingRules\":[],\"excludedRules\":null}"
+                : "";
+        return record(matched ? "RuleGroup-" + (rule % 4) : "Default_Action", matched ? "MANAGED_RULE_GROUP" : "REGULAR", action,
+                ruleGroup, ip(random.nextInt(clientIps)), URIS[random.nextInt(URIS.length)], "GET");
+    }
+
+    private String attackRecord() {
+        return record("RateLimit-login", "RATE_BASED", "BLOCK", "", ip(clientIps + random.nextInt(attackIps)), "/login", "POST");
+    }
+
+    private String record(String terminatingRuleId, String terminatingRuleType, String action, String ruleGroup,
+                          String clientIp, String uri, String method) {
+        return "{\"timestamp\":" + currentTimestamp() + ",\"formatVersion\":1,"
+                + "\"webaclId\":\"arn:aws:wafv2:eu-west-1:123456789012:regional/webacl/acl-" + random.nextInt(webAcls) + "/6f1b2c3d\","
+                + "\"terminatingRuleId\":\"" + terminatingRuleId + "\",\"terminatingRuleType\":\"" + terminatingRuleType + "\","
+                + "\"action\":\"" + action + "\",\"terminatingRuleMatchDetails\":[],"
+                + "\"httpSourceName\":\"ALB\",\"httpSourceId\":\"123456789012-app/shop-alb/0123456789abcdef\","
+                + "\"ruleGroupList\":[" + ruleGroup + "],\"rateBasedRuleList\":[],\"nonTerminatingMatchingRules\":[],"
+                + "\"requestHeadersInserted\":null,\"responseCodeSent\":null,"
+                + "\"httpRequest\":{\"clientIp\":\"" + clientIp + "\",\"country\":\"" + COUNTRIES[Math.floorMod(clientIp.hashCode(), COUNTRIES.length)] + "\","
+                + "\"headers\":[{\"name\":\"Host\",\"value\":\"shop.example.com\"},"
+                + "{\"name\":\"User-Agent\",\"value\":\"" + USER_AGENTS[random.nextInt(USER_AGENTS.length)] + "\"},"
+                + "{\"name\":\"Accept\",\"value\":\"*/*\"},{\"name\":\"X-Forwarded-For\",\"value\":\"" + clientIp + "\"}],"
+                + "\"uri\":\"" + uri + "\",\"args\":\"\",\"httpVersion\":\"HTTP/1.1\",\"httpMethod\":\"" + method + "\","
+                + "\"requestId\":\"1-" + Long.toHexString(sequence) + "-" + Integer.toHexString(random.nextInt()) + "\"},"
+                + "\"labels\":[]}";
+    }
+
+    // spreads the client index over the public address space, the same index always giving the same address
+    private static String ip(int index) {
+        int hash = index * 0x9E3779B1;
+        return (1 + ((hash >>> 24) % 223)) + "." + ((hash >>> 16) & 0xFF) + "." + ((hash >>> 8) & 0xFF) + "." + (index & 0xFF);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private long seed = 42;
+        private int webAcls = 4;
+        private int rules = 20;
+        private int clientIps = 10_000;
+        private int attackIps = 5;
+        private double baseRate = 500;
+        private BurstShape burstShape = BurstShape.STEADY;
+
+        private Builder() {
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Builder webAcls(int webAcls) {
+            this.webAcls = webAcls;
+            return this;
+        }
+
+        public Builder rules(int rules) {
+            this.rules = rules;
+            return this;
+        }
+
+        public Builder clientIps(int clientIps) {
+            this.clientIps = clientIps;
+            return this;
+        }
+
+        public Builder attackIps(int attackIps) {
+            this.attackIps = attackIps;
+            return this;
+        }
+
+        /**
+         * Background events per second of log time.
+         */
+        public Builder baseRate(double baseRate) {
+            this.baseRate = baseRate;
+            return this;
+        }
+
+        public Builder burstShape(BurstShape burstShape) {
+            this.burstShape = burstShape;
+            return this;
+        }
+
+        public WafTrafficGenerator build() {
+            if (webAcls < 1 || rules < 1 || clientIps < 1 || attackIps < 1 || baseRate <= 0) {
+                throw new IllegalArgumentException("Cardinalities and the base rate must be positive");
+            }
+            return new WafTrafficGenerator(this);
+        }
+    }
+}
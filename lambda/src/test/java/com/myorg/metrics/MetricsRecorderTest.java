@@ -0,0 +1,122 @@
+package com.myorg.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class MetricsRecorderTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Test
+    public void testBucketsKeepLatenciesWithinAFifth() {
+        assertThat(LatencyHistogram.bucket(0)).isZero();
+        assertThat(LatencyHistogram.bucket(1)).isEqualTo(1);
+        assertThat(LatencyHistogram.bucket(2)).isEqualTo(5);
+        assertThat(LatencyHistogram.bucket(3)).isEqualTo(7);
+        assertThat(LatencyHistogram.bucket(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.BUCKETS - 1);
+        for (long micros = 1; micros < 20_000_000; micros = micros * 3 / 2 + 1) {
+            double millis = micros / 1000d;
+            assertThat(LatencyHistogram.bucketMillis(LatencyHistogram.bucket(micros))).as("%d µs", micros)
+                    .isCloseTo(millis, within(millis * 0.19));
+        }
+    }
+
+    @Test
+    public void testFlushWritesOneEmfLineAndStartsOver() throws IOException {
+        MetricsRecorder recorder = new MetricsRecorder("osdfw");
+        recorder.recordLatency("WafCallLatency", TimeUnit.MILLISECONDS.toNanos(20));
+        recorder.recordLatency("WafCallLatency", TimeUnit.MILLISECONDS.toNanos(20));
+        recorder.recordLatency("WafCallLatency", TimeUnit.MILLISECONDS.toNanos(180));
+        recorder.count("WafCalls", 3);
+        recorder.count("WafRetries");
+
+        JsonNode line = OBJECT_MAPPER.readTree(recorder.flush(Map.of("FunctionName", "updater"), 1645000000000L));
+
+        JsonNode directive = line.at("/_aws/CloudWatchMetrics/0");
+        assertThat(line.at("/_aws/Timestamp").asLong()).isEqualTo(1645000000000L);
+        assertThat(directive.get("Namespace").asText()).isEqualTo("osdfw");
+        assertThat(directive.at("/Dimensions/0/0").asText()).isEqualTo("FunctionName");
+        assertThat(directive.get("Metrics").toString())
+                .isEqualTo("[{\"Name\":\"WafCallLatency\",\"Unit\":\"Milliseconds\"},{\"Name\":\"WafCalls\",\"Unit\":\"Count\"},"
+                        + "{\"Name\":\"WafRetries\",\"Unit\":\"Count\"}]");
+        assertThat(line.get("FunctionName").asText()).isEqualTo("updater");
+        assertThat(line.get("WafCalls").asInt()).isEqualTo(3);
+
+        JsonNode latency = line.get("WafCallLatency");
+        assertThat(latency.get("Values")).hasSize(2);
+        assertThat(latency.get("Values").get(0).asDouble()).isCloseTo(20, within(4d));
+        assertThat(latency.get("Counts").toString()).isEqualTo("[2,1]");
+        assertThat(latency.get("Count").asInt()).isEqualTo(3);
+        assertThat(latency.get("Sum").asDouble()).isEqualTo(220);
+        assertThat(latency.get("Min").asDouble()).isEqualTo(20);
+        assertThat(latency.get("Max").asDouble()).isEqualTo(180);
+
+        assertThat(recorder.flush(Map.of("FunctionName", "updater"), 1645000060000L)).isNull();
+        recorder.count("WafCalls");
+        assertThat(OBJECT_MAPPER.readTree(recorder.flush(Map.of(), 1645000120000L)).has("WafCallLatency")).isFalse();
+    }
+
+    @Test
+    public void testConcurrentRecordingLosesNothing() throws Exception {
+        MetricsRecorder recorder = new MetricsRecorder("osdfw");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                running.add(executor.submit(() -> {
+                    for (int i = 0; i < 25_000; i++) {
+                        recorder.recordLatency("SavedObjectsWriteLatency", i * 1000L);
+                        recorder.count("DashboardsCalls");
+                    }
+                }));
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        JsonNode line = OBJECT_MAPPER.readTree(recorder.flush(Map.of(), 0));
+        assertThat(line.get("DashboardsCalls").asInt()).isEqualTo(100_000);
+        assertThat(line.at("/SavedObjectsWriteLatency/Count").asInt()).isEqualTo(100_000);
+        long bucketed = 0;
+        for (JsonNode count : line.at("/SavedObjectsWriteLatency/Counts")) {
+            bucketed += count.asLong();
+        }
+        assertThat(bucketed).isEqualTo(100_000);
+    }
+
+    @Test
+    public void testRecordingAMetricSeenBeforeAllocatesNothing() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        MetricsRecorder recorder = new MetricsRecorder("osdfw");
+        for (int i = 0; i < 20_000; i++) {
+            recorder.recordLatency("SigV4SigningLatency", i);
+            recorder.count("WafCalls");
+        }
+
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < 100_000; i++) {
+            recorder.recordLatency("SigV4SigningLatency", i);
+            recorder.count("WafCalls");
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        // well under a byte per call: the odd allocation of the measurement itself, nothing per record
+        assertThat(allocated).isLessThan(64 * 1024);
+    }
+}
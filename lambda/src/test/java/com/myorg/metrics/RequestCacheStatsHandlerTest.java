@@ -0,0 +1,56 @@
+package com.myorg.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.aws.SignedHttpClient;
+import com.myorg.aws.StubHttpServer;
+import com.myorg.aws.TestLambdaContext;
+import com.myorg.opensearch.OpenSearchClient;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestCacheStatsHandlerTest {
+    private static String nodeStats(String... nodes) {
+        StringBuilder stats = new StringBuilder("{\"_nodes\":{\"total\":" + nodes.length + "},\"nodes\":{");
+        for (int i = 0; i < nodes.length; i++) {
+            String[] node = nodes[i].split(":");
+            stats.append(i == 0 ? "" : ",").append('"').append(node[0]).append("\":{\"indices\":{\"request_cache\":{")
+                    .append("\"memory_size_in_bytes\":1024,\"hit_count\":").append(node[1])
+                    .append(",\"miss_count\":").append(node[2]).append(",\"evictions\":").append(node[3]).append("}}}");
+        }
+        return stats.append("}}").toString();
+    }
+
+    @Test
+    public void testPublishesHowFarTheCountersMoved() throws IOException {
+        Queue<String> responses = new ArrayDeque<>(List.of(
+                nodeStats("a:100:50:0", "b:10:5:0"),
+                // b restarted, c joined
+                nodeStats("a:160:70:2", "b:4:1:0", "c:500:500:9")));
+        try (StubHttpServer openSearch = StubHttpServer.start(request -> StubHttpServer.Response.json(200, responses.remove()))) {
+            RequestCacheStatsHandler handler = new RequestCacheStatsHandler(
+                    new OpenSearchClient(openSearch.uri(), new SignedHttpClient(null)));
+            TestLambdaContext context = new TestLambdaContext();
+
+            handler.handleRequest(new ByteArrayInputStream(new byte[0]), OutputStream.nullOutputStream(), context);
+            handler.handleRequest(new ByteArrayInputStream(new byte[0]), OutputStream.nullOutputStream(), context);
+
+            assertThat(openSearch.getRequests().get(0).getPath()).isEqualTo(RequestCacheStatsHandler.NODE_STATS_PATH);
+            assertThat(context.getLogLines().get(0)).isEqualTo("Request cache of 2 nodes (2 new): 0 hits, 0 misses, 0 evictions");
+            assertThat(context.getLogLines().get(2)).isEqualTo("Request cache of 3 nodes (1 new): 64 hits, 21 misses, 2 evictions");
+            JsonNode metrics = new ObjectMapper().readTree(context.getLogLines().get(3));
+            assertThat(metrics.get(Metrics.REQUEST_CACHE_HITS).asLong()).isEqualTo(64);
+            assertThat(metrics.get(Metrics.REQUEST_CACHE_MISSES).asLong()).isEqualTo(21);
+            assertThat(metrics.get(Metrics.REQUEST_CACHE_EVICTIONS).asLong()).isEqualTo(2);
+            assertThat(metrics.get("FunctionName").asText()).isEqualTo("test");
+        }
+    }
+}
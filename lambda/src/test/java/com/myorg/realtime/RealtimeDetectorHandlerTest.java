@@ -0,0 +1,144 @@
+package com.myorg.realtime;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.aws.SignedHttpClient;
+import com.myorg.aws.StubHttpServer;
+import com.myorg.aws.TestLambdaContext;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.realtime.RealtimeConfig.Dimension;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RealtimeDetectorHandlerTest {
+    private static final long NOW = 1_645_000_000_000L;
+
+    private static byte[] kinesisEvent(List<String> events) {
+        StringBuilder event = new StringBuilder("{\"Records\":[");
+        for (int i = 0; i < events.size(); i++) {
+            event.append(i == 0 ? "" : ",")
+                    .append("{\"kinesis\":{\"kinesisSchemaVersion\":\"1.0\",\"partitionKey\":\"k\",\"sequenceNumber\":\"").append(i)
+                    .append("\",\"data\":\"").append(Base64.getEncoder().encodeToString(events.get(i).getBytes(StandardCharsets.UTF_8)))
+                    .append("\",\"approximateArrivalTimestamp\":1645000000.0},\"eventSource\":\"aws:kinesis\",")
+                    .append("\"eventID\":\"shardId-000000000003:4954").append(i).append("\",\"eventSourceARN\":\"arn\"}");
+        }
+        return event.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String event(String clientIp, String ruleId, String uri) {
+        return "{\"timestamp\":" + NOW + ",\"clientIp\":\"" + clientIp + "\",\"action\":\"BLOCK\",\"ruleId\":\"" + ruleId
+                + "\",\"uri\":\"" + uri + "\"}";
+    }
+
+    @Test
+    public void testDetectorCountsEveryDimension() throws IOException {
+        SlidingWindowCounterTest.SimulatedClock clock = new SlidingWindowCounterTest.SimulatedClock(NOW);
+        RealtimeDetector detector = new RealtimeDetector(RealtimeConfig.fromEnvironment(Map.of(
+                RealtimeConfig.ALERT_THRESHOLDS_ENV, "client:3,rule:0")), clock);
+        RealtimeEvent event = new RealtimeEvent();
+
+        for (int i = 0; i < 4; i++) {
+            detector.accept(event.decode(event("203.0.113.9", "RateLimit", "/login").getBytes(StandardCharsets.UTF_8)));
+        }
+        detector.accept(event.set(NOW, "192.0.2.1", "ALLOW", RealtimeDetector.DEFAULT_ACTION_RULE, "/"));
+
+        assertThat(detector.getEvents()).isEqualTo(5);
+        assertThat(detector.top(Dimension.CLIENT)).extracting(SlidingWindowCounter.Count::toString)
+                .containsExactly("203.0.113.9=4", "192.0.2.1=1");
+        assertThat(detector.top(Dimension.RULE)).extracting(SlidingWindowCounter.Count::toString)
+                .containsExactly("RateLimit=4");
+        List<RealtimeDetector.Alert> alerts = detector.drainAlerts();
+        assertThat(alerts).extracting(RealtimeDetector.Alert::toString).containsExactly("client 203.0.113.9: 3 requests in 60 s");
+        assertThat(detector.drainAlerts()).isEmpty();
+    }
+
+    @Test
+    public void testRulesAndUrisAlertAtTheirShareOfTheThreshold() {
+        SlidingWindowCounterTest.SimulatedClock clock = new SlidingWindowCounterTest.SimulatedClock(NOW);
+        RealtimeConfig config = RealtimeConfig.fromEnvironment(Map.of(
+                RealtimeConfig.ALERT_THRESHOLDS_ENV, "client:10,rule:10,uri:0",
+                RealtimeConfig.SHARDS_ENV, "4"));
+        assertThat(config.getShardThreshold(Dimension.CLIENT)).isEqualTo(10);
+        assertThat(config.getShardThreshold(Dimension.RULE)).isEqualTo(3);
+        assertThat(config.getShardThreshold(Dimension.URI)).isEqualTo(0);
+        RealtimeDetector detector = new RealtimeDetector(config, clock);
+        RealtimeEvent event = new RealtimeEvent();
+
+        // the addresses of this shard send a quarter of the rule's requests
+        for (int i = 0; i < 3; i++) {
+            detector.accept(event.set(NOW, "198.51.100." + i, "BLOCK", "RateLimit", "/login"));
+        }
+
+        assertThat(detector.drainAlerts()).extracting(RealtimeDetector.Alert::toString)
+                .containsExactly("rule RateLimit: 3 requests in 60 s");
+    }
+
+    @Test
+    public void testBatchWritesTopTalkersAndAlerts() throws IOException {
+        AtomicInteger bulkCalls = new AtomicInteger();
+        List<String> bulkBodies = new ArrayList<>();
+        try (StubHttpServer openSearch = StubHttpServer.start(request -> {
+            if (request.getPath().startsWith("/_index_template/")) {
+                return StubHttpServer.Response.json(200, "{\"acknowledged\":true}");
+            }
+            bulkBodies.add(request.getBodyAsString());
+            if (bulkCalls.incrementAndGet() == 1) {
+                return StubHttpServer.Response.json(429, "{\"error\":\"es_rejected_execution_exception\"}");
+            }
+            return StubHttpServer.Response.json(200, "{\"errors\":false,\"items\":[]}");
+        })) {
+            SlidingWindowCounterTest.SimulatedClock clock = new SlidingWindowCounterTest.SimulatedClock(NOW);
+            RealtimeDetectorHandler handler = new RealtimeDetectorHandler(
+                    new RealtimeDetector(RealtimeConfig.fromEnvironment(Map.of(RealtimeConfig.ALERT_THRESHOLDS_ENV, "client:5")), clock),
+                    new OpenSearchClient(openSearch.uri(), new SignedHttpClient(null)), clock);
+            List<String> events = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                events.add(event("203.0.113.9", "RateLimit", "/login"));
+            }
+            events.add(event("192.0.2.1", "Default_Action", "/"));
+            events.add("not json");
+            TestLambdaContext context = new TestLambdaContext();
+
+            handler.handleRequest(new ByteArrayInputStream(kinesisEvent(events)), OutputStream.nullOutputStream(), context);
+
+            assertThat(context.getLogLines().get(0)).startsWith("Realtime batch of shardId-000000000003: 7 events, 1 unreadable, 1 alerts");
+            assertThat(openSearch.getRequests().get(0).getPath()).isEqualTo("/_index_template/awswaf-realtime");
+            // the rejected bulk goes again as it was
+            assertThat(bulkBodies).hasSize(2);
+            assertThat(bulkBodies.get(1)).isEqualTo(bulkBodies.get(0));
+
+            String[] lines = bulkBodies.get(1).split("\n");
+            assertThat(lines).hasSize(4);
+            ObjectMapper objectMapper = new ObjectMapper();
+            assertThat(objectMapper.readTree(lines[0]).at("/index/_index").asText()).isEqualTo("awswaf-realtime-top");
+            assertThat(objectMapper.readTree(lines[0]).at("/index/_id").asText()).isEqualTo("shardId-000000000003");
+            JsonNode top = objectMapper.readTree(lines[1]);
+            assertThat(top.get("@timestamp").asLong()).isEqualTo(NOW);
+            assertThat(top.at("/client/0/value").asText()).isEqualTo("203.0.113.9");
+            assertThat(top.at("/client/0/count").asLong()).isEqualTo(6);
+            assertThat(top.get("rule")).hasSize(1);
+            assertThat(top.get("uri")).hasSize(2);
+            assertThat(objectMapper.readTree(lines[2]).at("/index/_index").asText()).isEqualTo("awswaf-realtime-alerts-2022.02");
+            assertThat(objectMapper.readTree(lines[2]).at("/index/_id").asText()).isEqualTo("client:203.0.113.9:" + NOW);
+            JsonNode alert = objectMapper.readTree(lines[3]);
+            assertThat(alert.get("value").asText()).isEqualTo("203.0.113.9");
+            assertThat(alert.get("count").asLong()).isEqualTo(5);
+            assertThat(alert.get("threshold").asLong()).isEqualTo(5);
+
+            // the template is installed once per container
+            handler.handleRequest(new ByteArrayInputStream(kinesisEvent(events.subList(0, 1))), OutputStream.nullOutputStream(), context);
+            assertThat(openSearch.getRequests()).filteredOn(request -> request.getPath().startsWith("/_index_template/")).hasSize(1);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.myorg.realtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SlidingWindowCounterTest {
+
+    // 60 s in 5 s buckets
+    private static SlidingWindowCounter counter(SimulatedClock clock, long threshold, int maxKeys) {
+        return new SlidingWindowCounter(clock, 60_000, 12, threshold, maxKeys, 4);
+    }
+
+    @Test
+    public void testCountsSlideOutOfTheWindowABucketAtATime() {
+        SimulatedClock clock = new SimulatedClock(1_645_000_000_000L);
+        SlidingWindowCounter counter = counter(clock, 0, 100);
+
+        for (int i = 0; i < 10; i++) {
+            counter.add("192.0.2.1");
+        }
+        clock.advance(30_000);
+        for (int i = 0; i < 5; i++) {
+            counter.add("192.0.2.1");
+        }
+        assertThat(counter.count("192.0.2.1")).isEqualTo(15);
+
+        // the first ten leave when their bucket does, 60 s after it started
+        clock.advance(29_999);
+        assertThat(counter.count("192.0.2.1")).isEqualTo(15);
+        clock.advance(1);
+        assertThat(counter.count("192.0.2.1")).isEqualTo(5);
+        clock.advance(30_000);
+        assertThat(counter.count("192.0.2.1")).isEqualTo(0);
+        assertThat(counter.count("192.0.2.2")).isEqualTo(0);
+    }
+
+    @Test
+    public void testCrossingTheThresholdAlertsOnceUntilTheKeyCalmsDown() {
+        SimulatedClock clock = new SimulatedClock(1_645_000_000_000L);
+        SlidingWindowCounter counter = counter(clock, 100, 100);
+
+        int alerts = 0;
+        for (int i = 0; i < 100; i++) {
+            alerts += counter.add("198.51.100.7") ? 1 : 0;
+        }
+        clock.advance(30_000);
+        for (int i = 0; i < 60; i++) {
+            alerts += counter.add("198.51.100.7") ? 1 : 0;
+        }
+        assertThat(alerts).isEqualTo(1);
+
+        // down to 60 but still above half the threshold: back at 100 is the same flood
+        clock.advance(30_000);
+        for (int i = 0; i < 40; i++) {
+            alerts += counter.add("198.51.100.7") ? 1 : 0;
+        }
+        assertThat(alerts).isEqualTo(1);
+
+        clock.advance(60_000);
+        for (int i = 0; i < 100; i++) {
+            alerts += counter.add("198.51.100.7") ? 1 : 0;
+        }
+        assertThat(alerts).isEqualTo(2);
+    }
+
+    @Test
+    public void testTopIsOrderedByCountThenKey() {
+        SimulatedClock clock = new SimulatedClock(1_645_000_000_000L);
+        SlidingWindowCounter counter = counter(clock, 0, 100);
+        for (int key = 1; key <= 20; key++) {
+            for (int i = 0; i < key % 7; i++) {
+                counter.add("key-" + key);
+            }
+        }
+
+        List<SlidingWindowCounter.Count> top = counter.top(4);
+
+        assertThat(top).extracting(SlidingWindowCounter.Count::toString)
+                .containsExactly("key-13=6", "key-20=6", "key-6=6", "key-12=5");
+    }
+
+    @Test
+    public void testKeysBeyondTheLimitAreTalliedUntilIdleOnesAreEvicted() {
+        SimulatedClock clock = new SimulatedClock(1_645_000_000_000L);
+        // one stripe, so the limit is exact
+        SlidingWindowCounter counter = new SlidingWindowCounter(clock, 60_000, 12, 0, 3, 1);
+        for (String key : List.of("a", "b", "c", "d", "d")) {
+            counter.add(key);
+        }
+        assertThat(counter.size()).isEqualTo(3);
+        assertThat(counter.getUntrackedRequests()).isEqualTo(2);
+        assertThat(counter.count("d")).isEqualTo(0);
+
+        clock.advance(30_000);
+        counter.add("a");
+        clock.advance(30_000);
+        assertThat(counter.evictIdle()).isEqualTo(2);
+        counter.add("d");
+        assertThat(counter.count("d")).isEqualTo(1);
+        assertThat(counter.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testConcurrentAddsAreAllCounted() throws Exception {
+        SimulatedClock clock = new SimulatedClock(1_645_000_000_000L);
+        SlidingWindowCounter counter = new SlidingWindowCounter(clock, 60_000, 12, 40_000, 10_000, 16);
+        AtomicInteger alerts = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 50_000; i++) {
+                        if (counter.add("key-" + (i % 50))) {
+                            alerts.incrementAndGet();
+                        }
+                        counter.add("shared");
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(counter.count("shared")).isEqualTo(200_000);
+        assertThat(counter.count("key-0")).isEqualTo(4_000);
+        assertThat(alerts.get()).isZero();
+        assertThat(counter.top(1).get(0).getKey()).isEqualTo("shared");
+    }
+
+    @Test
+    public void testWindowMustHoldItsBuckets() {
+        assertThatThrownBy(() -> new SlidingWindowCounter(Clock.systemUTC(), 5, 12, 0, 100, 4))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("12 buckets");
+    }
+
+    /**
+     * A clock that only moves when told to.
+     */
+    static final class SimulatedClock extends Clock {
+        private long millis;
+
+        SimulatedClock(long millis) {
+            this.millis = millis;
+        }
+
+        void advance(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
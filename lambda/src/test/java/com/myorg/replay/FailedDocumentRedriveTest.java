@@ -0,0 +1,222 @@
+package com.myorg.replay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.aws.S3ObjectClient;
+import com.myorg.aws.SignedHttpClient;
+import com.myorg.aws.StubHttpServer;
+import com.myorg.aws.TestLambdaContext;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.waflog.WafLogCorpus;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FailedDocumentRedriveTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final SignedHttpClient UNSIGNED = new SignedHttpClient(null);
+    private static final String FIRST_KEY = FailedDocumentRedrive.FAILED_PREFIX + "2022/02/16/00/failed-1";
+    private static final String SECOND_KEY = FailedDocumentRedrive.FAILED_PREFIX + "2022/02/16/01/failed-2";
+
+    // Firehose's error output: one line per document it gave up on
+    private static byte[] errorOutput(List<byte[]> documents) {
+        List<byte[]> lines = new ArrayList<>();
+        for (byte[] document : documents) {
+            lines.add(("{\"attemptsMade\":4,\"arrivalTimestamp\":1645000000000,\"errorCode\":\"429\","
+                    + "\"errorMessage\":\"es_rejected_execution_exception\",\"attemptEndingTimestamp\":1645000060000,"
+                    + "\"rawData\":\"" + Base64.getEncoder().encodeToString(document) + "\",\"subsequenceNumber\":0,"
+                    + "\"esDocumentId\":\"49590338271490256608559692538361571095921575989136588898\","
+                    + "\"esIndexName\":\"awswaf\",\"esTypeName\":\"\"}").getBytes(StandardCharsets.UTF_8));
+        }
+        return ReplayBenchmark.gzip(lines);
+    }
+
+    private static Set<String> requestIds(List<byte[]> documents) throws IOException {
+        Set<String> ids = new HashSet<>();
+        for (byte[] document : documents) {
+            ids.add(OBJECT_MAPPER.readTree(document).at("/httpRequest/requestId").asText());
+        }
+        return ids;
+    }
+
+    private static AimdRateLimiter fastLimiter() {
+        return new AimdRateLimiter(40_000, 5_000, 100_000, 10_000, 0.5);
+    }
+
+    /**
+     * A bulk endpoint in a rejection storm: the first requests are turned away whole, the next have half their
+     * items rejected, then everything goes through. Documents are kept by id, as the domain would.
+     */
+    private static final class StormyDomain {
+        private final int wholeRejections;
+        private final int partialRejections;
+        private final AtomicInteger bulkRequests = new AtomicInteger();
+        private final Map<String, String> documents = new ConcurrentHashMap<>();
+        private final Map<String, String> state = new ConcurrentHashMap<>();
+
+        StormyDomain(int wholeRejections, int partialRejections) {
+            this.wholeRejections = wholeRejections;
+            this.partialRejections = partialRejections;
+        }
+
+        StubHttpServer.Response handle(StubHttpServer.Request request) {
+            if (!request.getPath().equals("/_bulk")) {
+                if ("GET".equals(request.getMethod())) {
+                    String source = state.get(request.getPath());
+                    return source == null ? StubHttpServer.Response.json(404, "{\"found\":false}")
+                            : StubHttpServer.Response.json(200, "{\"_source\":" + source + "}");
+                }
+                state.put(request.getPath(), request.getBodyAsString());
+                return StubHttpServer.Response.json(200, "{}");
+            }
+            int call = bulkRequests.incrementAndGet();
+            if (call <= wholeRejections) {
+                return StubHttpServer.Response.json(429, "{\"error\":{\"type\":\"es_rejected_execution_exception\"},\"status\":429}");
+            }
+            String[] lines = request.getBodyAsString().split("\n");
+            StringBuilder body = new StringBuilder("{\"errors\":true,\"items\":[");
+            for (int i = 0; i < lines.length / 2; i++) {
+                String id;
+                try {
+                    id = OBJECT_MAPPER.readTree(lines[2 * i]).at("/index/_id").asText();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                int status;
+                if (call <= wholeRejections + partialRejections && i % 2 == 0) {
+                    status = 429;
+                } else if (lines[2 * i + 1].contains("\"requestId\":\"mapping-conflict\"")) {
+                    status = 400;
+                } else {
+                    documents.put(id, lines[2 * i + 1]);
+                    status = 201;
+                }
+                body.append(i == 0 ? "" : ",").append("{\"index\":{\"_id\":\"").append(id).append("\",\"status\":")
+                        .append(status).append("}}");
+            }
+            return StubHttpServer.Response.json(200, body.append("]}").toString());
+        }
+    }
+
+    @Test
+    public void testARejectionStormCutsTheRateAndEveryDocumentGetsInOnce() throws IOException {
+        List<byte[]> first = WafLogCorpus.synthetic(300, 1);
+        List<byte[]> second = new ArrayList<>(WafLogCorpus.synthetic(200, 2));
+        second.add("{\"httpRequest\":{\"requestId\":\"mapping-conflict\"}}".getBytes(StandardCharsets.UTF_8));
+        second.add("not json".getBytes(StandardCharsets.UTF_8));
+        StormyDomain domain = new StormyDomain(4, 3);
+        try (StubS3 s3 = new StubS3(ReplayBenchmark.BUCKET, 1);
+             StubHttpServer server = StubHttpServer.start(domain::handle)) {
+            s3.put(FIRST_KEY, errorOutput(first));
+            s3.put(SECOND_KEY, errorOutput(second));
+            // the rest of the backup isn't re-driven
+            s3.put(ReplayBenchmark.backupKey(0), ReplayBenchmark.gzip(WafLogCorpus.synthetic(5, 3)));
+            OpenSearchClient openSearch = new OpenSearchClient(server.uri(), UNSIGNED);
+            AimdRateLimiter limiter = fastLimiter();
+            FailedDocumentRedrive redrive = new FailedDocumentRedrive(new S3ObjectClient(UNSIGNED, "eu-west-1", s3.uri()),
+                    openSearch, ReplayBenchmark.BUCKET, limiter);
+
+            FailedDocumentRedrive.Result result = redrive.run(ReplayCheckpoint.START, () -> false,
+                    new CheckpointStore(openSearch), RedriveHandler.CHECKPOINT_NAME);
+
+            assertThat(result.isComplete()).isTrue();
+            assertThat(result.getObjects()).isEqualTo(2);
+            assertThat(result.getDocuments()).isEqualTo(500);
+            assertThat(result.getFailedDocuments()).isEqualTo(1);
+            assertThat(result.getUnreadableRecords()).isEqualTo(1);
+            assertThat(result.getRejections()).isEqualTo(7);
+            assertThat(result.getCheckpoint()).isEqualTo(new ReplayCheckpoint(SECOND_KEY, 2, 500));
+            assertThat(new CheckpointStore(openSearch).load(RedriveHandler.CHECKPOINT_NAME)).isEqualTo(result.getCheckpoint());
+
+            Set<String> expected = requestIds(first);
+            expected.addAll(requestIds(second.subList(0, 200)));
+            assertThat(domain.documents.keySet()).isEqualTo(expected);
+            JsonNode indexed = OBJECT_MAPPER.readTree(domain.documents.get(expected.iterator().next()));
+            assertThat(indexed.at("/httpRequest/requestId").asText()).isEqualTo(expected.iterator().next());
+        }
+    }
+
+    @Test
+    public void testADeadlineStopsTheRunWhileTheDomainKeepsRejecting() throws IOException {
+        StormyDomain domain = new StormyDomain(Integer.MAX_VALUE, 0);
+        try (StubS3 s3 = new StubS3(ReplayBenchmark.BUCKET, 1);
+             StubHttpServer server = StubHttpServer.start(domain::handle)) {
+            s3.put(FIRST_KEY, errorOutput(WafLogCorpus.synthetic(100, 7)));
+            OpenSearchClient openSearch = new OpenSearchClient(server.uri(), UNSIGNED);
+            FailedDocumentRedrive redrive = new FailedDocumentRedrive(new S3ObjectClient(UNSIGNED, "eu-west-1", s3.uri()),
+                    openSearch, ReplayBenchmark.BUCKET, fastLimiter());
+
+            // the deadline passes while the first object is still backing off
+            FailedDocumentRedrive.Result result = redrive.run(ReplayCheckpoint.START, () -> domain.bulkRequests.get() >= 3,
+                    new CheckpointStore(openSearch), RedriveHandler.CHECKPOINT_NAME);
+
+            assertThat(result.isComplete()).isFalse();
+            assertThat(result.getObjects()).isZero();
+            assertThat(result.getCheckpoint()).isEqualTo(ReplayCheckpoint.START);
+            assertThat(domain.bulkRequests.get()).isEqualTo(3);
+            assertThat(new CheckpointStore(openSearch).load(RedriveHandler.CHECKPOINT_NAME)).isEqualTo(ReplayCheckpoint.START);
+        }
+    }
+
+    @Test
+    public void testRateFallsMultiplicativelyAndRecoversAdditively() {
+        AimdRateLimiter limiter = new AimdRateLimiter(400, 50, 600, 100, 0.5);
+
+        limiter.rejected();
+        limiter.rejected();
+        assertThat(limiter.getRate()).isEqualTo(100);
+        limiter.rejected();
+        limiter.rejected();
+        assertThat(limiter.getRate()).isEqualTo(50);
+        for (int i = 0; i < 10; i++) {
+            limiter.accepted();
+        }
+        assertThat(limiter.getRate()).isEqualTo(600);
+        assertThat(limiter.getDecreases()).isEqualTo(4);
+    }
+
+    @Test
+    public void testTheScheduledHandlerResumesWithoutDuplicates() throws IOException {
+        List<byte[]> first = WafLogCorpus.synthetic(50, 4);
+        List<byte[]> second = WafLogCorpus.synthetic(50, 5);
+        StormyDomain domain = new StormyDomain(0, 0);
+        try (StubS3 s3 = new StubS3(ReplayBenchmark.BUCKET, 1);
+             StubHttpServer server = StubHttpServer.start(domain::handle)) {
+            s3.put(FIRST_KEY, errorOutput(first));
+            OpenSearchClient openSearch = new OpenSearchClient(server.uri(), UNSIGNED);
+            RedriveHandler handler = new RedriveHandler(new S3ObjectClient(UNSIGNED, "eu-west-1", s3.uri()), openSearch,
+                    Map.of(ReplayConfig.BUCKET_ENV, ReplayBenchmark.BUCKET), 0);
+            TestLambdaContext context = new TestLambdaContext();
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            handler.handleRequest(new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8)), output, context);
+            assertThat(OBJECT_MAPPER.readTree(output.toByteArray()).get("documents").asLong()).isEqualTo(50);
+
+            // the next run only reads what Firehose wrote since
+            s3.put(SECOND_KEY, errorOutput(second));
+            output.reset();
+            handler.handleRequest(new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8)), output, context);
+            JsonNode response = OBJECT_MAPPER.readTree(output.toByteArray());
+            assertThat(response.get("complete").asBoolean()).isTrue();
+            assertThat(response.get("objects").asLong()).isEqualTo(1);
+            assertThat(response.at("/checkpoint/documents").asLong()).isEqualTo(100);
+            assertThat(s3.getServer().getRequests()).filteredOn(r -> r.getPath().endsWith("failed-1") && "GET".equals(r.getMethod()))
+                    .hasSize(1);
+            assertThat(domain.documents).hasSize(100);
+            assertThat(context.getLogLines().get(1)).startsWith("Re-drive after");
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.myorg.replay;
+
+import com.myorg.aws.S3ObjectClient;
+import com.myorg.aws.SignedHttpClient;
+import com.myorg.loadgen.SimulatedDomain;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.transform.TransformerConfig;
+import com.myorg.waflog.WafLogCorpus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Replays a generated backup and reports objects, documents and bytes per second and how often the domain
+ * pushed back:
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.mainClass=com.myorg.replay.ReplayBenchmark -Dobjects=200 -Dparallelism=8
+ * </pre>
+ * The objects are served by a {@link StubS3} and the bulk requests go to a {@link SimulatedDomain}, sized with
+ * {@code -DqueueDocs} and {@code -DdocsPerSecond}. {@code -Dendpoint=http://localhost:9200} sends them unsigned
+ * to a local OpenSearch container instead. Other knobs: {@code -Drecords} per object, {@code -DpartSize},
+ * {@code -DreadAhead}, {@code -DbulkBytes}.
+ */
+public class ReplayBenchmark {
+    static final String BUCKET = "osdfw-log-bucket";
+
+    public static void main(String[] args) throws IOException {
+        int objects = Integer.getInteger("objects", 100);
+        int records = Integer.getInteger("records", 2000);
+        ReplayConfig config = ReplayConfig.builder()
+                .bucket(BUCKET)
+                .parallelism(Integer.getInteger("parallelism", 4))
+                .partSize(Integer.getInteger("partSize", 1024 * 1024))
+                .readAhead(Integer.getInteger("readAhead", 2))
+                .bulkBytes(Integer.getInteger("bulkBytes", 5 * 1024 * 1024))
+                .build();
+
+        String endpoint = System.getProperty("endpoint");
+        try (StubS3 s3 = new StubS3(BUCKET, 1000);
+             SimulatedDomain simulated = endpoint == null
+                     ? new SimulatedDomain(Integer.getInteger("queueDocs", 50_000), Integer.getInteger("docsPerSecond", 50_000))
+                     : null) {
+            long bytes = 0;
+            for (int i = 0; i < objects; i++) {
+                byte[] object = gzip(WafLogCorpus.synthetic(records, i));
+                s3.put(backupKey(i), object);
+                bytes += object.length;
+            }
+            System.out.printf("%,d objects, %,.1f MB compressed%n", objects, bytes / 1_048_576d);
+
+            SignedHttpClient unsigned = new SignedHttpClient(null);
+            ReplayEngine engine = new ReplayEngine(new S3ObjectClient(unsigned, "eu-west-1", s3.uri()),
+                    new OpenSearchClient(endpoint == null ? simulated.uri() : URI.create(endpoint), unsigned),
+                    TransformerConfig.fromEnvironment(System.getenv()), config);
+            System.out.println(engine.run(ReplayCheckpoint.START, () -> false, null, null));
+        }
+    }
+
+    /**
+     * A key the way Firehose writes backup objects under the {@code /log} prefix.
+     */
+    static String backupKey(int index) {
+        return String.format("/log2022/02/16/%02d/aws-waf-logs-osdfw-1-2022-02-16-%02d-00-00-%06d", index % 24, index % 24, index);
+    }
+
+    static byte[] gzip(List<byte[]> records) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            for (byte[] record : records) {
+                out.write(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] zip(List<byte[]> records) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            out.putNextEntry(new ZipEntry("records"));
+            for (byte[] record : records) {
+                out.write(record);
+            }
+            out.closeEntry();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,191 @@
+package com.myorg.replay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.aws.S3ObjectClient;
+import com.myorg.aws.SignedHttpClient;
+import com.myorg.aws.StubHttpServer;
+import com.myorg.aws.TestLambdaContext;
+import com.myorg.loadgen.SimulatedDomain;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.transform.TransformerConfig;
+import com.myorg.transform.WafLogTransformer;
+import com.myorg.waflog.WafLogCorpus;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReplayEngineTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final Pattern ID = Pattern.compile("\"_id\":\"([^\"]+)\"");
+    private static final TransformerConfig TRANSFORMER = new TransformerConfig(List.of(), TransformerConfig.DEFAULT_FLATTEN_HEADERS);
+    private static final SignedHttpClient UNSIGNED = new SignedHttpClient(null);
+    private static final String FAILED_KEY = "/logelasticsearch-failed/2022/02/16/00/failed";
+
+    private static StubS3 backup(int objects, int records) throws IOException {
+        StubS3 s3 = new StubS3(ReplayBenchmark.BUCKET, 4);
+        for (int i = 0; i < objects; i++) {
+            s3.put(ReplayBenchmark.backupKey(i), i % 2 == 0
+                    ? ReplayBenchmark.gzip(WafLogCorpus.synthetic(records, i))
+                    : ReplayBenchmark.zip(WafLogCorpus.synthetic(records, i)));
+        }
+        s3.put(FAILED_KEY, ReplayBenchmark.gzip(WafLogCorpus.synthetic(5, 99)));
+        return s3;
+    }
+
+    // bulk requests are answered in full and their ids remembered; anything else is a state document
+    private static StubHttpServer.Response domain(StubHttpServer.Request request, Set<String> ids, AtomicInteger items,
+                                                  Map<String, String> documents) {
+        if (request.getPath().equals("/_bulk")) {
+            Matcher matcher = ID.matcher(request.getBodyAsString());
+            StringBuilder body = new StringBuilder("{\"errors\":false,\"items\":[");
+            int count = 0;
+            while (matcher.find()) {
+                ids.add(matcher.group(1));
+                body.append(count++ == 0 ? "" : ",").append("{\"index\":{\"status\":201}}");
+            }
+            items.addAndGet(count);
+            return StubHttpServer.Response.json(200, body.append("]}").toString());
+        }
+        switch (request.getMethod()) {
+            case "GET":
+                String source = documents.get(request.getPath());
+                return source == null ? StubHttpServer.Response.json(404, "{\"found\":false}")
+                        : StubHttpServer.Response.json(200, "{\"_source\":" + source + "}");
+            case "DELETE":
+                documents.remove(request.getPath());
+                return StubHttpServer.Response.json(200, "{}");
+            default:
+                documents.put(request.getPath(), request.getBodyAsString());
+                return StubHttpServer.Response.json(200, "{}");
+        }
+    }
+
+    @Test
+    public void testEveryObjectIsReplayedThroughRangedGetsAndRejectionsAreRetried() throws IOException {
+        try (StubS3 s3 = backup(10, 400);
+             SimulatedDomain domain = new SimulatedDomain(300, 200_000)) {
+            ReplayConfig config = ReplayConfig.builder().bucket(ReplayBenchmark.BUCKET).parallelism(3)
+                    .partSize(4096).readAhead(2).bulkBytes(512 * 1024).build();
+            ReplayEngine engine = new ReplayEngine(new S3ObjectClient(UNSIGNED, "eu-west-1", s3.uri()),
+                    new OpenSearchClient(domain.uri(), UNSIGNED), TRANSFORMER, config, 5);
+
+            ReplayEngine.Result result = engine.run(ReplayCheckpoint.START, () -> false, null, null);
+
+            assertThat(result.isComplete()).isTrue();
+            assertThat(result.getObjects()).isEqualTo(10);
+            assertThat(result.getDocuments()).isEqualTo(4000);
+            assertThat(domain.getAcceptedDocs()).isEqualTo(4000);
+            assertThat(result.getRejections()).isPositive();
+            // skipped keys still move the watermark, so they are not listed again on resume
+            assertThat(result.getCheckpoint()).isEqualTo(new ReplayCheckpoint(FAILED_KEY, 10, 4000));
+            // objects are read in parts, and the Firehose error output not at all
+            assertThat(s3.getServer().getRequests()).anyMatch(r -> "bytes=4096-8191".equals(r.getHeader("range")));
+            assertThat(s3.getServer().getRequests()).noneMatch(r -> r.getPath().contains("elasticsearch-failed"));
+            assertThat(result.toString()).contains("docs/s", "MB/s", "complete");
+        }
+    }
+
+    @Test
+    public void testAStoppedReplayResumesFromItsCheckpointWithoutDuplicates() throws IOException {
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        AtomicInteger items = new AtomicInteger();
+        Map<String, String> documents = new ConcurrentHashMap<>();
+        try (StubS3 s3 = backup(9, 50);
+             StubHttpServer server = StubHttpServer.start(request -> domain(request, ids, items, documents))) {
+            OpenSearchClient openSearch = new OpenSearchClient(server.uri(), UNSIGNED);
+            CheckpointStore store = new CheckpointStore(openSearch);
+            ReplayEngine engine = new ReplayEngine(new S3ObjectClient(UNSIGNED, "eu-west-1", s3.uri()), openSearch, TRANSFORMER,
+                    ReplayConfig.builder().bucket(ReplayBenchmark.BUCKET).parallelism(1).build());
+
+            AtomicInteger started = new AtomicInteger();
+            ReplayEngine.Result first = engine.run(store.load("rebuild"), () -> started.incrementAndGet() > 5, store, "rebuild");
+
+            assertThat(first.isComplete()).isFalse();
+            assertThat(store.load("rebuild")).isEqualTo(new ReplayCheckpoint(ReplayBenchmark.backupKey(4), 5, 250));
+
+            ReplayEngine.Result second = engine.run(store.load("rebuild"), () -> false, store, "rebuild");
+
+            assertThat(second.isComplete()).isTrue();
+            assertThat(second.getObjects()).isEqualTo(4);
+            assertThat(store.load("rebuild")).isEqualTo(new ReplayCheckpoint(FAILED_KEY, 9, 450));
+            assertThat(items.get()).isEqualTo(450);
+            assertThat(ids).hasSize(450);
+        }
+    }
+
+    @Test
+    public void testReplayedDocumentsGetTheIdsTheRedriveGivesThem() throws IOException {
+        List<byte[]> records = WafLogCorpus.synthetic(20, 7);
+        // with the request id, and without it, when a digest of the document stands in
+        for (TransformerConfig transformer : List.of(TRANSFORMER,
+                new TransformerConfig(List.of("httpRequest.requestId"), TransformerConfig.DEFAULT_FLATTEN_HEADERS))) {
+            Set<String> redriven = new HashSet<>();
+            WafLogTransformer delivery = new WafLogTransformer(transformer);
+            for (byte[] record : records) {
+                // as Firehose hands the record to the transform, line break included
+                byte[] document = delivery.transform((new String(record, StandardCharsets.UTF_8) + "\n").getBytes(StandardCharsets.UTF_8));
+                redriven.add(FailedDocumentRedrive.documentId(OBJECT_MAPPER.readTree(document), document));
+            }
+
+            Set<String> replayed = ConcurrentHashMap.newKeySet();
+            try (StubS3 s3 = new StubS3(ReplayBenchmark.BUCKET, 4);
+                 StubHttpServer server = StubHttpServer.start(request -> domain(request, replayed, new AtomicInteger(),
+                         new ConcurrentHashMap<>()))) {
+                s3.put(ReplayBenchmark.backupKey(0), ReplayBenchmark.gzip(records));
+                new ReplayEngine(new S3ObjectClient(UNSIGNED, "eu-west-1", s3.uri()), new OpenSearchClient(server.uri(), UNSIGNED),
+                        transformer, ReplayConfig.builder().bucket(ReplayBenchmark.BUCKET).build())
+                        .run(ReplayCheckpoint.START, () -> false, null, null);
+            }
+            assertThat(replayed).hasSize(20).isEqualTo(redriven);
+        }
+    }
+
+    @Test
+    public void testHandlerStopsBeforeTheTimeoutAndReplaysAgainOnRestart() throws IOException {
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        AtomicInteger items = new AtomicInteger();
+        Map<String, String> documents = new ConcurrentHashMap<>();
+        try (StubS3 s3 = backup(3, 20);
+             StubHttpServer server = StubHttpServer.start(request -> domain(request, ids, items, documents))) {
+            S3ObjectClient s3Client = new S3ObjectClient(UNSIGNED, "eu-west-1", s3.uri());
+            OpenSearchClient openSearch = new OpenSearchClient(server.uri(), UNSIGNED);
+            Map<String, String> environment = Map.of(ReplayConfig.BUCKET_ENV, ReplayBenchmark.BUCKET);
+
+            // the test context always has a minute left
+            JsonNode stopped = invoke(new ReplayHandler(s3Client, openSearch, TRANSFORMER, environment, 60_001), "{}");
+            assertThat(stopped.get("complete").asBoolean()).isFalse();
+            assertThat(stopped.get("objects").asInt()).isZero();
+
+            JsonNode finished = invoke(new ReplayHandler(s3Client, openSearch, TRANSFORMER, environment, 0), "{}");
+            assertThat(finished.get("complete").asBoolean()).isTrue();
+            assertThat(finished.at("/checkpoint/documents").asInt()).isEqualTo(60);
+            assertThat(documents).containsKey(CheckpointStore.PATH_PREFIX + "default");
+
+            JsonNode restarted = invoke(new ReplayHandler(s3Client, openSearch, TRANSFORMER, environment, 0), "{\"restart\":true}");
+            assertThat(restarted.get("documents").asInt()).isEqualTo(60);
+            assertThat(items.get()).isEqualTo(120);
+            // the same records got the same ids the second time
+            assertThat(ids).hasSize(60);
+        }
+    }
+
+    private static JsonNode invoke(ReplayHandler handler, String event) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(new ByteArrayInputStream(event.getBytes(StandardCharsets.UTF_8)), output, new TestLambdaContext());
+        return OBJECT_MAPPER.readTree(output.toByteArray());
+    }
+}
@@ -0,0 +1,107 @@
+package com.myorg.replay;
+
+import com.myorg.aws.StubHttpServer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-process stand-in for the S3 calls a replay makes: {@code ListObjectsV2} of one bucket, a page of
+ * {@code pageSize} keys at a time, and ranged GETs. Addressed path-style, as {@code S3_ENDPOINT} is.
+ */
+public class StubS3 implements AutoCloseable {
+    private final String bucket;
+    private final int pageSize;
+    private final NavigableMap<String, byte[]> objects = new ConcurrentSkipListMap<>();
+    private final StubHttpServer server;
+
+    public StubS3(String bucket, int pageSize) throws IOException {
+        this.bucket = bucket;
+        this.pageSize = pageSize;
+        this.server = StubHttpServer.start(this::handle);
+    }
+
+    public void put(String key, byte[] content) {
+        objects.put(key, content);
+    }
+
+    public URI uri() {
+        return server.uri();
+    }
+
+    public StubHttpServer getServer() {
+        return server;
+    }
+
+    @Override
+    public void close() {
+        server.close();
+    }
+
+    private StubHttpServer.Response handle(StubHttpServer.Request request) {
+        String bucketPath = "/" + bucket + "/";
+        if (!request.getPath().startsWith(bucketPath)) {
+            return StubHttpServer.Response.json(404, "{}");
+        }
+        Map<String, String> query = query(request.getQuery());
+        if ("2".equals(query.get("list-type"))) {
+            return list(query);
+        }
+
+        byte[] object = objects.get(request.getPath().substring(bucketPath.length()));
+        if (object == null) {
+            return new StubHttpServer.Response(404, "application/xml", "<Error><Code>NoSuchKey</Code></Error>".getBytes(StandardCharsets.UTF_8));
+        }
+        String range = request.getHeader("range");
+        if (range == null) {
+            return StubHttpServer.Response.bytes(object);
+        }
+        String[] bounds = range.substring("bytes=".length()).split("-");
+        int first = Integer.parseInt(bounds[0]);
+        int last = Math.min(object.length - 1, Integer.parseInt(bounds[1]));
+        return new StubHttpServer.Response(206, "application/octet-stream", Arrays.copyOfRange(object, first, last + 1));
+    }
+
+    private StubHttpServer.Response list(Map<String, String> query) {
+        String prefix = query.getOrDefault("prefix", "");
+        // the continuation token is the last key of the previous page
+        String after = query.getOrDefault("continuation-token", query.get("start-after"));
+        StringBuilder xml = new StringBuilder("<ListBucketResult>");
+        int listed = 0;
+        String last = null;
+        for (Map.Entry<String, byte[]> object : (after == null ? objects : objects.tailMap(after, false)).entrySet()) {
+            if (!object.getKey().startsWith(prefix)) {
+                continue;
+            }
+            if (listed == pageSize) {
+                xml.append("<IsTruncated>true</IsTruncated><NextContinuationToken>").append(last).append("</NextContinuationToken>");
+                return new StubHttpServer.Response(200, "application/xml", xml.append("</ListBucketResult>").toString().getBytes(StandardCharsets.UTF_8));
+            }
+            xml.append("<Contents><Key>").append(object.getKey()).append("</Key><Size>").append(object.getValue().length)
+                    .append("</Size></Contents>");
+            last = object.getKey();
+            listed++;
+        }
+        xml.append("<IsTruncated>false</IsTruncated></ListBucketResult>");
+        return new StubHttpServer.Response(200, "application/xml", xml.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                String[] pair = parameter.split("=", 2);
+                parameters.put(URLDecoder.decode(pair[0], StandardCharsets.UTF_8),
+                        pair.length == 1 ? "" : URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,123 @@
+package com.myorg.rollup;
+
+import com.myorg.waflog.WafLogCorpus;
+import com.myorg.waflog.WafLogParser;
+import com.myorg.waflog.WafLogRecord;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RollupAggregatorTest {
+    private final WafLogParser parser = new WafLogParser(List.of());
+
+    @Test
+    public void testEveryDimensionAddsUpToTheRecordCount() throws IOException {
+        List<byte[]> corpus = WafLogCorpus.synthetic(5000, 11);
+        RollupAggregator aggregator = aggregate(corpus, 1000);
+
+        List<RollupDocument> documents = aggregator.documents();
+
+        assertThat(aggregator.getRecordCount()).isEqualTo(5000);
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            for (String dimension : List.of(RollupDocument.DIMENSION_TOTAL, RollupDocument.DIMENSION_RULE,
+                    RollupDocument.DIMENSION_COUNTRY, RollupDocument.DIMENSION_CLIENT_IP)) {
+                long total = documents.stream()
+                        .filter(d -> d.getGranularity() == granularity && d.getDimension().equals(dimension))
+                        .mapToLong(RollupDocument::getCount)
+                        .sum();
+                assertThat(total).as(granularity + " " + dimension).isEqualTo(5000);
+            }
+        }
+    }
+
+    @Test
+    public void testBucketsAreAlignedToMinutesAndHours() throws IOException {
+        RollupAggregator aggregator = aggregate(WafLogCorpus.synthetic(5000, 3), 100);
+
+        for (RollupDocument document : aggregator.documents()) {
+            long size = document.getGranularity() == RollupGranularity.MINUTE ? 60_000 : 3_600_000;
+            assertThat(document.getBucketStart() % size).isZero();
+        }
+        // 5000 records 37ms apart, starting 40s into a minute, touch four minutes
+        assertThat(aggregator.documents().stream()
+                .filter(d -> d.getGranularity() == RollupGranularity.MINUTE)
+                .map(RollupDocument::getBucketStart)
+                .distinct()
+                .count()).isEqualTo(4);
+    }
+
+    @Test
+    public void testTotalsPerActionMatchTheCapturedSample() throws IOException {
+        List<byte[]> corpus = WafLogCorpus.captured();
+        Map<String, Long> expected = corpus.stream()
+                .map(record -> new String(record, StandardCharsets.UTF_8).replaceAll("(?s).*?\"action\":\"([A-Z]+)\".*", "$1"))
+                .collect(Collectors.groupingBy(action -> action, Collectors.counting()));
+
+        Map<String, Long> actual = aggregate(corpus, 100).documents().stream()
+                .filter(d -> d.getGranularity() == RollupGranularity.HOUR && d.getDimension().equals(RollupDocument.DIMENSION_TOTAL))
+                .collect(Collectors.groupingBy(RollupDocument::getAction, Collectors.summingLong(RollupDocument::getCount)));
+
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    public void testClientIpsBeyondTopNAreFoldedIntoOther() throws IOException {
+        RollupAggregator aggregator = aggregate(WafLogCorpus.synthetic(2000, 5), 10);
+
+        Map<String, List<RollupDocument>> clientIpsByBucket = aggregator.documents().stream()
+                .filter(d -> d.getDimension().equals(RollupDocument.DIMENSION_CLIENT_IP))
+                .collect(Collectors.groupingBy(d -> d.getGranularity() + "|" + d.getBucketStart() + "|" + d.getWebaclId() + "|" + d.getAction()));
+
+        assertThat(clientIpsByBucket).isNotEmpty();
+        for (List<RollupDocument> bucket : clientIpsByBucket.values()) {
+            assertThat(bucket.size()).isLessThanOrEqualTo(11);
+        }
+        assertThat(clientIpsByBucket.values().stream().flatMap(List::stream))
+                .anyMatch(d -> d.getValue().equals(RollupDocument.OTHER_VALUE));
+    }
+
+    @Test
+    public void testDocumentIdsAreDeterministicPerSource() throws IOException {
+        List<byte[]> corpus = WafLogCorpus.synthetic(200, 9);
+        List<String> first = ids(aggregate(corpus, 100).documents(), "bucket/log/a.gz");
+        List<String> second = ids(aggregate(corpus, 100).documents(), "bucket/log/a.gz");
+        List<String> otherSource = ids(aggregate(corpus, 100).documents(), "bucket/log/b.gz");
+
+        assertThat(second).containsExactlyInAnyOrderElementsOf(first);
+        assertThat(first).doesNotHaveDuplicates().doesNotContainAnyElementsOf(otherSource);
+    }
+
+    @Test
+    public void testIndexNameIsMonthly() {
+        RollupDocument document = new RollupDocument(RollupGranularity.HOUR, 1645000000000L - 1645000000000L % 3_600_000,
+                "acl", "BLOCK", RollupDocument.DIMENSION_TOTAL, "", 1);
+
+        assertThat(document.indexName("awswaf-rollup")).isEqualTo("awswaf-rollup-2022.02");
+    }
+
+    @Test
+    public void testTopNMustBePositive() {
+        assertThatThrownBy(() -> new RollupAggregator(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private RollupAggregator aggregate(List<byte[]> corpus, int topN) throws IOException {
+        RollupAggregator aggregator = new RollupAggregator(topN);
+        WafLogRecord record = parser.newRecord();
+        for (byte[] data : corpus) {
+            parser.parse(data, record);
+            aggregator.add(record);
+        }
+        return aggregator;
+    }
+
+    private static List<String> ids(List<RollupDocument> documents, String source) {
+        return documents.stream().map(d -> d.id(source)).collect(Collectors.toList());
+    }
+}
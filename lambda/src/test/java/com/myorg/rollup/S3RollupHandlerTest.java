@@ -0,0 +1,164 @@
+package com.myorg.rollup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.aws.FirehoseClient;
+import com.myorg.aws.S3ObjectClient;
+import com.myorg.aws.SignedHttpClient;
+import com.myorg.aws.StubHttpServer;
+import com.myorg.opensearch.OpenSearchClient;
+import com.myorg.waflog.WafLogCorpus;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class S3RollupHandlerTest {
+
+    @Test
+    public void testRollsUpABackupObjectAndRetriesRejectedBulks() throws IOException {
+        List<byte[]> corpus = WafLogCorpus.synthetic(300, 21);
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+            for (byte[] record : corpus) {
+                out.write(record);
+            }
+        }
+        byte[] object = gzip.toByteArray();
+        AtomicInteger bulkCalls = new AtomicInteger();
+
+        try (StubHttpServer s3 = StubHttpServer.start(request -> StubHttpServer.Response.bytes(object));
+             StubHttpServer openSearch = StubHttpServer.start(request -> {
+                 if (!request.getPath().equals("/_bulk")) {
+                     return StubHttpServer.Response.json(200, "{\"acknowledged\":true}");
+                 }
+                 if (bulkCalls.incrementAndGet() == 1) {
+                     return StubHttpServer.Response.json(429, "{\"error\":\"es_rejected_execution_exception\"}");
+                 }
+                 long items = request.getBodyAsString().lines().count() / 2;
+                 StringBuilder body = new StringBuilder("{\"errors\":false,\"items\":[");
+                 for (int i = 0; i < items; i++) {
+                     body.append(i == 0 ? "" : ",").append("{\"index\":{\"status\":201}}");
+                 }
+                 return StubHttpServer.Response.json(200, body.append("]}").toString());
+             })) {
+            SignedHttpClient unsigned = new SignedHttpClient(null);
+            S3RollupHandler handler = new S3RollupHandler(
+                    new S3ObjectClient(unsigned, "eu-west-1", s3.uri()),
+                    new OpenSearchClient(openSearch.uri(), unsigned),
+                    new RollupConfig(RollupConfig.DEFAULT_INDEX_PREFIX, 10));
+
+            RollupAggregator aggregator = handler.rollUp("logs", "log/2022/02/16/08/osdfw-1.gz");
+
+            assertThat(aggregator.getRecordCount()).isEqualTo(300);
+            assertThat(s3.getRequests().get(0).getPath()).isEqualTo("/logs/log/2022/02/16/08/osdfw-1.gz");
+            assertThat(openSearch.getRequests().get(0).getPath()).isEqualTo("/_index_template/awswaf-rollup");
+            assertThat(bulkCalls.get()).isEqualTo(2);
+
+            String bulk = openSearch.getRequests().get(2).getBodyAsString();
+            assertThat(bulk.lines().count()).isEqualTo(2L * aggregator.documents().size());
+            assertThat(bulk).startsWith("{\"index\":{\"_index\":\"awswaf-rollup-2022.02\",\"_id\":\"");
+        }
+    }
+
+    @Test
+    public void testRecordsAreForwardedToTheArchiveAndThrottledOnesSentAgain() throws IOException {
+        List<byte[]> corpus = WafLogCorpus.synthetic(1200, 5);
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+            for (byte[] record : corpus) {
+                out.write(record);
+            }
+        }
+        byte[] object = gzip.toByteArray();
+        AtomicInteger putCalls = new AtomicInteger();
+
+        try (StubHttpServer s3 = StubHttpServer.start(request -> StubHttpServer.Response.bytes(object));
+             StubHttpServer openSearch = StubHttpServer.start(request -> StubHttpServer.Response.json(200, "{\"errors\":false,\"items\":[]}"));
+             StubHttpServer firehose = StubHttpServer.start(request -> {
+                 JsonNode records = readTree(request.getBodyAsString()).get("Records");
+                 StringBuilder body = new StringBuilder("{\"FailedPutCount\":" + (putCalls.incrementAndGet() == 1 ? 2 : 0)
+                         + ",\"RequestResponses\":[");
+                 for (int i = 0; i < records.size(); i++) {
+                     body.append(i == 0 ? "" : ",").append(putCalls.get() == 1 && i < 2
+                             ? "{\"ErrorCode\":\"ServiceUnavailableException\",\"ErrorMessage\":\"Slow down.\"}"
+                             : "{\"RecordId\":\"r" + i + "\"}");
+                 }
+                 return StubHttpServer.Response.json(200, body.append("]}").toString());
+             })) {
+            SignedHttpClient unsigned = new SignedHttpClient(null);
+            S3RollupHandler handler = new S3RollupHandler(
+                    new S3ObjectClient(unsigned, "eu-west-1", s3.uri()),
+                    new OpenSearchClient(openSearch.uri(), unsigned),
+                    new RollupConfig(RollupConfig.DEFAULT_INDEX_PREFIX, 10),
+                    new FirehoseClient(unsigned, "eu-west-1", firehose.uri()), "aws-waf-logs-osdfw-archive");
+
+            handler.rollUp("logs", "log/2022/02/16/08/osdfw-1.gz");
+
+            List<Integer> batchSizes = new ArrayList<>();
+            for (StubHttpServer.Request request : firehose.getRequests()) {
+                assertThat(request.getHeader("x-amz-target")).isEqualTo("Firehose_20150804.PutRecordBatch");
+                JsonNode body = readTree(request.getBodyAsString());
+                assertThat(body.get("DeliveryStreamName").asText()).isEqualTo("aws-waf-logs-osdfw-archive");
+                batchSizes.add(body.get("Records").size());
+            }
+            // the two throttled records go again on their own before the next batch
+            assertThat(batchSizes).containsExactly(500, 2, 500, 200);
+            JsonNode first = readTree(firehose.getRequests().get(0).getBodyAsString()).at("/Records/0/Data");
+            assertThat(first.binaryValue()).isEqualTo(corpus.get(0));
+        }
+    }
+
+    @Test
+    public void testNothingIsArchivedUntilTheRollupsAreIndexed() throws IOException {
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+            for (byte[] record : WafLogCorpus.synthetic(50, 6)) {
+                out.write(record);
+            }
+        }
+        byte[] object = gzip.toByteArray();
+
+        try (StubHttpServer s3 = StubHttpServer.start(request -> StubHttpServer.Response.bytes(object));
+             StubHttpServer openSearch = StubHttpServer.start(request -> request.getPath().equals("/_bulk")
+                     ? StubHttpServer.Response.json(500, "{\"error\":\"internal_server_error\"}")
+                     : StubHttpServer.Response.json(200, "{\"acknowledged\":true}"));
+             StubHttpServer firehose = StubHttpServer.start(request -> StubHttpServer.Response.json(200,
+                     "{\"FailedPutCount\":0,\"RequestResponses\":[]}"))) {
+            SignedHttpClient unsigned = new SignedHttpClient(null);
+            S3RollupHandler handler = new S3RollupHandler(
+                    new S3ObjectClient(unsigned, "eu-west-1", s3.uri()),
+                    new OpenSearchClient(openSearch.uri(), unsigned),
+                    new RollupConfig(RollupConfig.DEFAULT_INDEX_PREFIX, 10),
+                    new FirehoseClient(unsigned, "eu-west-1", firehose.uri()), "aws-waf-logs-osdfw-archive");
+
+            // S3 will retry the notification; the archive only gets the records once the rollups are in
+            assertThatThrownBy(() -> handler.rollUp("logs", "log/2022/02/16/08/osdfw-1.gz")).isInstanceOf(IOException.class);
+            assertThat(firehose.getRequests()).isEmpty();
+            assertThat(s3.getRequests()).hasSize(1);
+        }
+    }
+
+    private static JsonNode readTree(String json) {
+        try {
+            return new ObjectMapper().readTree(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    public void testFirehoseErrorOutputIsSkipped() {
+        assertThat(S3RollupHandler.isSkipped("/logelasticsearch-failed/2022/02/16/08/osdfw-1")).isTrue();
+        assertThat(S3RollupHandler.isSkipped("/logprocessing-failed/2022/02/16/08/osdfw-1")).isTrue();
+        assertThat(S3RollupHandler.isSkipped("/log2022/02/16/08/osdfw-1")).isFalse();
+    }
+}
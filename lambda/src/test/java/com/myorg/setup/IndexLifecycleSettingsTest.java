@@ -0,0 +1,52 @@
+package com.myorg.setup;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class IndexLifecycleSettingsTest {
+
+    private static IndexLifecycleSettings settings(double dailyIngestGb, int dataNodes) {
+        return new IndexLifecycleSettings("awswaf", dailyIngestGb, dataNodes, 7, 30, false, 0, 30);
+    }
+
+    @Test
+    public void testSmallVolumeGetsOneShardWithoutReplicaOnASingleNode() {
+        IndexLifecycleSettings settings = settings(1, 1);
+
+        assertThat(settings.getPrimaryShards()).isEqualTo(1);
+        assertThat(settings.getReplicas()).isZero();
+        assertThat(settings.getRolloverSizeGb()).isEqualTo(30);
+    }
+
+    @Test
+    public void testShardsKeepADayBelowTheTargetSize() {
+        assertThat(settings(59, 1).getPrimaryShards()).isEqualTo(2);
+        assertThat(settings(61, 1).getPrimaryShards()).isEqualTo(3);
+        assertThat(settings(61, 1).getRolloverSizeGb()).isEqualTo(90);
+    }
+
+    @Test
+    public void testShardsAreSpreadEvenlyOverDataNodes() {
+        assertThat(settings(40, 3).getPrimaryShards()).isEqualTo(2);
+        assertThat(settings(100, 3).getPrimaryShards()).isEqualTo(6);
+        assertThat(settings(100, 3).getReplicas()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRolloverAgeFollowsTheWarmPhase() {
+        assertThat(new IndexLifecycleSettings("awswaf", 1, 1, 3, 30, false, 0, 30).getRolloverMaxAgeDays()).isEqualTo(3);
+        assertThat(new IndexLifecycleSettings("awswaf", 1, 1, 14, 30, false, 0, 30).getRolloverMaxAgeDays()).isEqualTo(7);
+        assertThat(new IndexLifecycleSettings("awswaf", 1, 1, 0, 30, false, 0, 30).getRolloverMaxAgeDays()).isEqualTo(1);
+        assertThat(new IndexLifecycleSettings("awswaf", 1, 1, 30, 30, false, 0, 30).hasWarmPhase()).isFalse();
+    }
+
+    @Test
+    public void testInvalidSettingsAreRejected() {
+        assertThatThrownBy(() -> settings(0, 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> settings(1, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new IndexLifecycleSettings("awswaf", 1, 1, 7, 0, false, 0, 30))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
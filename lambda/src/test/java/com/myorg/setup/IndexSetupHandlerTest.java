@@ -0,0 +1,139 @@
+package com.myorg.setup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.aws.SignedHttpClient;
+import com.myorg.aws.StubHttpServer;
+import com.myorg.aws.TestLambdaContext;
+import com.myorg.opensearch.OpenSearchClient;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndexSetupHandlerTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static String event(String requestType, String responseUrl) {
+        return "{\"RequestType\":\"" + requestType + "\",\"ResponseURL\":\"" + responseUrl + "/response?X-Amz-Signature=abc\","
+                + "\"StackId\":\"stack\",\"RequestId\":\"request\",\"LogicalResourceId\":\"osdfwIndexSetup\","
+                + (requestType.equals("Create") ? "" : "\"PhysicalResourceId\":\"osdfwIndexSetup\",")
+                + "\"ResourceProperties\":{\"ServiceToken\":\"arn\",\"IndexAlias\":\"awswaf\",\"DailyIngestGB\":\"100\","
+                + "\"DataNodeCount\":\"3\",\"WarmAfterDays\":\"7\",\"RetentionDays\":\"90\",\"UltraWarm\":\"true\","
+                + "\"RefreshIntervalSeconds\":\"300\",\"FlattenHeaders\":\"host,user-agent\"}}";
+    }
+
+    // a domain that remembers policies and aliases
+    private static StubHttpServer.Response domain(StubHttpServer.Request request, Map<String, String> state) {
+        String key = request.getPath();
+        if (request.getMethod().equals("GET")) {
+            if (key.startsWith("/_alias/")) {
+                return state.containsKey("alias") ? StubHttpServer.Response.json(200, "{}") : StubHttpServer.Response.json(404, "{}");
+            }
+            return state.containsKey(key)
+                    ? StubHttpServer.Response.json(200, "{\"_seq_no\":4,\"_primary_term\":1,\"policy\":" + state.get(key) + "}")
+                    : StubHttpServer.Response.json(404, "{}");
+        }
+        state.put(key, request.getBodyAsString());
+        if (request.getBodyAsString().contains("is_write_index")) {
+            state.put("alias", key);
+        }
+        return StubHttpServer.Response.json(200, "{\"acknowledged\":true}");
+    }
+
+    @Test
+    public void testCreateInstallsPolicyTemplateAndWriteIndexThenUpdateOnlyReplaces() throws IOException {
+        Map<String, String> state = new ConcurrentHashMap<>();
+        try (StubHttpServer openSearch = StubHttpServer.start(request -> domain(request, state));
+             StubHttpServer cloudFormation = StubHttpServer.start(request -> StubHttpServer.Response.json(200, ""))) {
+            IndexSetupHandler handler = new IndexSetupHandler(new OpenSearchClient(openSearch.uri(), new SignedHttpClient(null)));
+
+            invoke(handler, event("Create", cloudFormation.uri().toString()));
+
+            assertThat(requests(openSearch)).containsExactly(
+                    "GET /_plugins/_ism/policies/awswaf-lifecycle",
+                    "PUT /_plugins/_ism/policies/awswaf-lifecycle",
+                    "PUT /_index_template/awswaf-logs",
+                    "GET /_alias/awswaf",
+                    "PUT /awswaf-logs-000001");
+
+            JsonNode policy = objectMapper.readTree(state.get("/_plugins/_ism/policies/awswaf-lifecycle")).get("policy");
+            assertThat(policy.at("/states/0/actions/0/rollover/min_size").asText()).isEqualTo("180gb");
+            assertThat(policy.at("/states/1/actions/1").has("warm_migration")).isTrue();
+            assertThat(policy.at("/states/1/transitions/0/conditions/min_index_age").asText()).isEqualTo("90d");
+            assertThat(policy.at("/ism_template/0/index_patterns/0").asText()).isEqualTo("awswaf-logs-*");
+
+            JsonNode template = objectMapper.readTree(state.get("/_index_template/awswaf-logs")).at("/template/settings");
+            assertThat(template.get("number_of_shards").asInt()).isEqualTo(6);
+            assertThat(template.get("number_of_replicas").asInt()).isEqualTo(1);
+            assertThat(template.get("plugins.index_state_management.rollover_alias").asText()).isEqualTo("awswaf");
+            assertThat(template.get("refresh_interval").asText()).isEqualTo("300s");
+
+            JsonNode response = objectMapper.readTree(cloudFormation.getRequests().get(0).getBody());
+            assertThat(response.get("Status").asText()).isEqualTo("SUCCESS");
+            assertThat(response.get("PhysicalResourceId").asText()).isEqualTo("osdfwIndexSetup");
+            assertThat(response.at("/Data/PrimaryShards").asText()).isEqualTo("6");
+            assertThat(response.at("/Data/TemplateVersion").asText()).isEqualTo(String.valueOf(LogIndexTemplate.VERSION));
+            assertThat(cloudFormation.getRequests().get(0).getQuery()).isEqualTo("X-Amz-Signature=abc");
+
+            openSearch.getRequests().clear();
+            invoke(handler, event("Update", cloudFormation.uri().toString()));
+
+            assertThat(requests(openSearch)).containsExactly(
+                    "GET /_plugins/_ism/policies/awswaf-lifecycle",
+                    "PUT /_plugins/_ism/policies/awswaf-lifecycle?if_seq_no=4&if_primary_term=1",
+                    "POST /_plugins/_ism/change_policy/awswaf-logs-*",
+                    "PUT /_index_template/awswaf-logs",
+                    "GET /_alias/awswaf");
+            // the indices ISM already manages move to the updated policy, not only the next ones
+            assertThat(objectMapper.readTree(state.get("/_plugins/_ism/change_policy/awswaf-logs-*")).get("policy_id").asText())
+                    .isEqualTo("awswaf-lifecycle");
+        }
+    }
+
+    @Test
+    public void testFailureIsReportedToCloudFormation() throws IOException {
+        try (StubHttpServer openSearch = StubHttpServer.start(request -> StubHttpServer.Response.json(403, "{\"message\":\"denied\"}"));
+             StubHttpServer cloudFormation = StubHttpServer.start(request -> StubHttpServer.Response.json(200, ""))) {
+            IndexSetupHandler handler = new IndexSetupHandler(new OpenSearchClient(openSearch.uri(), new SignedHttpClient(null)));
+
+            invoke(handler, event("Create", cloudFormation.uri().toString()));
+
+            JsonNode response = objectMapper.readTree(cloudFormation.getRequests().get(0).getBody());
+            assertThat(response.get("Status").asText()).isEqualTo("FAILED");
+            assertThat(response.get("Reason").asText()).contains("403");
+        }
+    }
+
+    @Test
+    public void testDeleteLeavesTheDomainAlone() throws IOException {
+        try (StubHttpServer openSearch = StubHttpServer.start(request -> StubHttpServer.Response.json(200, "{}"));
+             StubHttpServer cloudFormation = StubHttpServer.start(request -> StubHttpServer.Response.json(200, ""))) {
+            IndexSetupHandler handler = new IndexSetupHandler(new OpenSearchClient(openSearch.uri(), new SignedHttpClient(null)));
+
+            invoke(handler, event("Delete", cloudFormation.uri().toString()));
+
+            assertThat(openSearch.getRequests()).isEmpty();
+            assertThat(objectMapper.readTree(cloudFormation.getRequests().get(0).getBody()).get("Status").asText()).isEqualTo("SUCCESS");
+        }
+    }
+
+    private static void invoke(IndexSetupHandler handler, String event) throws IOException {
+        handler.handleRequest(new ByteArrayInputStream(event.getBytes(StandardCharsets.UTF_8)), new ByteArrayOutputStream(),
+                new TestLambdaContext());
+    }
+
+    private static List<String> requests(StubHttpServer server) {
+        return server.getRequests().stream()
+                .map(r -> r.getMethod() + " " + r.getPath() + (r.getQuery() == null ? "" : "?" + r.getQuery()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,87 @@
+package com.myorg.setup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LogIndexTemplateTest {
+    private final IndexLifecycleSettings lifecycle = new IndexLifecycleSettings("awswaf", 1, 1, 7, 30, false, 0, 30);
+
+    @Test
+    public void testSettingsTradeRefreshForIngestAndDisk() {
+        JsonNode settings = new LogIndexTemplate(lifecycle, 60, List.of()).toJson().at("/template/settings");
+
+        assertThat(settings.get("refresh_interval").asText()).isEqualTo("60s");
+        assertThat(settings.get("codec").asText()).isEqualTo("best_compression");
+        assertThat(settings.get("number_of_shards").asInt()).isEqualTo(1);
+        assertThat(settings.get("requests.cache.enable").asBoolean()).isTrue();
+    }
+
+    @Test
+    public void testDashboardFieldsAreMappedExplicitly() {
+        JsonNode properties = new LogIndexTemplate(lifecycle, 60, List.of()).toJson().at("/template/mappings/properties");
+
+        assertThat(properties.at("/timestamp/type").asText()).isEqualTo("date");
+        assertThat(properties.at("/timestamp/format").asText()).isEqualTo("epoch_millis");
+        assertThat(properties.at("/httpRequest/properties/clientIp/type").asText()).isEqualTo("ip");
+        for (String field : List.of("/action", "/webaclId", "/terminatingRuleId", "/httpRequest/properties/country",
+                "/httpRequest/properties/uri", "/ruleGroupList/properties/terminatingRule/properties/ruleId",
+                "/client/properties/country", "/client/properties/reputation")) {
+            assertThat(properties.at(field + "/type").asText()).as(field).isEqualTo("keyword");
+        }
+        assertThat(properties.at("/client/properties/asn/type").asText()).isEqualTo("long");
+    }
+
+    @Test
+    public void testFieldsTheSavedDashboardsQueryKeepTheirKeywordSubField() {
+        JsonNode properties = new LogIndexTemplate(lifecycle, 60, List.of()).toJson().at("/template/mappings/properties");
+
+        assertThat(properties.at("/webaclId/fields/keyword/type").asText()).isEqualTo("keyword");
+        assertThat(properties.at("/terminatingRuleId/fields/keyword/type").asText()).isEqualTo("keyword");
+        assertThat(properties.at("/httpRequest/properties/country/fields/keyword/type").asText()).isEqualTo("keyword");
+        assertThat(properties.at("/httpRequest/properties/clientIp/fields/keyword/type").asText()).isEqualTo("ip");
+        assertThat(properties.at("/httpRequest/properties/requestId").has("fields")).isFalse();
+    }
+
+    @Test
+    public void testUnboundedFieldsAreNotIndexedDynamically() {
+        JsonNode mappings = new LogIndexTemplate(lifecycle, 60, List.of("Host", "x-forwarded-for")).toJson().at("/template/mappings");
+
+        JsonNode headers = mappings.at("/properties/httpRequest/properties/headers");
+        assertThat(headers.get("dynamic").asBoolean(true)).isFalse();
+        assertThat(headers.at("/properties/host/type").asText()).isEqualTo("keyword");
+        assertThat(headers.at("/properties/x-forwarded-for/type").asText()).isEqualTo("keyword");
+        assertThat(headers.at("/properties/name/type").asText()).isEqualTo("keyword");
+        assertThat(mappings.at("/properties/labels/dynamic").asBoolean(true)).isFalse();
+        // strings WAF adds later become keywords, not analysed text
+        assertThat(mappings.at("/dynamic_templates/0/strings_as_keywords/mapping/type").asText()).isEqualTo("keyword");
+    }
+
+    @Test
+    public void testTemplateIsVersioned() {
+        JsonNode template = new LogIndexTemplate(lifecycle, 60, List.of()).toJson();
+
+        assertThat(template.get("version").asInt()).isEqualTo(LogIndexTemplate.VERSION);
+        assertThat(template.at("/index_patterns/0").asText()).isEqualTo("awswaf-logs-*");
+    }
+
+    @Test
+    public void testSamplingRoutesDocumentsThroughTheDropPipeline() {
+        LogIndexTemplate sampling = new LogIndexTemplate(lifecycle, 60, List.of(), true);
+        JsonNode template = sampling.toJson().at("/template");
+
+        assertThat(template.at("/settings/default_pipeline").asText()).isEqualTo(LogIndexTemplate.SAMPLING_PIPELINE);
+        assertThat(template.at("/mappings/properties/sampleWeight/type").asText()).isEqualTo("float");
+        assertThat(sampling.samplingPipeline().at("/processors/0/drop/if").asText()).contains("ctx.sampleWeight <= 0");
+        assertThat(new LogIndexTemplate(lifecycle, 60, List.of()).toJson().at("/template/settings").has("default_pipeline")).isFalse();
+    }
+
+    @Test
+    public void testRefreshIntervalMustBePositive() {
+        assertThatThrownBy(() -> new LogIndexTemplate(lifecycle, 0, List.of())).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,127 @@
+package com.myorg.transform;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.aws.KinesisClient;
+import com.myorg.aws.SignedHttpClient;
+import com.myorg.aws.StubHttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FirehoseTransformHandlerTest {
+
+    private static String event(String... records) {
+        StringBuilder event = new StringBuilder("{\"invocationId\":\"inv-1\",\"deliveryStreamArn\":\"arn\",\"region\":\"eu-west-1\",\"records\":[");
+        for (int i = 0; i < records.length; i++) {
+            if (i > 0) {
+                event.append(',');
+            }
+            event.append("{\"approximateArrivalTimestamp\":1645000000000,\"data\":\"")
+                    .append(Base64.getEncoder().encodeToString(records[i].getBytes(StandardCharsets.UTF_8)))
+                    .append("\",\"recordId\":\"record-").append(i).append("\"}");
+        }
+        return event.append("]}").toString();
+    }
+
+    // recordId, result and decoded data of every record in the response
+    private static List<String[]> parseResponse(byte[] response) throws IOException {
+        List<String[]> records = new ArrayList<>();
+        try (JsonParser parser = new JsonFactory().createParser(response)) {
+            while (parser.nextToken() != null) {
+                if (parser.currentToken() == JsonToken.FIELD_NAME && "recordId".equals(parser.getCurrentName())) {
+                    String recordId = parser.nextTextValue();
+                    parser.nextToken();
+                    String result = parser.nextTextValue();
+                    parser.nextToken();
+                    parser.nextToken();
+                    String data = new String(parser.getBinaryValue(), StandardCharsets.UTF_8);
+                    records.add(new String[]{recordId, result, data});
+                }
+            }
+        }
+        return records;
+    }
+
+    @Test
+    public void testBatchIsTransformed() throws IOException {
+        FirehoseTransformHandler handler = new FirehoseTransformHandler(
+                new WafLogTransformer(TransformerConfig.fromEnvironment(Map.of())));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        TransformStats stats = handler.transformBatch(new ByteArrayInputStream(event(
+                "{\"action\":\"BLOCK\",\"requestHeadersInserted\":null}\n",
+                "not json",
+                "{\"action\":\"ALLOW\"}").getBytes(StandardCharsets.UTF_8)), output);
+
+        assertThat(stats.getRecords()).isEqualTo(3);
+        assertThat(stats.getFailedRecords()).isEqualTo(1);
+        assertThat(stats.getBytesSaved()).isEqualTo(30);
+
+        List<String[]> records = parseResponse(output.toByteArray());
+        assertThat(records).hasSize(3);
+        assertThat(records.get(0)).containsExactly("record-0", "Ok", "{\"action\":\"BLOCK\"}\n");
+        assertThat(records.get(1)).containsExactly("record-1", "ProcessingFailed", "not json");
+        assertThat(records.get(2)).containsExactly("record-2", "Ok", "{\"action\":\"ALLOW\"}");
+    }
+
+    @Test
+    public void testRecordedBatchThroughHarness() throws IOException {
+        TransformHarness harness = new TransformHarness(TransformerConfig.fromEnvironment(Map.of()));
+
+        TransformHarness.Result result = harness.run(List.of(TransformHarness.loadSampleBatch()), 5);
+
+        assertThat(result.getRecordsPerSecond()).isPositive();
+        assertThat(result.getSavedRatio()).isGreaterThan(0.5);
+    }
+
+    @Test
+    public void testTransformedRecordsAreForwardedToTheRealtimeStream() throws IOException {
+        AtomicInteger putCalls = new AtomicInteger();
+        try (StubHttpServer kinesis = StubHttpServer.start(request -> {
+            // the first record is throttled once
+            boolean throttle = putCalls.incrementAndGet() == 1;
+            return StubHttpServer.Response.json(200, "{\"FailedRecordCount\":" + (throttle ? 1 : 0) + ",\"Records\":["
+                    + (throttle ? "{\"ErrorCode\":\"ProvisionedThroughputExceededException\"},{\"SequenceNumber\":\"2\"}"
+                    : "{\"SequenceNumber\":\"3\"}") + "]}");
+        })) {
+            FirehoseTransformHandler handler = new FirehoseTransformHandler(
+                    new WafLogTransformer(TransformerConfig.fromEnvironment(Map.of())),
+                    new KinesisClient(new SignedHttpClient(null), "eu-west-1", kinesis.uri()), "osdfw-waf-realtime");
+
+            TransformStats stats = handler.transformBatch(new ByteArrayInputStream(event(
+                    "{\"timestamp\":1645000000000,\"action\":\"BLOCK\",\"terminatingRuleId\":\"RateLimit\","
+                            + "\"httpRequest\":{\"clientIp\":\"203.0.113.9\",\"uri\":\"/login\",\"headers\":[]}}",
+                    "not json",
+                    "{\"action\":\"ALLOW\"}").getBytes(StandardCharsets.UTF_8)), new ByteArrayOutputStream());
+
+            assertThat(stats.getRealtimeForwarded()).isEqualTo(2);
+            assertThat(stats.getRealtimeDropped()).isZero();
+            assertThat(kinesis.getRequests()).hasSize(2);
+            ObjectMapper objectMapper = new ObjectMapper();
+            JsonNode first = objectMapper.readTree(kinesis.getRequests().get(0).getBody());
+            assertThat(kinesis.getRequests().get(0).getHeader("x-amz-target")).isEqualTo("Kinesis_20131202.PutRecords");
+            assertThat(first.get("StreamName").asText()).isEqualTo("osdfw-waf-realtime");
+            assertThat(first.at("/Records/0/PartitionKey").asText()).isEqualTo("203.0.113.9");
+            assertThat(new String(first.at("/Records/0/Data").binaryValue(), StandardCharsets.UTF_8)).isEqualTo(
+                    "{\"timestamp\":1645000000000,\"clientIp\":\"203.0.113.9\",\"action\":\"BLOCK\",\"ruleId\":\"RateLimit\",\"uri\":\"/login\"}");
+            // without an address the record spreads by its id
+            assertThat(first.at("/Records/1/PartitionKey").asText()).isEqualTo("record-2");
+            JsonNode retry = objectMapper.readTree(kinesis.getRequests().get(1).getBody());
+            assertThat(retry.at("/Records/0/PartitionKey").asText()).isEqualTo("203.0.113.9");
+        }
+    }
+}
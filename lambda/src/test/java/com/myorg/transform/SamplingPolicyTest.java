@@ -0,0 +1,82 @@
+package com.myorg.transform;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SamplingPolicyTest {
+    private static final int REQUESTS = 200_000;
+
+    // WAF request ids: a sequence and a random part, in hex
+    private static String requestId(int sequence, Random random) {
+        return "1-" + Integer.toHexString(sequence) + "-" + Integer.toHexString(random.nextInt());
+    }
+
+    @Test
+    public void testKeptShareAndWeightedCountMatchTheRate() {
+        SamplingPolicy policy = SamplingPolicy.parse(List.of("allow:0.05", "COUNT:0.5"));
+        Random random = new Random(7);
+
+        int kept = 0;
+        double weighted = 0;
+        for (int i = 0; i < REQUESTS; i++) {
+            double weight = policy.weight("ALLOW", requestId(i, random));
+            kept += weight > 0 ? 1 : 0;
+            weighted += weight;
+        }
+
+        // five standard deviations of the binomial: sqrt(0.05 * 0.95 / 200000) is about 0.0005
+        assertThat(kept / (double) REQUESTS).isBetween(0.0475, 0.0525);
+        assertThat(weighted / REQUESTS).isBetween(0.95, 1.05);
+        assertThat(policy.weight("BLOCK", "anything")).isEqualTo(1);
+        assertThat(policy.weight("COUNT", "1-1-1")).isIn(0d, 2d);
+    }
+
+    @Test
+    public void testHashIsUniformEvenForSequentialIds() {
+        int[] buckets = new int[20];
+        for (int i = 0; i < REQUESTS; i++) {
+            buckets[(int) (SamplingPolicy.unitHash("1-" + i) * buckets.length)]++;
+        }
+
+        double expected = REQUESTS / (double) buckets.length;
+        double chiSquare = 0;
+        for (int count : buckets) {
+            chiSquare += (count - expected) * (count - expected) / expected;
+        }
+        // 19 degrees of freedom, p = 0.001
+        assertThat(chiSquare).isLessThan(43.8);
+    }
+
+    @Test
+    public void testDecisionsAreDeterministicAndNested() {
+        SamplingPolicy five = SamplingPolicy.parse(List.of("ALLOW:0.05"));
+        SamplingPolicy twenty = SamplingPolicy.parse(List.of("ALLOW:0.2"));
+        Random random = new Random(11);
+
+        for (int i = 0; i < 10_000; i++) {
+            String requestId = requestId(i, random);
+            double weight = five.weight("ALLOW", requestId);
+            assertThat(new SamplingPolicy(Map.of("ALLOW", 0.05)).weight("ALLOW", requestId)).isEqualTo(weight);
+            // raising the rate only adds requests
+            if (weight > 0) {
+                assertThat(twenty.weight("ALLOW", requestId)).isEqualTo(5);
+            }
+        }
+        assertThat(five.weight("ALLOW", null)).isEqualTo(1);
+        assertThat(SamplingPolicy.parse(List.of("ALLOW:0")).weight("ALLOW", "1-1")).isZero();
+    }
+
+    @Test
+    public void testRatesAreValidated() {
+        assertThat(SamplingPolicy.parse(List.of("ALLOW:1")).isSampling()).isFalse();
+        assertThat(SamplingPolicy.NONE.isSampling()).isFalse();
+        assertThatThrownBy(() -> SamplingPolicy.parse(List.of("ALLOW:5"))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SamplingPolicy.parse(List.of("ALLOW"))).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,109 @@
+package com.myorg.transform;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays recorded Firehose transformation events through {@link FirehoseTransformHandler} and reports
+ * records per second and bytes saved. Takes event files as arguments and falls back to the bundled sample:
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.mainClass=com.myorg.transform.TransformHarness -Dexec.args="batch1.json batch2.json"
+ * </pre>
+ * The transformer is configured from the same environment variables the Lambda reads.
+ */
+public class TransformHarness {
+    static final String SAMPLE_BATCH = "/firehose/waf-batch.json";
+
+    private final FirehoseTransformHandler handler;
+
+    public TransformHarness(TransformerConfig config) {
+        this.handler = new FirehoseTransformHandler(new WafLogTransformer(config));
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<byte[]> batches = new ArrayList<>();
+        for (String arg : args) {
+            batches.add(Files.readAllBytes(Path.of(arg)));
+        }
+        if (batches.isEmpty()) {
+            batches.add(loadSampleBatch());
+        }
+
+        TransformerConfig config = TransformerConfig.fromEnvironment(System.getenv());
+        Result result = new TransformHarness(config).run(batches, Integer.getInteger("iterations", 2000));
+        System.out.println(result);
+    }
+
+    static byte[] loadSampleBatch() throws IOException {
+        try (InputStream in = TransformHarness.class.getResourceAsStream(SAMPLE_BATCH)) {
+            return in.readAllBytes();
+        }
+    }
+
+    public Result run(List<byte[]> batches, int iterations) throws IOException {
+        // the first pass gives the totals per pass, the next ones warm up the JIT
+        long records = 0;
+        long bytesIn = 0;
+        long bytesOut = 0;
+        for (byte[] batch : batches) {
+            TransformStats stats = handler.transformBatch(new ByteArrayInputStream(batch), new ByteArrayOutputStream(batch.length));
+            records += stats.getRecords();
+            bytesIn += stats.getBytesIn();
+            bytesOut += stats.getBytesOut();
+        }
+
+        for (int i = 0; i < iterations / 10; i++) {
+            for (byte[] batch : batches) {
+                handler.transformBatch(new ByteArrayInputStream(batch), new ByteArrayOutputStream(batch.length));
+            }
+        }
+
+        long started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (byte[] batch : batches) {
+                handler.transformBatch(new ByteArrayInputStream(batch), new ByteArrayOutputStream(batch.length));
+            }
+        }
+        long elapsedNanos = System.nanoTime() - started;
+
+        return new Result(records * iterations, elapsedNanos, bytesIn, bytesOut);
+    }
+
+    public static class Result {
+        private final long recordsProcessed;
+        private final long elapsedNanos;
+        private final long bytesIn;
+        private final long bytesOut;
+
+        Result(long recordsProcessed, long elapsedNanos, long bytesIn, long bytesOut) {
+            this.recordsProcessed = recordsProcessed;
+            this.elapsedNanos = elapsedNanos;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+        }
+
+        public double getRecordsPerSecond() {
+            return recordsProcessed * 1_000_000_000d / Math.max(elapsedNanos, 1);
+        }
+
+        public long getBytesSaved() {
+            return bytesIn - bytesOut;
+        }
+
+        public double getSavedRatio() {
+            return bytesIn == 0 ? 0 : (double) getBytesSaved() / bytesIn;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,.0f records/s, %,d of %,d bytes saved (%.1f%%)",
+                    getRecordsPerSecond(), getBytesSaved(), bytesIn, getSavedRatio() * 100);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.myorg.transform;
+
+import com.myorg.enrich.IpEnrichment;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class WafLogTransformerTest {
+    private static final TransformerConfig DEFAULT_CONFIG =
+            new TransformerConfig(List.of(), List.of("host", "user-agent"));
+
+    private static String transform(TransformerConfig config, String record) throws IOException {
+        byte[] transformed = new WafLogTransformer(config).transform(record.getBytes(StandardCharsets.UTF_8));
+        return new String(transformed, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testNullsAndEmptyContainersAreLeftOut() throws IOException {
+        String record = "{\"action\":\"ALLOW\",\"requestHeadersInserted\":null,\"rateBasedRuleList\":[],"
+                + "\"terminatingRuleMatchDetails\":[{}],\"timestamp\":1645000000000}";
+
+        assertThat(transform(DEFAULT_CONFIG, record))
+                .isEqualTo("{\"action\":\"ALLOW\",\"timestamp\":1645000000000}");
+    }
+
+    @Test
+    public void testUnmatchedRuleGroupsAreLeftOut() throws IOException {
+        String record = "{\"ruleGroupList\":["
+                + "{\"ruleGroupId\":\"AWS#CommonRuleSet\",\"terminatingRule\":null,\"nonTerminatingMatchingRules\":[],\"excludedRules\":null},"
+                + "{\"ruleGroupId\":\"AWS#KnownBadInputs\",\"terminatingRule\":{\"ruleId\":\"Log4JRCE\",\"action\":\"BLOCK\"}}]}";
+
+        assertThat(transform(DEFAULT_CONFIG, record)).isEqualTo("{\"ruleGroupList\":["
+                + "{\"ruleGroupId\":\"AWS#KnownBadInputs\",\"terminatingRule\":{\"ruleId\":\"Log4JRCE\",\"action\":\"BLOCK\"}}]}");
+        assertThat(transform(DEFAULT_CONFIG, "{\"action\":\"ALLOW\",\"ruleGroupList\":[{\"ruleGroupId\":\"AWS#CommonRuleSet\"}]}"))
+                .isEqualTo("{\"action\":\"ALLOW\"}");
+    }
+
+    @Test
+    public void testHeadersAreFlattened() throws IOException {
+        String record = "{\"httpRequest\":{\"clientIp\":\"10.0.0.1\",\"headers\":["
+                + "{\"name\":\"Host\",\"value\":\"shop.example.com\"},"
+                + "{\"name\":\"Cookie\",\"value\":\"session=secret\"},"
+                + "{\"name\":\"User-Agent\",\"value\":\"curl/7.79.1\"},"
+                + "{\"name\":\"host\",\"value\":\"ignored.example.com\"}],\"uri\":\"/login\"}}";
+
+        assertThat(transform(DEFAULT_CONFIG, record)).isEqualTo("{\"httpRequest\":{\"clientIp\":\"10.0.0.1\","
+                + "\"headers\":{\"host\":\"shop.example.com\",\"user-agent\":\"curl/7.79.1\"},\"uri\":\"/login\"}}");
+    }
+
+    @Test
+    public void testSampledRecordsCarryTheirWeight() throws IOException {
+        TransformerConfig sampling = new TransformerConfig(List.of("httpRequest.requestId"), List.of(),
+                SamplingPolicy.parse(List.of("ALLOW:0.25")));
+        WafLogTransformer transformer = new WafLogTransformer(sampling);
+
+        int kept = 0;
+        for (int i = 0; i < 400; i++) {
+            String record = "{\"action\":\"ALLOW\",\"httpRequest\":{\"uri\":\"/\",\"requestId\":\"1-" + i + "\"}}";
+            String transformed = new String(transformer.transform(record.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+            double weight = sampling.getSampling().weight("ALLOW", "1-" + i);
+            // the dropped request id still decides
+            assertThat(transformed).isEqualTo("{\"action\":\"ALLOW\",\"httpRequest\":{\"uri\":\"/\"},\"sampleWeight\":" + weight + "}");
+            assertThat(transformer.getSampleWeight()).isEqualTo(weight);
+            kept += weight > 0 ? 1 : 0;
+        }
+        assertThat(kept).isBetween(70, 130);
+
+        assertThat(transform(sampling, "{\"action\":\"BLOCK\",\"httpRequest\":{\"requestId\":\"1-0\"}}"))
+                .isEqualTo("{\"action\":\"BLOCK\",\"sampleWeight\":1.0}");
+        // a replayed record is weighed again, not twice
+        assertThat(transform(sampling, "{\"action\":\"BLOCK\",\"sampleWeight\":4.0}"))
+                .isEqualTo("{\"action\":\"BLOCK\",\"sampleWeight\":1.0}");
+        assertThat(transform(DEFAULT_CONFIG, "{\"action\":\"ALLOW\"}")).isEqualTo("{\"action\":\"ALLOW\"}");
+    }
+
+    @Test
+    public void testRecordsAreTaggedWithTheirWebAclAccount() throws IOException {
+        TransformerConfig tagging = new TransformerConfig(List.of("webaclId"), List.of(), SamplingPolicy.NONE, true);
+
+        // the id is read even when the field itself is dropped
+        assertThat(transform(tagging, "{\"webaclId\":\"arn:aws:wafv2:eu-west-1:111111111111:regional/webacl/shop/r1\",\"action\":\"BLOCK\"}"))
+                .isEqualTo("{\"action\":\"BLOCK\",\"accountId\":\"111111111111\"}");
+        // replayed records keep the account they were tagged with
+        assertThat(transform(tagging, "{\"accountId\":\"222222222222\",\"webaclId\":\"arn:aws:wafv2:eu-west-1:111111111111:regional/webacl/shop/r1\"}"))
+                .isEqualTo("{\"accountId\":\"222222222222\"}");
+        assertThat(transform(tagging, "{\"webaclId\":\"shop\"}")).isEqualTo("{}");
+        assertThat(WafLogTransformer.accountOf("arn:aws:wafv2:us-east-1:123456789012:global/webacl/a/b")).isEqualTo("123456789012");
+        assertThat(WafLogTransformer.accountOf("arn:aws:wafv2:us-east-1:aws:managed")).isNull();
+    }
+
+    @Test
+    public void testClientAddressesAreEnriched() throws IOException {
+        IpEnrichment database = IpEnrichment.load(new ByteArrayInputStream(
+                "203.0.113.0/24,64499,Example Hosting,nl,nh,tor-exit|scanners\n2001:db8::/32,64500,,,,\n".getBytes(StandardCharsets.UTF_8)));
+        TransformerConfig enriching = new TransformerConfig(List.of("httpRequest.clientIp"), List.of(), SamplingPolicy.NONE, false, database);
+        WafLogTransformer transformer = new WafLogTransformer(enriching);
+
+        // the address is read even when the field itself is dropped
+        assertThat(new String(transformer.transform("{\"action\":\"BLOCK\",\"httpRequest\":{\"clientIp\":\"203.0.113.9\",\"uri\":\"/\"}}"
+                .getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8))
+                .isEqualTo("{\"action\":\"BLOCK\",\"httpRequest\":{\"uri\":\"/\"},\"client\":{\"asn\":64499,\"asOrg\":\"Example Hosting\","
+                        + "\"country\":\"NL\",\"region\":\"NL-NH\",\"reputation\":[\"scanners\",\"tor-exit\"]}}");
+        assertThat(transformer.isEnriched()).isTrue();
+        // replayed records are looked up again
+        assertThat(transform(enriching, "{\"client\":{\"asn\":1},\"httpRequest\":{\"clientIp\":\"2001:db8::1\"}}"))
+                .isEqualTo("{\"client\":{\"asn\":64500}}");
+        assertThat(transform(enriching, "{\"client\":{\"asn\":1},\"httpRequest\":{\"clientIp\":\"192.0.2.1\"}}"))
+                .isEqualTo("{}");
+        assertThat(transform(DEFAULT_CONFIG, "{\"httpRequest\":{\"clientIp\":\"203.0.113.9\"}}"))
+                .isEqualTo("{\"httpRequest\":{\"clientIp\":\"203.0.113.9\"}}");
+    }
+
+    @Test
+    public void testHeadersAreKeptWhenNothingToFlatten() throws IOException {
+        String record = "{\"httpRequest\":{\"headers\":[{\"name\":\"Host\",\"value\":\"shop.example.com\"}]}}";
+
+        assertThat(transform(new TransformerConfig(List.of(), List.of()), record)).isEqualTo(record);
+    }
+
+    @Test
+    public void testDropFields() throws IOException {
+        TransformerConfig config = new TransformerConfig(List.of("httpRequest.headers", "httpSourceId", "labels.name"), List.of("host"));
+        String record = "{\"httpSourceId\":\"alb\",\"httpRequest\":{\"headers\":[{\"name\":\"Host\",\"value\":\"a\"}],\"uri\":\"/\"},"
+                + "\"labels\":[{\"name\":\"awswaf:managed:label\"}]}";
+
+        assertThat(transform(config, record)).isEqualTo("{\"httpRequest\":{\"uri\":\"/\"}}");
+    }
+
+    @Test
+    public void testRecordedLogShrinks() throws IOException {
+        byte[] record;
+        try (InputStream in = getClass().getResourceAsStream("/firehose/waf-record.json")) {
+            record = in.readAllBytes();
+        }
+
+        WafLogTransformer transformer = new WafLogTransformer(DEFAULT_CONFIG);
+        String transformed = new String(transformer.transform(record), StandardCharsets.UTF_8);
+
+        assertThat(transformed.length()).isLessThan(record.length / 2);
+        assertThat(transformed)
+                .contains("\"clientIp\":", "\"country\":", "\"uri\":", "\"action\":\"COUNT\"", "\"host\":\"shop.example.com\"")
+                .contains("\"ruleGroupId\":\"AWS#AWSManagedRulesKnownBadInputsRuleSet\"")
+                .doesNotContain("null", "AWSManagedRulesCommonRuleSet", "Cookie");
+        // the transformer is reused across records
+        assertThat(new String(transformer.transform(record), StandardCharsets.UTF_8)).isEqualTo(transformed);
+    }
+
+    @Test
+    public void testTrailingNewlineIsKept() throws IOException {
+        assertThat(transform(DEFAULT_CONFIG, "{\"action\":\"BLOCK\"}\n")).isEqualTo("{\"action\":\"BLOCK\"}\n");
+    }
+
+    @Test
+    public void testNonObjectRecordIsRejected() {
+        assertThatThrownBy(() -> transform(DEFAULT_CONFIG, "[1,2]")).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> transform(DEFAULT_CONFIG, "{\"action\":")).isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,76 @@
+package com.myorg.waf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WafChangeBatchTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    static JsonNode createRule(String ruleId, String name, String time) throws IOException {
+        return OBJECT_MAPPER.readTree("{\"source\":\"aws.waf-regional\",\"time\":\"" + time + "\",\"detail\":{"
+                + "\"eventSource\":\"waf-regional.amazonaws.com\",\"eventName\":\"CreateRule\","
+                + "\"responseElements\":{\"rule\":{\"ruleId\":\"" + ruleId + "\",\"name\":\"" + name + "\"}}}}");
+    }
+
+    static JsonNode createWebAclV2(String arn, String name) throws IOException {
+        return OBJECT_MAPPER.readTree("{\"source\":\"aws.wafv2\",\"time\":\"2022-03-01T10:00:00Z\",\"detail\":{"
+                + "\"eventSource\":\"wafv2.amazonaws.com\",\"eventName\":\"CreateWebACL\","
+                + "\"responseElements\":{\"summary\":{\"name\":\"" + name + "\",\"id\":\"x\",\"aRN\":\"" + arn + "\"}}}}");
+    }
+
+    @Test
+    public void testChangesAreCoalescedWithTheLatestNameWinning() throws IOException {
+        WafChangeBatch batch = WafChangeBatch.coalesce(List.of(
+                createRule("rule-1", "BadBots-v2", "2022-03-01T10:05:00Z"),
+                createRule("rule-1", "BadBots", "2022-03-01T10:00:00Z"),
+                createRule("rule-2", "Scanners", "2022-03-01T10:01:00Z"),
+                createWebAclV2("arn:aws:wafv2:eu-west-1:123456789012:regional/webacl/api/r2", "api")));
+
+        assertThat(batch.getEvents()).isEqualTo(4);
+        assertThat(batch.getChanges()).hasSize(3);
+        assertThat(batch.isFullRefresh()).isFalse();
+
+        WafInventory inventory = batch.applyTo(new WafInventory(Map.of("classic-1", "legacy"), Map.of("rule-1", "old")));
+        assertThat(inventory.getRules()).containsOnly(Map.entry("rule-1", "BadBots-v2"), Map.entry("rule-2", "Scanners"));
+        assertThat(inventory.getWebAcls()).containsOnly(Map.entry("classic-1", "legacy"),
+                Map.entry("arn:aws:wafv2:eu-west-1:123456789012:regional/webacl/api/r2", "api"));
+    }
+
+    @Test
+    public void testDeletesRemoveWhatTheyNameEvenWhenCreatedInTheSameBatch() throws IOException {
+        JsonNode deleteRule = OBJECT_MAPPER.readTree("{\"time\":\"2022-03-01T10:09:00Z\",\"detail\":{"
+                + "\"eventSource\":\"waf-regional.amazonaws.com\",\"eventName\":\"DeleteRule\","
+                + "\"requestParameters\":{\"ruleId\":\"rule-1\",\"changeToken\":\"t\"},\"responseElements\":{\"changeToken\":\"t\"}}}");
+        JsonNode deleteWebAclV2 = OBJECT_MAPPER.readTree("{\"time\":\"2022-03-01T10:09:00Z\",\"account\":\"123456789012\","
+                + "\"region\":\"eu-west-1\",\"detail\":{\"eventSource\":\"wafv2.amazonaws.com\",\"eventName\":\"DeleteWebACL\","
+                + "\"requestParameters\":{\"name\":\"api\",\"scope\":\"REGIONAL\",\"id\":\"r2\",\"lockToken\":\"l\"}}}");
+
+        WafChangeBatch batch = WafChangeBatch.coalesce(List.of(
+                createRule("rule-1", "BadBots", "2022-03-01T10:00:00Z"), deleteRule, deleteWebAclV2,
+                createRule("rule-2", "Scanners", "2022-03-01T10:01:00Z")));
+
+        assertThat(batch.getChanges()).hasSize(3);
+        WafInventory inventory = batch.applyTo(new WafInventory(
+                Map.of("arn:aws:wafv2:eu-west-1:123456789012:regional/webacl/api/r2", "api"), Map.of("rule-1", "BadBots")));
+        assertThat(inventory.getWebAcls()).isEmpty();
+        assertThat(inventory.getRules()).containsOnly(Map.entry("rule-2", "Scanners"));
+    }
+
+    @Test
+    public void testFailedCallsAreIgnoredAndUnreadableEventsNeedAFullRefresh() throws IOException {
+        JsonNode denied = OBJECT_MAPPER.readTree("{\"detail\":{\"eventSource\":\"waf.amazonaws.com\",\"eventName\":\"CreateRule\","
+                + "\"errorCode\":\"AccessDenied\",\"responseElements\":null}}");
+        assertThat(WafChangeBatch.coalesce(List.of(denied)).isFullRefresh()).isFalse();
+        assertThat(WafChangeBatch.coalesce(List.of(denied)).getChanges()).isEmpty();
+
+        JsonNode truncated = OBJECT_MAPPER.readTree("{\"detail\":{\"eventSource\":\"waf.amazonaws.com\",\"eventName\":\"CreateRule\"}}");
+        assertThat(WafChangeBatch.coalesce(List.of(truncated)).isFullRefresh()).isTrue();
+    }
+}
@@ -0,0 +1,97 @@
+package com.myorg.waf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.aws.StubHttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class WafInventoryClientTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    // one endpoint answering for every WAF API, told apart by the target header
+    static StubHttpServer.Response waf(StubHttpServer.Request request) {
+        JsonNode body;
+        try {
+            body = OBJECT_MAPPER.readTree(request.getBody());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        switch (request.getHeader("x-amz-target")) {
+            case "AWSWAF_20190729.ListWebACLs":
+                if ("CLOUDFRONT".equals(body.path("Scope").asText())) {
+                    return StubHttpServer.Response.json(200, "{\"WebACLs\":[{\"Name\":\"cdn\",\"Id\":\"c1\","
+                            + "\"ARN\":\"arn:aws:wafv2:us-east-1:123456789012:global/webacl/cdn/c1\"}]}");
+                }
+                // two pages
+                return body.has("NextMarker")
+                        ? StubHttpServer.Response.json(200, "{\"WebACLs\":[{\"Name\":\"api\",\"Id\":\"r2\","
+                                + "\"ARN\":\"arn:aws:wafv2:eu-west-1:123456789012:regional/webacl/api/r2\"}]}")
+                        : StubHttpServer.Response.json(200, "{\"NextMarker\":\"p2\",\"WebACLs\":[{\"Name\":\"shop\",\"Id\":\"r1\","
+                                + "\"ARN\":\"arn:aws:wafv2:eu-west-1:123456789012:regional/webacl/shop/r1\"}]}");
+            case "AWSWAFRegional_20161128.ListWebACLs":
+                return StubHttpServer.Response.json(200, "{\"WebACLs\":[{\"WebACLId\":\"classic-1\",\"Name\":\"legacy\"}]}");
+            case "AWSWAFRegional_20161128.ListRules":
+                return StubHttpServer.Response.json(200, "{\"Rules\":[{\"RuleId\":\"rule-1\",\"Name\":\"BadBots\"}]}");
+            default:
+                return StubHttpServer.Response.json(200, "{\"WebACLs\":[],\"Rules\":[]}");
+        }
+    }
+
+    @Test
+    public void testInventoryCoversEveryWafApiAndPage() throws IOException {
+        try (StubHttpServer server = StubHttpServer.start(WafInventoryClientTest::waf)) {
+            WafInventory inventory = new WafInventoryClient(null, "eu-west-1", server.uri()).fetch();
+
+            assertThat(inventory.getWebAcls()).containsOnly(
+                    Map.entry("arn:aws:wafv2:eu-west-1:123456789012:regional/webacl/shop/r1", "shop"),
+                    Map.entry("arn:aws:wafv2:eu-west-1:123456789012:regional/webacl/api/r2", "api"),
+                    Map.entry("arn:aws:wafv2:us-east-1:123456789012:global/webacl/cdn/c1", "cdn"),
+                    Map.entry("classic-1", "legacy"));
+            assertThat(inventory.getRules()).containsOnly(Map.entry("rule-1", "BadBots"));
+            assertThat(server.getRequests()).hasSize(7);
+        }
+    }
+
+    @Test
+    public void testFailedCallsSurface() throws IOException {
+        try (StubHttpServer server = StubHttpServer.start(request -> StubHttpServer.Response.json(400,
+                "{\"__type\":\"AccessDeniedException\"}"))) {
+            assertThatThrownBy(() -> new WafInventoryClient(null, "eu-west-1", server.uri()).fetch())
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("AccessDeniedException");
+        }
+    }
+
+    @Test
+    public void testThrottledCallsAreRetried() throws IOException {
+        AtomicInteger throttled = new AtomicInteger();
+        try (StubHttpServer server = StubHttpServer.start(request -> throttled.incrementAndGet() <= 2
+                ? StubHttpServer.Response.json(400, "{\"__type\":\"ThrottlingException\"}")
+                : waf(request))) {
+            WafInventory inventory = new WafInventoryClient(null, "eu-west-1", server.uri()).fetch();
+
+            assertThat(inventory.getRules()).containsOnly(Map.entry("rule-1", "BadBots"));
+            assertThat(server.getRequests()).hasSize(9);
+        }
+        assertThat(WafInventoryClient.isRetryable(503, "")).isTrue();
+        assertThat(WafInventoryClient.isRetryable(400, "{\"__type\":\"WAFNonexistentItemException\"}")).isFalse();
+    }
+
+    @Test
+    public void testPlaceholdersBecomeOneBranchPerName() {
+        WafInventory inventory = new WafInventory(Map.of("b", "second", "a", "fi\"rst"), Map.of("r", "rule"));
+
+        assertThat(inventory.resolvePlaceholders("def webacl = x;\n WEBACL_CUSTOM_MAPPINGS \n return webacl;"))
+                .isEqualTo("def webacl = x;\n if (webacl == \"a\") { return \"fi\\\"rst\";}\n "
+                        + "if (webacl == \"b\") { return \"second\";}\n  \n return webacl;");
+        assertThat(inventory.resolvePlaceholders("RULE_CUSTOM_MAPPINGS")).isEqualTo("if (rule == \"r\") { return \"rule\";}\n ");
+    }
+}
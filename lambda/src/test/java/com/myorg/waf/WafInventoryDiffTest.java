@@ -0,0 +1,37 @@
+package com.myorg.waf;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WafInventoryDiffTest {
+    private static final WafInventory BEFORE = new WafInventory(Map.of("acl-1", "shop", "acl-2", "api"),
+            Map.of("rule-1", "BadBots", "rule-2", "Scanners"));
+
+    @Test
+    public void testAddedRenamedAndRemovedEntriesAreTheDiff() {
+        WafInventory after = new WafInventory(Map.of("acl-1", "shop", "acl-3", "admin"),
+                Map.of("rule-1", "BadBots-v2", "rule-2", "Scanners"));
+
+        WafInventoryDiff diff = WafInventoryDiff.between(BEFORE, after);
+
+        assertThat(diff.getUpsertedWebAcls()).containsOnly(Map.entry("acl-3", "admin"));
+        assertThat(diff.getUpsertedRules()).containsOnly(Map.entry("rule-1", "BadBots-v2"));
+        assertThat(diff.getRemovedWebAcls()).containsOnly("acl-2");
+        assertThat(diff.getRemovedRules()).isEmpty();
+        assertThat(diff.size()).isEqualTo(3);
+        assertThat(diff).hasToString("1 WebACLs and 1 rules added or renamed, 1 WebACLs and 0 rules removed");
+    }
+
+    @Test
+    public void testSameInventoryIsEmptyAndNoStoredInventoryAddsEverything() {
+        assertThat(WafInventoryDiff.between(BEFORE, new WafInventory(Map.copyOf(BEFORE.getWebAcls()), Map.copyOf(BEFORE.getRules())))
+                .isEmpty()).isTrue();
+
+        WafInventoryDiff fromNothing = WafInventoryDiff.between(null, BEFORE);
+        assertThat(fromNothing.size()).isEqualTo(4);
+        assertThat(fromNothing.getRemovedWebAcls()).isEmpty();
+    }
+}
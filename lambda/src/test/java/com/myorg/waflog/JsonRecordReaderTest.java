@@ -0,0 +1,81 @@
+package com.myorg.waflog;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class JsonRecordReaderTest {
+
+    @Test
+    public void testSplitsConcatenatedAndNewlineDelimitedRecords() throws IOException {
+        String data = "{\"a\":\"}{\"}{\"b\":[1,{\"c\":\"\\\"\"}]}\n\n{\"d\":1}";
+
+        assertThat(readAll(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8))))
+                .containsExactly("{\"a\":\"}{\"}", "{\"b\":[1,{\"c\":\"\\\"\"}]}", "{\"d\":1}");
+    }
+
+    @Test
+    public void testRecordsLargerThanTheBufferAreKeptWhole() throws IOException {
+        List<byte[]> corpus = WafLogCorpus.synthetic(500, 7);
+        ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+        for (byte[] record : corpus) {
+            concatenated.write(record);
+        }
+        String huge = "{\"padding\":\"" + "x".repeat(200_000) + "\"}";
+        concatenated.write(huge.getBytes(StandardCharsets.UTF_8));
+
+        List<String> records = readAll(new ByteArrayInputStream(concatenated.toByteArray()));
+
+        assertThat(records).hasSize(501);
+        assertThat(records.get(0)).isEqualTo(new String(corpus.get(0), StandardCharsets.UTF_8));
+        assertThat(records.get(500)).isEqualTo(huge);
+    }
+
+    @Test
+    public void testDecompressesGzipAndZip() throws IOException {
+        byte[] plain = "{\"a\":1}\n{\"b\":2}\n".getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(plain);
+        }
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(zip)) {
+            out.putNextEntry(new ZipEntry("log"));
+            out.write(plain);
+        }
+
+        for (byte[] compressed : List.of(gzip.toByteArray(), zip.toByteArray(), plain)) {
+            assertThat(readAll(JsonRecordReader.decompress(new ByteArrayInputStream(compressed))))
+                    .containsExactly("{\"a\":1}", "{\"b\":2}");
+        }
+    }
+
+    @Test
+    public void testTruncatedRecordIsRejected() {
+        assertThatThrownBy(() -> readAll(new ByteArrayInputStream("{\"a\":1}{\"b\":".getBytes(StandardCharsets.UTF_8))))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Truncated");
+    }
+
+    private static List<String> readAll(InputStream in) throws IOException {
+        JsonRecordReader reader = new JsonRecordReader(in);
+        List<String> records = new ArrayList<>();
+        while (reader.next()) {
+            records.add(new String(reader.buffer(), reader.offset(), reader.length(), StandardCharsets.UTF_8));
+        }
+        return records;
+    }
+}
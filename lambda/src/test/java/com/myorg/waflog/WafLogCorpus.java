@@ -0,0 +1,117 @@
+package com.myorg.waflog;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * WAF log corpora for parser tests and benchmarks: synthetic records and records captured in Firehose events
+ * or newline delimited log files, such as objects from the S3 backup.
+ */
+public final class WafLogCorpus {
+    static final String SAMPLE_BATCH = "/firehose/waf-batch.json";
+
+    private static final String[] ACTIONS = {"ALLOW", "ALLOW", "ALLOW", "ALLOW", "BLOCK", "COUNT", "CAPTCHA"};
+    private static final String[] COUNTRIES = {"US", "DE", "BR", "IN", "CN", "FR", "GB", "NL", "PL", "JP"};
+    private static final String[] URIS = {"/", "/login", "/api/v1/cart", "/search", "/wp-admin/setup.php", "/static/app.js"};
+    private static final String[] USER_AGENTS = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/98.0.4758.102 Safari/537.36",
+            "curl/7.79.1",
+            "python-requests/2.27.1",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 15_3 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) \\\"Mobile\\\""};
+
+    private WafLogCorpus() {
+    }
+
+    public static List<byte[]> synthetic(int records, long seed) {
+        Random random = new Random(seed);
+        List<byte[]> corpus = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            corpus.add(syntheticRecord(random, 1645000000000L + i * 37L).getBytes(StandardCharsets.UTF_8));
+        }
+        return corpus;
+    }
+
+    static String syntheticRecord(Random random, long timestamp) {
+        String action = ACTIONS[random.nextInt(ACTIONS.length)];
+        boolean blocked = !"ALLOW".equals(action);
+        String clientIp = (random.nextInt(223) + 1) + "." + random.nextInt(256) + "." + random.nextInt(256) + "." + (random.nextInt(254) + 1);
+
+        StringBuilder headers = new StringBuilder()
+                .append("{\"name\":\"Host\",\"value\":\"shop.example.com\"},")
+                .append("{\"name\":\"User-Agent\",\"value\":\"").append(USER_AGENTS[random.nextInt(USER_AGENTS.length)]).append("\"},")
+                .append("{\"name\":\"Accept\",\"value\":\"text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\"},")
+                .append("{\"name\":\"Accept-Language\",\"value\":\"en-US,en;q=0.9\"},");
+        int cookies = random.nextInt(4);
+        for (int i = 0; i < cookies; i++) {
+            headers.append("{\"name\":\"Cookie\",\"value\":\"c").append(i).append('=').append(Long.toHexString(random.nextLong()))
+                    .append(Long.toHexString(random.nextLong())).append("\"},");
+        }
+        headers.append("{\"name\":\"X-Forwarded-For\",\"value\":\"").append(clientIp).append("\"}");
+
+        return "{\"timestamp\":" + timestamp + ",\"formatVersion\":1,"
+                + "\"webaclId\":\"arn:aws:wafv2:eu-west-1:123456789012:regional/webacl/acl-" + random.nextInt(4) + "/6f1b2c3d\","
+                + "\"terminatingRuleId\":\"" + (blocked ? "AWS-AWSManagedRulesCommonRuleSet" : "Default_Action") + "\","
+                + "\"terminatingRuleType\":\"" + (blocked ? "MANAGED_RULE_GROUP" : "REGULAR") + "\","
+                + "\"action\":\"" + action + "\",\"terminatingRuleMatchDetails\":[],"
+                + "\"httpSourceName\":\"ALB\",\"httpSourceId\":\"123456789012-app/shop-alb/0123456789abcdef\","
+                + "\"ruleGroupList\":[{\"ruleGroupId\":\"AWS#AWSManagedRulesCommonRuleSet\",\"terminatingRule\":"
+                + (blocked ? "{\"ruleId\":\"SizeRestrictions_QUERYSTRING\",\"action\":\"BLOCK\",\"ruleMatchDetails\":null}" : "null")
+                + ",\"nonTerminatingMatchingRules\":[],\"excludedRules\":null}],"
+                + "\"rateBasedRuleList\":[],\"nonTerminatingMatchingRules\":[],\"requestHeadersInserted\":null,\"responseCodeSent\":null,"
+                + "\"httpRequest\":{\"clientIp\":\"" + clientIp + "\",\"country\":\"" + COUNTRIES[random.nextInt(COUNTRIES.length)] + "\","
+                + "\"headers\":[" + headers + "],"
+                + "\"uri\":\"" + URIS[random.nextInt(URIS.length)] + "\",\"args\":\"q=shoes&page=" + random.nextInt(10) + "\","
+                + "\"httpVersion\":\"HTTP/1.1\",\"httpMethod\":\"GET\",\"requestId\":\"1-" + Long.toHexString(random.nextLong()) + "\"},"
+                + "\"labels\":[]}";
+    }
+
+    /**
+     * Records of the bundled Firehose transformation event.
+     */
+    public static List<byte[]> captured() throws IOException {
+        try (InputStream in = WafLogCorpus.class.getResourceAsStream(SAMPLE_BATCH)) {
+            return fromFirehoseEvent(in.readAllBytes());
+        }
+    }
+
+    /**
+     * Records of a Firehose event ({@code .json}) or of a newline delimited WAF log file.
+     */
+    public static List<byte[]> captured(Path path) throws IOException {
+        byte[] content = Files.readAllBytes(path);
+        if (path.getFileName().toString().endsWith(".json")) {
+            return fromFirehoseEvent(content);
+        }
+
+        List<byte[]> corpus = new ArrayList<>();
+        for (String line : new String(content, StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isBlank()) {
+                corpus.add(line.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return corpus;
+    }
+
+    static List<byte[]> fromFirehoseEvent(byte[] event) throws IOException {
+        List<byte[]> corpus = new ArrayList<>();
+        try (JsonParser parser = new JsonFactory().createParser(event)) {
+            while (parser.nextToken() != null) {
+                if (parser.currentToken() == JsonToken.FIELD_NAME && "data".equals(parser.getCurrentName())) {
+                    parser.nextToken();
+                    corpus.add(parser.getBinaryValue());
+                }
+            }
+        }
+        return corpus;
+    }
+}
@@ -0,0 +1,127 @@
+package com.myorg.waflog;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class WafLogParserTest {
+    private static final List<String> HEADERS = List.of("host", "user-agent", "x-forwarded-for");
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static WafLogRecord parse(String record) throws IOException {
+        WafLogParser parser = new WafLogParser(HEADERS);
+        WafLogRecord parsed = parser.newRecord();
+        parser.parse(record.getBytes(StandardCharsets.UTF_8), parsed);
+        return parsed;
+    }
+
+    private static String header(JsonNode record, String name) {
+        for (JsonNode header : record.path("httpRequest").path("headers")) {
+            if (header.path("name").asText().equalsIgnoreCase(name)) {
+                return header.path("value").asText();
+            }
+        }
+        return null;
+    }
+
+    private static void assertMatchesDatabind(List<byte[]> corpus) throws IOException {
+        WafLogParser parser = new WafLogParser(HEADERS);
+        WafLogRecord parsed = parser.newRecord();
+
+        for (byte[] record : corpus) {
+            parser.parse(record, parsed);
+            JsonNode expected = JSON.readTree(record);
+
+            assertThat(parsed.getTimestamp()).isEqualTo(expected.path("timestamp").asLong());
+            assertThat(parsed.getAction().toString()).isEqualTo(expected.path("action").asText());
+            assertThat(parsed.getTerminatingRuleId().toString()).isEqualTo(expected.path("terminatingRuleId").asText());
+            assertThat(parsed.getWebaclId().toString()).isEqualTo(expected.path("webaclId").asText());
+            assertThat(parsed.getClientIp().toString()).isEqualTo(expected.path("httpRequest").path("clientIp").asText());
+            assertThat(parsed.getCountry().toString()).isEqualTo(expected.path("httpRequest").path("country").asText());
+            assertThat(parsed.getUri().toString()).isEqualTo(expected.path("httpRequest").path("uri").asText());
+            for (int i = 0; i < HEADERS.size(); i++) {
+                assertThat(parsed.getHeader(i).toString()).isEqualTo(header(expected, HEADERS.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testCapturedCorpusMatchesDatabind() throws IOException {
+        List<byte[]> corpus = WafLogCorpus.captured();
+
+        assertThat(corpus).hasSize(40);
+        assertMatchesDatabind(corpus);
+    }
+
+    @Test
+    public void testSyntheticCorpusMatchesDatabind() throws IOException {
+        assertMatchesDatabind(WafLogCorpus.synthetic(500, 42));
+    }
+
+    @Test
+    public void testEscapesAndNulls() throws IOException {
+        WafLogRecord record = parse("{ \"action\" : null, \"timestamp\": 1645000000000,\n"
+                + "\"httpRequest\": {\"uri\": \"/caf\\u00e9/\\\"x\\\"\\ud83d\\ude00\", \"country\": null,"
+                + "\"headers\": [{\"name\": \"USER-AGENT\", \"value\": \"a\\\\b\"}, \"junk\", {\"value\": \"no name\"}]}}");
+
+        assertThat(record.getAction().isPresent()).isFalse();
+        assertThat(record.getAction().toString()).isNull();
+        assertThat(record.getCountry().isPresent()).isFalse();
+        assertThat(record.getTimestamp()).isEqualTo(1645000000000L);
+        assertThat(record.getUri().toString()).isEqualTo("/café/\"x\"😀");
+        assertThat(record.getHeader(1).toString()).isEqualTo("a\\b");
+        assertThat(record.getHeader(0).isPresent()).isFalse();
+    }
+
+    @Test
+    public void testContentComparisonsDontNeedStrings() throws IOException {
+        WafLogRecord record = parse("{\"action\":\"BLOCK\"}");
+
+        assertThat(record.getAction().contentEquals("BLOCK")).isTrue();
+        assertThat(record.getAction().contentEquals("BLOCKED")).isFalse();
+        assertThat(record.getAction().contentEquals("BLOCK".getBytes(StandardCharsets.US_ASCII))).isTrue();
+        assertThat(record.getAction().contentHash()).isEqualTo(parse("{\"action\":\"BL\\u004fCK\"}").getAction().contentHash());
+    }
+
+    @Test
+    public void testMalformedRecordsAreRejected() {
+        assertThatThrownBy(() -> parse("[]")).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> parse("{\"action\":\"BLOCK")).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> parse("{\"action\":\"BLOCK\" \"uri\":\"/\"}")).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> parse("{\"timestamp\":\"soon\"}")).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void testParsingDoesNotAllocate() throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        List<byte[]> corpus = new ArrayList<>(WafLogCorpus.synthetic(200, 7));
+        corpus.addAll(WafLogCorpus.captured());
+
+        WafLogParser parser = new WafLogParser(HEADERS);
+        WafLogRecord parsed = parser.newRecord();
+        for (byte[] record : corpus) {
+            parser.parse(record, parsed);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 20; i++) {
+            for (byte[] record : corpus) {
+                parser.parse(record, parsed);
+            }
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // a tree per record would be several kilobytes each; allow for the measurement itself
+        assertThat(allocated).isLessThan(4096);
+    }
+}
@@ -0,0 +1,87 @@
+package com.myorg;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Thresholds of the pipeline alarms. Set with the {@value #CONTEXT_KEY} context value, entries of
+ * {@code alarm:threshold}, e.g. {@code -c osdfwAlarmThresholds=data-freshness:1800,jvm-memory-pressure:90}.
+ * Alarms not listed keep their defaults.
+ */
+public class AlarmThresholds {
+    public static final String CONTEXT_KEY = "osdfwAlarmThresholds";
+
+    // seconds the oldest record waits in a delivery stream
+    public static final String DATA_FRESHNESS = "data-freshness";
+    // share of the documents OpenSearch accepted, 0 to 1
+    public static final String DELIVERY_SUCCESS = "delivery-success";
+    // records Firehose throttled in five minutes
+    public static final String THROTTLED_RECORDS = "throttled-records";
+    // bulk requests the write thread pool rejected in five minutes
+    public static final String WRITE_REJECTED = "write-rejected";
+    // per cent of the heap in use on any data node
+    public static final String JVM_MEMORY_PRESSURE = "jvm-memory-pressure";
+    // milliseconds per indexing operation
+    public static final String INDEXING_LATENCY = "indexing-latency";
+    // MB left on the fullest data node
+    public static final String FREE_STORAGE = "free-storage";
+
+    static final Map<String, Double> DEFAULTS = defaults();
+
+    private final Map<String, Double> thresholds;
+
+    private AlarmThresholds(Map<String, Double> thresholds) {
+        this.thresholds = thresholds;
+    }
+
+    public static AlarmThresholds defaultThresholds() {
+        return new AlarmThresholds(DEFAULTS);
+    }
+
+    /**
+     * Reads {@code alarm:threshold} entries over the defaults.
+     */
+    public static AlarmThresholds parse(List<String> entries) {
+        Map<String, Double> thresholds = new LinkedHashMap<>(DEFAULTS);
+        for (String entry : entries) {
+            String[] nameAndThreshold = entry.split(":", 2);
+            String alarm = nameAndThreshold[0].trim().toLowerCase(Locale.ROOT);
+            if (nameAndThreshold.length != 2 || !DEFAULTS.containsKey(alarm)) {
+                throw new IllegalArgumentException("Alarm threshold entries look like alarm:threshold for one of "
+                        + DEFAULTS.keySet() + ", got '" + entry + "'");
+            }
+
+            double threshold = Double.parseDouble(nameAndThreshold[1].trim());
+            if (threshold < 0 || (alarm.equals(DELIVERY_SUCCESS) && threshold > 1)) {
+                throw new IllegalArgumentException("Alarm threshold of " + alarm + " is out of range: " + threshold);
+            }
+            thresholds.put(alarm, threshold);
+        }
+        return new AlarmThresholds(thresholds);
+    }
+
+    private static Map<String, Double> defaults() {
+        Map<String, Double> defaults = new LinkedHashMap<>();
+        // three times the longest OpenSearch buffer interval of the throughput profiles
+        defaults.put(DATA_FRESHNESS, 900d);
+        defaults.put(DELIVERY_SUCCESS, 0.99);
+        defaults.put(THROTTLED_RECORDS, 0d);
+        defaults.put(WRITE_REJECTED, 0d);
+        defaults.put(JVM_MEMORY_PRESSURE, 80d);
+        defaults.put(INDEXING_LATENCY, 50d);
+        // a fifth of the default 10 GB volume
+        defaults.put(FREE_STORAGE, 2048d);
+        return Collections.unmodifiableMap(defaults);
+    }
+
+    public double get(String alarm) {
+        Double threshold = thresholds.get(alarm);
+        if (threshold == null) {
+            throw new IllegalArgumentException("No alarm named " + alarm);
+        }
+        return threshold;
+    }
+}
@@ -6,119 +6,134 @@ import software.amazon.awscdk.core.NestedStack;
 import software.amazon.awscdk.core.RemovalPolicy;
 import software.amazon.awscdk.services.events.EventPattern;
 import software.amazon.awscdk.services.events.Rule;
-import software.amazon.awscdk.services.events.targets.LambdaFunction;
+import software.amazon.awscdk.services.events.targets.SqsQueue;
 import software.amazon.awscdk.services.iam.*;
-import software.amazon.awscdk.services.lambda.Runtime;
 import software.amazon.awscdk.services.lambda.*;
-import software.amazon.awscdk.services.logs.RetentionDays;
-import software.amazon.awscdk.services.s3.Bucket;
+import software.amazon.awscdk.services.lambda.eventsources.SqsEventSource;
+import software.amazon.awscdk.services.sqs.DeadLetterQueue;
+import software.amazon.awscdk.services.sqs.Queue;
 import software.constructs.Construct;
 
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
 public class AppStack extends NestedStack {
+    public static final String DASHBOARDS_MEMORY_CONTEXT_KEY = "osdfwDashboardsMemory";
+    public static final String DASHBOARDS_TIMEOUT_CONTEXT_KEY = "osdfwDashboardsTimeout";
+    // WAF changes wait this long in the queue so a burst of them reaches the updater as one batch
+    static final int UPDATE_BATCHING_WINDOW_SECONDS = 60;
+    static final int UPDATE_BATCH_SIZE = 100;
+
     public Function dashboardsCustomizerLambda;
 
     public AppStack(Construct scope, String id, StreamStackProps props) {
         super(scope, id, props);
 
-        //Code lambdaCodeLocation = Code.fromAsset("assets/os-customizer-lambda.zip");
-        Code lambdaCodeLocation = Code.fromBucket(Bucket.fromBucketArn(this, "id", "arn:aws:s3:::aws-waf-dashboard-resources"), "os-customizer-lambda.zip");
-
         Role customizerRole = createLambdaRole();
 
-        this.dashboardsCustomizerLambda = Function.Builder.create(this, "osdfwDashboardsSeeder")
-                .architecture(Architecture.ARM_64)
-                .description("AWS WAF Dashboards Solution main function")
-                .handler("lambda_function.handler")
-                .logRetention(RetentionDays.ONE_MONTH)
-                .role(customizerRole) //todo
-                .code(lambdaCodeLocation)
-                .runtime(Runtime.PYTHON_3_9)
-                .memorySize(128)
-                .timeout(Duration.seconds(160))
-                .environment(Map.of(
-                        "ES_ENDPOINT", props.getOpenSearchDomain().getDomainEndpoint(),
-                        "REGION", this.getRegion(),
-                        "ACCOUNT_ID", this.getAccount()
-                ))
+        this.dashboardsCustomizerLambda = createDashboardsFunction("osdfwDashboardsSeeder", FunctionSizing.DASHBOARDS_SEEDER,
+                "AWS WAF Dashboards Solution main function",
+                "com.myorg.dashboards.DashboardsSeedHandler::handleRequest", customizerRole, null, props);
+
+        createCustomizer(LambdaCode.invocationTarget(dashboardsCustomizerLambda, props.getLambdaPackaging()), props);
+
+        Function customizerUpdaterLambda = createDashboardsFunction("osdfwDashboardsUpdater", FunctionSizing.DASHBOARDS_UPDATER,
+                "AWS WAF Dashboards Solution updater function",
+                "com.myorg.dashboards.DashboardsUpdateHandler::handleRequest", customizerRole, 1, props);
+
+        Queue changeQueue = createChangeQueue(props);
+        createEvents(changeQueue);
+
+        LambdaCode.invocationTarget(customizerUpdaterLambda, props.getLambdaPackaging()).addEventSource(SqsEventSource.Builder.create(changeQueue)
+                .batchSize(UPDATE_BATCH_SIZE)
+                .maxBatchingWindow(Duration.seconds(UPDATE_BATCHING_WINDOW_SECONDS))
+                .build());
+    }
+
+    /**
+     * Buffers the WAF change events between EventBridge and the updater. Batches that keep failing end up in
+     * the dead-letter queue instead of being retried forever.
+     */
+    private Queue createChangeQueue(StreamStackProps props) {
+        Queue deadLetterQueue = Queue.Builder.create(this, "osdfwWafChangeDeadLetterQueue")
+                .retentionPeriod(Duration.days(14))
                 .build();
 
-        createCustomizer(dashboardsCustomizerLambda, props);
-
-        Function customizerUpdaterLambda = Function.Builder.create(this, "osdfwDashboardsUpdater")
-                .architecture(Architecture.ARM_64)
-                .description("AWS WAF Dashboards Solution updater function")
-                .handler("lambda_function.update")
-                .logRetention(RetentionDays.ONE_MONTH)
-                .role(customizerRole) //todo
-                .code(lambdaCodeLocation)
-                .runtime(Runtime.PYTHON_3_9)
-                .memorySize(128)
-                .timeout(Duration.seconds(160))
+        return Queue.Builder.create(this, "osdfwWafChangeQueue")
+                // Lambda's guidance for SQS event sources: six times the function timeout, plus the batching window
+                .visibilityTimeout(Duration.seconds(6L * props.getDashboardsTimeoutSeconds() + UPDATE_BATCHING_WINDOW_SECONDS))
+                .deadLetterQueue(DeadLetterQueue.builder()
+                        .queue(deadLetterQueue)
+                        .maxReceiveCount(5)
+                        .build())
+                .build();
+    }
+
+    /**
+     * The saved objects are written with bounded parallelism; memory also buys CPU for it. The updater runs one
+     * batch at a time, so two batches never apply their changes to the same stored inventory.
+     */
+    private Function createDashboardsFunction(String id, String function, String description, String handler, Role role,
+                                              Integer reservedConcurrency, StreamStackProps props) {
+        return LambdaCode.javaFunction(this, id, function, props.getDashboardsMemorySize(), props)
+                .description(description)
+                .handler(handler)
+                .role(role) //todo
+                .timeout(Duration.seconds(props.getDashboardsTimeoutSeconds()))
+                .reservedConcurrentExecutions(reservedConcurrency)
                 .environment(Map.of(
                         "ES_ENDPOINT", props.getOpenSearchDomain().getDomainEndpoint(),
-                        "REGION", this.getRegion(),
-                        "ACCOUNT_ID", this.getAccount()
+                        "ACCOUNT_DASHBOARDS", String.valueOf(props.isHub())
                 ))
                 .build();
-
-        List<Rule> eventRules = createEvents(customizerUpdaterLambda);
-
-        for (Rule rule : eventRules) {
-            customizerUpdaterLambda.addPermission(
-                    rule.getRuleName().toLowerCase(Locale.ROOT),
-                    Permission.builder()
-                            .action("lambda:InvokeFunction")
-                            .principal(new ServicePrincipal("events.amazonaws.com"))
-                            .sourceArn(rule.getRuleArn())
-                            .build());
-        }
     }
 
-    private List<Rule> createEvents(Function targetLambdaFn) {
+    // the calls that add, rename or remove a name the index pattern shows; see WafChange
+    static final List<String> WAFV2_EVENT_NAMES = List.of("CreateWebACL", "DeleteWebACL");
+    static final List<String> CLASSIC_WAF_EVENT_NAMES = List.of("CreateWebACL", "DeleteWebACL", "CreateRule", "DeleteRule",
+            "CreateRateBasedRule", "DeleteRateBasedRule");
+
+    private List<Rule> createEvents(Queue changeQueue) {
         Rule newACLForWafV2 = Rule.Builder.create(this, "osdfwCaptureNewAclsWafv2")
-                .description("AWS WAF Dashboards Solution - detects new WebACLs and rules for WAFv2.")
+                .description("AWS WAF Dashboards Solution - detects new and deleted WebACLs and rules for WAFv2.")
                 .eventPattern(EventPattern.builder()
                         .source(List.of("aws.wafv2"))
                         .detailType(List.of("AWS API Call via CloudTrail"))
                         .detail(Map.of(
                                 "eventSource", List.of("wafv2.amazonaws.com"),
-                                "eventName", List.of("CreateWebACL", "CreateRule")
+                                "eventName", WAFV2_EVENT_NAMES
                         ))
                         .build())
-                .targets(List.of(LambdaFunction.Builder.create(targetLambdaFn).build()))
+                .targets(List.of(new SqsQueue(changeQueue)))
                 .enabled(true)
                 .build();
 
         //todo add conditional parameter to disable waf v1 capabilities
         Rule newACLRulesForWafRegional = Rule.Builder.create(this, "osdfwCaptureNewAclsWafv1Regional")
-                .description("AWS WAF Dashboards Solution - detects new WebACLs and rules for WAF Regional.")
+                .description("AWS WAF Dashboards Solution - detects new and deleted WebACLs and rules for WAF Regional.")
                 .eventPattern(EventPattern.builder()
                         .source(List.of("aws.waf-regional"))
                         .detailType(List.of("AWS API Call via CloudTrail"))
                         .detail(Map.of(
-                                "eventSource", List.of("waf.amazonaws.com"),
-                                "eventName", List.of("CreateWebACL", "CreateRule")
+                                "eventSource", List.of("waf-regional.amazonaws.com"),
+                                "eventName", CLASSIC_WAF_EVENT_NAMES
                         ))
                         .build())
-                .targets(List.of(LambdaFunction.Builder.create(targetLambdaFn).build()))
+                .targets(List.of(new SqsQueue(changeQueue)))
                 .enabled(true)
                 .build();
 
         Rule newACLRulesForWafGlobal = Rule.Builder.create(this, "osdfwCaptureNewAclsWafv1Global")
-                .description("AWS WAF Dashboards Solution - detects new WebACLs and rules for WAF Global.")
+                .description("AWS WAF Dashboards Solution - detects new and deleted WebACLs and rules for WAF Global.")
                 .eventPattern(EventPattern.builder()
                         .source(List.of("aws.waf"))
                         .detailType(List.of("AWS API Call via CloudTrail"))
                         .detail(Map.of(
-                                "eventSource", List.of("waf-regional.amazonaws.com"),
-                                "eventName", List.of("CreateWebACL", "CreateRule")
+                                "eventSource", List.of("waf.amazonaws.com"),
+                                "eventName", CLASSIC_WAF_EVENT_NAMES
                         ))
                         .build())
-                .targets(List.of(LambdaFunction.Builder.create(targetLambdaFn).build()))
+                .targets(List.of(new SqsQueue(changeQueue)))
                 .enabled(true)
                 .build();
 
@@ -164,7 +179,7 @@ public class AppStack extends NestedStack {
 
     }
 
-    public void createCustomizer(Function dashboardsCustomizerLambda, StreamStackProps props) {
+    public void createCustomizer(IFunction dashboardsCustomizerLambda, StreamStackProps props) {
         CustomResource.Builder.create(this, "osdfwCustomResourceLambda")
                 .serviceToken(dashboardsCustomizerLambda.getFunctionArn())
                 .removalPolicy(RemovalPolicy.DESTROY)
@@ -1,15 +1,60 @@
 package com.myorg;
 
 import software.amazon.awscdk.core.App;
+import software.amazon.awscdk.core.Environment;
+import software.amazon.awscdk.core.Stack;
 import software.amazon.awscdk.core.StackProps;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
 public class CdkAwsWafDashboardsApp {
+    static final String STACK_ID = "OSDfW";
+    static final String SPOKE_STACK_ID = "OSDfWSpoke";
+
     public static void main(final String[] args) {
         App app = new App();
+        SynthTimings timings = new SynthTimings();
+
+        if (app.getNode().tryGetContext(SpokeStack.HUB_DOMAIN_ARN_CONTEXT_KEY) != null) {
+            createSpokeStacks(app, timings);
+        } else {
+            createStacks(app, timings);
+        }
+        timings.time("synth", app::synth);
+
+        timings.writeTo(app.getOutdir());
+        System.err.print(timings.report());
+    }
+
+    /**
+     * The environment-agnostic stack of a plain {@code cdk synth}, or one stack per {@value DeploymentTargets#CONTEXT_KEY}
+     * entry, all in this App.
+     */
+    static List<MainStack> createStacks(App app, SynthTimings timings) {
+        return createPerTarget(app, timings, STACK_ID, (id, props) -> new MainStack(app, id, props));
+    }
 
-        String stackName = "OpenSearch Dashboards for WAF";
-        MainStack openSearch = new MainStack(app, "OSDfW", StackProps.builder().build());
+    /**
+     * As {@link #createStacks}, but the spokes delivering to a hub named by {@value SpokeStack#HUB_DOMAIN_ARN_CONTEXT_KEY}.
+     */
+    static List<SpokeStack> createSpokeStacks(App app, SynthTimings timings) {
+        return createPerTarget(app, timings, SPOKE_STACK_ID, (id, props) -> new SpokeStack(app, id, props));
+    }
 
-        app.synth();
+    private static <T extends Stack> List<T> createPerTarget(App app, SynthTimings timings, String baseId,
+                                                             BiFunction<String, StackProps, T> stack) {
+        List<Environment> targets = DeploymentTargets.parse(
+                MainStack.contextEntries(app.getNode().tryGetContext(DeploymentTargets.CONTEXT_KEY)));
+        List<T> stacks = new ArrayList<>();
+        if (targets.isEmpty()) {
+            stacks.add(timings.time(baseId, () -> stack.apply(baseId, StackProps.builder().build())));
+        }
+        for (Environment target : targets) {
+            String stackId = DeploymentTargets.stackId(baseId, target);
+            stacks.add(timings.time(stackId, () -> stack.apply(stackId, StackProps.builder().env(target).build())));
+        }
+        return stacks;
     }
 }
@@ -0,0 +1,50 @@
+package com.myorg;
+
+import software.amazon.awscdk.core.Environment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Accounts and regions synthesized together, one MainStack each, as {@code account/region} entries, e.g.
+ * {@code -c osdfwTargets=111111111111/eu-west-1,222222222222/us-east-1}. One App run builds them all, so the
+ * JVM, the JSII runtime and the bundled Lambda jar are shared rather than started and built per environment.
+ */
+public final class DeploymentTargets {
+    public static final String CONTEXT_KEY = "osdfwTargets";
+
+    private static final Pattern ACCOUNT = Pattern.compile("\\d{12}");
+    private static final Pattern REGION = Pattern.compile("[a-z]{2}(-gov|-iso[a-z]?)?-[a-z]+-\\d");
+
+    private DeploymentTargets() {
+    }
+
+    public static List<Environment> parse(List<String> entries) {
+        List<Environment> environments = new ArrayList<>();
+        for (String entry : entries) {
+            String[] accountAndRegion = entry.split("/", 2);
+            if (accountAndRegion.length != 2 || !ACCOUNT.matcher(accountAndRegion[0]).matches()
+                    || !REGION.matcher(accountAndRegion[1]).matches()) {
+                throw new IllegalArgumentException("Deployment targets look like account/region, e.g. 111111111111/eu-west-1, got '"
+                        + entry + "'");
+            }
+            Environment environment = Environment.builder()
+                    .account(accountAndRegion[0])
+                    .region(accountAndRegion[1])
+                    .build();
+            if (environments.stream().anyMatch(known -> stackId("", known).equals(stackId("", environment)))) {
+                throw new IllegalArgumentException("Deployment target " + entry + " is listed twice");
+            }
+            environments.add(environment);
+        }
+        return environments;
+    }
+
+    /**
+     * The id of the stack deployed to {@code environment}, which CloudFormation also uses as the stack name.
+     */
+    public static String stackId(String baseId, Environment environment) {
+        return baseId + "-" + environment.getAccount() + "-" + environment.getRegion();
+    }
+}
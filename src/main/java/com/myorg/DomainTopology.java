@@ -0,0 +1,162 @@
+package com.myorg;
+
+import software.amazon.awscdk.services.ec2.EbsDeviceVolumeType;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Node counts, zone awareness and volume type of the OpenSearch domain. These shape the synthesized
+ * template (dedicated masters on or off, zone awareness on or off), so they are context values read at
+ * synth time; sizes that are plain numbers in the template stay CloudFormation parameters.
+ */
+public class DomainTopology {
+    public static final String DATA_NODES_CONTEXT_KEY = "osdfwDataNodes";
+    public static final String MASTER_NODES_CONTEXT_KEY = "osdfwDedicatedMasterNodes";
+    public static final String MASTER_NODE_TYPE_CONTEXT_KEY = "osdfwDedicatedMasterNodeType";
+    public static final String AVAILABILITY_ZONES_CONTEXT_KEY = "osdfwAvailabilityZones";
+    public static final String ULTRAWARM_NODES_CONTEXT_KEY = "osdfwUltraWarmNodes";
+    public static final String EBS_VOLUME_TYPE_CONTEXT_KEY = "osdfwEbsVolumeType";
+
+    public static final String DEFAULT_MASTER_NODE_TYPE = "m6g.large.search";
+    public static final String ULTRAWARM_NODE_TYPE = "ultrawarm1.medium.search";
+
+    private static final Set<Integer> MASTER_NODE_COUNTS = Set.of(0, 3, 5);
+
+    private final int dataNodes;
+    private final int masterNodes;
+    private final String masterNodeType;
+    private final int availabilityZones;
+    private final int ultraWarmNodes;
+    private final EbsDeviceVolumeType volumeType;
+
+    private DomainTopology(Builder builder) {
+        if (builder.dataNodes < 1) {
+            throw new IllegalArgumentException("Data node count must be at least 1, got " + builder.dataNodes);
+        }
+        if (builder.availabilityZones < 1 || builder.availabilityZones > 3) {
+            throw new IllegalArgumentException("Availability zones must be 1, 2 or 3, got " + builder.availabilityZones);
+        }
+        if (builder.dataNodes % builder.availabilityZones != 0) {
+            throw new IllegalArgumentException("Data node count " + builder.dataNodes
+                    + " must be a multiple of the availability zones (" + builder.availabilityZones + ")");
+        }
+        if (builder.ultraWarmNodes < 0 || builder.ultraWarmNodes == 1) {
+            throw new IllegalArgumentException("UltraWarm needs at least 2 nodes, or 0 to disable it, got " + builder.ultraWarmNodes);
+        }
+        // UltraWarm requires dedicated masters, three unless more were asked for
+        int masterNodes = builder.masterNodes == 0 && builder.ultraWarmNodes > 0 ? 3 : builder.masterNodes;
+        if (!MASTER_NODE_COUNTS.contains(masterNodes)) {
+            throw new IllegalArgumentException("Dedicated master node count must be 0, 3 or 5, got " + masterNodes);
+        }
+        if (builder.volumeType != EbsDeviceVolumeType.GP2 && builder.volumeType != EbsDeviceVolumeType.GP3) {
+            throw new IllegalArgumentException("EBS volume type must be gp2 or gp3, got " + builder.volumeType);
+        }
+
+        this.dataNodes = builder.dataNodes;
+        this.masterNodes = masterNodes;
+        this.masterNodeType = builder.masterNodeType.endsWith(".search") ? builder.masterNodeType : builder.masterNodeType + ".search";
+        this.availabilityZones = builder.availabilityZones;
+        this.ultraWarmNodes = builder.ultraWarmNodes;
+        this.volumeType = builder.volumeType;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static EbsDeviceVolumeType volumeTypeFromName(String name) {
+        if (name == null || name.isBlank()) {
+            return EbsDeviceVolumeType.GP3;
+        }
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "gp2":
+                return EbsDeviceVolumeType.GP2;
+            case "gp3":
+                return EbsDeviceVolumeType.GP3;
+            default:
+                throw new IllegalArgumentException("Unknown EBS volume type '" + name + "', expected one of: gp2, gp3");
+        }
+    }
+
+    public int getDataNodes() {
+        return dataNodes;
+    }
+
+    public int getMasterNodes() {
+        return masterNodes;
+    }
+
+    /**
+     * With the {@code .search} suffix OpenSearch Service expects, added if it was left out.
+     */
+    public String getMasterNodeType() {
+        return masterNodeType;
+    }
+
+    public int getAvailabilityZones() {
+        return availabilityZones;
+    }
+
+    public boolean isZoneAware() {
+        return availabilityZones > 1;
+    }
+
+    public int getUltraWarmNodes() {
+        return ultraWarmNodes;
+    }
+
+    public EbsDeviceVolumeType getVolumeType() {
+        return volumeType;
+    }
+
+    /**
+     * gp3 volumes take provisioned IOPS and throughput, gp2 derives them from the size.
+     */
+    public boolean isGp3() {
+        return volumeType == EbsDeviceVolumeType.GP3;
+    }
+
+    public static final class Builder {
+        private int dataNodes = 1;
+        private int masterNodes = 0;
+        private String masterNodeType = DEFAULT_MASTER_NODE_TYPE;
+        private int availabilityZones = 1;
+        private int ultraWarmNodes = 0;
+        private EbsDeviceVolumeType volumeType = EbsDeviceVolumeType.GP3;
+
+        public Builder dataNodes(int dataNodes) {
+            this.dataNodes = dataNodes;
+            return this;
+        }
+
+        public Builder masterNodes(int masterNodes) {
+            this.masterNodes = masterNodes;
+            return this;
+        }
+
+        public Builder masterNodeType(String masterNodeType) {
+            this.masterNodeType = masterNodeType;
+            return this;
+        }
+
+        public Builder availabilityZones(int availabilityZones) {
+            this.availabilityZones = availabilityZones;
+            return this;
+        }
+
+        public Builder ultraWarmNodes(int ultraWarmNodes) {
+            this.ultraWarmNodes = ultraWarmNodes;
+            return this;
+        }
+
+        public Builder volumeType(EbsDeviceVolumeType volumeType) {
+            this.volumeType = volumeType;
+            return this;
+        }
+
+        public DomainTopology build() {
+            return new DomainTopology(this);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.myorg;
+
+import software.amazon.awscdk.services.lambda.Architecture;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Memory and architecture of one Java function. Lambda allots CPU in proportion to memory, so memory is what
+ * buys a faster cold start and first request. Set per function with the {@value #CONTEXT_KEY} context value,
+ * entries of {@code function:memory} or {@code function:memory/architecture}, e.g.
+ * {@code -c osdfwFunctionSizing=dashboards-updater:1024,transformer:1024/x86_64}.
+ */
+public class FunctionSizing {
+    public static final String CONTEXT_KEY = "osdfwFunctionSizing";
+
+    public static final String TRANSFORMER = "transformer";
+    public static final String INDEX_SETUP = "index-setup";
+    public static final String ROLLUP = "rollup";
+    public static final String DASHBOARDS_SEEDER = "dashboards-seeder";
+    public static final String DASHBOARDS_UPDATER = "dashboards-updater";
+    public static final String REPLAY = "replay";
+    public static final String REALTIME_DETECTOR = "realtime-detector";
+    public static final String CACHE_STATS = "cache-stats";
+    public static final String REDRIVE = "redrive";
+    static final Set<String> FUNCTIONS = Set.of(TRANSFORMER, INDEX_SETUP, ROLLUP, DASHBOARDS_SEEDER, DASHBOARDS_UPDATER, REPLAY,
+            REALTIME_DETECTOR, CACHE_STATS, REDRIVE);
+
+    private final int memorySize;
+    private final Architecture architecture;
+
+    public FunctionSizing(int memorySize, Architecture architecture) {
+        if (memorySize < 128 || memorySize > 10240) {
+            throw new IllegalArgumentException("Function memory must be 128 to 10240 MB, got " + memorySize);
+        }
+        this.memorySize = memorySize;
+        this.architecture = architecture;
+    }
+
+    /**
+     * Reads {@code function:memory[/architecture]} entries; functions not listed keep their defaults.
+     */
+    public static Map<String, FunctionSizing> parse(List<String> entries) {
+        Map<String, FunctionSizing> sizing = new HashMap<>();
+        for (String entry : entries) {
+            String[] nameAndSize = entry.split(":", 2);
+            String function = nameAndSize[0].trim().toLowerCase(Locale.ROOT);
+            if (nameAndSize.length != 2 || !FUNCTIONS.contains(function)) {
+                throw new IllegalArgumentException("Function sizing entries look like function:memory[/architecture]"
+                        + " for one of " + FUNCTIONS + ", got '" + entry + "'");
+            }
+
+            String[] memoryAndArchitecture = nameAndSize[1].trim().split("/", 2);
+            sizing.put(function, new FunctionSizing(Integer.parseInt(memoryAndArchitecture[0].trim()),
+                    memoryAndArchitecture.length == 2 ? architecture(memoryAndArchitecture[1]) : Architecture.ARM_64));
+        }
+        return sizing;
+    }
+
+    private static Architecture architecture(String name) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "arm64":
+                return Architecture.ARM_64;
+            case "x86_64":
+                return Architecture.X86_64;
+            default:
+                throw new IllegalArgumentException("Function architecture must be arm64 or x86_64, got " + name);
+        }
+    }
+
+    public int getMemorySize() {
+        return memorySize;
+    }
+
+    public Architecture getArchitecture() {
+        return architecture;
+    }
+}
@@ -0,0 +1,85 @@
+package com.myorg;
+
+import software.amazon.awscdk.core.BundlingOptions;
+import software.amazon.awscdk.core.BundlingOutput;
+import software.amazon.awscdk.core.FileSystem;
+import software.amazon.awscdk.core.FingerprintOptions;
+import software.amazon.awscdk.services.lambda.Alias;
+import software.amazon.awscdk.services.lambda.CfnFunction;
+import software.amazon.awscdk.services.lambda.Code;
+import software.amazon.awscdk.services.lambda.Function;
+import software.amazon.awscdk.services.lambda.IFunction;
+import software.amazon.awscdk.services.lambda.Runtime;
+import software.amazon.awscdk.services.logs.RetentionDays;
+import software.amazon.awscdk.services.s3.assets.AssetOptions;
+import software.constructs.Construct;
+
+import java.util.List;
+
+/**
+ * Code asset for the Java functions in the {@code lambda} Maven project, and the settings every one of them
+ * shares. The shaded jar is built inside the Lambda Java build image during synth, so {@code cdk deploy}
+ * doesn't depend on a local Maven build. Tests skip the bundling by setting the {@code aws:cdk:bundling-stacks}
+ * context to an empty list.
+ */
+public final class LambdaCode {
+    public static final String LAMBDA_PROJECT_DIR = "lambda";
+    public static final String LAMBDA_JAR = "osdfw-lambda.jar";
+
+    private LambdaCode() {
+    }
+
+    public static Code javaFunctions() {
+        return Code.fromAsset(LAMBDA_PROJECT_DIR, AssetOptions.builder()
+                .exclude(List.of("target"))
+                .bundling(BundlingOptions.builder()
+                        .image(Runtime.JAVA_11.getBundlingImage())
+                        .command(List.of("/bin/sh", "-c",
+                                "mvn -q package -DskipTests && cp target/" + LAMBDA_JAR + " /asset-output/"))
+                        .user("root")
+                        .outputType(BundlingOutput.ARCHIVED)
+                        .build())
+                .build());
+    }
+
+    /**
+     * Fingerprint of the {@code lambda} sources, the same files the code asset is hashed from. A custom resource
+     * carrying it as a property gets an Update whenever the code behind it changes, which the service token alone
+     * doesn't cause: the function ARN stays the same when only its code does.
+     */
+    public static String sourceHash() {
+        return FileSystem.fingerprint(LAMBDA_PROJECT_DIR, FingerprintOptions.builder()
+                .exclude(List.of("target"))
+                .build());
+    }
+
+    /**
+     * A function running one of the handlers in the shaded jar, sized as configured for {@code function}.
+     */
+    public static Function.Builder javaFunction(Construct scope, String id, String function, int defaultMemorySize,
+                                                StreamStackProps props) {
+        FunctionSizing sizing = props.getFunctionSizing(function, defaultMemorySize);
+        return Function.Builder.create(scope, id)
+                .architecture(sizing.getArchitecture())
+                .memorySize(sizing.getMemorySize())
+                .logRetention(RetentionDays.ONE_MONTH)
+                .code(javaFunctions())
+                .runtime(Runtime.JAVA_11);
+    }
+
+    /**
+     * What event sources, custom resources and Firehose should invoke: the function itself, or with SnapStart a
+     * "live" alias of its current version, since only published versions are restored from a snapshot.
+     */
+    public static IFunction invocationTarget(Function function, LambdaPackaging packaging) {
+        if (packaging != LambdaPackaging.SNAPSTART) {
+            return function;
+        }
+        // the CDK version at hand predates the SnapStart property
+        ((CfnFunction) function.getNode().getDefaultChild()).addPropertyOverride("SnapStart.ApplyOn", "PublishedVersions");
+        return Alias.Builder.create(function, "Live")
+                .aliasName("live")
+                .version(function.getCurrentVersion())
+                .build();
+    }
+}
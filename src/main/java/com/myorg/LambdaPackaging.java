@@ -0,0 +1,45 @@
+package com.myorg;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * How the Java functions are started. Every handler primes itself in its constructor, so either way the first
+ * request finds the JSON, SigV4 and TLS paths loaded; with SnapStart Lambda snapshots the primed JVM when a
+ * version is published and restores it instead of running init again.
+ */
+public enum LambdaPackaging {
+    // init runs on every cold start
+    STANDARD("standard"),
+    // SnapStart on published versions; invokers call a "live" alias of the current version
+    SNAPSTART("snapstart");
+
+    public static final String CONTEXT_KEY = "osdfwLambdaPackaging";
+
+    private final String packagingName;
+
+    LambdaPackaging(String packagingName) {
+        this.packagingName = packagingName;
+    }
+
+    public static LambdaPackaging fromName(String name) {
+        if (name == null || name.isBlank()) {
+            return STANDARD;
+        }
+
+        String normalised = name.trim().toLowerCase(Locale.ROOT);
+        for (LambdaPackaging packaging : values()) {
+            if (packaging.packagingName.equals(normalised)) {
+                return packaging;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown Lambda packaging '" + name + "', expected one of: "
+                + Arrays.stream(values()).map(LambdaPackaging::getPackagingName).collect(Collectors.joining(", ")));
+    }
+
+    public String getPackagingName() {
+        return packagingName;
+    }
+}
@@ -0,0 +1,235 @@
+package com.myorg;
+
+import software.amazon.awscdk.core.Construct;
+import software.amazon.awscdk.core.RemovalPolicy;
+import software.amazon.awscdk.core.Stack;
+import software.amazon.awscdk.services.glue.CfnDatabase;
+import software.amazon.awscdk.services.glue.CfnTable;
+import software.amazon.awscdk.services.iam.IRole;
+import software.amazon.awscdk.services.kinesisfirehose.CfnDeliveryStream;
+import software.amazon.awscdk.services.logs.LogGroup;
+import software.amazon.awscdk.services.logs.LogStream;
+import software.amazon.awscdk.services.s3.Bucket;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Parquet archive of the WAF logs for Athena: a delivery stream that converts the transformed records to
+ * Parquet and partitions them by day, hour, WebACL name and action, and the Glue table describing them.
+ * The table projects its partitions, so queries prune by the partition columns without a crawler or
+ * {@code MSCK REPAIR}; the WebACL is injected and has to be named in the query.
+ * Firehose only converts and partitions for plain S3 destinations, so this stream is fed by the rollup
+ * function, which reads every backup object of the OpenSearch streams anyway.
+ */
+public class LogArchive extends Construct {
+    public static final String CONTEXT_KEY = "osdfwParquetArchive";
+    public static final String DELIVERY_STREAM_NAME = "osdfw-waf-archive";
+    public static final String TABLE_NAME = "waf_logs";
+    public static final String PREFIX = "waf-archive/";
+    public static final List<String> PARTITION_KEYS = List.of("day", "hour", "webacl", "action");
+
+    // WebACL ARNs end in <name>/<id>; WAF Classic ids have no slashes and are their own partition
+    static final String PARTITION_QUERY = "{day: (.timestamp / 1000 | floor | strftime(\"%Y-%m-%d\")),"
+            + " hour: (.timestamp / 1000 | floor | strftime(\"%H\")),"
+            + " webacl: (.webaclId | split(\"/\") | if length > 1 then .[-2] else .[0] end),"
+            + " action: .action}";
+
+    // the transformed record, see WafLogTransformer and LogIndexTemplate in the lambda project
+    private static final Map<String, String> RECORD_COLUMNS = columnsOf(
+            "timestamp", "bigint",
+            "formatversion", "int",
+            "webaclid", "string",
+            "terminatingruleid", "string",
+            "terminatingruletype", "string",
+            "terminatingrulematchdetails", "array<struct<conditiontype:string,sensitivitylevel:string,location:string,matcheddata:array<string>>>",
+            "httpsourcename", "string",
+            "httpsourceid", "string",
+            "rulegrouplist", "array<struct<rulegroupid:string,terminatingrule:struct<ruleid:string,action:string>,"
+                    + "nonterminatingmatchingrules:array<struct<ruleid:string,action:string>>,excludedrules:string>>",
+            "ratebasedrulelist", "array<struct<ratebasedruleid:string,ratebasedrulename:string,limitkey:string,maxrateallowed:bigint>>",
+            "nonterminatingmatchingrules", "array<struct<ruleid:string,action:string>>",
+            "responsecodesent", "string",
+            "httprequest", "struct<clientip:string,country:string,headers:%s,uri:string,args:string,"
+                    + "httpversion:string,httpmethod:string,requestid:string>",
+            "labels", "array<struct<name:string>>",
+            "sampleweight", "float",
+            "accountid", "string",
+            "client", "struct<asn:bigint,asorg:string,country:string,region:string,reputation:array<string>>");
+
+    private final CfnDatabase database;
+    private final CfnTable table;
+    private final CfnDeliveryStream deliveryStream;
+
+    /**
+     * @param flattenHeaders the headers the transformer flattens into a name to value object; without any, the
+     *                       records keep WAF's name/value array
+     */
+    public LogArchive(Construct scope, String id, Bucket bucket, IRole firehoseRole, LogGroup logGroup,
+                      List<String> flattenHeaders) {
+        super(scope, id);
+        Stack stack = Stack.of(this);
+
+        this.database = CfnDatabase.Builder.create(this, "osdfwArchiveDatabase")
+                .catalogId(stack.getAccount())
+                .databaseInput(CfnDatabase.DatabaseInputProperty.builder()
+                        .description("AWS WAF Dashboards Solution log archive")
+                        .build())
+                .build();
+
+        String location = "s3://" + bucket.getBucketName() + "/" + PREFIX;
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("classification", "parquet");
+        parameters.put("projection.enabled", "true");
+        parameters.put("projection.day.type", "date");
+        parameters.put("projection.day.format", "yyyy-MM-dd");
+        parameters.put("projection.day.range", "NOW-3YEARS,NOW");
+        parameters.put("projection.day.interval", "1");
+        parameters.put("projection.day.interval.unit", "DAYS");
+        parameters.put("projection.hour.type", "integer");
+        parameters.put("projection.hour.range", "0,23");
+        parameters.put("projection.hour.digits", "2");
+        parameters.put("projection.webacl.type", "injected");
+        parameters.put("projection.action.type", "enum");
+        parameters.put("projection.action.values", "ALLOW,BLOCK,COUNT,CAPTCHA,CHALLENGE,EXCLUDED_AS_COUNT");
+        parameters.put("storage.location.template", location + PARTITION_KEYS.stream()
+                .map(key -> key + "=${" + key + "}")
+                .collect(Collectors.joining("/")) + "/");
+
+        this.table = CfnTable.Builder.create(this, "osdfwArchiveTable")
+                .catalogId(stack.getAccount())
+                .databaseName(this.database.getRef())
+                .tableInput(CfnTable.TableInputProperty.builder()
+                        .name(TABLE_NAME)
+                        .description("WAF logs archived by the osdfw delivery streams")
+                        .tableType("EXTERNAL_TABLE")
+                        .parameters(parameters)
+                        .partitionKeys(PARTITION_KEYS.stream()
+                                .map(key -> CfnTable.ColumnProperty.builder().name(key).type("string").build())
+                                .collect(Collectors.toList()))
+                        .storageDescriptor(CfnTable.StorageDescriptorProperty.builder()
+                                .location(location)
+                                .inputFormat("org.apache.hadoop.hive.ql.io.parquet.MapredParquetInputFormat")
+                                .outputFormat("org.apache.hadoop.hive.ql.io.parquet.MapredParquetOutputFormat")
+                                .serdeInfo(CfnTable.SerdeInfoProperty.builder()
+                                        .serializationLibrary("org.apache.hadoop.hive.ql.io.parquet.serde.ParquetHiveSerDe")
+                                        .build())
+                                .columns(columns(flattenHeaders).entrySet().stream()
+                                        .map(column -> CfnTable.ColumnProperty.builder()
+                                                .name(column.getKey())
+                                                .type(column.getValue())
+                                                .build())
+                                        .collect(Collectors.toList()))
+                                .build())
+                        .build())
+                .build();
+
+        LogStream logStream = LogStream.Builder.create(this, "osdfwArchiveDelivery")
+                .logGroup(logGroup)
+                .removalPolicy(RemovalPolicy.DESTROY)
+                .build();
+
+        this.deliveryStream = CfnDeliveryStream.Builder.create(this, "osdfwWafArchiveDeliveryStream")
+                .deliveryStreamName(DELIVERY_STREAM_NAME)
+                .deliveryStreamType("DirectPut")
+                .extendedS3DestinationConfiguration(CfnDeliveryStream.ExtendedS3DestinationConfigurationProperty.builder()
+                        .bucketArn(bucket.getBucketArn())
+                        .roleArn(firehoseRole.getRoleArn())
+                        .prefix(PREFIX + PARTITION_KEYS.stream()
+                                .map(key -> key + "=!{partitionKeyFromQuery:" + key + "}")
+                                .collect(Collectors.joining("/")) + "/")
+                        .errorOutputPrefix("waf-archive-failed/!{firehose:error-output-type}/!{timestamp:yyyy/MM/dd}/")
+                        // dynamic partitioning and format conversion both want buffers of 64 MB and up
+                        .bufferingHints(CfnDeliveryStream.BufferingHintsProperty.builder()
+                                .intervalInSeconds(300)
+                                .sizeInMBs(128)
+                                .build())
+                        // Parquet compresses its own pages
+                        .compressionFormat("UNCOMPRESSED")
+                        .dynamicPartitioningConfiguration(CfnDeliveryStream.DynamicPartitioningConfigurationProperty.builder()
+                                .enabled(true)
+                                .retryOptions(CfnDeliveryStream.RetryOptionsProperty.builder()
+                                        .durationInSeconds(300)
+                                        .build())
+                                .build())
+                        .processingConfiguration(CfnDeliveryStream.ProcessingConfigurationProperty.builder()
+                                .enabled(true)
+                                .processors(List.of(CfnDeliveryStream.ProcessorProperty.builder()
+                                        .type("MetadataExtraction")
+                                        .parameters(List.of(
+                                                CfnDeliveryStream.ProcessorParameterProperty.builder()
+                                                        .parameterName("MetadataExtractionQuery")
+                                                        .parameterValue(PARTITION_QUERY)
+                                                        .build(),
+                                                CfnDeliveryStream.ProcessorParameterProperty.builder()
+                                                        .parameterName("JsonParsingEngine")
+                                                        .parameterValue("JQ-1.6")
+                                                        .build()))
+                                        .build()))
+                                .build())
+                        .dataFormatConversionConfiguration(CfnDeliveryStream.DataFormatConversionConfigurationProperty.builder()
+                                .enabled(true)
+                                .inputFormatConfiguration(CfnDeliveryStream.InputFormatConfigurationProperty.builder()
+                                        .deserializer(CfnDeliveryStream.DeserializerProperty.builder()
+                                                .openXJsonSerDe(CfnDeliveryStream.OpenXJsonSerDeProperty.builder().build())
+                                                .build())
+                                        .build())
+                                .outputFormatConfiguration(CfnDeliveryStream.OutputFormatConfigurationProperty.builder()
+                                        .serializer(CfnDeliveryStream.SerializerProperty.builder()
+                                                .parquetSerDe(CfnDeliveryStream.ParquetSerDeProperty.builder()
+                                                        .compression("SNAPPY")
+                                                        .build())
+                                                .build())
+                                        .build())
+                                .schemaConfiguration(CfnDeliveryStream.SchemaConfigurationProperty.builder()
+                                        .catalogId(stack.getAccount())
+                                        .databaseName(this.database.getRef())
+                                        .tableName(TABLE_NAME)
+                                        .region(stack.getRegion())
+                                        .roleArn(firehoseRole.getRoleArn())
+                                        .versionId("LATEST")
+                                        .build())
+                                .build())
+                        .cloudWatchLoggingOptions(CfnDeliveryStream.CloudWatchLoggingOptionsProperty.builder()
+                                .enabled(true)
+                                .logGroupName(logGroup.getLogGroupName())
+                                .logStreamName(logStream.getLogStreamName())
+                                .build())
+                        .build())
+                .build();
+        // Firehose reads the schema when the stream is created
+        this.deliveryStream.addDependsOn(this.table);
+    }
+
+    /**
+     * The table columns for records transformed with {@code flattenHeaders}.
+     */
+    static Map<String, String> columns(List<String> flattenHeaders) {
+        Map<String, String> columns = new LinkedHashMap<>(RECORD_COLUMNS);
+        columns.put("httprequest", String.format(columns.get("httprequest"),
+                flattenHeaders.isEmpty() ? "array<struct<name:string,value:string>>" : "map<string,string>"));
+        return columns;
+    }
+
+    private static Map<String, String> columnsOf(String... namesAndTypes) {
+        Map<String, String> columns = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndTypes.length; i += 2) {
+            columns.put(namesAndTypes[i], namesAndTypes[i + 1]);
+        }
+        return columns;
+    }
+
+    public CfnDatabase getDatabase() {
+        return database;
+    }
+
+    public CfnTable getTable() {
+        return table;
+    }
+
+    public CfnDeliveryStream getDeliveryStream() {
+        return deliveryStream;
+    }
+}
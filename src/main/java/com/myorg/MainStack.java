@@ -3,29 +3,56 @@ package com.myorg;
 
 import software.amazon.awscdk.core.*;
 import software.amazon.awscdk.services.cognito.*;
-import software.amazon.awscdk.services.ec2.EbsDeviceVolumeType;
 import software.amazon.awscdk.services.ec2.InstanceClass;
 import software.amazon.awscdk.services.ec2.InstanceSize;
 import software.amazon.awscdk.services.ec2.InstanceType;
 import software.amazon.awscdk.services.iam.*;
 import software.amazon.awscdk.services.opensearchservice.*;
+import software.amazon.awscdk.services.sns.Topic;
+import software.amazon.awscdk.services.sns.subscriptions.EmailSubscription;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 public class MainStack extends Stack {
+    // instance families that support EBS volumes and UltraWarm, without the ".search" suffix
+    static final List<String> DATA_NODE_TYPES = List.of(
+            "m6g.large", "m6g.xlarge", "m6g.2xlarge", "m6g.4xlarge",
+            "c6g.large", "c6g.xlarge", "c6g.2xlarge", "c6g.4xlarge",
+            "r6g.large", "r6g.xlarge", "r6g.2xlarge", "r6g.4xlarge", "r6g.8xlarge");
+    public static final String ALARM_EMAIL_CONTEXT_KEY = "osdfwAlarmEmail";
+
     private Domain openSearchDomain;
     private CfnParameter dataNodeEBSVolumeSize;
+    private CfnParameter dataNodeEBSIops;
+    private CfnParameter dataNodeEBSThroughput;
     private CfnParameter nodeType;
     private CfnParameter openSearchDomainName;
     private CfnParameter userEmail;
     private CfnParameter cognitoDomainName;
+    private CfnParameter dailyIngestGb;
+    private CfnParameter indexWarmAfterDays;
+    private CfnParameter indexRetentionDays;
+    private CfnParameter rolloverDocCount;
+    private DomainTopology topology;
 
     private UserPool userPool;
     private CfnIdentityPool identityPool;
     private Role cognitoUserRole;
     private Role authenticatedUserRole;
 
+    private Topic alarmTopic;
+
+    private StreamStack streamStack;
+    private AppStack appStack;
+    private PipelineMonitoring monitoring;
+
 
     public MainStack(final Construct scope, final String id) {
         this(scope, id, null);
@@ -36,13 +63,48 @@ public class MainStack extends Stack {
 
         createParameters();
 
+        this.topology = DomainTopology.builder()
+                .dataNodes(Integer.parseInt(contextAsString(DomainTopology.DATA_NODES_CONTEXT_KEY, "1")))
+                .masterNodes(Integer.parseInt(contextAsString(DomainTopology.MASTER_NODES_CONTEXT_KEY, "0")))
+                .masterNodeType(contextAsString(DomainTopology.MASTER_NODE_TYPE_CONTEXT_KEY, DomainTopology.DEFAULT_MASTER_NODE_TYPE))
+                .availabilityZones(Integer.parseInt(contextAsString(DomainTopology.AVAILABILITY_ZONES_CONTEXT_KEY, "1")))
+                .ultraWarmNodes(Integer.parseInt(contextAsString(DomainTopology.ULTRAWARM_NODES_CONTEXT_KEY, "0")))
+                .volumeType(DomainTopology.volumeTypeFromName(contextAsString(DomainTopology.EBS_VOLUME_TYPE_CONTEXT_KEY)))
+                .build();
+
         configureCognito();
 
         deployOpenSearch();
 
-        StreamStackProps streamStackProps = new StreamStackProps(this.openSearchDomain);
-        new StreamStack(this, "Stream", streamStackProps);
-        new AppStack(this, "App", streamStackProps);
+        createAlarmTopic();
+
+        StreamStackProps streamStackProps = deliveryProps(this.getNode())
+                .openSearchDomain(this.openSearchDomain)
+                .dataNodeCount(this.topology.getDataNodes())
+                .ultraWarm(this.topology.getUltraWarmNodes() > 0)
+                .dailyIngestGb(this.dailyIngestGb.getValueAsNumber())
+                .indexWarmAfterDays(this.indexWarmAfterDays.getValueAsNumber())
+                .indexRetentionDays(this.indexRetentionDays.getValueAsNumber())
+                .rolloverDocCount(this.rolloverDocCount.getValueAsNumber())
+                .rollupTopN(Integer.parseInt(contextAsString(StreamStack.ROLLUP_TOP_N_CONTEXT_KEY,
+                        String.valueOf(StreamStackProps.DEFAULT_ROLLUP_TOP_N))))
+                .dashboardsMemorySize(Integer.parseInt(contextAsString(AppStack.DASHBOARDS_MEMORY_CONTEXT_KEY,
+                        String.valueOf(StreamStackProps.DEFAULT_DASHBOARDS_MEMORY_SIZE))))
+                .dashboardsTimeoutSeconds(Integer.parseInt(contextAsString(AppStack.DASHBOARDS_TIMEOUT_CONTEXT_KEY,
+                        String.valueOf(StreamStackProps.DEFAULT_DASHBOARDS_TIMEOUT_SECONDS))))
+                .parquetArchive(Boolean.parseBoolean(contextAsString(LogArchive.CONTEXT_KEY, "false")))
+                .alarmTopic(this.alarmTopic)
+                .spokeAccounts(contextAsList(SpokeStack.SPOKE_ACCOUNTS_CONTEXT_KEY))
+                .build();
+        this.streamStack = new StreamStack(this, "Stream", streamStackProps);
+        this.appStack = new AppStack(this, "App", streamStackProps);
+
+        this.monitoring = new PipelineMonitoring(this, "osdfwMonitoring", this.openSearchDomain,
+                IntStream.range(0, streamStackProps.getShardCount())
+                        .mapToObj(shard -> StreamStack.deliveryStreamName(shard, streamStackProps.getShardCount()))
+                        .collect(Collectors.toList()),
+                streamStackProps.getAlarmThresholds(), this.alarmTopic);
+        this.monitoring.addRequestCacheStats(streamStackProps);
 
         CfnOutput.Builder.create(this, "osdfwDashLink")
                 .description("Your link to the OpenSearch WAF Dashboard")
@@ -58,11 +120,27 @@ public class MainStack extends Stack {
                 .description("OpenSearch volume disk size")
                 .build();
 
-        //todo add dropdown and OS setup
+        this.dataNodeEBSIops = CfnParameter.Builder.create(this, "osdfwOsEbsIops")
+                .type("Number")
+                .defaultValue("3000")
+                .minValue(3000)
+                .maxValue(16000)
+                .description("Provisioned IOPS per data node volume, gp3 only")
+                .build();
+
+        this.dataNodeEBSThroughput = CfnParameter.Builder.create(this, "osdfwOsEbsThroughput")
+                .type("Number")
+                .defaultValue("125")
+                .minValue(125)
+                .maxValue(1000)
+                .description("Provisioned throughput in MiB/s per data node volume, gp3 only")
+                .build();
+
         this.nodeType = CfnParameter.Builder.create(this, "osdfwOsNodeSize")
                 .type("String")
                 .defaultValue(InstanceType.of(InstanceClass.MEMORY6_GRAVITON, InstanceSize.LARGE).toString())
-                .description("OpenSearch Node type")
+                .allowedValues(DATA_NODE_TYPES)
+                .description("OpenSearch data node type")
                 .build();
 
         this.openSearchDomainName = CfnParameter.Builder.create(this, "osdfwOsDomainName")
@@ -83,6 +161,52 @@ public class MainStack extends Stack {
                 //todo lowercase only allowed
                 .description("Name for Cognito Domain")
                 .build();
+
+        this.dailyIngestGb = CfnParameter.Builder.create(this, "osdfwDailyIngestGB")
+                .type("Number")
+                .defaultValue(String.valueOf(StreamStackProps.DEFAULT_DAILY_INGEST_GB))
+                .minValue(0.001)
+                .description("Expected WAF log volume per day in GB, sizes the shards of the log indices")
+                .build();
+
+        this.indexWarmAfterDays = CfnParameter.Builder.create(this, "osdfwIndexWarmAfterDays")
+                .type("Number")
+                .defaultValue(String.valueOf(StreamStackProps.DEFAULT_INDEX_WARM_AFTER_DAYS))
+                .minValue(0)
+                .description("Days after which log indices are force merged and made read-only, or moved to UltraWarm")
+                .build();
+
+        this.indexRetentionDays = CfnParameter.Builder.create(this, "osdfwIndexRetentionDays")
+                .type("Number")
+                .defaultValue(String.valueOf(StreamStackProps.DEFAULT_INDEX_RETENTION_DAYS))
+                .minValue(1)
+                .description("Days after which log indices are deleted")
+                .build();
+
+        this.rolloverDocCount = CfnParameter.Builder.create(this, "osdfwRolloverDocCount")
+                .type("Number")
+                .defaultValue("0")
+                .minValue(0)
+                .description("Roll log indices over after this many documents as well as by size, 0 to roll over by size only")
+                .build();
+    }
+
+    /**
+     * Topic every pipeline alarm notifies, subscribed to by the {@value #ALARM_EMAIL_CONTEXT_KEY} address when given.
+     */
+    private void createAlarmTopic() {
+        this.alarmTopic = Topic.Builder.create(this, "osdfwAlarmTopic")
+                .displayName("AWS WAF Dashboards Solution alarms")
+                .build();
+        String alarmEmail = contextAsString(ALARM_EMAIL_CONTEXT_KEY);
+        if (alarmEmail != null && !alarmEmail.isBlank()) {
+            this.alarmTopic.addSubscription(new EmailSubscription(alarmEmail.trim()));
+        }
+
+        CfnOutput.Builder.create(this, "osdfwAlarmTopicArn")
+                .description("SNS topic of the pipeline alarms")
+                .value(this.alarmTopic.getTopicArn())
+                .build();
     }
 
     private void deployOpenSearch() {
@@ -101,19 +225,49 @@ public class MainStack extends Stack {
                                 this)))
                 .build();
 
+        List<PolicyStatement> accessPolicies = new ArrayList<>(List.of(openSearchPolicy));
+        List<String> spokeAccounts = contextAsList(SpokeStack.SPOKE_ACCOUNTS_CONTEXT_KEY);
+        if (!spokeAccounts.isEmpty()) {
+            // the spokes' Firehose delivery roles, by name: the roles may not exist yet when the hub deploys
+            accessPolicies.add(PolicyStatement.Builder.create()
+                    .effect(Effect.ALLOW)
+                    .principals(spokeAccounts.stream().<IPrincipal>map(AccountPrincipal::new).collect(Collectors.toList()))
+                    .actions(List.of("es:ESHttpGet", "es:ESHttpPost", "es:ESHttpPut"))
+                    .resources(Collections.singletonList(
+                            Arn.format(
+                                    ArnComponents.builder()
+                                            .service("es")
+                                            .resource("domain")
+                                            .resourceName(openSearchDomainName.getValueAsString() + "/*").build(),
+                                    this)))
+                    .conditions(SpokeStack.deliveryRoleCondition(spokeAccounts))
+                    .build());
+        }
+
+        CapacityConfig.Builder capacity = CapacityConfig.builder()
+                .masterNodes(this.topology.getMasterNodes())
+                .dataNodes(this.topology.getDataNodes())
+                .warmNodes(this.topology.getUltraWarmNodes())
+                .dataNodeInstanceType(openSearchInstanceType);
+        if (this.topology.getMasterNodes() > 0) {
+            capacity.masterNodeInstanceType(this.topology.getMasterNodeType());
+        }
+        if (this.topology.getUltraWarmNodes() > 0) {
+            capacity.warmInstanceType(DomainTopology.ULTRAWARM_NODE_TYPE);
+        }
+
         this.openSearchDomain = Domain.Builder.create(this, "osdfwOpensearchDomain")
                 .domainName(openSearchDomainName.getValueAsString())
                 .version(EngineVersion.OPENSEARCH_1_0)
-                .capacity(CapacityConfig.builder()
-                        .masterNodes(0)
-                        .dataNodes(1)
-                        .warmNodes(0)
-                        .dataNodeInstanceType("r6g.large.search") //todo bug? passing param doesn't work
+                .capacity(capacity.build())
+                .zoneAwareness(ZoneAwarenessConfig.builder()
+                        .enabled(this.topology.isZoneAware())
+                        .availabilityZoneCount(this.topology.isZoneAware() ? this.topology.getAvailabilityZones() : null)
                         .build())
                 .ebs(EbsOptions.builder()
                         .enabled(true)
                         .volumeSize(dataNodeEBSVolumeSize.getValueAsNumber())
-                        .volumeType(EbsDeviceVolumeType.GP2)
+                        .volumeType(this.topology.getVolumeType())
                         .build())
                 .automatedSnapshotStartHour(0)
                 .cognitoDashboardsAuth(CognitoOptions.builder()
@@ -121,11 +275,87 @@ public class MainStack extends Stack {
                         .userPoolId(this.userPool.getUserPoolId())
                         .role(this.cognitoUserRole)
                         .build())
-                .accessPolicies(Collections.singletonList(openSearchPolicy))
+                .accessPolicies(accessPolicies)
                 .removalPolicy(RemovalPolicy.DESTROY)
                 .build();
 
+        if (this.topology.isGp3()) {
+            // the Domain construct only renders IOPS for io1 and has no throughput property
+            CfnDomain cfnDomain = (CfnDomain) this.openSearchDomain.getNode().getDefaultChild();
+            cfnDomain.addPropertyOverride("EBSOptions.Iops", dataNodeEBSIops.getValueAsNumber());
+            cfnDomain.addPropertyOverride("EBSOptions.Throughput", dataNodeEBSThroughput.getValueAsNumber());
+        }
+    }
+
+    /**
+     * What the delivery streams and their transformer are configured with, shared by this stack and the
+     * {@link SpokeStack}.
+     */
+    static StreamStackProps.Builder deliveryProps(ConstructNode node) {
+        StreamStackProps.Builder builder = StreamStackProps.builder()
+                .throughputProfile(ThroughputProfile.fromName(contextAsString(node, ThroughputProfile.CONTEXT_KEY, null)))
+                .shardCount(Integer.parseInt(contextAsString(node, StreamStack.SHARD_COUNT_CONTEXT_KEY, "1")))
+                .webAclNames(contextEntries(node.tryGetContext(StreamStack.WEB_ACLS_CONTEXT_KEY)))
+                .transformDropFields(contextEntries(node.tryGetContext(StreamStack.TRANSFORM_DROP_FIELDS_CONTEXT_KEY)))
+                .transformSampleRates(contextEntries(node.tryGetContext(StreamStack.TRANSFORM_SAMPLE_RATES_CONTEXT_KEY)))
+                .enrichmentDatabase(contextAsString(node, StreamStack.ENRICHMENT_DATABASE_CONTEXT_KEY, null))
+                .realtimeShards(Integer.parseInt(contextAsString(node, RealtimeDetection.SHARDS_CONTEXT_KEY, "0")))
+                .realtimeThresholds(contextEntries(node.tryGetContext(RealtimeDetection.THRESHOLDS_CONTEXT_KEY)))
+                .lambdaPackaging(LambdaPackaging.fromName(contextAsString(node, LambdaPackaging.CONTEXT_KEY, null)))
+                .functionSizing(FunctionSizing.parse(contextEntries(node.tryGetContext(FunctionSizing.CONTEXT_KEY))))
+                .alarmThresholds(AlarmThresholds.parse(contextEntries(node.tryGetContext(AlarmThresholds.CONTEXT_KEY))));
+        if (node.tryGetContext(StreamStack.TRANSFORM_FLATTEN_HEADERS_CONTEXT_KEY) != null) {
+            builder.transformFlattenHeaders(contextEntries(node.tryGetContext(StreamStack.TRANSFORM_FLATTEN_HEADERS_CONTEXT_KEY)));
+        }
+        return builder;
+    }
+
+    private String contextAsString(String key) {
+        return contextAsString(key, null);
+    }
+
+    private String contextAsString(String key, String defaultValue) {
+        return contextAsString(this.getNode(), key, defaultValue);
+    }
+
+    static String contextAsString(ConstructNode node, String key, String defaultValue) {
+        Object value = node.tryGetContext(key);
+        return value == null ? defaultValue : String.valueOf(value);
+    }
+
+    private List<String> contextAsList(String key) {
+        return contextEntries(this.getNode().tryGetContext(key));
+    }
+
+    //values passed with -c arrive as a comma separated string, values from cdk.json may be a JSON array
+    static List<String> contextEntries(Object value) {
+        if (value == null) {
+            return Collections.emptyList();
+        }
+
+        Stream<String> entries = value instanceof List
+                ? ((List<?>) value).stream().map(String::valueOf)
+                : Arrays.stream(String.valueOf(value).split(","));
+
+        return entries.map(String::trim)
+                .filter(entry -> !entry.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    public StreamStack getStreamStack() {
+        return streamStack;
+    }
+
+    public AppStack getAppStack() {
+        return appStack;
+    }
+
+    public Domain getOpenSearchDomain() {
+        return openSearchDomain;
+    }
 
+    public PipelineMonitoring getMonitoring() {
+        return monitoring;
     }
 
     public void configureCognito() {
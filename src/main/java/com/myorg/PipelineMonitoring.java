@@ -0,0 +1,205 @@
+package com.myorg;
+
+import software.amazon.awscdk.core.Construct;
+import software.amazon.awscdk.core.Duration;
+import software.amazon.awscdk.services.cloudwatch.Alarm;
+import software.amazon.awscdk.services.cloudwatch.ComparisonOperator;
+import software.amazon.awscdk.services.cloudwatch.Dashboard;
+import software.amazon.awscdk.services.cloudwatch.GraphWidget;
+import software.amazon.awscdk.services.cloudwatch.HorizontalAnnotation;
+import software.amazon.awscdk.services.cloudwatch.IMetric;
+import software.amazon.awscdk.services.cloudwatch.MathExpression;
+import software.amazon.awscdk.services.cloudwatch.Metric;
+import software.amazon.awscdk.services.cloudwatch.MetricOptions;
+import software.amazon.awscdk.services.cloudwatch.TreatMissingData;
+import software.amazon.awscdk.services.cloudwatch.actions.SnsAction;
+import software.amazon.awscdk.services.events.Rule;
+import software.amazon.awscdk.services.events.Schedule;
+import software.amazon.awscdk.services.events.targets.LambdaFunction;
+import software.amazon.awscdk.services.lambda.Function;
+import software.amazon.awscdk.services.opensearchservice.Domain;
+import software.amazon.awscdk.services.sns.ITopic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * CloudWatch dashboard of the ingest pipeline and the alarms on the OpenSearch domain. The alarms on the
+ * delivery streams are created next to the streams, in the {@link StreamStack}, with {@link #deliveryAlarms}.
+ * Every alarm looks at five minute periods and fires after three breaching ones, so a single slow buffer
+ * flush or a short burst of rejections that Firehose retries through doesn't page anyone.
+ */
+public class PipelineMonitoring extends Construct {
+    public static final String DASHBOARD_NAME = "osdfw-pipeline";
+    static final Duration PERIOD = Duration.minutes(5);
+    static final int EVALUATION_PERIODS = 3;
+    // node stats are cumulative, so the rate only decides how finely the counts are split over time
+    static final Duration REQUEST_CACHE_STATS_RATE = Duration.minutes(1);
+
+    private final Domain domain;
+    private final List<Alarm> domainAlarms = new ArrayList<>();
+    private final Dashboard dashboard;
+
+    public PipelineMonitoring(Construct scope, String id, Domain domain, List<String> deliveryStreamNames,
+                              AlarmThresholds thresholds, ITopic topic) {
+        super(scope, id);
+        this.domain = domain;
+
+        MetricOptions maximum = MetricOptions.builder().statistic("Maximum").period(PERIOD).build();
+        IMetric writeRejected = domain.metric("ThreadpoolWriteRejected", maximum);
+        IMetric jvmMemoryPressure = domain.metricJVMMemoryPressure(maximum);
+        IMetric indexingLatency = domain.metricIndexingLatency(MetricOptions.builder().statistic("Average").period(PERIOD).build());
+        IMetric freeStorage = domain.metricFreeStorageSpace(MetricOptions.builder().statistic("Minimum").period(PERIOD).build());
+
+        this.domainAlarms.add(alarm(this, "osdfwWriteRejectedAlarm", writeRejected,
+                thresholds.get(AlarmThresholds.WRITE_REJECTED), ComparisonOperator.GREATER_THAN_THRESHOLD,
+                "OpenSearch is rejecting bulk writes, Firehose is retrying them", topic));
+        this.domainAlarms.add(alarm(this, "osdfwJvmMemoryPressureAlarm", jvmMemoryPressure,
+                thresholds.get(AlarmThresholds.JVM_MEMORY_PRESSURE), ComparisonOperator.GREATER_THAN_OR_EQUAL_TO_THRESHOLD,
+                "OpenSearch data node heap is nearly full", topic));
+        this.domainAlarms.add(alarm(this, "osdfwIndexingLatencyAlarm", indexingLatency,
+                thresholds.get(AlarmThresholds.INDEXING_LATENCY), ComparisonOperator.GREATER_THAN_THRESHOLD,
+                "OpenSearch indexing is slow", topic));
+        this.domainAlarms.add(alarm(this, "osdfwFreeStorageAlarm", freeStorage,
+                thresholds.get(AlarmThresholds.FREE_STORAGE), ComparisonOperator.LESS_THAN_OR_EQUAL_TO_THRESHOLD,
+                "OpenSearch data node is running out of disk", topic));
+
+        this.dashboard = Dashboard.Builder.create(this, "osdfwPipelineDashboard")
+                .dashboardName(DASHBOARD_NAME)
+                .build();
+        this.dashboard.addWidgets(
+                graph("Data freshness (s)", deliveryMetrics(deliveryStreamNames, "DeliveryToElasticsearch.DataFreshness", "Maximum"),
+                        thresholds.get(AlarmThresholds.DATA_FRESHNESS)),
+                graph("Delivery success", deliveryMetrics(deliveryStreamNames, "DeliveryToElasticsearch.Success", "Average"),
+                        thresholds.get(AlarmThresholds.DELIVERY_SUCCESS)),
+                graph("Delivered bytes", deliveryMetrics(deliveryStreamNames, "DeliveryToElasticsearch.Bytes", "Sum"), null),
+                graph("Throttled records", deliveryMetrics(deliveryStreamNames, "ThrottledRecords", "Sum"),
+                        thresholds.get(AlarmThresholds.THROTTLED_RECORDS)));
+        this.dashboard.addWidgets(
+                graph("Write thread pool rejections", List.of(writeRejected), thresholds.get(AlarmThresholds.WRITE_REJECTED)),
+                graph("JVM memory pressure (%)", List.of(jvmMemoryPressure), thresholds.get(AlarmThresholds.JVM_MEMORY_PRESSURE)),
+                graph("Indexing latency (ms)", List.of(indexingLatency), thresholds.get(AlarmThresholds.INDEXING_LATENCY)),
+                graph("Free storage (MB)", List.of(freeStorage), thresholds.get(AlarmThresholds.FREE_STORAGE)));
+    }
+
+    /**
+     * Adds a row of the shard request cache's hits, misses, hit ratio and evictions, which dashboards' repeated
+     * aggregations should be answered from. The domain doesn't publish them, so a function reads the node stats
+     * every {@link #REQUEST_CACHE_STATS_RATE} and publishes them under its own name.
+     */
+    public Function addRequestCacheStats(StreamStackProps props) {
+        Function statsLambda = LambdaCode.javaFunction(this, "osdfwRequestCacheStats", FunctionSizing.CACHE_STATS, 512, props)
+                .description("AWS WAF Dashboards Solution request cache metrics function")
+                .handler("com.myorg.metrics.RequestCacheStatsHandler::handleRequest")
+                .timeout(Duration.seconds(30))
+                .environment(Map.of("ES_ENDPOINT", domain.getDomainEndpoint()))
+                .build();
+        domain.grantRead(statsLambda);
+        Rule.Builder.create(this, "osdfwRequestCacheStatsSchedule")
+                .description("AWS WAF Dashboards Solution - publishes the OpenSearch request cache counters.")
+                .schedule(Schedule.rate(REQUEST_CACHE_STATS_RATE))
+                .targets(List.of(new LambdaFunction(LambdaCode.invocationTarget(statsLambda, props.getLambdaPackaging()))))
+                .build();
+
+        IMetric hits = requestCacheMetric(statsLambda, "RequestCacheHits");
+        IMetric misses = requestCacheMetric(statsLambda, "RequestCacheMisses");
+        IMetric hitRatio = MathExpression.Builder.create()
+                .expression("100 * hits / (hits + misses)")
+                .usingMetrics(Map.of("hits", hits, "misses", misses))
+                .label("hit ratio")
+                .period(PERIOD)
+                .build();
+        this.dashboard.addWidgets(
+                graph("Request cache hits", List.of(hits), null),
+                graph("Request cache misses", List.of(misses), null),
+                graph("Request cache hit ratio (%)", List.of(hitRatio), null),
+                graph("Request cache evictions", List.of(requestCacheMetric(statsLambda, "RequestCacheEvictions")), null));
+        return statsLambda;
+    }
+
+    private static Metric requestCacheMetric(Function statsLambda, String metricName) {
+        return Metric.Builder.create()
+                .namespace("osdfw")
+                .metricName(metricName)
+                .dimensionsMap(Map.of("FunctionName", statsLambda.getFunctionName()))
+                .statistic("Sum")
+                .period(PERIOD)
+                .build();
+    }
+
+    /**
+     * Alarms on one delivery stream: records waiting too long, documents OpenSearch refused and records
+     * Firehose throttled. A stream that receives nothing has no data points and stays OK.
+     */
+    public static List<Alarm> deliveryAlarms(Construct scope, String idSuffix, String deliveryStreamName,
+                                             AlarmThresholds thresholds, ITopic topic) {
+        return List.of(
+                alarm(scope, "osdfwDataFreshnessAlarm" + idSuffix,
+                        deliveryMetric(deliveryStreamName, "DeliveryToElasticsearch.DataFreshness", "Maximum"),
+                        thresholds.get(AlarmThresholds.DATA_FRESHNESS), ComparisonOperator.GREATER_THAN_THRESHOLD,
+                        deliveryStreamName + " is falling behind", topic),
+                alarm(scope, "osdfwDeliverySuccessAlarm" + idSuffix,
+                        deliveryMetric(deliveryStreamName, "DeliveryToElasticsearch.Success", "Average"),
+                        thresholds.get(AlarmThresholds.DELIVERY_SUCCESS), ComparisonOperator.LESS_THAN_THRESHOLD,
+                        deliveryStreamName + " fails to index documents, see the osdfwOsDelivery log stream", topic),
+                alarm(scope, "osdfwThrottledRecordsAlarm" + idSuffix,
+                        deliveryMetric(deliveryStreamName, "ThrottledRecords", "Sum"),
+                        thresholds.get(AlarmThresholds.THROTTLED_RECORDS), ComparisonOperator.GREATER_THAN_THRESHOLD,
+                        deliveryStreamName + " is throttling WAF, raise its quota or add shards", topic));
+    }
+
+    public static Metric deliveryMetric(String deliveryStreamName, String metricName, String statistic) {
+        return Metric.Builder.create()
+                .namespace("AWS/Firehose")
+                .metricName(metricName)
+                .dimensionsMap(Map.of("DeliveryStreamName", deliveryStreamName))
+                .statistic(statistic)
+                .period(PERIOD)
+                .label(deliveryStreamName)
+                .build();
+    }
+
+    private static List<IMetric> deliveryMetrics(List<String> deliveryStreamNames, String metricName, String statistic) {
+        return deliveryStreamNames.stream()
+                .map(name -> (IMetric) deliveryMetric(name, metricName, statistic))
+                .collect(Collectors.toList());
+    }
+
+    private static Alarm alarm(Construct scope, String id, IMetric metric, double threshold,
+                               ComparisonOperator comparisonOperator, String description, ITopic topic) {
+        Alarm alarm = Alarm.Builder.create(scope, id)
+                .metric(metric)
+                .threshold(threshold)
+                .comparisonOperator(comparisonOperator)
+                .evaluationPeriods(EVALUATION_PERIODS)
+                .treatMissingData(TreatMissingData.NOT_BREACHING)
+                .alarmDescription(description)
+                .build();
+        if (topic != null) {
+            alarm.addAlarmAction(new SnsAction(topic));
+            alarm.addOkAction(new SnsAction(topic));
+        }
+        return alarm;
+    }
+
+    private static GraphWidget graph(String title, List<IMetric> metrics, Double threshold) {
+        GraphWidget.Builder graph = GraphWidget.Builder.create()
+                .title(title)
+                .left(metrics)
+                .width(6);
+        if (threshold != null) {
+            graph.leftAnnotations(List.of(HorizontalAnnotation.builder().value(threshold).label("alarm").build()));
+        }
+        return graph.build();
+    }
+
+    public List<Alarm> getDomainAlarms() {
+        return domainAlarms;
+    }
+
+    public Dashboard getDashboard() {
+        return dashboard;
+    }
+}
@@ -0,0 +1,83 @@
+package com.myorg;
+
+import software.amazon.awscdk.core.Construct;
+import software.amazon.awscdk.core.Duration;
+import software.amazon.awscdk.services.kinesis.Stream;
+import software.amazon.awscdk.services.kinesis.StreamEncryption;
+import software.amazon.awscdk.services.lambda.Function;
+import software.amazon.awscdk.services.lambda.StartingPosition;
+import software.amazon.awscdk.services.lambda.eventsources.KinesisEventSource;
+import software.amazon.awscdk.services.opensearchservice.Domain;
+
+import java.util.Map;
+
+/**
+ * Near-real-time attack detection next to the indexed logs: the transformer puts every request it sees on a
+ * Kinesis stream, partitioned by client address, and a detector per shard counts requests per address,
+ * terminating rule and URI over a sliding window. Alerts and each shard's current top talkers land in
+ * {@code awswaf-realtime-*} indices seconds after the request, where the indexed logs wait for the delivery
+ * buffer. WAF only logs to Firehose, so the stream is fed from the transformer rather than by WAF itself.
+ */
+public class RealtimeDetection extends Construct {
+    public static final String SHARDS_CONTEXT_KEY = "osdfwRealtimeShards";
+    public static final String THRESHOLDS_CONTEXT_KEY = "osdfwRealtimeThresholds";
+    public static final String STREAM_NAME = "osdfw-waf-realtime";
+    // Firehose hands the transformer what it buffered for this long at most, the bulk of the detection delay
+    public static final int PROCESSOR_BUFFER_INTERVAL_SECONDS = 5;
+    static final int WINDOW_SECONDS = 60;
+    static final int BUCKET_SECONDS = 5;
+
+    private final Stream stream;
+    private final Function detectorLambda;
+
+    public RealtimeDetection(Construct scope, String id, StreamStackProps streamStackProps, Function transformerLambda) {
+        super(scope, id);
+        Domain openSearchDomain = streamStackProps.getOpenSearchDomain();
+
+        this.stream = Stream.Builder.create(this, "osdfwRealtimeStream")
+                .streamName(STREAM_NAME)
+                .shardCount(streamStackProps.getRealtimeShards())
+                .retentionPeriod(Duration.hours(24))
+                .encryption(StreamEncryption.MANAGED)
+                .build();
+
+        this.detectorLambda = LambdaCode.javaFunction(this, "osdfwRealtimeDetector", FunctionSizing.REALTIME_DETECTOR, 1024,
+                streamStackProps)
+                .description("AWS WAF Dashboards Solution realtime attack detector function")
+                .handler("com.myorg.realtime.RealtimeDetectorHandler::handleRequest")
+                .timeout(Duration.minutes(1))
+                .environment(Map.of(
+                        "ES_ENDPOINT", openSearchDomain.getDomainEndpoint(),
+                        "WINDOW_SECONDS", String.valueOf(WINDOW_SECONDS),
+                        "BUCKET_SECONDS", String.valueOf(BUCKET_SECONDS),
+                        "ALERT_THRESHOLDS", String.join(",", streamStackProps.getRealtimeThresholds()),
+                        // rule and URI thresholds are split over the shards, see RealtimeConfig
+                        "SHARDS", String.valueOf(streamStackProps.getRealtimeShards())
+                ))
+                .build();
+        openSearchDomain.grantReadWrite(this.detectorLambda);
+        this.stream.grantRead(this.detectorLambda);
+        // one invocation at a time per shard keeps each address on one detector; a failed batch isn't worth
+        // retrying for long, the window has moved on
+        LambdaCode.invocationTarget(this.detectorLambda, streamStackProps.getLambdaPackaging())
+                .addEventSource(KinesisEventSource.Builder.create(this.stream)
+                        .startingPosition(StartingPosition.LATEST)
+                        .batchSize(1000)
+                        .maxBatchingWindow(Duration.seconds(1))
+                        .parallelizationFactor(1)
+                        .retryAttempts(2)
+                        .maxRecordAge(Duration.minutes(5))
+                        .build());
+
+        transformerLambda.addEnvironment("REALTIME_STREAM", STREAM_NAME);
+        this.stream.grantWrite(transformerLambda);
+    }
+
+    public Stream getStream() {
+        return stream;
+    }
+
+    public Function getDetectorLambda() {
+        return detectorLambda;
+    }
+}
@@ -0,0 +1,201 @@
+package com.myorg;
+
+import software.amazon.awscdk.core.Aws;
+import software.amazon.awscdk.core.CfnOutput;
+import software.amazon.awscdk.core.Construct;
+import software.amazon.awscdk.core.RemovalPolicy;
+import software.amazon.awscdk.core.Stack;
+import software.amazon.awscdk.core.StackProps;
+import software.amazon.awscdk.services.cloudwatch.Alarm;
+import software.amazon.awscdk.services.iam.Effect;
+import software.amazon.awscdk.services.iam.PolicyStatement;
+import software.amazon.awscdk.services.iam.Role;
+import software.amazon.awscdk.services.iam.ServicePrincipal;
+import software.amazon.awscdk.services.kinesisfirehose.CfnDeliveryStream;
+import software.amazon.awscdk.services.lambda.Function;
+import software.amazon.awscdk.services.lambda.IFunction;
+import software.amazon.awscdk.services.logs.LogGroup;
+import software.amazon.awscdk.services.logs.LogStream;
+import software.amazon.awscdk.services.logs.RetentionDays;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The part of the solution a spoke account runs in a hub and spoke deployment: the {@code aws-waf-logs-*}
+ * delivery streams its WebACLs log to, their transformer, and a delivery role the hub lets into its domain and
+ * backup bucket. Records go to the hub's {@code awswaf-<account>} alias, tagged with their account, and are
+ * backed up next to the hub's own so its rollups and replays cover them.
+ * <p>
+ * Deploy the hub first with the spoke's account in {@value #SPOKE_ACCOUNTS_CONTEXT_KEY}, then the spoke with the
+ * hub's outputs in {@value #HUB_DOMAIN_ARN_CONTEXT_KEY}, {@value #HUB_DOMAIN_ENDPOINT_CONTEXT_KEY} and
+ * {@value #HUB_LOG_BUCKET_CONTEXT_KEY}. Firehose delivers to OpenSearch in its own region only, so spokes deploy
+ * to the hub's region.
+ */
+public class SpokeStack extends Stack {
+    public static final String SPOKE_ACCOUNTS_CONTEXT_KEY = "osdfwSpokeAccounts";
+    public static final String HUB_DOMAIN_ARN_CONTEXT_KEY = "osdfwHubDomainArn";
+    public static final String HUB_DOMAIN_ENDPOINT_CONTEXT_KEY = "osdfwHubDomainEndpoint";
+    public static final String HUB_LOG_BUCKET_CONTEXT_KEY = "osdfwHubLogBucket";
+    // named, so the hub can grant it before it exists
+    public static final String DELIVERY_ROLE_NAME = "osdfw-spoke-delivery";
+
+    LogGroup cwLogGroup;
+    List<CfnDeliveryStream> deliveryStreams = new ArrayList<>();
+    List<Alarm> deliveryAlarms = new ArrayList<>();
+    Role deliveryRole;
+    Function transformerLambda;
+
+    public SpokeStack(final Construct scope, final String id, final StackProps props) {
+        super(scope, id, props);
+
+        String hubDomainArn = requiredContext(HUB_DOMAIN_ARN_CONTEXT_KEY);
+        String hubDomainEndpoint = requiredContext(HUB_DOMAIN_ENDPOINT_CONTEXT_KEY);
+        String hubBucketArn = "arn:" + this.getPartition() + ":s3:::" + requiredContext(HUB_LOG_BUCKET_CONTEXT_KEY);
+        StreamStackProps streamStackProps = MainStack.deliveryProps(this.getNode()).build();
+        String indexAlias = StreamStack.spokeIndexAlias(this.getAccount());
+        int shardCount = streamStackProps.getShardCount();
+
+        this.cwLogGroup = LogGroup.Builder.create(this, "osdfwFirehose")
+                .removalPolicy(RemovalPolicy.DESTROY)
+                .retention(RetentionDays.ONE_MONTH)
+                .build();
+
+        this.transformerLambda = StreamStack.transformerFunction(this, streamStackProps, true);
+        IFunction transformerTarget = LambdaCode.invocationTarget(this.transformerLambda, streamStackProps.getLambdaPackaging());
+
+        this.deliveryRole = createDeliveryRole(hubDomainArn, hubBucketArn, indexAlias, transformerTarget);
+
+        for (int shard = 0; shard < shardCount; shard++) {
+            String suffix = StreamStack.shardSuffix(shard, shardCount);
+            LogStream cwLogStreamS3 = LogStream.Builder.create(this, "osdfwS3Delivery" + suffix)
+                    .logGroup(this.cwLogGroup)
+                    .removalPolicy(RemovalPolicy.DESTROY)
+                    .build();
+            LogStream cwLogStreamOpenSearch = LogStream.Builder.create(this, "osdfwOsDelivery" + suffix)
+                    .logGroup(this.cwLogGroup)
+                    .removalPolicy(RemovalPolicy.DESTROY)
+                    .build();
+
+            CfnDeliveryStream deliveryStream = CfnDeliveryStream.Builder.create(this, "osdfwWafFirehoseDeliveryStream" + suffix)
+                    .deliveryStreamName(StreamStack.deliveryStreamName(shard, shardCount))
+                    .deliveryStreamType("DirectPut")
+                    .elasticsearchDestinationConfiguration(StreamStack.openSearchDestination(
+                            streamStackProps.getThroughputProfile(), indexAlias, hubBucketArn, this.deliveryRole.getRoleArn(),
+                            transformerTarget.getFunctionArn(), this.cwLogGroup, cwLogStreamOpenSearch, cwLogStreamS3)
+                            // the domain is in another account, so Firehose is given its endpoint rather than its ARN
+                            .clusterEndpoint("https://" + hubDomainEndpoint)
+                            .build())
+                    .build();
+            // Firehose checks its access to the hub when the stream is created
+            deliveryStream.getNode().addDependency(this.deliveryRole);
+            this.deliveryStreams.add(deliveryStream);
+            this.deliveryAlarms.addAll(PipelineMonitoring.deliveryAlarms(this, suffix,
+                    StreamStack.deliveryStreamName(shard, shardCount), streamStackProps.getAlarmThresholds(), null));
+
+            CfnOutput.Builder.create(this, "osdfwFirehoseArn" + suffix)
+                    .description("Firehose ARN" + (shardCount > 1 ? " for shard " + shard : ""))
+                    .value(deliveryStream.getAttrArn())
+                    .build();
+        }
+
+        CfnOutput.Builder.create(this, "osdfwSpokeIndexAlias")
+                .description("Index alias of this account on the hub domain")
+                .value(indexAlias)
+                .build();
+
+        if (!streamStackProps.getWebAclNames().isEmpty()) {
+            CfnOutput.Builder.create(this, "osdfwWebAclStreamMapping")
+                    .description("WebACL to Firehose delivery stream assignment")
+                    .value(this.toJsonString(StreamStack.assignWebAclsToStreams(streamStackProps.getWebAclNames(), shardCount)))
+                    .build();
+        }
+    }
+
+    /**
+     * Limits a statement granting whole accounts to their spoke delivery roles. The condition, unlike a role
+     * principal, doesn't need the roles to exist yet.
+     */
+    public static Map<String, Object> deliveryRoleCondition(List<String> accounts) {
+        return Map.of("ArnEquals", Map.of("aws:PrincipalArn", accounts.stream()
+                .map(account -> "arn:" + Aws.PARTITION + ":iam::" + account + ":role/" + DELIVERY_ROLE_NAME)
+                .collect(Collectors.toList())));
+    }
+
+    private Role createDeliveryRole(String hubDomainArn, String hubBucketArn, String indexAlias, IFunction transformer) {
+        Role role = Role.Builder.create(this, "osdfwSpokeDeliveryRole")
+                .roleName(DELIVERY_ROLE_NAME)
+                .description("Role for WAF Dashboards log delivery to the hub domain")
+                .assumedBy(new ServicePrincipal("firehose.amazonaws.com"))
+                .build();
+
+        role.addToPolicy(PolicyStatement.Builder.create()
+                .sid("osdfwS3AccessStatement")
+                .effect(Effect.ALLOW)
+                .actions(List.of(
+                        "s3:AbortMultipartUpload",
+                        "s3:GetBucketLocation",
+                        "s3:GetObject",
+                        "s3:ListBucket",
+                        "s3:ListBucketMultipartUploads",
+                        "s3:PutObject"))
+                .resources(List.of(hubBucketArn, hubBucketArn + "/*"))
+                .build());
+        role.addToPolicy(PolicyStatement.Builder.create()
+                .sid("osdfwOpenSearchPutAccessStatement")
+                .effect(Effect.ALLOW)
+                .actions(List.of(
+                        "es:DescribeElasticsearchDomain",
+                        "es:DescribeElasticsearchDomains",
+                        "es:DescribeElasticsearchDomainConfig",
+                        "es:ESHttpPost",
+                        "es:ESHttpPut"))
+                .resources(List.of(hubDomainArn, hubDomainArn + "/*"))
+                .build());
+        role.addToPolicy(PolicyStatement.Builder.create()
+                .sid("osdfwOpenSearchMiscAccessStatement")
+                .effect(Effect.ALLOW)
+                .actions(List.of("es:ESHttpGet"))
+                .resources(List.of(
+                        hubDomainArn + "/_all/_settings",
+                        hubDomainArn + "/_cluster/stats",
+                        hubDomainArn + "/" + indexAlias + "/_mapping/*",
+                        hubDomainArn + "/_nodes",
+                        hubDomainArn + "/_nodes/stats",
+                        hubDomainArn + "/_nodes/*/stats",
+                        hubDomainArn + "/_stats",
+                        hubDomainArn + "/" + indexAlias + "/_stats"))
+                .build());
+        role.addToPolicy(PolicyStatement.Builder.create()
+                .sid("osdfwLogDeliveryAccessStatement")
+                .effect(Effect.ALLOW)
+                .actions(List.of("logs:PutLogEvents"))
+                .resources(List.of(this.cwLogGroup.getLogGroupArn() + ":*"))
+                .build());
+        role.addToPolicy(PolicyStatement.Builder.create()
+                .sid("osdfwLambdaInvokeAccessStatement")
+                .effect(Effect.ALLOW)
+                .actions(List.of("lambda:InvokeFunction", "lambda:GetFunctionConfiguration"))
+                .resources(List.of(transformer.getFunctionArn(), transformer.getFunctionArn() + ":*"))
+                .build());
+        return role;
+    }
+
+    private String requiredContext(String key) {
+        String value = MainStack.contextAsString(this.getNode(), key, null);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("A spoke stack needs the hub's " + key);
+        }
+        return value.trim();
+    }
+
+    public List<CfnDeliveryStream> getDeliveryStreams() {
+        return deliveryStreams;
+    }
+
+    public Role getDeliveryRole() {
+        return deliveryRole;
+    }
+}
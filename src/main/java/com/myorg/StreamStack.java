@@ -3,32 +3,76 @@ package com.myorg;
 
 import software.amazon.awscdk.core.CfnOutput;
 import software.amazon.awscdk.core.Construct;
+import software.amazon.awscdk.core.CustomResource;
+import software.amazon.awscdk.core.Duration;
 import software.amazon.awscdk.core.NestedStack;
 import software.amazon.awscdk.core.RemovalPolicy;
+import software.amazon.awscdk.core.Stack;
+import software.amazon.awscdk.services.cloudwatch.Alarm;
+import software.amazon.awscdk.services.events.Rule;
+import software.amazon.awscdk.services.events.Schedule;
+import software.amazon.awscdk.services.events.targets.LambdaFunction;
 import software.amazon.awscdk.services.iam.*;
 import software.amazon.awscdk.services.kinesisfirehose.CfnDeliveryStream;
+import software.amazon.awscdk.services.lambda.Function;
+import software.amazon.awscdk.services.lambda.IFunction;
 import software.amazon.awscdk.services.logs.LogGroup;
 import software.amazon.awscdk.services.logs.LogStream;
 import software.amazon.awscdk.services.logs.RetentionDays;
 import software.amazon.awscdk.services.opensearchservice.Domain;
 import software.amazon.awscdk.services.s3.Bucket;
+import software.amazon.awscdk.services.s3.CfnBucket;
+import software.amazon.awscdk.services.s3.EventType;
+import software.amazon.awscdk.services.s3.NotificationKeyFilter;
+import software.amazon.awscdk.services.s3.notifications.LambdaDestination;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 public class StreamStack extends NestedStack {
+    public static final String DELIVERY_STREAM_NAME = "aws-waf-logs-osdfw";
+    public static final String WAF_INDEX_NAME = "awswaf";
+    public static final String SHARD_COUNT_CONTEXT_KEY = "osdfwFirehoseShardCount";
+    public static final String WEB_ACLS_CONTEXT_KEY = "osdfwWebAcls";
+    public static final String TRANSFORM_DROP_FIELDS_CONTEXT_KEY = "osdfwTransformDropFields";
+    public static final String TRANSFORM_FLATTEN_HEADERS_CONTEXT_KEY = "osdfwTransformFlattenHeaders";
+    public static final String TRANSFORM_SAMPLE_RATES_CONTEXT_KEY = "osdfwSampleRates";
+    public static final String ENRICHMENT_DATABASE_CONTEXT_KEY = "osdfwEnrichmentDatabase";
+    public static final String ROLLUP_TOP_N_CONTEXT_KEY = "osdfwRollupTopN";
+    public static final String ROLLUP_INDEX_PREFIX = "awswaf-rollup";
+    // Firehose writes backup objects under this prefix, failed records under <prefix>elasticsearch-failed/
+    static final String S3_BACKUP_PREFIX = "/log";
+    // long enough for a rejection storm to pass before the next attempt, short enough that dashboards catch up soon after
+    static final Duration REDRIVE_RATE = Duration.minutes(15);
+    // well inside the rate, so a run is over before the next is scheduled
+    static final Duration REDRIVE_TIMEOUT = Duration.minutes(10);
+
     LogGroup cwLogGroup;
-    LogStream cwLogStreamOpenSearch;
-    LogStream cwLogStreamS3;
+    List<LogStream> cwLogStreamsOpenSearch = new ArrayList<>();
+    List<LogStream> cwLogStreamsS3 = new ArrayList<>();
+    List<CfnDeliveryStream> deliveryStreams = new ArrayList<>();
+    List<Alarm> deliveryAlarms = new ArrayList<>();
     Role firehoseRole;
+    Function transformerLambda;
+    IFunction transformerTarget;
+    Function rollupLambda;
+    Function replayLambda;
+    Function redriveLambda;
+    Function indexSetupLambda;
+    IFunction indexSetupTarget;
+    CustomResource indexSetup;
+    List<CustomResource> spokeIndexSetups = new ArrayList<>();
+    LogArchive logArchive;
+    RealtimeDetection realtimeDetection;
 
     public StreamStack(final Construct scope, final String id, StreamStackProps streamStackProps) {
         super(scope, id, streamStackProps);
 
-        //todo parametrise
-        String wafIndexName = "awswaf";
-        int streamBufferSize = 5;
-        int streamBufferTimeInterval = 60;
-
+        String wafIndexName = WAF_INDEX_NAME;
+        int shardCount = streamStackProps.getShardCount();
 
         createLoggingConfiguration();
 
@@ -36,74 +80,430 @@ public class StreamStack extends NestedStack {
                 .removalPolicy(RemovalPolicy.RETAIN)
                 .build();
 
+        this.transformerLambda = transformerFunction(this, streamStackProps, streamStackProps.isHub());
+        this.transformerTarget = LambdaCode.invocationTarget(this.transformerLambda, streamStackProps.getLambdaPackaging());
+        if (streamStackProps.isRealtimeDetection()) {
+            this.realtimeDetection = new RealtimeDetection(this, "osdfwRealtimeDetection", streamStackProps, this.transformerLambda);
+        }
+
+        createIndexSetupFunction(streamStackProps);
+        this.indexSetup = createIndexSetup("osdfwIndexSetup", wafIndexName, streamStackProps);
+        if (streamStackProps.isHub()) {
+            acceptSpokes(streamStackProps, logDeliveryBucket);
+        }
+
         this.firehoseRole = generateFirehoseRole(streamStackProps, logDeliveryBucket);
 
-        CfnDeliveryStream.ElasticsearchDestinationConfigurationProperty openSearchDestinationForFirehose = CfnDeliveryStream.ElasticsearchDestinationConfigurationProperty.builder()
+        for (int shard = 0; shard < shardCount; shard++) {
+            CfnDeliveryStream deliveryStream = createDeliveryStream(shard, shardCount, wafIndexName, streamStackProps, logDeliveryBucket);
+            // writing before the alias exists would create a plain index in its place
+            deliveryStream.getNode().addDependency(this.indexSetup);
+            this.deliveryStreams.add(deliveryStream);
+            this.deliveryAlarms.addAll(PipelineMonitoring.deliveryAlarms(this, shardSuffix(shard, shardCount),
+                    deliveryStreamName(shard, shardCount), streamStackProps.getAlarmThresholds(), streamStackProps.getAlarmTopic()));
+        }
+
+        if (streamStackProps.isParquetArchive()) {
+            this.logArchive = new LogArchive(this, "osdfwLogArchive", logDeliveryBucket, this.firehoseRole, this.cwLogGroup,
+                    streamStackProps.getTransformFlattenHeaders());
+            this.firehoseRole.addToPolicy(PolicyStatement.Builder.create()
+                    .sid("osdfwGlueSchemaAccessStatement")
+                    .effect(Effect.ALLOW)
+                    .actions(List.of("glue:GetTable", "glue:GetTableVersion", "glue:GetTableVersions"))
+                    .resources(List.of("*"))
+                    .build());
+        }
+
+        this.rollupLambda = createRollupLambda(streamStackProps, logDeliveryBucket);
+        this.replayLambda = createReplayLambda(streamStackProps, logDeliveryBucket);
+        this.redriveLambda = createRedriveLambda(streamStackProps, logDeliveryBucket);
+
+
+        CfnOutput.Builder.create(this, "osdfwVarOsDomain")
+                .value(streamStackProps.getOpenSearchDomain().getDomainArn())
+                .build();
+
+        CfnOutput.Builder.create(this, "osdfwThroughputProfile")
+                .description("Firehose buffering profile")
+                .value(streamStackProps.getThroughputProfile().getProfileName())
+                .build();
+
+        CfnOutput.Builder.create(this, "osdfwIndexShards")
+                .description("Primary shards and replicas of each WAF log index, from the expected daily volume")
+                .value(this.indexSetup.getAttString("PrimaryShards") + " x " + this.indexSetup.getAttString("Replicas"))
+                .build();
+
+        for (int shard = 0; shard < shardCount; shard++) {
+            CfnOutput.Builder.create(this, "osdfwFirehoseArn" + shardSuffix(shard, shardCount))
+                    .description("Firehose ARN" + (shardCount > 1 ? " for shard " + shard : ""))
+                    .value(this.deliveryStreams.get(shard).getAttrArn())
+                    .build();
+        }
+
+        if (!streamStackProps.getWebAclNames().isEmpty()) {
+            CfnOutput.Builder.create(this, "osdfwWebAclStreamMapping")
+                    .description("WebACL to Firehose delivery stream assignment")
+                    .value(this.toJsonString(assignWebAclsToStreams(streamStackProps.getWebAclNames(), shardCount)))
+                    .build();
+        }
+
+    }
+
+    /**
+     * Name of the delivery stream for the given shard. A single shard keeps the original stream name,
+     * so existing WebACL logging configurations stay valid.
+     */
+    public static String deliveryStreamName(int shard, int shardCount) {
+        return shardCount > 1 ? DELIVERY_STREAM_NAME + "-" + shard : DELIVERY_STREAM_NAME;
+    }
+
+    /**
+     * Spreads WebACLs round-robin across the delivery streams, in the order they were given.
+     * New WebACLs should be appended so existing assignments don't move.
+     */
+    public static Map<String, String> assignWebAclsToStreams(List<String> webAclNames, int shardCount) {
+        Map<String, String> assignments = new LinkedHashMap<>();
+        for (int i = 0; i < webAclNames.size(); i++) {
+            assignments.put(webAclNames.get(i), deliveryStreamName(i % shardCount, shardCount));
+        }
+        return assignments;
+    }
+
+    /**
+     * The rollover alias the spoke stack of {@code account} delivers to.
+     */
+    public static String spokeIndexAlias(String account) {
+        return WAF_INDEX_NAME + "-" + account;
+    }
+
+    static String shardSuffix(int shard, int shardCount) {
+        return shardCount > 1 ? String.valueOf(shard) : "";
+    }
+
+    private CfnDeliveryStream createDeliveryStream(int shard, int shardCount, String wafIndexName,
+                                                   StreamStackProps streamStackProps, Bucket logDeliveryBucket) {
+        ThroughputProfile throughputProfile = streamStackProps.getThroughputProfile();
+        String suffix = shardSuffix(shard, shardCount);
+
+        LogStream cwLogStreamS3 = LogStream.Builder.create(this, "osdfwS3Delivery" + suffix)
+                .logGroup(cwLogGroup)
+                .removalPolicy(RemovalPolicy.DESTROY)
+                .build();
+        this.cwLogStreamsS3.add(cwLogStreamS3);
+
+        LogStream cwLogStreamOpenSearch = LogStream.Builder.create(this, "osdfwOsDelivery" + suffix)
+                .logGroup(cwLogGroup)
+                .removalPolicy(RemovalPolicy.DESTROY)
+                .build();
+        this.cwLogStreamsOpenSearch.add(cwLogStreamOpenSearch);
+
+        CfnDeliveryStream.ElasticsearchDestinationConfigurationProperty.Builder openSearchDestinationForFirehose = openSearchDestination(
+                throughputProfile, wafIndexName, logDeliveryBucket.getBucketArn(), this.firehoseRole.getRoleArn(),
+                this.transformerTarget.getFunctionArn(), this.cwLogGroup, cwLogStreamOpenSearch, cwLogStreamS3)
+                .domainArn(streamStackProps.getOpenSearchDomain().getDomainArn());
+        if (this.realtimeDetection != null) {
+            // the transformer feeds the realtime stream, so it has to see records within seconds
+            openSearchDestinationForFirehose.processingConfiguration(processingConfiguration(
+                    Math.min(RealtimeDetection.PROCESSOR_BUFFER_INTERVAL_SECONDS, throughputProfile.getOpenSearchBufferIntervalInSeconds()),
+                    this.transformerTarget.getFunctionArn()));
+        }
+
+        return CfnDeliveryStream.Builder.create(this, "osdfwWafFirehoseDeliveryStream" + suffix)
+                .deliveryStreamName(deliveryStreamName(shard, shardCount))
+                .deliveryStreamType("DirectPut")
+                .elasticsearchDestinationConfiguration(openSearchDestinationForFirehose.build())
+                .build();
+    }
+
+    /**
+     * Delivery into {@code indexName} with an S3 backup of every document, for the caller to point at a domain.
+     */
+    static CfnDeliveryStream.ElasticsearchDestinationConfigurationProperty.Builder openSearchDestination(
+            ThroughputProfile throughputProfile, String indexName, String bucketArn, String roleArn, String transformerArn,
+            LogGroup logGroup, LogStream openSearchLogStream, LogStream s3LogStream) {
+        return CfnDeliveryStream.ElasticsearchDestinationConfigurationProperty.builder()
                 .bufferingHints(CfnDeliveryStream.ElasticsearchBufferingHintsProperty.builder()
-                        .intervalInSeconds(streamBufferTimeInterval)
-                        .sizeInMBs(streamBufferSize)
+                        .intervalInSeconds(throughputProfile.getOpenSearchBufferIntervalInSeconds())
+                        .sizeInMBs(throughputProfile.getOpenSearchBufferSizeInMBs())
                         .build())
                 .cloudWatchLoggingOptions(CfnDeliveryStream.CloudWatchLoggingOptionsProperty.builder()
                         .enabled(true)
-                        .logGroupName(this.cwLogGroup.getLogGroupName())
-                        .logStreamName(this.cwLogStreamOpenSearch.getLogStreamName())
+                        .logGroupName(logGroup.getLogGroupName())
+                        .logStreamName(openSearchLogStream.getLogStreamName())
+                        .build())
+                .indexName(indexName)
+                // indexName is a rollover alias managed by the ISM policy
+                .indexRotationPeriod("NoRotation")
+                .processingConfiguration(processingConfiguration(throughputProfile.getOpenSearchBufferIntervalInSeconds(), transformerArn))
+                .retryOptions(CfnDeliveryStream.ElasticsearchRetryOptionsProperty.builder()
+                        .durationInSeconds(throughputProfile.getRetryDurationInSeconds())
                         .build())
-                .domainArn(streamStackProps.getOpenSearchDomain().getDomainArn())
-                .indexName(wafIndexName)
-                .indexRotationPeriod("OneDay")
-                .retryOptions(CfnDeliveryStream.ElasticsearchRetryOptionsProperty.builder().durationInSeconds(60).build())
-                .roleArn(this.firehoseRole.getRoleArn())
+                .roleArn(roleArn)
                 .s3BackupMode("AllDocuments")
                 .s3Configuration(CfnDeliveryStream.S3DestinationConfigurationProperty.builder()
-                        .bucketArn(logDeliveryBucket.getBucketArn())
+                        .bucketArn(bucketArn)
                         .bufferingHints(CfnDeliveryStream.BufferingHintsProperty.builder()
-                                .intervalInSeconds(streamBufferTimeInterval * 5)
-                                .sizeInMBs(streamBufferSize * 10)
+                                .intervalInSeconds(throughputProfile.getS3BufferIntervalInSeconds())
+                                .sizeInMBs(throughputProfile.getS3BufferSizeInMBs())
                                 .build())
-                        .compressionFormat("ZIP")
-                        .prefix("/log")
-                        .roleArn(this.firehoseRole.getRoleArn())
+                        .compressionFormat(throughputProfile.getS3CompressionFormat())
+                        .prefix(S3_BACKUP_PREFIX)
+                        .roleArn(roleArn)
                         .cloudWatchLoggingOptions(CfnDeliveryStream.CloudWatchLoggingOptionsProperty.builder()
                                 .enabled(true)
-                                .logGroupName(this.cwLogGroup.getLogGroupName())
-                                .logStreamName(this.cwLogStreamS3.getLogStreamName())
+                                .logGroupName(logGroup.getLogGroupName())
+                                .logStreamName(s3LogStream.getLogStreamName())
                                 .build())
-                        .build())
+                        .build());
+    }
+
+    /**
+     * The log transformer; hubs and spokes have it tag records with the account owning their WebACL.
+     */
+    static Function transformerFunction(Construct scope, StreamStackProps streamStackProps, boolean tagAccount) {
+        Function transformer = LambdaCode.javaFunction(scope, "osdfwLogTransformer", FunctionSizing.TRANSFORMER, 512, streamStackProps)
+                .description("AWS WAF Dashboards Solution log transformer function")
+                .handler("com.myorg.transform.FirehoseTransformHandler::handleRequest")
+                .timeout(Duration.minutes(1))
+                .environment(Map.of(
+                        "DROP_FIELDS", String.join(",", streamStackProps.getTransformDropFields()),
+                        "FLATTEN_HEADERS", String.join(",", streamStackProps.getTransformFlattenHeaders()),
+                        "SAMPLE_RATES", String.join(",", streamStackProps.getTransformSampleRates()),
+                        "TAG_ACCOUNT", String.valueOf(tagAccount),
+                        "ENRICHMENT_DB", enrichmentDatabase(streamStackProps)
+                ))
                 .build();
+        grantEnrichmentDatabaseRead(transformer, streamStackProps);
+        return transformer;
+    }
 
+    private static String enrichmentDatabase(StreamStackProps streamStackProps) {
+        return streamStackProps.getEnrichmentDatabase() == null ? "" : streamStackProps.getEnrichmentDatabase();
+    }
 
-        CfnDeliveryStream wafLogsDeliveryStream = CfnDeliveryStream.Builder.create(this, "osdfwWafFirehoseDeliveryStream")
-                .deliveryStreamName("aws-waf-logs-osdfw")
-                .deliveryStreamType("DirectPut")
-                .elasticsearchDestinationConfiguration(openSearchDestinationForFirehose)
+    /**
+     * Lets a function read an enrichment database kept in S3; one in a layer needs nothing.
+     */
+    private static void grantEnrichmentDatabaseRead(Function function, StreamStackProps streamStackProps) {
+        String database = streamStackProps.getEnrichmentDatabase();
+        if (database == null || !database.startsWith("s3://")) {
+            return;
+        }
+        function.addToRolePolicy(PolicyStatement.Builder.create()
+                .effect(Effect.ALLOW)
+                .actions(List.of("s3:GetObject"))
+                .resources(List.of("arn:" + Stack.of(function).getPartition() + ":s3:::" + database.substring("s3://".length())))
+                .build());
+    }
+
+    private void createIndexSetupFunction(StreamStackProps streamStackProps) {
+        Domain openSearchDomain = streamStackProps.getOpenSearchDomain();
+
+        this.indexSetupLambda = LambdaCode.javaFunction(this, "osdfwIndexSetupFunction", FunctionSizing.INDEX_SETUP, 512,
+                streamStackProps)
+                .description("AWS WAF Dashboards Solution index lifecycle setup function")
+                .handler("com.myorg.setup.IndexSetupHandler::handleRequest")
+                .timeout(Duration.minutes(5))
+                .environment(Map.of(
+                        "ES_ENDPOINT", openSearchDomain.getDomainEndpoint()
+                ))
                 .build();
+        openSearchDomain.grantReadWrite(this.indexSetupLambda);
+        this.indexSetupTarget = LambdaCode.invocationTarget(this.indexSetupLambda, streamStackProps.getLambdaPackaging());
+    }
 
+    /**
+     * Installs the ISM policy and index template and creates the first index behind the write alias. CloudFormation
+     * sends an Update only when a property changes, so besides the parameters the properties carry the hash of the
+     * Lambda sources: a new template or policy in code reaches the domain with the deployment that ships it.
+     */
+    private CustomResource createIndexSetup(String id, String indexAlias, StreamStackProps streamStackProps) {
+        return CustomResource.Builder.create(this, id)
+                .serviceToken(this.indexSetupTarget.getFunctionArn())
+                .properties(Map.ofEntries(
+                        Map.entry("IndexAlias", indexAlias),
+                        Map.entry("DailyIngestGB", streamStackProps.getDailyIngestGb()),
+                        Map.entry("DataNodeCount", streamStackProps.getDataNodeCount()),
+                        Map.entry("WarmAfterDays", streamStackProps.getIndexWarmAfterDays()),
+                        Map.entry("RetentionDays", streamStackProps.getIndexRetentionDays()),
+                        Map.entry("RolloverDocCount", streamStackProps.getRolloverDocCount()),
+                        Map.entry("UltraWarm", streamStackProps.isUltraWarm()),
+                        // nothing is searchable before Firehose delivers, so refresh no more often than it does
+                        Map.entry("RefreshIntervalSeconds", streamStackProps.getThroughputProfile().getOpenSearchBufferIntervalInSeconds()),
+                        Map.entry("FlattenHeaders", String.join(",", streamStackProps.getTransformFlattenHeaders())),
+                        Map.entry("SampleRates", String.join(",", streamStackProps.getTransformSampleRates())),
+                        Map.entry("CodeHash", LambdaCode.sourceHash())
+                ))
+                .build();
+    }
 
-        CfnOutput.Builder.create(this, "osdfwVarOsDomain")
-                .value(streamStackProps.getOpenSearchDomain().getDomainArn())
+    /**
+     * Readies the hub for its spokes: an index alias per spoke account, and a backup bucket the spokes' delivery
+     * roles may write to. Objects they write belong to the bucket owner, so rollups and replays read them as
+     * they read the hub's own. The domain lets the same roles in, see MainStack.
+     */
+    private void acceptSpokes(StreamStackProps streamStackProps, Bucket logDeliveryBucket) {
+        for (String account : streamStackProps.getSpokeAccounts()) {
+            this.spokeIndexSetups.add(createIndexSetup("osdfwIndexSetup" + account, spokeIndexAlias(account), streamStackProps));
+        }
+
+        // the Bucket construct has no property for it in this CDK version
+        CfnBucket cfnBucket = (CfnBucket) logDeliveryBucket.getNode().getDefaultChild();
+        cfnBucket.addPropertyOverride("OwnershipControls.Rules", List.of(Map.of("ObjectOwnership", "BucketOwnerEnforced")));
+
+        logDeliveryBucket.addToResourcePolicy(PolicyStatement.Builder.create()
+                .sid("osdfwSpokeDeliveryStatement")
+                .effect(Effect.ALLOW)
+                .principals(streamStackProps.getSpokeAccounts().stream()
+                        .<IPrincipal>map(AccountPrincipal::new)
+                        .collect(Collectors.toList()))
+                .actions(List.of(
+                        "s3:AbortMultipartUpload",
+                        "s3:GetBucketLocation",
+                        "s3:GetObject",
+                        "s3:ListBucket",
+                        "s3:ListBucketMultipartUploads",
+                        "s3:PutObject"))
+                .resources(List.of(logDeliveryBucket.getBucketArn(), logDeliveryBucket.getBucketArn() + "/*"))
+                .conditions(SpokeStack.deliveryRoleCondition(streamStackProps.getSpokeAccounts()))
+                .build());
+
+        CfnOutput.Builder.create(this, "osdfwHubLogBucket")
+                .description("Bucket the spoke stacks back up to, their " + SpokeStack.HUB_LOG_BUCKET_CONTEXT_KEY)
+                .value(logDeliveryBucket.getBucketName())
                 .build();
+        CfnOutput.Builder.create(this, "osdfwHubDomainEndpoint")
+                .description("Domain the spoke stacks deliver to, their " + SpokeStack.HUB_DOMAIN_ENDPOINT_CONTEXT_KEY)
+                .value(streamStackProps.getOpenSearchDomain().getDomainEndpoint())
+                .build();
+    }
+
+    /**
+     * Rolls every backup object Firehose writes up into per-minute and per-hour aggregates in
+     * {@value #ROLLUP_INDEX_PREFIX}-* indices, for dashboards spanning weeks rather than hours, and forwards
+     * its records to the Parquet archive when there is one.
+     */
+    private Function createRollupLambda(StreamStackProps streamStackProps, Bucket logDeliveryBucket) {
+        Domain openSearchDomain = streamStackProps.getOpenSearchDomain();
 
-        CfnOutput.Builder.create(this, "osdfwFirehoseArn")
-                .description("Firehose ARN")
-                .value(wafLogsDeliveryStream.getAttrArn())
+        Map<String, String> environment = new LinkedHashMap<>();
+        environment.put("ES_ENDPOINT", openSearchDomain.getDomainEndpoint());
+        environment.put("ROLLUP_INDEX_PREFIX", ROLLUP_INDEX_PREFIX);
+        environment.put("ROLLUP_TOP_N", String.valueOf(streamStackProps.getRollupTopN()));
+        if (this.logArchive != null) {
+            environment.put("ARCHIVE_STREAM", LogArchive.DELIVERY_STREAM_NAME);
+        }
+
+        Function rollupLambda = LambdaCode.javaFunction(this, "osdfwLogRollup", FunctionSizing.ROLLUP, 1024, streamStackProps)
+                .description("AWS WAF Dashboards Solution log rollup function")
+                .handler("com.myorg.rollup.S3RollupHandler::handleRequest")
+                .timeout(Duration.minutes(5))
+                .environment(environment)
                 .build();
 
+        logDeliveryBucket.grantRead(rollupLambda);
+        openSearchDomain.grantWrite(rollupLambda);
+        if (this.logArchive != null) {
+            rollupLambda.addToRolePolicy(PolicyStatement.Builder.create()
+                    .effect(Effect.ALLOW)
+                    .actions(List.of("firehose:PutRecordBatch"))
+                    .resources(List.of(this.logArchive.getDeliveryStream().getAttrArn()))
+                    .build());
+        }
+        IFunction rollupTarget = LambdaCode.invocationTarget(rollupLambda, streamStackProps.getLambdaPackaging());
+        logDeliveryBucket.addEventNotification(EventType.OBJECT_CREATED, new LambdaDestination(rollupTarget),
+                NotificationKeyFilter.builder().prefix(S3_BACKUP_PREFIX).build());
+
+        return rollupLambda;
     }
 
-    public void createLoggingConfiguration() {
-        this.cwLogGroup = LogGroup.Builder.create(this, "osdfwFirehose")
-                .removalPolicy(RemovalPolicy.DESTROY)
-                .retention(RetentionDays.ONE_MONTH)
+    /**
+     * Replays the S3 backup into the WAF log index through the current transform, for backfills after a
+     * domain rebuild or a transform change. Invoked by hand; each invocation stops short of its timeout and
+     * leaves a checkpoint in the state index, so invoking it again with the same name carries on.
+     */
+    private Function createReplayLambda(StreamStackProps streamStackProps, Bucket logDeliveryBucket) {
+        Domain openSearchDomain = streamStackProps.getOpenSearchDomain();
+
+        Function replayLambda = LambdaCode.javaFunction(this, "osdfwLogReplay", FunctionSizing.REPLAY, 2048, streamStackProps)
+                .description("AWS WAF Dashboards Solution log replay function")
+                .handler("com.myorg.replay.ReplayHandler::handleRequest")
+                .timeout(Duration.minutes(15))
+                .environment(Map.of(
+                        "ES_ENDPOINT", openSearchDomain.getDomainEndpoint(),
+                        "LOG_BUCKET", logDeliveryBucket.getBucketName(),
+                        "REPLAY_PARALLELISM", "8",
+                        "DROP_FIELDS", String.join(",", streamStackProps.getTransformDropFields()),
+                        "FLATTEN_HEADERS", String.join(",", streamStackProps.getTransformFlattenHeaders()),
+                        "SAMPLE_RATES", String.join(",", streamStackProps.getTransformSampleRates()),
+                        "ENRICHMENT_DB", enrichmentDatabase(streamStackProps)
+                ))
                 .build();
 
-        this.cwLogStreamS3 = LogStream.Builder.create(this, "osdfwS3Delivery")
-                .logGroup(cwLogGroup)
-                .removalPolicy(RemovalPolicy.DESTROY)
+        grantEnrichmentDatabaseRead(replayLambda, streamStackProps);
+        logDeliveryBucket.grantRead(replayLambda);
+        openSearchDomain.grantReadWrite(replayLambda);
+        return replayLambda;
+    }
+
+    /**
+     * Re-drives the documents Firehose gave up on into the domain, with its rate cut on every rejection. Runs on a
+     * schedule rather than on the bucket notification, which the rollup already holds for the backup prefix, and
+     * which would fire while the domain is still rejecting writes.
+     */
+    private Function createRedriveLambda(StreamStackProps streamStackProps, Bucket logDeliveryBucket) {
+        Domain openSearchDomain = streamStackProps.getOpenSearchDomain();
+
+        Function redriveLambda = LambdaCode.javaFunction(this, "osdfwFailedDocumentRedrive", FunctionSizing.REDRIVE, 1024, streamStackProps)
+                .description("AWS WAF Dashboards Solution failed document re-drive function")
+                .handler("com.myorg.replay.RedriveHandler::handleRequest")
+                .timeout(REDRIVE_TIMEOUT)
+                // runs share the redrive checkpoint, so one at a time; a late schedule waits for the running one
+                .reservedConcurrentExecutions(1)
+                .environment(Map.of(
+                        "ES_ENDPOINT", openSearchDomain.getDomainEndpoint(),
+                        "LOG_BUCKET", logDeliveryBucket.getBucketName()
+                ))
                 .build();
 
-        this.cwLogStreamOpenSearch = LogStream.Builder.create(this, "osdfwOsDelivery")
-                .logGroup(cwLogGroup)
+        logDeliveryBucket.grantRead(redriveLambda);
+        openSearchDomain.grantReadWrite(redriveLambda);
+        Rule.Builder.create(this, "osdfwFailedDocumentRedriveSchedule")
+                .description("AWS WAF Dashboards Solution - re-drives documents Firehose could not deliver.")
+                .schedule(Schedule.rate(REDRIVE_RATE))
+                .targets(List.of(new LambdaFunction(LambdaCode.invocationTarget(redriveLambda, streamStackProps.getLambdaPackaging()))))
+                .build();
+        return redriveLambda;
+    }
+
+    private static CfnDeliveryStream.ProcessingConfigurationProperty processingConfiguration(int bufferIntervalInSeconds,
+                                                                                             String transformerArn) {
+        return CfnDeliveryStream.ProcessingConfigurationProperty.builder()
+                .enabled(true)
+                .processors(List.of(CfnDeliveryStream.ProcessorProperty.builder()
+                        .type("Lambda")
+                        .parameters(List.of(
+                                CfnDeliveryStream.ProcessorParameterProperty.builder()
+                                        .parameterName("LambdaArn")
+                                        .parameterValue(transformerArn)
+                                        .build(),
+                                // 3 MB in keeps the response well below the 6 MB Lambda payload limit
+                                CfnDeliveryStream.ProcessorParameterProperty.builder()
+                                        .parameterName("BufferSizeInMBs")
+                                        .parameterValue("3")
+                                        .build(),
+                                CfnDeliveryStream.ProcessorParameterProperty.builder()
+                                        .parameterName("BufferIntervalInSeconds")
+                                        .parameterValue(String.valueOf(bufferIntervalInSeconds))
+                                        .build()))
+                        .build()))
+                .build();
+    }
+
+    public void createLoggingConfiguration() {
+        this.cwLogGroup = LogGroup.Builder.create(this, "osdfwFirehose")
                 .removalPolicy(RemovalPolicy.DESTROY)
+                .retention(RetentionDays.ONE_MONTH)
                 .build();
     }
 
@@ -115,14 +515,14 @@ public class StreamStack extends NestedStack {
                 .build();
 
         ManagedPolicy.Builder.create(this, "osdfwFirehosePolicy")
-                .statements(generatePolicyStatements(streamStackProps.getOpenSearchDomain(), logDeliveryBucket))
+                .statements(generatePolicyStatements(streamStackProps.getOpenSearchDomain(), logDeliveryBucket, this.transformerLambda))
                 .roles(List.of(firehoseRole))//todo
                 .build();
 
         return firehoseRole;
     }
 
-    public List<PolicyStatement> generatePolicyStatements(Domain openSearchDomain, Bucket firehoseDeliveryBucket) {
+    public List<PolicyStatement> generatePolicyStatements(Domain openSearchDomain, Bucket firehoseDeliveryBucket, Function transformerLambda) {
         PolicyStatement s3AccessStatement = PolicyStatement.Builder.create()
                 .sid("osdfwS3AccessStatement")
                 .effect(Effect.ALLOW)
@@ -175,6 +575,17 @@ public class StreamStack extends NestedStack {
                 .resources(List.of(this.cwLogGroup.getLogGroupArn() + ":*"))
                 .build();
 
+        PolicyStatement lambdaInvokeAccessStatement = PolicyStatement.Builder.create()
+                .sid("osdfwLambdaInvokeAccessStatement")
+                .effect(Effect.ALLOW)
+                .actions(List.of(
+                        "lambda:InvokeFunction",
+                        "lambda:GetFunctionConfiguration"))
+                .resources(List.of(
+                        transformerLambda.getFunctionArn(),
+                        transformerLambda.getFunctionArn() + ":*"))
+                .build();
+
         PolicyStatement admin = PolicyStatement.Builder.create()
                 .sid("osdfwAdminAccessStatement")
                 .effect(Effect.ALLOW)
@@ -186,6 +597,7 @@ public class StreamStack extends NestedStack {
                 openSearchPutAccessStatement,
                 openSearchMiscGetAccessStatement,
                 cwLogDeliveryAccessStatement,
+                lambdaInvokeAccessStatement,
                 admin);//todo);
     }
 
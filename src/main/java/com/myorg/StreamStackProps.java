@@ -1,16 +1,437 @@
 package com.myorg;
 
 import software.amazon.awscdk.core.NestedStackProps;
+import software.amazon.awscdk.services.lambda.Architecture;
 import software.amazon.awscdk.services.opensearchservice.Domain;
+import software.amazon.awscdk.services.sns.ITopic;
+
+import java.util.List;
+import java.util.Map;
 
 public class StreamStackProps implements NestedStackProps {
+    public static final List<String> DEFAULT_TRANSFORM_FLATTEN_HEADERS = List.of("host", "user-agent", "referer", "x-forwarded-for");
+    public static final int DEFAULT_ROLLUP_TOP_N = 100;
+    public static final int DEFAULT_DAILY_INGEST_GB = 1;
+    public static final int DEFAULT_INDEX_WARM_AFTER_DAYS = 7;
+    public static final int DEFAULT_INDEX_RETENTION_DAYS = 30;
+    public static final int DEFAULT_DASHBOARDS_MEMORY_SIZE = 512;
+    public static final int DEFAULT_DASHBOARDS_TIMEOUT_SECONDS = 300;
+
     private final Domain openSearchDomain;
+    private final ThroughputProfile throughputProfile;
+    private final int shardCount;
+    private final List<String> webAclNames;
+    private final List<String> transformDropFields;
+    private final List<String> transformFlattenHeaders;
+    private final List<String> transformSampleRates;
+    private final int rollupTopN;
+    private final int dataNodeCount;
+    private final boolean ultraWarm;
+    private final Number dailyIngestGb;
+    private final Number indexWarmAfterDays;
+    private final Number indexRetentionDays;
+    private final Number rolloverDocCount;
+    private final int dashboardsMemorySize;
+    private final int dashboardsTimeoutSeconds;
+    private final LambdaPackaging lambdaPackaging;
+    private final boolean parquetArchive;
+    private final Map<String, FunctionSizing> functionSizing;
+    private final AlarmThresholds alarmThresholds;
+    private final ITopic alarmTopic;
+    private final List<String> spokeAccounts;
+    private final String enrichmentDatabase;
+    private final int realtimeShards;
+    private final List<String> realtimeThresholds;
 
     public StreamStackProps(Domain openSearchDomain) {
-        this.openSearchDomain = openSearchDomain;
+        this(builder().openSearchDomain(openSearchDomain));
+    }
+
+    public StreamStackProps(Domain openSearchDomain, ThroughputProfile throughputProfile) {
+        this(builder().openSearchDomain(openSearchDomain).throughputProfile(throughputProfile));
+    }
+
+    private StreamStackProps(Builder builder) {
+        if (builder.shardCount < 1) {
+            throw new IllegalArgumentException("Firehose shard count must be at least 1, got " + builder.shardCount);
+        }
+        if (builder.rollupTopN < 1) {
+            throw new IllegalArgumentException("Rollup top N must be at least 1, got " + builder.rollupTopN);
+        }
+        if (builder.dashboardsMemorySize < 128 || builder.dashboardsMemorySize > 10240) {
+            throw new IllegalArgumentException("Dashboards function memory must be 128 to 10240 MB, got " + builder.dashboardsMemorySize);
+        }
+        for (String account : builder.spokeAccounts) {
+            if (!account.matches("\\d{12}")) {
+                throw new IllegalArgumentException("Spoke accounts are 12 digit account ids, got '" + account + "'");
+            }
+        }
+        for (String entry : builder.transformSampleRates) {
+            validateSampleRate(entry);
+        }
+        String enrichmentDatabase = builder.enrichmentDatabase == null || builder.enrichmentDatabase.isBlank()
+                ? null : builder.enrichmentDatabase.trim();
+        if (enrichmentDatabase != null && !enrichmentDatabase.matches("s3://[^/]+/.+|/.+")) {
+            throw new IllegalArgumentException("The enrichment database is an s3://bucket/key URI or an absolute path, got '"
+                    + builder.enrichmentDatabase + "'");
+        }
+        if (builder.realtimeShards < 0) {
+            throw new IllegalArgumentException("Realtime stream shards can't be negative, got " + builder.realtimeShards);
+        }
+        for (String entry : builder.realtimeThresholds) {
+            if (!entry.trim().matches("(?i)(client|rule|uri)\\s*:\\s*\\d+")) {
+                throw new IllegalArgumentException("Realtime thresholds look like dimension:count for client, rule or uri, got '"
+                        + entry + "'");
+            }
+        }
+        if (builder.dashboardsTimeoutSeconds < 1 || builder.dashboardsTimeoutSeconds > 900) {
+            throw new IllegalArgumentException("Dashboards function timeout must be 1 to 900 seconds, got " + builder.dashboardsTimeoutSeconds);
+        }
+
+        this.openSearchDomain = builder.openSearchDomain;
+        this.throughputProfile = builder.throughputProfile;
+        this.shardCount = builder.shardCount;
+        this.webAclNames = List.copyOf(builder.webAclNames);
+        this.transformDropFields = List.copyOf(builder.transformDropFields);
+        this.transformFlattenHeaders = List.copyOf(builder.transformFlattenHeaders);
+        this.transformSampleRates = List.copyOf(builder.transformSampleRates);
+        this.rollupTopN = builder.rollupTopN;
+        this.dataNodeCount = builder.dataNodeCount;
+        this.ultraWarm = builder.ultraWarm;
+        this.dailyIngestGb = builder.dailyIngestGb;
+        this.indexWarmAfterDays = builder.indexWarmAfterDays;
+        this.indexRetentionDays = builder.indexRetentionDays;
+        this.rolloverDocCount = builder.rolloverDocCount;
+        this.dashboardsMemorySize = builder.dashboardsMemorySize;
+        this.dashboardsTimeoutSeconds = builder.dashboardsTimeoutSeconds;
+        this.lambdaPackaging = builder.lambdaPackaging;
+        this.parquetArchive = builder.parquetArchive;
+        this.functionSizing = Map.copyOf(builder.functionSizing);
+        this.alarmThresholds = builder.alarmThresholds;
+        this.alarmTopic = builder.alarmTopic;
+        this.spokeAccounts = List.copyOf(builder.spokeAccounts);
+        this.enrichmentDatabase = enrichmentDatabase;
+        this.realtimeShards = builder.realtimeShards;
+        this.realtimeThresholds = List.copyOf(builder.realtimeThresholds);
+    }
+
+    private static void validateSampleRate(String entry) {
+        String[] actionAndRate = entry.split(":", 2);
+        double rate;
+        try {
+            rate = actionAndRate.length == 2 && !actionAndRate[0].isBlank() ? Double.parseDouble(actionAndRate[1].trim()) : Double.NaN;
+        } catch (NumberFormatException e) {
+            rate = Double.NaN;
+        }
+        if (!(rate >= 0 && rate <= 1)) {
+            throw new IllegalArgumentException("Sample rates look like ACTION:rate with a rate of 0 to 1, got '" + entry + "'");
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
     }
 
     public Domain getOpenSearchDomain() {
         return openSearchDomain;
     }
+
+    public ThroughputProfile getThroughputProfile() {
+        return throughputProfile;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public List<String> getWebAclNames() {
+        return webAclNames;
+    }
+
+    public List<String> getTransformDropFields() {
+        return transformDropFields;
+    }
+
+    public List<String> getTransformFlattenHeaders() {
+        return transformFlattenHeaders;
+    }
+
+    /**
+     * Share of the records of each WAF action indexed, as {@code ACTION:rate} entries; unlisted actions are
+     * indexed in full.
+     */
+    public List<String> getTransformSampleRates() {
+        return transformSampleRates;
+    }
+
+    public int getRollupTopN() {
+        return rollupTopN;
+    }
+
+    public int getDataNodeCount() {
+        return dataNodeCount;
+    }
+
+    /**
+     * Whether the domain has UltraWarm nodes, so aged indices migrate there instead of staying read-only on hot nodes.
+     */
+    public boolean isUltraWarm() {
+        return ultraWarm;
+    }
+
+    // the index lifecycle values may be CloudFormation parameters, they are resolved at deploy time
+
+    public Number getDailyIngestGb() {
+        return dailyIngestGb;
+    }
+
+    public Number getIndexWarmAfterDays() {
+        return indexWarmAfterDays;
+    }
+
+    public Number getIndexRetentionDays() {
+        return indexRetentionDays;
+    }
+
+    public Number getRolloverDocCount() {
+        return rolloverDocCount;
+    }
+
+    /**
+     * Memory of the functions seeding and updating the Dashboards saved objects, in MB.
+     */
+    public int getDashboardsMemorySize() {
+        return dashboardsMemorySize;
+    }
+
+    public int getDashboardsTimeoutSeconds() {
+        return dashboardsTimeoutSeconds;
+    }
+
+    public LambdaPackaging getLambdaPackaging() {
+        return lambdaPackaging;
+    }
+
+    /**
+     * Whether the backed up logs are also archived as partitioned Parquet, see {@link LogArchive}.
+     */
+    public boolean isParquetArchive() {
+        return parquetArchive;
+    }
+
+    /**
+     * Sizing of one of the {@link FunctionSizing} functions: as configured, else {@code defaultMemorySize} on arm64.
+     */
+    public FunctionSizing getFunctionSizing(String function, int defaultMemorySize) {
+        return functionSizing.getOrDefault(function, new FunctionSizing(defaultMemorySize, Architecture.ARM_64));
+    }
+
+    public AlarmThresholds getAlarmThresholds() {
+        return alarmThresholds;
+    }
+
+    /**
+     * Topic the pipeline alarms notify, or null for alarms without actions.
+     */
+    public ITopic getAlarmTopic() {
+        return alarmTopic;
+    }
+
+    /**
+     * Accounts whose spoke stacks deliver their WAF logs into this domain, each into its own index alias.
+     */
+    public List<String> getSpokeAccounts() {
+        return spokeAccounts;
+    }
+
+    /**
+     * Whether this is the hub of a hub and spoke deployment, which tags records and dashboards with their account.
+     */
+    public boolean isHub() {
+        return !spokeAccounts.isEmpty();
+    }
+
+    /**
+     * IP prefix database the transformer enriches client addresses from, an S3 URI or a path such as a layer
+     * under {@code /opt}; null without enrichment.
+     */
+    public String getEnrichmentDatabase() {
+        return enrichmentDatabase;
+    }
+
+    /**
+     * Shards of the realtime detection stream, 0 without realtime detection, see {@link RealtimeDetection}.
+     */
+    public int getRealtimeShards() {
+        return realtimeShards;
+    }
+
+    public boolean isRealtimeDetection() {
+        return realtimeShards > 0;
+    }
+
+    /**
+     * Requests per window that raise a realtime alert, as {@code dimension:count} entries; unlisted dimensions
+     * keep the detector's defaults.
+     */
+    public List<String> getRealtimeThresholds() {
+        return realtimeThresholds;
+    }
+
+    public static final class Builder {
+        private Domain openSearchDomain;
+        private ThroughputProfile throughputProfile = ThroughputProfile.BALANCED;
+        private int shardCount = 1;
+        private List<String> webAclNames = List.of();
+        private List<String> transformDropFields = List.of();
+        private List<String> transformFlattenHeaders = DEFAULT_TRANSFORM_FLATTEN_HEADERS;
+        private List<String> transformSampleRates = List.of();
+        private int rollupTopN = DEFAULT_ROLLUP_TOP_N;
+        private int dataNodeCount = 1;
+        private boolean ultraWarm = false;
+        private Number dailyIngestGb = DEFAULT_DAILY_INGEST_GB;
+        private Number indexWarmAfterDays = DEFAULT_INDEX_WARM_AFTER_DAYS;
+        private Number indexRetentionDays = DEFAULT_INDEX_RETENTION_DAYS;
+        private Number rolloverDocCount = 0;
+        private int dashboardsMemorySize = DEFAULT_DASHBOARDS_MEMORY_SIZE;
+        private int dashboardsTimeoutSeconds = DEFAULT_DASHBOARDS_TIMEOUT_SECONDS;
+        private LambdaPackaging lambdaPackaging = LambdaPackaging.STANDARD;
+        private boolean parquetArchive = false;
+        private Map<String, FunctionSizing> functionSizing = Map.of();
+        private AlarmThresholds alarmThresholds = AlarmThresholds.defaultThresholds();
+        private ITopic alarmTopic;
+        private List<String> spokeAccounts = List.of();
+        private String enrichmentDatabase;
+        private int realtimeShards = 0;
+        private List<String> realtimeThresholds = List.of();
+
+        public Builder openSearchDomain(Domain openSearchDomain) {
+            this.openSearchDomain = openSearchDomain;
+            return this;
+        }
+
+        public Builder throughputProfile(ThroughputProfile throughputProfile) {
+            this.throughputProfile = throughputProfile;
+            return this;
+        }
+
+        public Builder shardCount(int shardCount) {
+            this.shardCount = shardCount;
+            return this;
+        }
+
+        public Builder webAclNames(List<String> webAclNames) {
+            this.webAclNames = webAclNames;
+            return this;
+        }
+
+        public Builder transformDropFields(List<String> transformDropFields) {
+            this.transformDropFields = transformDropFields;
+            return this;
+        }
+
+        public Builder transformFlattenHeaders(List<String> transformFlattenHeaders) {
+            this.transformFlattenHeaders = transformFlattenHeaders;
+            return this;
+        }
+
+        public Builder transformSampleRates(List<String> transformSampleRates) {
+            this.transformSampleRates = transformSampleRates;
+            return this;
+        }
+
+        public Builder rollupTopN(int rollupTopN) {
+            this.rollupTopN = rollupTopN;
+            return this;
+        }
+
+        public Builder dataNodeCount(int dataNodeCount) {
+            this.dataNodeCount = dataNodeCount;
+            return this;
+        }
+
+        public Builder ultraWarm(boolean ultraWarm) {
+            this.ultraWarm = ultraWarm;
+            return this;
+        }
+
+        public Builder dailyIngestGb(Number dailyIngestGb) {
+            this.dailyIngestGb = dailyIngestGb;
+            return this;
+        }
+
+        public Builder indexWarmAfterDays(Number indexWarmAfterDays) {
+            this.indexWarmAfterDays = indexWarmAfterDays;
+            return this;
+        }
+
+        public Builder indexRetentionDays(Number indexRetentionDays) {
+            this.indexRetentionDays = indexRetentionDays;
+            return this;
+        }
+
+        public Builder rolloverDocCount(Number rolloverDocCount) {
+            this.rolloverDocCount = rolloverDocCount;
+            return this;
+        }
+
+        public Builder dashboardsMemorySize(int dashboardsMemorySize) {
+            this.dashboardsMemorySize = dashboardsMemorySize;
+            return this;
+        }
+
+        public Builder dashboardsTimeoutSeconds(int dashboardsTimeoutSeconds) {
+            this.dashboardsTimeoutSeconds = dashboardsTimeoutSeconds;
+            return this;
+        }
+
+        public Builder lambdaPackaging(LambdaPackaging lambdaPackaging) {
+            this.lambdaPackaging = lambdaPackaging;
+            return this;
+        }
+
+        public Builder parquetArchive(boolean parquetArchive) {
+            this.parquetArchive = parquetArchive;
+            return this;
+        }
+
+        public Builder functionSizing(Map<String, FunctionSizing> functionSizing) {
+            this.functionSizing = functionSizing;
+            return this;
+        }
+
+        public Builder alarmThresholds(AlarmThresholds alarmThresholds) {
+            this.alarmThresholds = alarmThresholds;
+            return this;
+        }
+
+        public Builder alarmTopic(ITopic alarmTopic) {
+            this.alarmTopic = alarmTopic;
+            return this;
+        }
+
+        public Builder spokeAccounts(List<String> spokeAccounts) {
+            this.spokeAccounts = spokeAccounts;
+            return this;
+        }
+
+        public Builder enrichmentDatabase(String enrichmentDatabase) {
+            this.enrichmentDatabase = enrichmentDatabase;
+            return this;
+        }
+
+        public Builder realtimeShards(int realtimeShards) {
+            this.realtimeShards = realtimeShards;
+            return this;
+        }
+
+        public Builder realtimeThresholds(List<String> realtimeThresholds) {
+            this.realtimeThresholds = realtimeThresholds;
+            return this;
+        }
+
+        public StreamStackProps build() {
+            return new StreamStackProps(this);
+        }
+    }
 }
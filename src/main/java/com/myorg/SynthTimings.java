@@ -0,0 +1,71 @@
+package com.myorg;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Wall-clock time of each step of a synth run: building every stack and writing the cloud assembly. The app
+ * prints them and leaves them in the cloud assembly as {@value #REPORT_FILE}, for CI to chart and to catch
+ * synth time regressions.
+ */
+public class SynthTimings {
+    public static final String REPORT_FILE = "synth-timings.json";
+
+    private final Map<String, Long> stepMillis = new LinkedHashMap<>();
+
+    public <T> T time(String step, Supplier<T> work) {
+        long started = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            stepMillis.merge(step, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), Long::sum);
+        }
+    }
+
+    public Map<String, Long> getStepMillis() {
+        return Collections.unmodifiableMap(stepMillis);
+    }
+
+    public long getTotalMillis() {
+        return stepMillis.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * One line per step in the order they ran, and the total, for a CI log.
+     */
+    public String report() {
+        int width = stepMillis.keySet().stream().mapToInt(String::length).max().orElse(0);
+        StringBuilder report = new StringBuilder("Synth timings\n");
+        stepMillis.forEach((step, millis) -> report.append(String.format(Locale.ROOT, "  %-" + width + "s %8d ms%n", step, millis)));
+        report.append(String.format(Locale.ROOT, "  %-" + width + "s %8d ms%n", "total", getTotalMillis()));
+        return report.toString();
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"totalMillis\":").append(getTotalMillis()).append(",\"steps\":[");
+        String separator = "";
+        for (Map.Entry<String, Long> step : stepMillis.entrySet()) {
+            // step names are construct ids, nothing to escape
+            json.append(separator).append("{\"name\":\"").append(step.getKey()).append("\",\"millis\":").append(step.getValue()).append('}');
+            separator = ",";
+        }
+        return json.append("]}").toString();
+    }
+
+    public void writeTo(String outdir) {
+        try {
+            Files.writeString(Path.of(outdir, REPORT_FILE), toJson(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write " + REPORT_FILE + " to " + outdir, e);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.myorg;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Named Firehose buffering profiles for the WAF log delivery stream.
+ * Each profile sets the OpenSearch and S3 buffering hints, the OpenSearch retry duration
+ * and the S3 backup compression format together, so they can't drift apart.
+ */
+public enum ThroughputProfile {
+    // smallest bulk requests, documents show up in the dashboards as soon as Firehose allows
+    LOW_LATENCY("low-latency", 60, 1, 60, 5, 60, "GZIP"),
+    // the values the stack always shipped with
+    BALANCED("balanced", 60, 5, 300, 50, 60, "ZIP"),
+    // fewer, larger bulk requests for high-volume WebACLs; rides out longer OpenSearch write pressure
+    HIGH_THROUGHPUT("high-throughput", 300, 15, 900, 128, 900, "GZIP");
+
+    public static final String CONTEXT_KEY = "osdfwThroughputProfile";
+
+    private final String profileName;
+    private final int openSearchBufferIntervalInSeconds;
+    private final int openSearchBufferSizeInMBs;
+    private final int s3BufferIntervalInSeconds;
+    private final int s3BufferSizeInMBs;
+    private final int retryDurationInSeconds;
+    private final String s3CompressionFormat;
+
+    ThroughputProfile(String profileName,
+                      int openSearchBufferIntervalInSeconds,
+                      int openSearchBufferSizeInMBs,
+                      int s3BufferIntervalInSeconds,
+                      int s3BufferSizeInMBs,
+                      int retryDurationInSeconds,
+                      String s3CompressionFormat) {
+        this.profileName = profileName;
+        this.openSearchBufferIntervalInSeconds = openSearchBufferIntervalInSeconds;
+        this.openSearchBufferSizeInMBs = openSearchBufferSizeInMBs;
+        this.s3BufferIntervalInSeconds = s3BufferIntervalInSeconds;
+        this.s3BufferSizeInMBs = s3BufferSizeInMBs;
+        this.retryDurationInSeconds = retryDurationInSeconds;
+        this.s3CompressionFormat = s3CompressionFormat;
+    }
+
+    public static ThroughputProfile fromName(String name) {
+        if (name == null || name.isBlank()) {
+            return BALANCED;
+        }
+
+        String normalised = name.trim().toLowerCase(Locale.ROOT);
+        for (ThroughputProfile profile : values()) {
+            if (profile.profileName.equals(normalised)) {
+                return profile;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown throughput profile '" + name + "', expected one of: "
+                + Arrays.stream(values()).map(ThroughputProfile::getProfileName).collect(Collectors.joining(", ")));
+    }
+
+    public String getProfileName() {
+        return profileName;
+    }
+
+    public int getOpenSearchBufferIntervalInSeconds() {
+        return openSearchBufferIntervalInSeconds;
+    }
+
+    public int getOpenSearchBufferSizeInMBs() {
+        return openSearchBufferSizeInMBs;
+    }
+
+    public int getS3BufferIntervalInSeconds() {
+        return s3BufferIntervalInSeconds;
+    }
+
+    public int getS3BufferSizeInMBs() {
+        return s3BufferSizeInMBs;
+    }
+
+    public int getRetryDurationInSeconds() {
+        return retryDurationInSeconds;
+    }
+
+    public String getS3CompressionFormat() {
+        return s3CompressionFormat;
+    }
+}
@@ -1,28 +1,790 @@
 package com.myorg;
 
+import software.amazon.awscdk.assertions.Match;
+import software.amazon.awscdk.assertions.Template;
 import software.amazon.awscdk.core.App;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import software.amazon.awscdk.core.StackProps;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
+import org.junit.jupiter.api.DynamicTest;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
 
 public class CdkAwsWafDashboardsTest {
-    private final static ObjectMapper JSON =
-        new ObjectMapper().configure(SerializationFeature.INDENT_OUTPUT, true);
+
+    private static MainStack synthMainStack(Map<String, Object> context) {
+        App app = new App();
+        // Lambda code assets are bundled in Docker, which synth tests don't need
+        app.getNode().setContext("aws:cdk:bundling-stacks", List.of());
+        context.forEach((key, value) -> app.getNode().setContext(key, value));
+        return new MainStack(app, "test", StackProps.builder().build());
+    }
+
+    private static void assertDeliveryStreamRendersProfile(ThroughputProfile profile, Template streamTemplate) {
+        streamTemplate.hasResourceProperties("AWS::KinesisFirehose::DeliveryStream", Map.of(
+                "DeliveryStreamType", "DirectPut",
+                "ElasticsearchDestinationConfiguration", Match.objectLike(Map.of(
+                        "BufferingHints", Map.of(
+                                "IntervalInSeconds", profile.getOpenSearchBufferIntervalInSeconds(),
+                                "SizeInMBs", profile.getOpenSearchBufferSizeInMBs()),
+                        "RetryOptions", Map.of(
+                                "DurationInSeconds", profile.getRetryDurationInSeconds()),
+                        "S3Configuration", Match.objectLike(Map.of(
+                                "BufferingHints", Map.of(
+                                        "IntervalInSeconds", profile.getS3BufferIntervalInSeconds(),
+                                        "SizeInMBs", profile.getS3BufferSizeInMBs()),
+                                "CompressionFormat", profile.getS3CompressionFormat()))))));
+    }
+
+    @Test
+    public void testOneAppSynthesizesEveryTarget() {
+        App app = new App();
+        app.getNode().setContext("aws:cdk:bundling-stacks", List.of());
+        app.getNode().setContext(DeploymentTargets.CONTEXT_KEY, "111111111111/eu-west-1,222222222222/us-east-1");
+        SynthTimings timings = new SynthTimings();
+
+        List<MainStack> stacks = CdkAwsWafDashboardsApp.createStacks(app, timings);
+        timings.time("synth", app::synth);
+
+        assertThat(stacks).extracting(MainStack::getStackName)
+                .containsExactly("OSDfW-111111111111-eu-west-1", "OSDfW-222222222222-us-east-1");
+        assertThat(stacks).extracting(MainStack::getRegion).containsExactly("eu-west-1", "us-east-1");
+        for (MainStack stack : stacks) {
+            Template.fromStack(stack).resourceCountIs("AWS::OpenSearchService::Domain", 1);
+            Template.fromStack(stack.getStreamStack()).resourceCountIs("AWS::KinesisFirehose::DeliveryStream", 1);
+            Template.fromStack(stack.getAppStack()).hasResourceProperties("AWS::Lambda::Function", Match.objectLike(Map.of(
+                    "Handler", "com.myorg.dashboards.DashboardsUpdateHandler::handleRequest")));
+        }
+        assertThat(timings.getStepMillis()).containsOnlyKeys(
+                "OSDfW-111111111111-eu-west-1", "OSDfW-222222222222-us-east-1", "synth");
+        assertThat(timings.toJson()).startsWith("{\"totalMillis\":").contains("{\"name\":\"synth\",\"millis\":");
+        assertThat(timings.report()).contains("OSDfW-222222222222-us-east-1").contains("total");
+    }
 
     @Test
-    public void testStack() throws IOException {
+    public void testWithoutTargetsTheStackIsEnvironmentAgnostic() {
         App app = new App();
-        CdkAwsWafDashboardsStack stack = new CdkAwsWafDashboardsStack(app, "test");
+        app.getNode().setContext("aws:cdk:bundling-stacks", List.of());
+
+        List<MainStack> stacks = CdkAwsWafDashboardsApp.createStacks(app, new SynthTimings());
+
+        assertThat(stacks).extracting(MainStack::getStackName).containsExactly("OSDfW");
+        assertThatThrownBy(() -> DeploymentTargets.parse(List.of("eu-west-1")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> DeploymentTargets.parse(List.of("111111111111/eu-west-1", "111111111111/eu-west-1")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testDefaultThroughputProfileIsBalanced() {
+        MainStack stack = synthMainStack(Map.of());
+
+        assertThat(stack.getStreamStack()).isNotNull();
+        assertDeliveryStreamRendersProfile(ThroughputProfile.BALANCED, Template.fromStack(stack.getStreamStack()));
+    }
+
+    @Test
+    public void testEveryThroughputProfileRendersDeliveryStream() {
+        for (ThroughputProfile profile : ThroughputProfile.values()) {
+            MainStack stack = synthMainStack(Map.of(ThroughputProfile.CONTEXT_KEY, profile.getProfileName()));
+
+            Template streamTemplate = Template.fromStack(stack.getStreamStack());
+            assertDeliveryStreamRendersProfile(profile, streamTemplate);
+            streamTemplate.hasOutput("osdfwThroughputProfile", Map.of("Value", profile.getProfileName()));
+        }
+    }
+
+    @Test
+    public void testUnknownThroughputProfileIsRejected() {
+        assertThatThrownBy(() -> synthMainStack(Map.of(ThroughputProfile.CONTEXT_KEY, "turbo")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("low-latency, balanced, high-throughput");
+    }
+
+    @Test
+    public void testSingleShardKeepsOriginalStreamName() {
+        Template streamTemplate = Template.fromStack(synthMainStack(Map.of()).getStreamStack());
+
+        streamTemplate.resourceCountIs("AWS::KinesisFirehose::DeliveryStream", 1);
+        streamTemplate.hasResourceProperties("AWS::KinesisFirehose::DeliveryStream", Map.of(
+                "DeliveryStreamName", "aws-waf-logs-osdfw"));
+    }
+
+    @Test
+    public void testShardedStreamsGetOwnLogStreams() {
+        Template streamTemplate = Template.fromStack(synthMainStack(Map.of(
+                StreamStack.SHARD_COUNT_CONTEXT_KEY, "3",
+                StreamStack.WEB_ACLS_CONTEXT_KEY, "acl-a, acl-b,acl-c,acl-d")).getStreamStack());
+
+        streamTemplate.resourceCountIs("AWS::KinesisFirehose::DeliveryStream", 3);
+        streamTemplate.resourceCountIs("AWS::Logs::LogStream", 6);
+        for (int shard = 0; shard < 3; shard++) {
+            streamTemplate.hasResourceProperties("AWS::KinesisFirehose::DeliveryStream", Map.of(
+                    "DeliveryStreamName", "aws-waf-logs-osdfw-" + shard,
+                    "ElasticsearchDestinationConfiguration", Match.objectLike(Map.of(
+                            "IndexName", "awswaf"))));
+            streamTemplate.hasOutput("osdfwFirehoseArn" + shard, Match.anyValue());
+        }
+        streamTemplate.hasOutput("osdfwWebAclStreamMapping", Match.objectLike(Map.of(
+                "Value", "{\"acl-a\":\"aws-waf-logs-osdfw-0\",\"acl-b\":\"aws-waf-logs-osdfw-1\","
+                        + "\"acl-c\":\"aws-waf-logs-osdfw-2\",\"acl-d\":\"aws-waf-logs-osdfw-0\"}")));
+    }
+
+    @Test
+    public void testWebAclAssignmentIsRoundRobin() {
+        assertThat(StreamStack.assignWebAclsToStreams(List.of("a", "b", "c"), 2))
+                .containsExactly(
+                        entry("a", "aws-waf-logs-osdfw-0"),
+                        entry("b", "aws-waf-logs-osdfw-1"),
+                        entry("c", "aws-waf-logs-osdfw-0"));
+        assertThat(StreamStack.assignWebAclsToStreams(List.of("a"), 1))
+                .containsExactly(entry("a", "aws-waf-logs-osdfw"));
+    }
+
+    @Test
+    public void testShardCountMustBePositive() {
+        assertThatThrownBy(() -> synthMainStack(Map.of(StreamStack.SHARD_COUNT_CONTEXT_KEY, "0")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
 
-        // synthesize the stack to a CloudFormation template
-        JsonNode actual = JSON.valueToTree(app.synth().getStackArtifact(stack.getArtifactId()).getTemplate());
+    @Test
+    public void testDeliveryStreamsUseTransformerLambda() {
+        Template streamTemplate = Template.fromStack(synthMainStack(Map.of(
+                StreamStack.TRANSFORM_DROP_FIELDS_CONTEXT_KEY, "httpSourceId,labels")).getStreamStack());
+
+        streamTemplate.hasResourceProperties("AWS::Lambda::Function", Map.of(
+                "Handler", "com.myorg.transform.FirehoseTransformHandler::handleRequest",
+                "Runtime", "java11",
+                "Environment", Map.of("Variables", Map.of(
+                        "DROP_FIELDS", "httpSourceId,labels",
+                        "FLATTEN_HEADERS", "host,user-agent,referer,x-forwarded-for"))));
+        streamTemplate.hasResourceProperties("AWS::KinesisFirehose::DeliveryStream", Map.of(
+                "ElasticsearchDestinationConfiguration", Match.objectLike(Map.of(
+                        "ProcessingConfiguration", Match.objectLike(Map.of(
+                                "Enabled", true,
+                                "Processors", List.of(Match.objectLike(Map.of("Type", "Lambda")))))))));
+    }
+
+    @Test
+    public void testBackupObjectsFeedRollupLambda() {
+        Template streamTemplate = Template.fromStack(synthMainStack(Map.of(
+                StreamStack.ROLLUP_TOP_N_CONTEXT_KEY, "25")).getStreamStack());
+
+        streamTemplate.hasResourceProperties("AWS::Lambda::Function", Map.of(
+                "Handler", "com.myorg.rollup.S3RollupHandler::handleRequest",
+                "Runtime", "java11",
+                "Environment", Map.of("Variables", Match.objectLike(Map.of(
+                        "ROLLUP_INDEX_PREFIX", StreamStack.ROLLUP_INDEX_PREFIX,
+                        "ROLLUP_TOP_N", "25")))));
+        streamTemplate.hasResourceProperties("Custom::S3BucketNotifications", Map.of(
+                "NotificationConfiguration", Map.of(
+                        "LambdaFunctionConfigurations", List.of(Match.objectLike(Map.of(
+                                "Events", List.of("s3:ObjectCreated:*"),
+                                "Filter", Map.of("Key", Map.of("FilterRules", List.of(
+                                        Map.of("Name", "prefix", "Value", "/log"))))))))));
+    }
+
+    @Test
+    public void testReplayFunctionReadsTheBackupWithTheTransformSettings() {
+        Template streamTemplate = Template.fromStack(synthMainStack(Map.of(
+                FunctionSizing.CONTEXT_KEY, "replay:3008")).getStreamStack());
+
+        streamTemplate.hasResourceProperties("AWS::Lambda::Function", Match.objectLike(Map.of(
+                "Handler", "com.myorg.replay.ReplayHandler::handleRequest",
+                "MemorySize", 3008,
+                "Timeout", 900,
+                "Environment", Map.of("Variables", Match.objectLike(Map.of(
+                        "REPLAY_PARALLELISM", "8",
+                        "FLATTEN_HEADERS", String.join(",", StreamStackProps.DEFAULT_TRANSFORM_FLATTEN_HEADERS)))))));
+        // invoked by hand only: the bucket notifies the rollup function and nothing else
+        streamTemplate.hasResourceProperties("Custom::S3BucketNotifications", Map.of(
+                "NotificationConfiguration", Map.of(
+                        "LambdaFunctionConfigurations", List.of(Match.anyValue()))));
+    }
+
+    @Test
+    public void testFailedDocumentsAreRedrivenOnASchedule() {
+        Template streamTemplate = Template.fromStack(synthMainStack(Map.of()).getStreamStack());
+
+        streamTemplate.hasResourceProperties("AWS::Lambda::Function", Match.objectLike(Map.of(
+                "Handler", "com.myorg.replay.RedriveHandler::handleRequest",
+                "Timeout", 600,
+                "ReservedConcurrentExecutions", 1,
+                "Environment", Map.of("Variables", Match.objectLike(Map.of(
+                        "ES_ENDPOINT", Match.anyValue(),
+                        "LOG_BUCKET", Match.anyValue()))))));
+        streamTemplate.hasResourceProperties("AWS::Events::Rule", Match.objectLike(Map.of(
+                "ScheduleExpression", "rate(15 minutes)",
+                "Targets", Match.arrayWith(List.of(Match.objectLike(Map.of(
+                        "Arn", Map.of("Fn::GetAtt", Match.arrayWith(List.of(
+                                Match.stringLikeRegexp("osdfwFailedDocumentRedrive.*")))))))))));
+    }
 
-        // Update once resources have been added to the stack
-        assertThat(actual.get("Resources")).isNull();
+    @Test
+    public void testParquetArchiveIsPartitionedAndDescribedInGlue() {
+        Template defaultTemplate = Template.fromStack(synthMainStack(Map.of()).getStreamStack());
+        defaultTemplate.resourceCountIs("AWS::Glue::Table", 0);
+
+        Template streamTemplate = Template.fromStack(synthMainStack(Map.of(LogArchive.CONTEXT_KEY, "true")).getStreamStack());
+
+        streamTemplate.resourceCountIs("AWS::KinesisFirehose::DeliveryStream", 2);
+        streamTemplate.hasResourceProperties("AWS::KinesisFirehose::DeliveryStream", Match.objectLike(Map.of(
+                "DeliveryStreamName", LogArchive.DELIVERY_STREAM_NAME,
+                "ExtendedS3DestinationConfiguration", Match.objectLike(Map.of(
+                        "Prefix", "waf-archive/day=!{partitionKeyFromQuery:day}/hour=!{partitionKeyFromQuery:hour}"
+                                + "/webacl=!{partitionKeyFromQuery:webacl}/action=!{partitionKeyFromQuery:action}/",
+                        "CompressionFormat", "UNCOMPRESSED",
+                        "DynamicPartitioningConfiguration", Match.objectLike(Map.of("Enabled", true)),
+                        "ProcessingConfiguration", Match.objectLike(Map.of(
+                                "Processors", List.of(Match.objectLike(Map.of(
+                                        "Type", "MetadataExtraction",
+                                        "Parameters", Match.arrayWith(List.of(Map.of(
+                                                "ParameterName", "MetadataExtractionQuery",
+                                                "ParameterValue", LogArchive.PARTITION_QUERY)))))))),
+                        "DataFormatConversionConfiguration", Match.objectLike(Map.of(
+                                "Enabled", true,
+                                "OutputFormatConfiguration", Map.of("Serializer", Map.of(
+                                        "ParquetSerDe", Map.of("Compression", "SNAPPY"))),
+                                "SchemaConfiguration", Match.objectLike(Map.of("TableName", LogArchive.TABLE_NAME)))))))));
+
+        List<Map<String, String>> partitionKeys = List.of(
+                Map.of("Name", "day", "Type", "string"), Map.of("Name", "hour", "Type", "string"),
+                Map.of("Name", "webacl", "Type", "string"), Map.of("Name", "action", "Type", "string"));
+        streamTemplate.hasResourceProperties("AWS::Glue::Table", Match.objectLike(Map.of(
+                "TableInput", Match.objectLike(Map.of(
+                        "Name", LogArchive.TABLE_NAME,
+                        "PartitionKeys", partitionKeys,
+                        "Parameters", Match.objectLike(Map.of(
+                                "projection.enabled", "true",
+                                "projection.hour.range", "0,23",
+                                "projection.webacl.type", "injected")),
+                        "StorageDescriptor", Match.objectLike(Map.of(
+                                "Columns", Match.arrayWith(List.of(
+                                        Map.of("Name", "timestamp", "Type", "bigint"),
+                                        Map.of("Name", "webaclid", "Type", "string"),
+                                        Map.of("Name", "httprequest", "Type", Match.stringLikeRegexp(".*headers:map<string,string>.*")),
+                                        Map.of("Name", "sampleweight", "Type", "float"),
+                                        Map.of("Name", "accountid", "Type", "string"),
+                                        Match.objectLike(Map.of("Name", "client")))),
+                                "SerdeInfo", Map.of("SerializationLibrary",
+                                        "org.apache.hadoop.hive.ql.io.parquet.serde.ParquetHiveSerDe"))))))));
+        // the partition values the query extracts are the table's partition keys
+        for (String key : LogArchive.PARTITION_KEYS) {
+            assertThat(LogArchive.PARTITION_QUERY).contains(key + ": ");
+            assertThat(LogArchive.columns(StreamStackProps.DEFAULT_TRANSFORM_FLATTEN_HEADERS)).doesNotContainKey(key);
+        }
+        // without flattening the transformer keeps WAF's header array
+        Template.fromStack(synthMainStack(Map.of(LogArchive.CONTEXT_KEY, "true",
+                StreamStack.TRANSFORM_FLATTEN_HEADERS_CONTEXT_KEY, "")).getStreamStack())
+                .hasResourceProperties("AWS::Glue::Table", Match.objectLike(Map.of(
+                        "TableInput", Match.objectLike(Map.of(
+                                "StorageDescriptor", Match.objectLike(Map.of(
+                                        "Columns", Match.arrayWith(List.of(Map.of("Name", "httprequest", "Type",
+                                                Match.stringLikeRegexp(".*headers:array<struct<name:string,value:string>>.*")))))))))));
+        streamTemplate.hasResourceProperties("AWS::Lambda::Function", Match.objectLike(Map.of(
+                "Handler", "com.myorg.rollup.S3RollupHandler::handleRequest",
+                "Environment", Map.of("Variables", Match.objectLike(Map.of(
+                        "ARCHIVE_STREAM", LogArchive.DELIVERY_STREAM_NAME))))));
+    }
+
+    @Test
+    public void testRollupTopNMustBePositive() {
+        assertThatThrownBy(() -> synthMainStack(Map.of(StreamStack.ROLLUP_TOP_N_CONTEXT_KEY, "0")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testSampleRatesReachTheTransformAndTheIndexTemplate() {
+        Template streamTemplate = Template.fromStack(synthMainStack(Map.of(
+                StreamStack.TRANSFORM_SAMPLE_RATES_CONTEXT_KEY, "ALLOW:0.05")).getStreamStack());
+
+        streamTemplate.hasResourceProperties("AWS::Lambda::Function", Match.objectLike(Map.of(
+                "Handler", "com.myorg.transform.FirehoseTransformHandler::handleRequest",
+                "Environment", Map.of("Variables", Match.objectLike(Map.of("SAMPLE_RATES", "ALLOW:0.05")))))));
+        streamTemplate.hasResourceProperties("AWS::CloudFormation::CustomResource", Match.objectLike(Map.of(
+                "SampleRates", "ALLOW:0.05")));
+
+        assertThatThrownBy(() -> synthMainStack(Map.of(StreamStack.TRANSFORM_SAMPLE_RATES_CONTEXT_KEY, "ALLOW:5")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testEnrichmentDatabaseReachesTheTransformAndTheReplay() {
+        Template streamTemplate = Template.fromStack(synthMainStack(Map.of(
+                StreamStack.ENRICHMENT_DATABASE_CONTEXT_KEY, "s3://osdfw-enrichment/prefixes.csv.gz")).getStreamStack());
+
+        for (String handler : List.of("com.myorg.transform.FirehoseTransformHandler::handleRequest", "com.myorg.replay.ReplayHandler::handleRequest")) {
+            streamTemplate.hasResourceProperties("AWS::Lambda::Function", Match.objectLike(Map.of(
+                    "Handler", handler,
+                    "Environment", Map.of("Variables", Match.objectLike(Map.of("ENRICHMENT_DB", "s3://osdfw-enrichment/prefixes.csv.gz")))))));
+        }
+        streamTemplate.hasResourceProperties("AWS::IAM::Policy", Match.objectLike(Map.of(
+                "PolicyDocument", Match.objectLike(Map.of("Statement", Match.arrayWith(List.of(
+                        Match.objectLike(Map.of("Action", "s3:GetObject"))))))))));
+
+        assertThatThrownBy(() -> synthMainStack(Map.of(StreamStack.ENRICHMENT_DATABASE_CONTEXT_KEY, "prefixes.csv")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testRealtimeDetectionFansOutFromTheTransformer() {
+        Template streamTemplate = Template.fromStack(synthMainStack(Map.of()).getStreamStack());
+        streamTemplate.resourceCountIs("AWS::Kinesis::Stream", 0);
+
+        streamTemplate = Template.fromStack(synthMainStack(Map.of(
+                RealtimeDetection.SHARDS_CONTEXT_KEY, "2",
+                RealtimeDetection.THRESHOLDS_CONTEXT_KEY, "client:1000,uri:0")).getStreamStack());
+
+        streamTemplate.hasResourceProperties("AWS::Kinesis::Stream", Match.objectLike(Map.of(
+                "Name", RealtimeDetection.STREAM_NAME,
+                "ShardCount", 2)));
+        streamTemplate.hasResourceProperties("AWS::Lambda::Function", Match.objectLike(Map.of(
+                "Handler", "com.myorg.transform.FirehoseTransformHandler::handleRequest",
+                "Environment", Map.of("Variables", Match.objectLike(Map.of("REALTIME_STREAM", RealtimeDetection.STREAM_NAME)))))));
+        streamTemplate.hasResourceProperties("AWS::Lambda::Function", Match.objectLike(Map.of(
+                "Handler", "com.myorg.realtime.RealtimeDetectorHandler::handleRequest",
+                "Environment", Map.of("Variables", Match.objectLike(Map.of(
+                        "ALERT_THRESHOLDS", "client:1000,uri:0",
+                        "SHARDS", "2")))))));
+        streamTemplate.hasResourceProperties("AWS::Lambda::EventSourceMapping", Match.objectLike(Map.of(
+                "StartingPosition", "LATEST",
+                "ParallelizationFactor", 1)));
+        streamTemplate.hasResourceProperties("AWS::KinesisFirehose::DeliveryStream", Match.objectLike(Map.of(
+                "ElasticsearchDestinationConfiguration", Match.objectLike(Map.of(
+                        "ProcessingConfiguration", Match.objectLike(Map.of(
+                                "Processors", List.of(Match.objectLike(Map.of(
+                                        "Parameters", Match.arrayWith(List.of(Map.of(
+                                                "ParameterName", "BufferIntervalInSeconds",
+                                                "ParameterValue", String.valueOf(RealtimeDetection.PROCESSOR_BUFFER_INTERVAL_SECONDS)))))))))))))));
+
+        assertThatThrownBy(() -> synthMainStack(Map.of(RealtimeDetection.THRESHOLDS_CONTEXT_KEY, "addresses:10")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testHubPreparesAnAliasAndBackupAccessPerSpoke() {
+        MainStack hub = synthMainStack(Map.of(SpokeStack.SPOKE_ACCOUNTS_CONTEXT_KEY, "111111111111,222222222222"));
+        Template streamTemplate = Template.fromStack(hub.getStreamStack());
+
+        streamTemplate.resourceCountIs("AWS::CloudFormation::CustomResource", 3);
+        streamTemplate.hasResourceProperties("AWS::CloudFormation::CustomResource", Match.objectLike(Map.of(
+                "IndexAlias", StreamStack.spokeIndexAlias("222222222222"))));
+        streamTemplate.hasResourceProperties("AWS::S3::Bucket", Match.objectLike(Map.of(
+                "OwnershipControls", Map.of("Rules", List.of(Map.of("ObjectOwnership", "BucketOwnerEnforced"))))));
+        streamTemplate.hasResourceProperties("AWS::S3::BucketPolicy", Match.anyValue());
+        streamTemplate.hasResourceProperties("AWS::Lambda::Function", Match.objectLike(Map.of(
+                "Handler", "com.myorg.transform.FirehoseTransformHandler::handleRequest",
+                "Environment", Map.of("Variables", Match.objectLike(Map.of("TAG_ACCOUNT", "true")))))));
+        Template.fromStack(hub.getAppStack()).hasResourceProperties("AWS::Lambda::Function", Match.objectLike(Map.of(
+                "Environment", Map.of("Variables", Match.objectLike(Map.of("ACCOUNT_DASHBOARDS", "true")))))));
+
+        assertThatThrownBy(() -> synthMainStack(Map.of(SpokeStack.SPOKE_ACCOUNTS_CONTEXT_KEY, "1111")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testSpokeDeliversToTheHubWithoutADomainOfItsOwn() {
+        App app = new App();
+        app.getNode().setContext("aws:cdk:bundling-stacks", List.of());
+        app.getNode().setContext(SpokeStack.HUB_DOMAIN_ARN_CONTEXT_KEY, "arn:aws:es:eu-west-1:999999999999:domain/osdfw");
+        app.getNode().setContext(SpokeStack.HUB_DOMAIN_ENDPOINT_CONTEXT_KEY, "search-osdfw-abc.eu-west-1.es.amazonaws.com");
+        app.getNode().setContext(SpokeStack.HUB_LOG_BUCKET_CONTEXT_KEY, "osdfw-hub-logs");
+        SpokeStack spoke = CdkAwsWafDashboardsApp.createSpokeStacks(app, new SynthTimings()).get(0);
+        Template spokeTemplate = Template.fromStack(spoke);
+
+        assertThat(spoke.getStackName()).isEqualTo("OSDfWSpoke");
+        spokeTemplate.resourceCountIs("AWS::OpenSearchService::Domain", 0);
+        spokeTemplate.resourceCountIs("AWS::S3::Bucket", 0);
+        spokeTemplate.hasResourceProperties("AWS::KinesisFirehose::DeliveryStream", Match.objectLike(Map.of(
+                "DeliveryStreamName", StreamStack.DELIVERY_STREAM_NAME,
+                "ElasticsearchDestinationConfiguration", Match.objectLike(Map.of(
+                        "ClusterEndpoint", "https://search-osdfw-abc.eu-west-1.es.amazonaws.com",
+                        "IndexRotationPeriod", "NoRotation",
+                        "S3Configuration", Match.objectLike(Map.of(
+                                "Prefix", StreamStack.S3_BACKUP_PREFIX)))))));
+        spokeTemplate.hasResourceProperties("AWS::IAM::Role", Match.objectLike(Map.of(
+                "RoleName", SpokeStack.DELIVERY_ROLE_NAME)));
+        spokeTemplate.hasResourceProperties("AWS::Lambda::Function", Match.objectLike(Map.of(
+                "Environment", Map.of("Variables", Match.objectLike(Map.of("TAG_ACCOUNT", "true")))))));
+
+        App incomplete = new App();
+        incomplete.getNode().setContext(SpokeStack.HUB_DOMAIN_ARN_CONTEXT_KEY, "arn:aws:es:eu-west-1:999999999999:domain/osdfw");
+        assertThatThrownBy(() -> new SpokeStack(incomplete, "spoke", StackProps.builder().build()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testIndexSetupRunsBeforeFirehoseWritesToTheAlias() {
+        Template streamTemplate = Template.fromStack(synthMainStack(Map.of()).getStreamStack());
+
+        streamTemplate.hasResourceProperties("AWS::CloudFormation::CustomResource", Match.objectLike(Map.of(
+                "IndexAlias", "awswaf",
+                "DataNodeCount", 1,
+                "UltraWarm", false,
+                // the function ARN doesn't change with its code, so the code hash is what triggers an Update
+                "CodeHash", LambdaCode.sourceHash())));
+        streamTemplate.hasResourceProperties("AWS::Lambda::Function", Map.of(
+                "Handler", "com.myorg.setup.IndexSetupHandler::handleRequest",
+                "Runtime", "java11",
+                "Environment", Match.anyValue()));
+        streamTemplate.hasResource("AWS::KinesisFirehose::DeliveryStream", Match.objectLike(Map.of(
+                "DependsOn", Match.arrayWith(List.of(Match.stringLikeRegexp("osdfwIndexSetup[0-9A-F]{8}"))),
+                "Properties", Match.objectLike(Map.of(
+                        "ElasticsearchDestinationConfiguration", Match.objectLike(Map.of(
+                                "IndexName", "awswaf",
+                                "IndexRotationPeriod", "NoRotation")))))));
+    }
+
+    @Test
+    public void testIndexTemplateFollowsBufferingAndTransform() {
+        for (ThroughputProfile profile : ThroughputProfile.values()) {
+            MainStack stack = synthMainStack(Map.of(ThroughputProfile.CONTEXT_KEY, profile.getProfileName()));
+
+            Template.fromStack(stack.getStreamStack()).hasResourceProperties("AWS::CloudFormation::CustomResource",
+                    Match.objectLike(Map.of(
+                            "RefreshIntervalSeconds", profile.getOpenSearchBufferIntervalInSeconds(),
+                            "FlattenHeaders", String.join(",", StreamStackProps.DEFAULT_TRANSFORM_FLATTEN_HEADERS))));
+        }
+    }
+
+    @Test
+    public void testDashboardsFunctionsRunJavaWithConfigurableSizing() {
+        Template appTemplate = Template.fromStack(synthMainStack(Map.of()).getAppStack());
+        for (String handler : List.of("com.myorg.dashboards.DashboardsSeedHandler::handleRequest",
+                "com.myorg.dashboards.DashboardsUpdateHandler::handleRequest")) {
+            appTemplate.hasResourceProperties("AWS::Lambda::Function", Match.objectLike(Map.of(
+                    "Handler", handler,
+                    "Runtime", "java11",
+                    "MemorySize", StreamStackProps.DEFAULT_DASHBOARDS_MEMORY_SIZE,
+                    "Timeout", StreamStackProps.DEFAULT_DASHBOARDS_TIMEOUT_SECONDS)));
+        }
+        appTemplate.resourceCountIs("AWS::CloudFormation::CustomResource", 1);
+
+        Template.fromStack(synthMainStack(Map.of(
+                AppStack.DASHBOARDS_MEMORY_CONTEXT_KEY, "1024",
+                AppStack.DASHBOARDS_TIMEOUT_CONTEXT_KEY, "600")).getAppStack())
+                .hasResourceProperties("AWS::Lambda::Function", Match.objectLike(Map.of(
+                        "Handler", "com.myorg.dashboards.DashboardsSeedHandler::handleRequest",
+                        "MemorySize", 1024,
+                        "Timeout", 600)));
+        assertThatThrownBy(() -> synthMainStack(Map.of(AppStack.DASHBOARDS_TIMEOUT_CONTEXT_KEY, "1200")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("900");
+    }
+
+    @Test
+    public void testFunctionsCanBeSizedOneByOne() {
+        MainStack stack = synthMainStack(Map.of(
+                FunctionSizing.CONTEXT_KEY, "dashboards-updater:1024/x86_64, transformer:2048"));
+        Template appTemplate = Template.fromStack(stack.getAppStack());
+
+        appTemplate.hasResourceProperties("AWS::Lambda::Function", Match.objectLike(Map.of(
+                "Handler", "com.myorg.dashboards.DashboardsUpdateHandler::handleRequest",
+                "MemorySize", 1024,
+                "Architectures", List.of("x86_64"))));
+        appTemplate.hasResourceProperties("AWS::Lambda::Function", Match.objectLike(Map.of(
+                "Handler", "com.myorg.dashboards.DashboardsSeedHandler::handleRequest",
+                "MemorySize", StreamStackProps.DEFAULT_DASHBOARDS_MEMORY_SIZE,
+                "Architectures", List.of("arm64"))));
+        Template.fromStack(stack.getStreamStack()).hasResourceProperties("AWS::Lambda::Function", Match.objectLike(Map.of(
+                "Handler", "com.myorg.transform.FirehoseTransformHandler::handleRequest",
+                "MemorySize", 2048)));
+
+        assertThatThrownBy(() -> synthMainStack(Map.of(FunctionSizing.CONTEXT_KEY, "updater:1024")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("dashboards-updater");
+        assertThatThrownBy(() -> synthMainStack(Map.of(FunctionSizing.CONTEXT_KEY, "rollup:64")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testSnapStartPackagingInvokesPublishedVersions() {
+        MainStack stack = synthMainStack(Map.of(LambdaPackaging.CONTEXT_KEY, "snapstart"));
+        Template appTemplate = Template.fromStack(stack.getAppStack());
+
+        appTemplate.hasResourceProperties("AWS::Lambda::Function", Match.objectLike(Map.of(
+                "Handler", "com.myorg.dashboards.DashboardsUpdateHandler::handleRequest",
+                "SnapStart", Map.of("ApplyOn", "PublishedVersions"))));
+        appTemplate.resourceCountIs("AWS::Lambda::Alias", 2);
+        appTemplate.hasResourceProperties("AWS::Lambda::Alias", Match.objectLike(Map.of("Name", "live")));
+        Template.fromStack(stack.getStreamStack()).resourceCountIs("AWS::Lambda::Alias", 3);
+
+        Template.fromStack(synthMainStack(Map.of()).getAppStack()).resourceCountIs("AWS::Lambda::Alias", 0);
+        assertThatThrownBy(() -> synthMainStack(Map.of(LambdaPackaging.CONTEXT_KEY, "crac")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("snapstart");
+    }
+
+    @Test
+    public void testWafChangesReachTheUpdaterInBatchesThroughAQueue() {
+        Template appTemplate = Template.fromStack(synthMainStack(Map.of()).getAppStack());
+
+        appTemplate.resourceCountIs("AWS::SQS::Queue", 2);
+        appTemplate.hasResourceProperties("AWS::SQS::Queue", Match.objectLike(Map.of(
+                "VisibilityTimeout", 6 * StreamStackProps.DEFAULT_DASHBOARDS_TIMEOUT_SECONDS + AppStack.UPDATE_BATCHING_WINDOW_SECONDS,
+                "RedrivePolicy", Match.objectLike(Map.of("maxReceiveCount", 5)))));
+        appTemplate.hasResourceProperties("AWS::Lambda::EventSourceMapping", Match.objectLike(Map.of(
+                "BatchSize", AppStack.UPDATE_BATCH_SIZE,
+                "MaximumBatchingWindowInSeconds", AppStack.UPDATE_BATCHING_WINDOW_SECONDS)));
+        appTemplate.hasResourceProperties("AWS::Lambda::Function", Match.objectLike(Map.of(
+                "Handler", "com.myorg.dashboards.DashboardsUpdateHandler::handleRequest",
+                "ReservedConcurrentExecutions", 1)));
+
+        appTemplate.hasResourceProperties("AWS::Events::Rule", Match.objectLike(Map.of(
+                "EventPattern", Match.objectLike(Map.of(
+                        "source", List.of("aws.waf-regional"),
+                        "detail", Match.objectLike(Map.of("eventSource", List.of("waf-regional.amazonaws.com"))))))));
+        appTemplate.hasResourceProperties("AWS::Events::Rule", Match.objectLike(Map.of(
+                "EventPattern", Match.objectLike(Map.of(
+                        "source", List.of("aws.waf"),
+                        "detail", Match.objectLike(Map.of("eventSource", List.of("waf.amazonaws.com"))))))));
+        appTemplate.hasResourceProperties("AWS::Events::Rule", Match.objectLike(Map.of(
+                "EventPattern", Match.objectLike(Map.of(
+                        "source", List.of("aws.wafv2"),
+                        "detail", Match.objectLike(Map.of("eventName", AppStack.WAFV2_EVENT_NAMES)))))));
+    }
+
+    @Test
+    public void testDeliveryAlarmsWatchTheirOwnStream() {
+        Template streamTemplate = Template.fromStack(synthMainStack(Map.of(
+                StreamStack.SHARD_COUNT_CONTEXT_KEY, "2",
+                AlarmThresholds.CONTEXT_KEY, "data-freshness:1800")).getStreamStack());
+
+        streamTemplate.resourceCountIs("AWS::CloudWatch::Alarm", 6);
+        for (String stream : List.of("aws-waf-logs-osdfw-0", "aws-waf-logs-osdfw-1")) {
+            List<Map<String, String>> dimensions = List.of(Map.of("Name", "DeliveryStreamName", "Value", stream));
+            streamTemplate.hasResourceProperties("AWS::CloudWatch::Alarm", Match.objectLike(Map.of(
+                    "Namespace", "AWS/Firehose",
+                    "MetricName", "DeliveryToElasticsearch.DataFreshness",
+                    "Dimensions", dimensions,
+                    "Threshold", 1800,
+                    "ComparisonOperator", "GreaterThanThreshold")));
+            streamTemplate.hasResourceProperties("AWS::CloudWatch::Alarm", Match.objectLike(Map.of(
+                    "MetricName", "DeliveryToElasticsearch.Success",
+                    "Dimensions", dimensions,
+                    "Threshold", 0.99,
+                    "ComparisonOperator", "LessThanThreshold",
+                    "AlarmActions", List.of(Match.anyValue()))));
+            streamTemplate.hasResourceProperties("AWS::CloudWatch::Alarm", Match.objectLike(Map.of(
+                    "MetricName", "ThrottledRecords",
+                    "Dimensions", dimensions)));
+        }
+    }
+
+    @Test
+    public void testDomainAlarmsWatchTheDomainAndShareADashboard() {
+        MainStack stack = synthMainStack(Map.of(AlarmThresholds.CONTEXT_KEY, "jvm-memory-pressure:90, free-storage:4096"));
+        Template mainTemplate = Template.fromStack(stack);
+        Object domainName = stack.resolve(stack.getOpenSearchDomain().getDomainName());
+
+        mainTemplate.resourceCountIs("AWS::CloudWatch::Alarm", 4);
+        Map<String, Number> thresholds = Map.of("ThreadpoolWriteRejected", 0, "JVMMemoryPressure", 90,
+                "IndexingLatency", 50, "FreeStorageSpace", 4096);
+        thresholds.forEach((metric, threshold) -> mainTemplate.hasResourceProperties("AWS::CloudWatch::Alarm", Match.objectLike(Map.of(
+                "Namespace", "AWS/ES",
+                "MetricName", metric,
+                "Dimensions", Match.arrayWith(List.of(Map.of("Name", "DomainName", "Value", domainName))),
+                "Threshold", threshold,
+                "AlarmActions", List.of(Map.of("Ref", Match.stringLikeRegexp("osdfwAlarmTopic.*")))))));
+        mainTemplate.hasResourceProperties("AWS::CloudWatch::Dashboard", Map.of(
+                "DashboardName", PipelineMonitoring.DASHBOARD_NAME,
+                "DashboardBody", Match.anyValue()));
+
+        assertThatThrownBy(() -> synthMainStack(Map.of(AlarmThresholds.CONTEXT_KEY, "heap:90")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("jvm-memory-pressure");
+        assertThatThrownBy(() -> synthMainStack(Map.of(AlarmThresholds.CONTEXT_KEY, "delivery-success:99")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testRequestCacheStatsArePublishedOnASchedule() {
+        Template mainTemplate = Template.fromStack(synthMainStack(Map.of()));
+
+        mainTemplate.hasResourceProperties("AWS::Lambda::Function", Match.objectLike(Map.of(
+                "Handler", "com.myorg.metrics.RequestCacheStatsHandler::handleRequest",
+                "Environment", Map.of("Variables", Match.objectLike(Map.of("ES_ENDPOINT", Match.anyValue()))))));
+        mainTemplate.hasResourceProperties("AWS::Events::Rule", Match.objectLike(Map.of(
+                "ScheduleExpression", "rate(1 minute)",
+                "Targets", Match.arrayWith(List.of(Match.objectLike(Map.of(
+                        "Arn", Map.of("Fn::GetAtt", Match.arrayWith(List.of(
+                                Match.stringLikeRegexp("osdfwMonitoringosdfwRequestCacheStats.*")))))))))));
+    }
+
+    @Test
+    public void testIndexLifecycleParametersHaveDefaults() {
+        Template mainTemplate = Template.fromStack(synthMainStack(Map.of()));
+
+        mainTemplate.hasParameter("osdfwDailyIngestGB", Match.objectLike(Map.of("Type", "Number", "Default", "1")));
+        mainTemplate.hasParameter("osdfwIndexWarmAfterDays", Match.objectLike(Map.of("Default", "7")));
+        mainTemplate.hasParameter("osdfwIndexRetentionDays", Match.objectLike(Map.of("Default", "30")));
+        mainTemplate.hasParameter("osdfwRolloverDocCount", Match.objectLike(Map.of("Default", "0")));
+    }
+
+    @Test
+    public void testUltraWarmNodesBringDedicatedMasters() {
+        MainStack stack = synthMainStack(Map.of(DomainTopology.ULTRAWARM_NODES_CONTEXT_KEY, "2"));
+
+        Template.fromStack(stack).hasResourceProperties("AWS::OpenSearchService::Domain", Match.objectLike(Map.of(
+                "ClusterConfig", Match.objectLike(Map.of(
+                        "WarmEnabled", true,
+                        "WarmCount", 2,
+                        "WarmType", "ultrawarm1.medium.search",
+                        "DedicatedMasterEnabled", true,
+                        "DedicatedMasterCount", 3)))));
+        Template.fromStack(stack.getStreamStack()).hasResourceProperties("AWS::CloudFormation::CustomResource",
+                Match.objectLike(Map.of("UltraWarm", true)));
+    }
+
+    @Test
+    public void testNodeTypeParameterReachesDomain() {
+        Template mainTemplate = Template.fromStack(synthMainStack(Map.of()));
+
+        mainTemplate.hasParameter("osdfwOsNodeSize", Match.objectLike(Map.of(
+                "Default", "r6g.large",
+                "AllowedValues", Match.arrayWith(List.of("r6g.large", "m6g.large")))));
+        mainTemplate.hasResourceProperties("AWS::OpenSearchService::Domain", Match.objectLike(Map.of(
+                "ClusterConfig", Match.objectLike(Map.of(
+                        "InstanceType", Map.of("Fn::Join", List.of("", List.of(Map.of("Ref", "osdfwOsNodeSize"), ".search"))),
+                        "InstanceCount", 1,
+                        "DedicatedMasterEnabled", false,
+                        "ZoneAwarenessEnabled", false)))));
+    }
+
+    /**
+     * One row of the topology matrix: the context it synthesizes with and the validation error it should be
+     * rejected with, or null if it's valid.
+     */
+    private static final class TopologyCase {
+        private final int dataNodes;
+        private final int availabilityZones;
+        private final int masterNodes;
+        private final int ultraWarmNodes;
+        private final String volumeType;
+        private final String error;
+
+        TopologyCase(int dataNodes, int availabilityZones, int masterNodes, int ultraWarmNodes, String volumeType) {
+            this.dataNodes = dataNodes;
+            this.availabilityZones = availabilityZones;
+            this.masterNodes = masterNodes;
+            this.ultraWarmNodes = ultraWarmNodes;
+            this.volumeType = volumeType;
+            if (dataNodes % availabilityZones != 0) {
+                this.error = "multiple of the availability zones";
+            } else if (masterNodes != 0 && masterNodes != 3 && masterNodes != 5) {
+                this.error = "Dedicated master node count must be 0, 3 or 5";
+            } else if (!volumeType.equals("gp2") && !volumeType.equals("gp3")) {
+                this.error = "Unknown EBS volume type";
+            } else {
+                this.error = null;
+            }
+        }
+
+        Map<String, Object> context() {
+            return Map.of(
+                    DomainTopology.DATA_NODES_CONTEXT_KEY, String.valueOf(dataNodes),
+                    DomainTopology.AVAILABILITY_ZONES_CONTEXT_KEY, String.valueOf(availabilityZones),
+                    DomainTopology.MASTER_NODES_CONTEXT_KEY, String.valueOf(masterNodes),
+                    DomainTopology.ULTRAWARM_NODES_CONTEXT_KEY, String.valueOf(ultraWarmNodes),
+                    DomainTopology.EBS_VOLUME_TYPE_CONTEXT_KEY, volumeType);
+        }
+
+        Map<String, Object> clusterConfig() {
+            // UltraWarm brings three dedicated masters if none were asked for
+            int masters = masterNodes == 0 && ultraWarmNodes > 0 ? 3 : masterNodes;
+            Map<String, Object> clusterConfig = new HashMap<>();
+            clusterConfig.put("InstanceCount", dataNodes);
+            clusterConfig.put("ZoneAwarenessEnabled", availabilityZones > 1);
+            clusterConfig.put("ZoneAwarenessConfig", availabilityZones > 1
+                    ? Map.of("AvailabilityZoneCount", availabilityZones) : Match.absent());
+            clusterConfig.put("DedicatedMasterEnabled", masters > 0);
+            clusterConfig.put("DedicatedMasterCount", masters > 0 ? masters : Match.absent());
+            clusterConfig.put("DedicatedMasterType", masters > 0 ? DomainTopology.DEFAULT_MASTER_NODE_TYPE : Match.absent());
+            clusterConfig.put("WarmEnabled", ultraWarmNodes > 0);
+            clusterConfig.put("WarmCount", ultraWarmNodes > 0 ? ultraWarmNodes : Match.absent());
+            clusterConfig.put("WarmType", ultraWarmNodes > 0 ? DomainTopology.ULTRAWARM_NODE_TYPE : Match.absent());
+            return clusterConfig;
+        }
+
+        Map<String, Object> ebsOptions() {
+            boolean gp3 = volumeType.equals("gp3");
+            return Map.of(
+                    "EBSEnabled", true,
+                    "VolumeSize", Map.of("Ref", "osdfwOsEbsSize"),
+                    "VolumeType", volumeType,
+                    "Iops", gp3 ? Map.of("Ref", "osdfwOsEbsIops") : Match.absent(),
+                    "Throughput", gp3 ? Map.of("Ref", "osdfwOsEbsThroughput") : Match.absent());
+        }
+
+        @Override
+        public String toString() {
+            return dataNodes + " data nodes in " + availabilityZones + " AZs, " + masterNodes + " masters, "
+                    + ultraWarmNodes + " UltraWarm, " + volumeType;
+        }
+    }
+
+    private static List<TopologyCase> topologyMatrix() {
+        List<TopologyCase> cases = new ArrayList<>();
+        for (int dataNodes : List.of(1, 3, 6)) {
+            for (int availabilityZones : List.of(1, 2, 3)) {
+                for (int masterNodes : List.of(0, 3, 5)) {
+                    for (String volumeType : List.of("gp2", "gp3")) {
+                        cases.add(new TopologyCase(dataNodes, availabilityZones, masterNodes, 0, volumeType));
+                    }
+                }
+            }
+        }
+        // UltraWarm alone and with zone awareness, with and without masters of its own
+        cases.add(new TopologyCase(2, 2, 0, 2, "gp3"));
+        cases.add(new TopologyCase(6, 3, 5, 3, "gp3"));
+        cases.add(new TopologyCase(3, 3, 3, 2, "gp2"));
+        // what the domain would refuse
+        cases.add(new TopologyCase(4, 3, 0, 0, "gp3"));
+        cases.add(new TopologyCase(2, 2, 2, 0, "gp3"));
+        cases.add(new TopologyCase(2, 1, 4, 0, "gp2"));
+        cases.add(new TopologyCase(2, 2, 3, 0, "io1"));
+        return cases;
+    }
+
+    @TestFactory
+    public Stream<DynamicTest> testTopologyContextShapesCluster() {
+        return topologyMatrix().stream().map(topology -> DynamicTest.dynamicTest(topology.toString(), () -> {
+            if (topology.error != null) {
+                assertThatThrownBy(() -> synthMainStack(topology.context()))
+                        .isInstanceOf(IllegalArgumentException.class)
+                        .hasMessageContaining(topology.error);
+                return;
+            }
+            MainStack stack = synthMainStack(topology.context());
+
+            Template.fromStack(stack).hasResourceProperties("AWS::OpenSearchService::Domain", Match.objectLike(Map.of(
+                    "ClusterConfig", Match.objectLike(topology.clusterConfig()),
+                    "EBSOptions", topology.ebsOptions())));
+            Template.fromStack(stack.getStreamStack()).hasResourceProperties("AWS::CloudFormation::CustomResource",
+                    Match.objectLike(Map.of(
+                            "DataNodeCount", topology.dataNodes,
+                            "UltraWarm", topology.ultraWarmNodes > 0)));
+        }));
+    }
+
+    @Test
+    public void testInvalidTopologyIsRejected() {
+        assertThatThrownBy(() -> synthMainStack(Map.of(DomainTopology.DATA_NODES_CONTEXT_KEY, "0")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("at least 1");
+        assertThatThrownBy(() -> synthMainStack(Map.of(DomainTopology.AVAILABILITY_ZONES_CONTEXT_KEY, "4")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Availability zones must be 1, 2 or 3");
+        assertThatThrownBy(() -> synthMainStack(Map.of(DomainTopology.ULTRAWARM_NODES_CONTEXT_KEY, "1")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("UltraWarm needs at least 2 nodes");
     }
 }